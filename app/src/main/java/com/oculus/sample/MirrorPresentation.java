@@ -0,0 +1,92 @@
+/**
+ * Copyright 2016-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * Licensed under the Creative Commons CC BY-NC 4.0 Attribution-NonCommercial
+ * License (the "License"). You may obtain a copy of the License at
+ * https://creativecommons.org/licenses/by-nc/4.0/.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.oculus.sample;
+
+import android.app.Presentation;
+import android.content.Context;
+import android.graphics.SurfaceTexture;
+import android.hardware.display.DisplayManager;
+import android.os.Bundle;
+import android.view.Display;
+import android.view.TextureView;
+
+import com.oculus.sample.player.SphericalVideoPlayer;
+
+/**
+ * Shows a player's view full screen on an external display. The player
+ * draws into it from the frames it already decodes; nothing is decoded
+ * twice.
+ */
+class MirrorPresentation extends Presentation {
+    private final SphericalVideoPlayer videoPlayer;
+
+    /**
+     * Shows {@code videoPlayer} on the first presentation display, or
+     * returns null if there is none.
+     */
+    static MirrorPresentation show(Context context, SphericalVideoPlayer videoPlayer) {
+        DisplayManager displayManager =
+                (DisplayManager) context.getSystemService(Context.DISPLAY_SERVICE);
+        Display[] displays =
+                displayManager.getDisplays(DisplayManager.DISPLAY_CATEGORY_PRESENTATION);
+        if (displays.length == 0) {
+            return null;
+        }
+
+        MirrorPresentation presentation =
+                new MirrorPresentation(context, displays[0], videoPlayer);
+        presentation.show();
+        return presentation;
+    }
+
+    private MirrorPresentation(
+            Context context, Display display, SphericalVideoPlayer videoPlayer) {
+        super(context, display);
+        this.videoPlayer = videoPlayer;
+    }
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+
+        TextureView mirrorView = new TextureView(getContext());
+        mirrorView.setSurfaceTextureListener(new TextureView.SurfaceTextureListener() {
+            @Override
+            public void onSurfaceTextureAvailable(
+                    SurfaceTexture surface, int width, int height) {
+                videoPlayer.setMirrorSurface(surface, width, height);
+            }
+
+            @Override
+            public void onSurfaceTextureSizeChanged(
+                    SurfaceTexture surface, int width, int height) {
+                videoPlayer.setMirrorSurface(surface, width, height);
+            }
+
+            @Override
+            public boolean onSurfaceTextureDestroyed(SurfaceTexture surface) {
+                videoPlayer.setMirrorSurface(null, 0, 0);
+                // The render thread may still draw into it until it sees the change.
+                return false;
+            }
+
+            @Override
+            public void onSurfaceTextureUpdated(SurfaceTexture surface) {
+            }
+        });
+        setContentView(mirrorView);
+    }
+}
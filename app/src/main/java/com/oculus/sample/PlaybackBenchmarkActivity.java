@@ -0,0 +1,363 @@
+/**
+ * Copyright 2016-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * Licensed under the Creative Commons CC BY-NC 4.0 Attribution-NonCommercial
+ * License (the "License"). You may obtain a copy of the License at
+ * https://creativecommons.org/licenses/by-nc/4.0/.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.oculus.sample;
+
+import android.graphics.SurfaceTexture;
+import android.os.Build;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.SystemClock;
+import android.support.v7.app.AppCompatActivity;
+import android.util.Log;
+import android.view.TextureView;
+import android.view.WindowManager;
+
+import com.oculus.sample.player.SphericalVideoPlayer;
+import com.oculus.sample.projection.SphericalCamera;
+import com.oculus.sample.telemetry.FrameTimeStats;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Plays the bundled clip while replaying a fixed drag path, then writes
+ * frame-time percentiles to {@value #RESULT_FILE_NAME} in the app's external
+ * files directory and finishes. Run it through
+ * benchmark/run-playback-benchmark.sh, or directly:
+ *
+ *     adb shell am start -n com.oculus.sample/.PlaybackBenchmarkActivity --ei duration_s 30
+ *
+ * The drag path is generated unless {@code drag_path} names a CSV file of
+ * {@code timeMs,distanceX,distanceY} lines as reported by GestureDetector.
+ * With {@code --es source mapped} the clip is read through a memory mapped
+ * MediaDataSource instead of its android.resource URI; the result records
+ * the prepare time either way. With {@code --ei seeks N} the player seeks N
+ * times, evenly spaced over the run, to the same pseudo-random positions on
+ * every run, and the result reports seek latency percentiles. With
+ * {@code --ef fov_y 110} the run is zoomed out, and {@code --ez mipmap true}
+ * turns on mipmapped zoom; the result reports how many frames were copied
+ * for it and how long the copies took. With {@code --ez mirror true} the
+ * player is mirrored to the first presentation display, if there is one,
+ * and the result reports how long the mirror draws took; frame times still
+ * measure the player's own window.
+ */
+public class PlaybackBenchmarkActivity extends AppCompatActivity {
+    private static final String TAG = PlaybackBenchmarkActivity.class.getSimpleName();
+
+    static final String EXTRA_DURATION_SECONDS = "duration_s";
+    static final String EXTRA_DRAG_PATH = "drag_path";
+    static final String EXTRA_SOURCE = "source";
+    static final String SOURCE_URI = "uri";
+    static final String SOURCE_MAPPED = "mapped";
+    static final String EXTRA_SEEKS = "seeks";
+    static final String EXTRA_FOV_Y = "fov_y";
+    static final String EXTRA_MIPMAP = "mipmap";
+    static final String EXTRA_MIRROR = "mirror";
+    static final String RESULT_FILE_NAME = "playback_benchmark.json";
+
+    private static final int DEFAULT_DURATION_SECONDS = 30;
+    // Covers prepare, first frames and shader compilation.
+    private static final long WARMUP_MS = 3000;
+    private static final long DRAG_EVENT_INTERVAL_MS = 16;
+    private static final int MAX_FRAMES_PER_SECOND = 240;
+
+    private final Handler handler = new Handler();
+
+    private SphericalVideoPlayer videoPlayer;
+    private MirrorPresentation mirrorPresentation;
+    private FrameTimeStats frameTimeStats;
+    private int durationSeconds;
+    private String dragPathName;
+    private String source;
+    private int seekCount;
+    private int seeksDone;
+    private final Random seekPositions = new Random(360);
+
+    // Drag events as parallel arrays, times relative to the measurement start.
+    private long[] dragTimesMs;
+    private float[] dragDistancesX;
+    private float[] dragDistancesY;
+    private int nextDragEvent;
+    private long measurementStartMs;
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+
+        durationSeconds = Math.max(1,
+                getIntent().getIntExtra(EXTRA_DURATION_SECONDS, DEFAULT_DURATION_SECONDS));
+        String dragPathFile = getIntent().getStringExtra(EXTRA_DRAG_PATH);
+        try {
+            if (dragPathFile != null) {
+                loadDragPath(new File(dragPathFile));
+                dragPathName = dragPathFile;
+            } else {
+                generateDragPath(durationSeconds * 1000L);
+                dragPathName = "generated";
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Cannot read drag path " + dragPathFile, e);
+            finish();
+            return;
+        }
+
+        setContentView(R.layout.activity_main);
+        videoPlayer = (SphericalVideoPlayer) findViewById(R.id.spherical_video_player);
+        seekCount = Math.max(0, getIntent().getIntExtra(EXTRA_SEEKS, 0));
+        source = getIntent().getStringExtra(EXTRA_SOURCE);
+        if (SOURCE_MAPPED.equals(source)) {
+            videoPlayer.setVideoResource(R.raw.sample360);
+        } else {
+            source = SOURCE_URI;
+            videoPlayer.setVideoURIPath(SphericalPlayerActivity.SAMPLE_VIDEO_PATH);
+        }
+        videoPlayer.setFovY(
+                getIntent().getFloatExtra(EXTRA_FOV_Y, SphericalCamera.DEFAULT_FOVY));
+        videoPlayer.setMipmappedZoomEnabled(getIntent().getBooleanExtra(EXTRA_MIPMAP, false));
+        videoPlayer.playWhenReady();
+        videoPlayer.setSurfaceTextureListener(new TextureView.SurfaceTextureListener() {
+            @Override
+            public void onSurfaceTextureAvailable(
+                    SurfaceTexture surface, int width, int height) {
+                videoPlayer.initRenderThread(surface, width, height);
+                handler.postDelayed(startMeasurement, WARMUP_MS);
+            }
+
+            @Override
+            public void onSurfaceTextureSizeChanged(
+                    SurfaceTexture surface, int width, int height) {
+                videoPlayer.onSurfaceSizeChanged(width, height);
+            }
+
+            @Override
+            public boolean onSurfaceTextureDestroyed(SurfaceTexture surface) {
+                handler.removeCallbacksAndMessages(null);
+                videoPlayer.releaseResources();
+                return false;
+            }
+
+            @Override
+            public void onSurfaceTextureUpdated(SurfaceTexture surface) {
+            }
+        });
+
+        getWindow().addFlags(WindowManager.LayoutParams.FLAG_KEEP_SCREEN_ON);
+
+        if (getIntent().getBooleanExtra(EXTRA_MIRROR, false)) {
+            mirrorPresentation = MirrorPresentation.show(this, videoPlayer);
+            if (mirrorPresentation == null) {
+                Log.w(TAG, "No presentation display, running without a mirror");
+            }
+        }
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+
+        if (mirrorPresentation != null) {
+            mirrorPresentation.dismiss();
+            mirrorPresentation = null;
+        }
+    }
+
+    private final Runnable startMeasurement = new Runnable() {
+        @Override
+        public void run() {
+            long refreshPeriodNanos = (long) (1e9 / getRefreshRate());
+            frameTimeStats = new FrameTimeStats(
+                    durationSeconds * MAX_FRAMES_PER_SECOND, refreshPeriodNanos);
+            videoPlayer.setFrameTimeStats(frameTimeStats);
+            videoPlayer.clearJankLog();
+            videoPlayer.getSeekLatencyStats().clear();
+            videoPlayer.getMipmapCopyStats().clear();
+            videoPlayer.getMirrorDrawStats().clear();
+
+            measurementStartMs = SystemClock.uptimeMillis();
+            nextDragEvent = 0;
+            handler.post(replayDragPath);
+            seeksDone = 0;
+            if (seekCount > 0) {
+                handler.postDelayed(seek, getSeekIntervalMs());
+            }
+            handler.postDelayed(finishMeasurement, durationSeconds * 1000L);
+        }
+    };
+
+    private final Runnable replayDragPath = new Runnable() {
+        @Override
+        public void run() {
+            long elapsedMs = SystemClock.uptimeMillis() - measurementStartMs;
+            while (nextDragEvent < dragTimesMs.length && dragTimesMs[nextDragEvent] <= elapsedMs) {
+                videoPlayer.dragBy(dragDistancesX[nextDragEvent], dragDistancesY[nextDragEvent]);
+                nextDragEvent++;
+            }
+
+            if (nextDragEvent < dragTimesMs.length) {
+                handler.postDelayed(this, DRAG_EVENT_INTERVAL_MS);
+            }
+        }
+    };
+
+    private final Runnable seek = new Runnable() {
+        @Override
+        public void run() {
+            long durationMs = videoPlayer.getDurationMs();
+            if (durationMs > 0) {
+                videoPlayer.seekTo((long) (seekPositions.nextFloat() * durationMs));
+            }
+            if (++seeksDone < seekCount) {
+                handler.postDelayed(this, getSeekIntervalMs());
+            }
+        }
+    };
+
+    private final Runnable finishMeasurement = new Runnable() {
+        @Override
+        public void run() {
+            handler.removeCallbacks(replayDragPath);
+            handler.removeCallbacks(seek);
+            videoPlayer.setFrameTimeStats(null);
+
+            try {
+                writeResult();
+            } catch (IOException e) {
+                Log.e(TAG, "Cannot write benchmark result", e);
+            }
+            finish();
+        }
+    };
+
+    private long getSeekIntervalMs() {
+        // Spread over the run, leaving the last interval for the final seek to land.
+        return durationSeconds * 1000L / (seekCount + 1);
+    }
+
+    private float getRefreshRate() {
+        return getWindowManager().getDefaultDisplay().getRefreshRate();
+    }
+
+    /**
+     * A slow horizontal sweep with a smaller vertical wobble, the same on
+     * every run.
+     */
+    private void generateDragPath(long durationMs) {
+        int count = (int) (durationMs / DRAG_EVENT_INTERVAL_MS);
+        dragTimesMs = new long[count];
+        dragDistancesX = new float[count];
+        dragDistancesY = new float[count];
+
+        for (int i = 0; i < count; i++) {
+            long timeMs = i * DRAG_EVENT_INTERVAL_MS;
+            dragTimesMs[i] = timeMs;
+            dragDistancesX[i] = (float) (12 * Math.cos(2 * Math.PI * timeMs / 5000.));
+            dragDistancesY[i] = (float) (4 * Math.sin(2 * Math.PI * timeMs / 3000.));
+        }
+    }
+
+    private void loadDragPath(File file) throws IOException {
+        int count = 0;
+        long[] times = new long[1024];
+        float[] distancesX = new float[1024];
+        float[] distancesY = new float[1024];
+
+        BufferedReader reader = new BufferedReader(new FileReader(file));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+
+                String[] fields = line.split(",");
+                if (fields.length != 3) {
+                    throw new IOException("Expected timeMs,distanceX,distanceY: " + line);
+                }
+                if (count == times.length) {
+                    times = Arrays.copyOf(times, count * 2);
+                    distancesX = Arrays.copyOf(distancesX, count * 2);
+                    distancesY = Arrays.copyOf(distancesY, count * 2);
+                }
+                try {
+                    times[count] = Long.parseLong(fields[0].trim());
+                    distancesX[count] = Float.parseFloat(fields[1].trim());
+                    distancesY[count] = Float.parseFloat(fields[2].trim());
+                } catch (NumberFormatException e) {
+                    throw new IOException("Malformed drag event: " + line);
+                }
+                count++;
+            }
+        } finally {
+            reader.close();
+        }
+
+        dragTimesMs = Arrays.copyOf(times, count);
+        dragDistancesX = Arrays.copyOf(distancesX, count);
+        dragDistancesY = Arrays.copyOf(distancesY, count);
+    }
+
+    private void writeResult() throws IOException {
+        String json = String.format(Locale.US,
+                "{\"device\":\"%s\",\"fingerprint\":\"%s\",\"sdk\":%d"
+                        + ",\"refreshRateHz\":%.2f,\"durationSeconds\":%d"
+                        + ",\"source\":\"%s\",\"prepareMs\":%d"
+                        + ",\"dragPath\":\"%s\",\"frameTimes\":%s,\"jank\":%s,\"avSync\":%s"
+                        + ",\"seekLatency\":%s,\"fovY\":%.1f,\"mipmapCopy\":%s"
+                        + ",\"mirrorDraw\":%s}\n",
+                Build.MODEL, Build.FINGERPRINT, Build.VERSION.SDK_INT,
+                getRefreshRate(), durationSeconds,
+                source, videoPlayer.getPrepareTimeMs(),
+                dragPathName.replace("\\", "\\\\").replace("\"", "\\\""),
+                frameTimeStats.toJson(),
+                videoPlayer.getJankLogJson(),
+                videoPlayer.getAvSyncStats() != null
+                        ? videoPlayer.getAvSyncStats().toJson() : null,
+                videoPlayer.getSeekLatencyStats().toJson(),
+                videoPlayer.getFovY(),
+                videoPlayer.isMipmappedZoomEnabled()
+                        ? videoPlayer.getMipmapCopyStats().toJson() : null,
+                mirrorPresentation != null
+                        ? videoPlayer.getMirrorDrawStats().toJson() : null);
+        Log.i(TAG, json.trim());
+
+        File directory = getExternalFilesDir(null);
+        if (directory == null) {
+            directory = getFilesDir();
+        }
+
+        // Written under a temporary name so a polling script never pulls a partial file.
+        File partial = new File(directory, RESULT_FILE_NAME + ".tmp");
+        Writer writer = new FileWriter(partial);
+        try {
+            writer.write(json);
+        } finally {
+            writer.close();
+        }
+
+        File result = new File(directory, RESULT_FILE_NAME);
+        if (!partial.renameTo(result)) {
+            throw new IOException("Cannot rename " + partial + " to " + result);
+        }
+    }
+}
@@ -23,45 +23,239 @@ import android.support.v4.app.ActivityCompat;
 import android.support.v4.content.ContextCompat;
 import android.support.v7.app.AppCompatActivity;
 import android.os.Bundle;
+import android.os.Handler;
+import android.util.Log;
 import android.view.TextureView;
 import android.view.View;
 import android.view.WindowManager;
+import android.widget.LinearLayout;
+import android.widget.SeekBar;
 import android.widget.Toast;
 
 import com.oculus.sample.player.SphericalVideoPlayer;
+import com.oculus.sample.rtp.LoopbackRtpSender;
+import com.oculus.sample.rtp.NalUnits;
 
 import java.io.BufferedReader;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
 
 public class SphericalPlayerActivity extends AppCompatActivity {
-    private final String SAMPLE_VIDEO_PATH =
+    private static final String TAG = SphericalPlayerActivity.class.getSimpleName();
+
+    static final String SAMPLE_VIDEO_PATH =
             "android.resource://com.oculus.sample/raw/" + R.raw.sample360;
 
     private static final int PERMISSIONS_REQUEST_READ_EXTERNAL_STORAGE = 0x1;
 
-    private SphericalVideoPlayer videoPlayer;
+    /**
+     * Number of players to show in a grid, used to benchmark the shared render
+     * thread: adb shell am start -n com.oculus.sample/.SphericalPlayerActivity --ei view_count 4
+     */
+    private static final String EXTRA_VIEW_COUNT = "view_count";
+
+    /**
+     * Plays a live RTP stream instead of the sample video:
+     * adb shell am start -n com.oculus.sample/.SphericalPlayerActivity --ei live_port 5004
+     *     [--es live_mime video/hevc] [--ei live_width 3840 --ei live_height 1920]
+     *
+     * With live_loopback_file, an Annex B .h264 / .h265 file on the device is
+     * streamed to the port from this process as a stand-in camera:
+     *     --es live_loopback_file /sdcard/camera.h264 [--ef live_loopback_fps 30]
+     */
+    private static final String EXTRA_LIVE_PORT = "live_port";
+    private static final String EXTRA_LIVE_MIME = "live_mime";
+    private static final String EXTRA_LIVE_WIDTH = "live_width";
+    private static final String EXTRA_LIVE_HEIGHT = "live_height";
+    private static final String EXTRA_LIVE_LOOPBACK_FILE = "live_loopback_file";
+    private static final String EXTRA_LIVE_LOOPBACK_FPS = "live_loopback_fps";
+
+    /**
+     * Plays the sample's ambisonic track, if it has one, following the view:
+     *     --ez spatial_audio true
+     */
+    private static final String EXTRA_SPATIAL_AUDIO = "spatial_audio";
+
+    /**
+     * Samples zoomed out video from mipmaps: --ez mipmap_zoom true
+     */
+    private static final String EXTRA_MIPMAP_ZOOM = "mipmap_zoom";
+
+    /**
+     * Shows the first player on a presentation display as well, drawn from
+     * the same decoded frames: --ez mirror true. A display can be simulated
+     * with `adb shell settings put global overlay_display_devices 1920x1080/320`.
+     */
+    private static final String EXTRA_MIRROR = "mirror";
+    private static final long TIMELINE_UPDATE_MS = 250;
+    private static final long LIVE_STATS_LOG_MS = 5000;
+
+    private final List<SphericalVideoPlayer> videoPlayers = new ArrayList<>();
+    private final Handler handler = new Handler();
+    private SeekBar timeline;
+    private boolean scrubbing;
+    private LoopbackRtpSender loopbackSender;
+    private MirrorPresentation mirrorPresentation;
+
+    private final Runnable liveStatsLogger = new Runnable() {
+        @Override
+        public void run() {
+            String stats = videoPlayers.get(0).getLiveStatsJson();
+            if (stats != null) {
+                Log.i(TAG, "Live stream: " + stats);
+            }
+            handler.postDelayed(this, LIVE_STATS_LOG_MS);
+        }
+    };
+
+    private final Runnable timelineUpdater = new Runnable() {
+        @Override
+        public void run() {
+            SphericalVideoPlayer videoPlayer = videoPlayers.get(0);
+            long durationMs = videoPlayer.getDurationMs();
+            if (!scrubbing && durationMs > 0) {
+                timeline.setMax((int) durationMs);
+                timeline.setProgress((int) videoPlayer.getCurrentPositionMs());
+            }
+            handler.postDelayed(this, TIMELINE_UPDATE_MS);
+        }
+    };
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
 
-        setContentView(R.layout.activity_main);
-        videoPlayer = (SphericalVideoPlayer) findViewById(R.id.spherical_video_player);
-        videoPlayer.setVideoURIPath(SAMPLE_VIDEO_PATH);
-        videoPlayer.playWhenReady();
+        int viewCount = Math.max(1, getIntent().getIntExtra(EXTRA_VIEW_COUNT, 1));
+        if (viewCount == 1) {
+            setContentView(R.layout.activity_main);
+            videoPlayers.add(
+                    (SphericalVideoPlayer) findViewById(R.id.spherical_video_player));
+            timeline = (SeekBar) findViewById(R.id.timeline);
+            setUpTimeline(videoPlayers.get(0));
+        } else {
+            setContentView(createPlayerGrid(viewCount));
+        }
+
+        int livePort = getIntent().getIntExtra(EXTRA_LIVE_PORT, 0);
+        for (SphericalVideoPlayer videoPlayer : videoPlayers) {
+            if (livePort > 0) {
+                setLiveSource(videoPlayer, livePort);
+            } else {
+                videoPlayer.setVideoURIPath(SAMPLE_VIDEO_PATH);
+                videoPlayer.setSpatialAudioEnabled(
+                        getIntent().getBooleanExtra(EXTRA_SPATIAL_AUDIO, false));
+            }
+            videoPlayer.setMipmappedZoomEnabled(
+                    getIntent().getBooleanExtra(EXTRA_MIPMAP_ZOOM, false));
+            videoPlayer.playWhenReady();
+        }
 
         getWindow().addFlags(WindowManager.LayoutParams.FLAG_KEEP_SCREEN_ON);
 
         requestExternalStoragePermission();
     }
 
+    @Override
+    protected void onResume() {
+        super.onResume();
+
+        if (timeline != null) {
+            timelineUpdater.run();
+        }
+        liveStatsLogger.run();
+
+        if (getIntent().getBooleanExtra(EXTRA_MIRROR, false)) {
+            mirrorPresentation = MirrorPresentation.show(this, videoPlayers.get(0));
+            if (mirrorPresentation == null) {
+                toast(this, "No presentation display to mirror to");
+            }
+        }
+    }
+
     @Override
     protected void onPause() {
         super.onPause();
 
+        handler.removeCallbacks(timelineUpdater);
+        handler.removeCallbacks(liveStatsLogger);
         getWindow().clearFlags(WindowManager.LayoutParams.FLAG_KEEP_SCREEN_ON);
+
+        if (mirrorPresentation != null) {
+            mirrorPresentation.dismiss();
+            mirrorPresentation = null;
+        }
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+
+        if (loopbackSender != null) {
+            loopbackSender.stop();
+            loopbackSender = null;
+        }
+    }
+
+    private void setLiveSource(SphericalVideoPlayer videoPlayer, int port) {
+        String mime = getIntent().getStringExtra(EXTRA_LIVE_MIME);
+        videoPlayer.setLiveRtpSource(
+                port,
+                mime != null ? mime : NalUnits.MIME_AVC,
+                getIntent().getIntExtra(EXTRA_LIVE_WIDTH, 3840),
+                getIntent().getIntExtra(EXTRA_LIVE_HEIGHT, 1920),
+                getIntent().hasExtra(EXTRA_LIVE_LOOPBACK_FILE));
+    }
+
+    /**
+     * Streams the loopback file to the live port, once it can be read.
+     */
+    private void startLoopbackSender() {
+        String path = getIntent().getStringExtra(EXTRA_LIVE_LOOPBACK_FILE);
+        int port = getIntent().getIntExtra(EXTRA_LIVE_PORT, 0);
+        if (path == null || port <= 0 || loopbackSender != null) {
+            return;
+        }
+
+        String mime = getIntent().getStringExtra(EXTRA_LIVE_MIME);
+        try {
+            loopbackSender = new LoopbackRtpSender(
+                    mime != null ? mime : NalUnits.MIME_AVC,
+                    new FileInputStream(path),
+                    port,
+                    getIntent().getFloatExtra(EXTRA_LIVE_LOOPBACK_FPS, 30.f));
+            loopbackSender.start();
+        } catch (IOException e) {
+            Log.e(TAG, "Cannot stream " + path + " to port " + port, e);
+            toast(this, e.toString());
+            loopbackSender = null;
+        }
+    }
+
+    private void setUpTimeline(final SphericalVideoPlayer videoPlayer) {
+        timeline.setOnSeekBarChangeListener(new SeekBar.OnSeekBarChangeListener() {
+            @Override
+            public void onProgressChanged(SeekBar seekBar, int progress, boolean fromUser) {
+                if (fromUser) {
+                    videoPlayer.scrubTo(progress);
+                }
+            }
+
+            @Override
+            public void onStartTrackingTouch(SeekBar seekBar) {
+                scrubbing = true;
+                videoPlayer.beginScrub();
+            }
+
+            @Override
+            public void onStopTrackingTouch(SeekBar seekBar) {
+                scrubbing = false;
+                videoPlayer.endScrub();
+            }
+        });
     }
 
     private void requestExternalStoragePermission() {
@@ -86,28 +280,58 @@ public class SphericalPlayerActivity extends AppCompatActivity {
                 Toast.LENGTH_SHORT).show();
     }
 
-    private void init() {
-        videoPlayer.setSurfaceTextureListener(new TextureView.SurfaceTextureListener() {
-            @Override
-            public void onSurfaceTextureAvailable(SurfaceTexture surface, int width, int height) {
-                videoPlayer.initRenderThread(surface, width, height);
-            }
+    private LinearLayout createPlayerGrid(int viewCount) {
+        int columns = (int) Math.ceil(Math.sqrt(viewCount));
+        int rows = (int) Math.ceil((float) viewCount / columns);
 
-            @Override
-            public void onSurfaceTextureSizeChanged(SurfaceTexture surface, int width, int height) {
-            }
+        LinearLayout grid = new LinearLayout(this);
+        grid.setOrientation(LinearLayout.VERTICAL);
 
-            @Override
-            public boolean onSurfaceTextureDestroyed(SurfaceTexture surface) {
-                videoPlayer.releaseResources();
-                return false;
-            }
+        for (int row = 0; row < rows; row++) {
+            LinearLayout rowLayout = new LinearLayout(this);
+            rowLayout.setOrientation(LinearLayout.HORIZONTAL);
+            grid.addView(rowLayout, new LinearLayout.LayoutParams(
+                    LinearLayout.LayoutParams.MATCH_PARENT, 0, 1.f));
 
-            @Override
-            public void onSurfaceTextureUpdated(SurfaceTexture surface) {
+            for (int column = 0; column < columns && videoPlayers.size() < viewCount; column++) {
+                SphericalVideoPlayer videoPlayer = new SphericalVideoPlayer(this);
+                videoPlayer.setVisibility(View.GONE);
+                rowLayout.addView(videoPlayer, new LinearLayout.LayoutParams(
+                        0, LinearLayout.LayoutParams.MATCH_PARENT, 1.f));
+                videoPlayers.add(videoPlayer);
             }
-        });
-        videoPlayer.setVisibility(View.VISIBLE);
+        }
+        return grid;
+    }
+
+    private void init() {
+        startLoopbackSender();
+        for (final SphericalVideoPlayer videoPlayer : videoPlayers) {
+            videoPlayer.setSurfaceTextureListener(new TextureView.SurfaceTextureListener() {
+                @Override
+                public void onSurfaceTextureAvailable(
+                        SurfaceTexture surface, int width, int height) {
+                    videoPlayer.initRenderThread(surface, width, height);
+                }
+
+                @Override
+                public void onSurfaceTextureSizeChanged(
+                        SurfaceTexture surface, int width, int height) {
+                    videoPlayer.onSurfaceSizeChanged(width, height);
+                }
+
+                @Override
+                public boolean onSurfaceTextureDestroyed(SurfaceTexture surface) {
+                    videoPlayer.releaseResources();
+                    return false;
+                }
+
+                @Override
+                public void onSurfaceTextureUpdated(SurfaceTexture surface) {
+                }
+            });
+            videoPlayer.setVisibility(View.VISIBLE);
+        }
     }
 
     @Override
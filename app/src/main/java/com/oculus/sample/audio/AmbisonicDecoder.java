@@ -0,0 +1,185 @@
+/**
+ * Copyright 2016-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * Licensed under the Creative Commons CC BY-NC 4.0 Attribution-NonCommercial
+ * License (the "License"). You may obtain a copy of the License at
+ * https://creativecommons.org/licenses/by-nc/4.0/.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.oculus.sample.audio;
+
+/**
+ * Renders first order ambisonics to stereo for a listener looking in a
+ * given direction.
+ *
+ * Input is AmbiX: channels in ACN order (W, Y, Z, X) with SN3D
+ * normalization, X to the front, Y to the left and Z up, as in spatial
+ * audio tracks of 360 videos. The field is rotated into the listener's
+ * frame by the inverse of the head yaw and pitch and picked up by two
+ * virtual cardioid microphones MIC_AZIMUTH_DEGREES to either side of the
+ * view center. A rotation of a first order field is a rotation of its X, Y
+ * and Z components, so rotation and decoding fold into one 2x4 gain matrix
+ * that only has to be recomputed when the orientation changes.
+ *
+ * When it does, gains are ramped linearly over the next block so head
+ * movement does not click. Processing allocates nothing. Used on one
+ * thread.
+ */
+public class AmbisonicDecoder {
+    public static final int INPUT_CHANNELS = 4;
+    public static final int OUTPUT_CHANNELS = 2;
+
+    // ACN channel indices.
+    public static final int W = 0;
+    public static final int Y = 1;
+    public static final int Z = 2;
+    public static final int X = 3;
+
+    // Narrower than 90 degrees so sources in front and behind, and above and
+    // below, do not sound the same.
+    static final float MIC_AZIMUTH_DEGREES = 60.f;
+
+    private static final float MIC_COS = (float) Math.cos(Math.toRadians(MIC_AZIMUTH_DEGREES));
+    private static final float MIC_SIN = (float) Math.sin(Math.toRadians(MIC_AZIMUTH_DEGREES));
+
+    // Left then right, each in ACN order.
+    private final float[] gains = new float[OUTPUT_CHANNELS * INPUT_CHANNELS];
+    private final float[] targetGains = new float[OUTPUT_CHANNELS * INPUT_CHANNELS];
+
+    public AmbisonicDecoder() {
+        reset(0.f, 0.f);
+    }
+
+    /**
+     * Turns the listener to a new orientation over the next
+     * {@link #process} call.
+     *
+     * @see ListenerOrientation
+     */
+    public void setOrientation(float yawDegrees, float pitchDegrees) {
+        computeGains(yawDegrees, pitchDegrees, targetGains);
+    }
+
+    /**
+     * Turns the listener without a ramp, for the start of playback or
+     * after a seek.
+     */
+    public void reset(float yawDegrees, float pitchDegrees) {
+        computeGains(yawDegrees, pitchDegrees, targetGains);
+        System.arraycopy(targetGains, 0, gains, 0, gains.length);
+    }
+
+    /**
+     * Gains for the latest orientation: left then right, each in ACN order.
+     */
+    public void getGains(float[] out) {
+        System.arraycopy(targetGains, 0, out, 0, targetGains.length);
+    }
+
+    /**
+     * Decodes interleaved 16-bit AmbiX frames to interleaved 16-bit stereo,
+     * clipping at full scale.
+     */
+    public void process(short[] in, int inOffset, short[] out, int outOffset, int frames) {
+        if (frames <= 0) {
+            return;
+        }
+
+        float step = 1.f / frames;
+        float lw = gains[0];
+        float ly = gains[1];
+        float lz = gains[2];
+        float lx = gains[3];
+        float rw = gains[4];
+        float ry = gains[5];
+        float rz = gains[6];
+        float rx = gains[7];
+        float dlw = (targetGains[0] - lw) * step;
+        float dly = (targetGains[1] - ly) * step;
+        float dlz = (targetGains[2] - lz) * step;
+        float dlx = (targetGains[3] - lx) * step;
+        float drw = (targetGains[4] - rw) * step;
+        float dry = (targetGains[5] - ry) * step;
+        float drz = (targetGains[6] - rz) * step;
+        float drx = (targetGains[7] - rx) * step;
+
+        int i = inOffset;
+        int o = outOffset;
+        for (int frame = 0; frame < frames; frame++) {
+            float w = in[i + W];
+            float y = in[i + Y];
+            float z = in[i + Z];
+            float x = in[i + X];
+            out[o] = clip(lw * w + ly * y + lz * z + lx * x);
+            out[o + 1] = clip(rw * w + ry * y + rz * z + rx * x);
+            i += INPUT_CHANNELS;
+            o += OUTPUT_CHANNELS;
+
+            lw += dlw;
+            ly += dly;
+            lz += dlz;
+            lx += dlx;
+            rw += drw;
+            ry += dry;
+            rz += drz;
+            rx += drx;
+        }
+
+        // Land exactly on the target rather than on accumulated steps.
+        System.arraycopy(targetGains, 0, gains, 0, gains.length);
+    }
+
+    /**
+     * Each microphone hears 0.5 * (W + m . (X, Y, Z)), a cardioid pointing
+     * along m: the microphone's direction in the listener's frame, turned
+     * into the field's frame by the head rotation.
+     */
+    static void computeGains(float yawDegrees, float pitchDegrees, float[] out) {
+        double yaw = Math.toRadians(yawDegrees);
+        double pitch = Math.toRadians(pitchDegrees);
+        float cosYaw = (float) Math.cos(yaw);
+        float sinYaw = (float) Math.sin(yaw);
+        float cosPitch = (float) Math.cos(pitch);
+        float sinPitch = (float) Math.sin(pitch);
+
+        // Forward and left of the listener, in the field's frame.
+        float forwardX = cosPitch * cosYaw;
+        float forwardY = cosPitch * sinYaw;
+        float forwardZ = sinPitch;
+        float leftX = -sinYaw;
+        float leftY = cosYaw;
+
+        setCardioid(out, 0,
+                MIC_COS * forwardX + MIC_SIN * leftX,
+                MIC_COS * forwardY + MIC_SIN * leftY,
+                MIC_COS * forwardZ);
+        setCardioid(out, INPUT_CHANNELS,
+                MIC_COS * forwardX - MIC_SIN * leftX,
+                MIC_COS * forwardY - MIC_SIN * leftY,
+                MIC_COS * forwardZ);
+    }
+
+    private static void setCardioid(float[] out, int offset, float x, float y, float z) {
+        out[offset + W] = 0.5f;
+        out[offset + Y] = 0.5f * y;
+        out[offset + Z] = 0.5f * z;
+        out[offset + X] = 0.5f * x;
+    }
+
+    private static short clip(float sample) {
+        if (sample >= Short.MAX_VALUE) {
+            return Short.MAX_VALUE;
+        }
+        if (sample <= Short.MIN_VALUE) {
+            return Short.MIN_VALUE;
+        }
+        return (short) sample;
+    }
+}
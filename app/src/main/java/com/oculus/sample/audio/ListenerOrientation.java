@@ -0,0 +1,68 @@
+/**
+ * Copyright 2016-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * Licensed under the Creative Commons CC BY-NC 4.0 Attribution-NonCommercial
+ * License (the "License"). You may obtain a copy of the License at
+ * https://creativecommons.org/licenses/by-nc/4.0/.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.oculus.sample.audio;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Where the viewer looks, in the sound field's frame, published by the
+ * drawing thread and read by the audio thread without locks.
+ *
+ * Yaw is the azimuth of the view center in degrees, counterclockwise
+ * (to the left) from the front of the sound field; pitch is its elevation
+ * in degrees, positive up. Both are packed into one AtomicLong so the
+ * audio thread never pairs the yaw of one frame with the pitch of another.
+ */
+public class ListenerOrientation {
+    private final AtomicLong packed = new AtomicLong(pack(0.f, 0.f));
+
+    public void set(float yawDegrees, float pitchDegrees) {
+        packed.set(pack(yawDegrees, pitchDegrees));
+    }
+
+    /**
+     * Sets the orientation of a SphericalCamera at (lon, lat).
+     *
+     * The front of an ambisonic track is the center of the equirectangular
+     * frame and positive azimuths are to its left. The view center is at
+     * u = (lon - 90) / 360 with u growing to the right, so the frame center
+     * is at lon 270.
+     */
+    public void setFromCamera(float lon, float lat) {
+        set(270.f - lon, lat);
+    }
+
+    /**
+     * Both angles at once, for {@link #yaw(long)} and {@link #pitch(long)}.
+     * Equal values mean an unchanged orientation.
+     */
+    public long get() {
+        return packed.get();
+    }
+
+    public static float yaw(long orientation) {
+        return Float.intBitsToFloat((int) (orientation >>> 32));
+    }
+
+    public static float pitch(long orientation) {
+        return Float.intBitsToFloat((int) orientation);
+    }
+
+    private static long pack(float yaw, float pitch) {
+        return ((long) Float.floatToRawIntBits(yaw) << 32)
+                | (Float.floatToRawIntBits(pitch) & 0xffffffffL);
+    }
+}
@@ -0,0 +1,263 @@
+/**
+ * Copyright 2016-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * Licensed under the Creative Commons CC BY-NC 4.0 Attribution-NonCommercial
+ * License (the "License"). You may obtain a copy of the License at
+ * https://creativecommons.org/licenses/by-nc/4.0/.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.oculus.sample.gles;
+
+import android.opengl.GLES20;
+import android.opengl.GLES30;
+import android.os.Build;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Reads back the current framebuffer without waiting for the GPU.
+ *
+ * On ES3 contexts {@link #read} issues glReadPixels into one of a small ring
+ * of pixel pack buffers and inserts a fence; {@link #poll}, called on later
+ * vsyncs, maps only the buffers whose fence has signaled. When every buffer
+ * is still in flight the read is refused rather than stalling the frame.
+ *
+ * ES2 has neither, so there the read is synchronous and stalls for the GPU.
+ * So is it before Android N, which has no Java binding for reading into a
+ * bound pixel buffer.
+ *
+ * Images are delivered as GL reads them, RGBA with the bottom row first,
+ * so the render thread only pays for one bulk copy out of the pixel buffer;
+ * {@link #flipRows} turns them top-down on whichever thread consumes them.
+ * Delivered buffers come from a pool and must be handed back with
+ * {@link #recycle}, which may be called from any thread.
+ */
+public class AsyncFrameReader {
+    public interface Listener {
+        /**
+         * Called on the GL thread with a bottom-up image.
+         */
+        void onFrameRead(ByteBuffer rgba, int width, int height, Object tag);
+
+        /**
+         * Called on the GL thread for a queued read that will never be
+         * delivered, because its pixel buffer could not be mapped or the
+         * reader was released first.
+         */
+        void onFrameDropped(Object tag);
+    }
+
+    private static final int SLOT_COUNT = 3;
+    private static final int BYTES_PER_PIXEL = 4;
+
+    private final boolean usePixelBuffers;
+
+    private final int[] pixelBuffers = new int[SLOT_COUNT];
+    private final int[] pixelBufferSizes = new int[SLOT_COUNT];
+    private final long[] fences = new long[SLOT_COUNT];
+    private final int[] slotWidths = new int[SLOT_COUNT];
+    private final int[] slotHeights = new int[SLOT_COUNT];
+    private final Object[] slotTags = new Object[SLOT_COUNT];
+    private int oldestSlot;
+    private int pendingSlots;
+
+    private final ConcurrentLinkedQueue<ByteBuffer> freeBuffers = new ConcurrentLinkedQueue<>();
+
+    public AsyncFrameReader(int glVersion) {
+        usePixelBuffers = glVersion >= 3 && Build.VERSION.SDK_INT >= Build.VERSION_CODES.N;
+        if (usePixelBuffers) {
+            GLES30.glGenBuffers(SLOT_COUNT, pixelBuffers, 0);
+            GLHelpers.checkGlError("glGenBuffers");
+        }
+    }
+
+    public boolean isAsynchronous() {
+        return usePixelBuffers;
+    }
+
+    /**
+     * True while reads queued by {@link #read} still wait to be delivered by
+     * {@link #poll}.
+     */
+    public boolean hasPendingReads() {
+        return pendingSlots > 0;
+    }
+
+    /**
+     * True if a call to {@link #read} would be accepted right now.
+     */
+    public boolean canRead() {
+        return !usePixelBuffers || pendingSlots < SLOT_COUNT;
+    }
+
+    /**
+     * Queues a readback of the bound framebuffer. Call after drawing and
+     * before swapping.
+     *
+     * @return false if all pixel buffers are still waiting on the GPU
+     */
+    public boolean read(int width, int height, Object tag, Listener listener) {
+        if (!usePixelBuffers) {
+            readSynchronously(width, height, tag, listener);
+            return true;
+        }
+
+        if (pendingSlots == SLOT_COUNT) {
+            return false;
+        }
+
+        int slot = (oldestSlot + pendingSlots) % SLOT_COUNT;
+        int size = width * height * BYTES_PER_PIXEL;
+
+        GLES30.glBindBuffer(GLES30.GL_PIXEL_PACK_BUFFER, pixelBuffers[slot]);
+        if (pixelBufferSizes[slot] != size) {
+            GLES30.glBufferData(GLES30.GL_PIXEL_PACK_BUFFER, size, null, GLES30.GL_STREAM_READ);
+            pixelBufferSizes[slot] = size;
+        }
+        GLES30.glPixelStorei(GLES30.GL_PACK_ALIGNMENT, 1);
+        GLES30.glReadPixels(0, 0, width, height, GLES30.GL_RGBA, GLES30.GL_UNSIGNED_BYTE, 0);
+        GLES30.glBindBuffer(GLES30.GL_PIXEL_PACK_BUFFER, 0);
+
+        fences[slot] = GLES30.glFenceSync(GLES30.GL_SYNC_GPU_COMMANDS_COMPLETE, 0);
+        GLHelpers.checkGlError("glFenceSync");
+
+        slotWidths[slot] = width;
+        slotHeights[slot] = height;
+        slotTags[slot] = tag;
+        pendingSlots++;
+        return true;
+    }
+
+    /**
+     * Delivers, in submission order, every queued read whose GPU work has
+     * completed. Never blocks.
+     */
+    public void poll(Listener listener) {
+        while (pendingSlots > 0) {
+            int slot = oldestSlot;
+            int status = GLES30.glClientWaitSync(fences[slot], 0, 0);
+            if (status != GLES30.GL_ALREADY_SIGNALED && status != GLES30.GL_CONDITION_SATISFIED) {
+                if (status == GLES30.GL_WAIT_FAILED) {
+                    GLHelpers.checkGlError("glClientWaitSync");
+                }
+                return;
+            }
+
+            GLES30.glDeleteSync(fences[slot]);
+            fences[slot] = 0;
+
+            int width = slotWidths[slot];
+            int height = slotHeights[slot];
+            int size = width * height * BYTES_PER_PIXEL;
+
+            GLES30.glBindBuffer(GLES30.GL_PIXEL_PACK_BUFFER, pixelBuffers[slot]);
+            ByteBuffer mapped = (ByteBuffer) GLES30.glMapBufferRange(
+                    GLES30.GL_PIXEL_PACK_BUFFER, 0, size, GLES30.GL_MAP_READ_BIT);
+            ByteBuffer image = null;
+            if (mapped != null) {
+                image = obtainBuffer(size);
+                image.put(mapped);
+                image.flip();
+                GLES30.glUnmapBuffer(GLES30.GL_PIXEL_PACK_BUFFER);
+            }
+            GLES30.glBindBuffer(GLES30.GL_PIXEL_PACK_BUFFER, 0);
+
+            Object tag = slotTags[slot];
+            slotTags[slot] = null;
+            oldestSlot = (oldestSlot + 1) % SLOT_COUNT;
+            pendingSlots--;
+
+            if (image != null) {
+                listener.onFrameRead(image, width, height, tag);
+            } else {
+                listener.onFrameDropped(tag);
+                GLHelpers.checkGlError("glMapBufferRange");
+            }
+        }
+    }
+
+    public void recycle(ByteBuffer buffer) {
+        freeBuffers.offer(buffer);
+    }
+
+    /**
+     * Deletes the pixel buffers. Reads still queued are reported to
+     * {@code listener} as dropped, oldest first.
+     */
+    public void release(Listener listener) {
+        while (pendingSlots > 0) {
+            Object tag = slotTags[oldestSlot];
+            slotTags[oldestSlot] = null;
+            oldestSlot = (oldestSlot + 1) % SLOT_COUNT;
+            pendingSlots--;
+            listener.onFrameDropped(tag);
+        }
+
+        if (usePixelBuffers) {
+            for (int i = 0; i < SLOT_COUNT; i++) {
+                if (fences[i] != 0) {
+                    GLES30.glDeleteSync(fences[i]);
+                    fences[i] = 0;
+                }
+            }
+            GLES30.glDeleteBuffers(SLOT_COUNT, pixelBuffers, 0);
+        }
+        freeBuffers.clear();
+    }
+
+    private void readSynchronously(int width, int height, Object tag, Listener listener) {
+        ByteBuffer image = obtainBuffer(width * height * BYTES_PER_PIXEL);
+
+        GLES20.glPixelStorei(GLES20.GL_PACK_ALIGNMENT, 1);
+        GLES20.glReadPixels(
+                0, 0, width, height, GLES20.GL_RGBA, GLES20.GL_UNSIGNED_BYTE, image);
+        GLHelpers.checkGlError("glReadPixels");
+
+        listener.onFrameRead(image, width, height, tag);
+    }
+
+    private ByteBuffer obtainBuffer(int size) {
+        ByteBuffer buffer;
+        while ((buffer = freeBuffers.poll()) != null) {
+            if (buffer.capacity() >= size) {
+                buffer.clear();
+                buffer.limit(size);
+                return buffer;
+            }
+        }
+        return ByteBuffer.allocateDirect(size).order(ByteOrder.nativeOrder());
+    }
+
+    /**
+     * Reverses the row order of a delivered image in place, making it
+     * top-down. Meant for the thread that consumes the image, not the GL
+     * thread.
+     */
+    public static void flipRows(ByteBuffer rgba, int width, int height) {
+        int stride = width * BYTES_PER_PIXEL;
+        byte[] top = new byte[stride];
+        byte[] bottom = new byte[stride];
+        for (int row = 0; row < height / 2; row++) {
+            int topOffset = row * stride;
+            int bottomOffset = (height - 1 - row) * stride;
+            rgba.position(topOffset);
+            rgba.get(top);
+            rgba.position(bottomOffset);
+            rgba.get(bottom);
+            rgba.position(bottomOffset);
+            rgba.put(top);
+            rgba.position(topOffset);
+            rgba.put(bottom);
+        }
+        rgba.position(0);
+    }
+}
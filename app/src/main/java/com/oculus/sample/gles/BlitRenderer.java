@@ -0,0 +1,119 @@
+/**
+ * Copyright 2016-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * Licensed under the Creative Commons CC BY-NC 4.0 Attribution-NonCommercial
+ * License (the "License"). You may obtain a copy of the License at
+ * https://creativecommons.org/licenses/by-nc/4.0/.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.oculus.sample.gles;
+
+import android.content.Context;
+import android.opengl.GLES11Ext;
+import android.opengl.GLES20;
+
+import com.oculus.sample.R;
+import com.oculus.sample.SphericalPlayerActivity;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+
+/**
+ * Draws a region of a 2D texture over the whole current viewport. Used to
+ * upscale the offscreen render when dynamic resolution is enabled, and to
+ * copy video frames out of their external texture for mipmapping.
+ */
+public class BlitRenderer {
+    private static final int VERTEX_STRIDE = 4 * Sphere.FLOAT_SIZE;
+
+    // x, y, s, t for a full-screen triangle strip.
+    private static final float[] QUAD = {
+            -1.f, -1.f, 0.f, 0.f,
+             1.f, -1.f, 1.f, 0.f,
+            -1.f,  1.f, 0.f, 1.f,
+             1.f,  1.f, 1.f, 1.f,
+    };
+
+    private static class BlitProgram {
+        final ShaderProgram shaderProgram;
+        final int aPositionLocation;
+        final int aTextureCoordLocation;
+        final int uTextureScaleLocation;
+
+        BlitProgram(String vertexShader, String fragmentShader) {
+            shaderProgram = new ShaderProgram(vertexShader, fragmentShader);
+            aPositionLocation = shaderProgram.getAttribute("aPosition");
+            aTextureCoordLocation = shaderProgram.getAttribute("aTextureCoord");
+            uTextureScaleLocation = shaderProgram.getUniform("uTextureScale");
+        }
+    }
+
+    private BlitProgram program;
+    private BlitProgram externalProgram;
+
+    private FloatBuffer quadVertices;
+    private FloatBuffer quadTextureCoords;
+
+    public BlitRenderer(Context context) {
+        String vertexShader =
+                SphericalPlayerActivity.readRawTextFile(context, R.raw.blit_vertex_shader);
+        program = new BlitProgram(vertexShader,
+                SphericalPlayerActivity.readRawTextFile(context, R.raw.blit_fragment_shader));
+        externalProgram = new BlitProgram(vertexShader,
+                SphericalPlayerActivity.readRawTextFile(
+                        context, R.raw.blit_external_fragment_shader));
+
+        quadVertices = ByteBuffer.allocateDirect(QUAD.length * Sphere.FLOAT_SIZE)
+                .order(ByteOrder.nativeOrder()).asFloatBuffer();
+        quadVertices.put(QUAD).position(0);
+        quadTextureCoords = (FloatBuffer) quadVertices.duplicate().position(2);
+    }
+
+    /**
+     * @param textureScaleS fraction of the texture width to sample
+     * @param textureScaleT fraction of the texture height to sample
+     */
+    public void draw(int textureId, float textureScaleS, float textureScaleT) {
+        draw(program, GLES20.GL_TEXTURE_2D, textureId, textureScaleS, textureScaleT);
+    }
+
+    /**
+     * Draws a whole GL_TEXTURE_EXTERNAL_OES texture as stored, without its
+     * SurfaceTexture transform, which still applies when sampling the copy.
+     */
+    public void drawExternal(int textureId) {
+        draw(externalProgram, GLES11Ext.GL_TEXTURE_EXTERNAL_OES, textureId, 1.f, 1.f);
+    }
+
+    private void draw(BlitProgram program, int textureTarget, int textureId,
+            float textureScaleS, float textureScaleT) {
+        GLES20.glUseProgram(program.shaderProgram.getShaderHandle());
+
+        GLES20.glEnableVertexAttribArray(program.aPositionLocation);
+        GLES20.glVertexAttribPointer(program.aPositionLocation, 2,
+                GLES20.GL_FLOAT, false, VERTEX_STRIDE, quadVertices);
+        GLES20.glEnableVertexAttribArray(program.aTextureCoordLocation);
+        GLES20.glVertexAttribPointer(program.aTextureCoordLocation, 2,
+                GLES20.GL_FLOAT, false, VERTEX_STRIDE, quadTextureCoords);
+
+        GLES20.glActiveTexture(GLES20.GL_TEXTURE0);
+        GLES20.glBindTexture(textureTarget, textureId);
+        GLES20.glUniform2f(program.uTextureScaleLocation, textureScaleS, textureScaleT);
+
+        GLES20.glDrawArrays(GLES20.GL_TRIANGLE_STRIP, 0, 4);
+        GLHelpers.checkGlError("glDrawArrays");
+    }
+
+    public void release() {
+        program.shaderProgram.release();
+        externalProgram.shaderProgram.release();
+    }
+}
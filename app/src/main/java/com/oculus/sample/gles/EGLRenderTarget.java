@@ -15,19 +15,29 @@
 
 package com.oculus.sample.gles;
 
-import android.graphics.SurfaceTexture;
 import android.opengl.EGL14;
 import android.opengl.EGLConfig;
 import android.opengl.EGLContext;
 import android.opengl.EGLDisplay;
+import android.opengl.EGLExt;
 import android.opengl.EGLSurface;
 import android.opengl.GLUtils;
+import android.util.Log;
 
+/**
+ * Owns a single EGL context that can draw into any number of window surfaces.
+ *
+ * A 1x1 pbuffer surface is kept alongside the context so GL resources can be
+ * created and deleted while no window surface is attached.
+ */
 public class EGLRenderTarget {
-    private EGLDisplay eglDisplay;
+    private static final String TAG = EGLRenderTarget.class.getSimpleName();
+
+    private EGLDisplay eglDisplay = EGL14.EGL_NO_DISPLAY;
     private EGLConfig eglConfig;
-    private EGLContext eglContext;
-    private EGLSurface eglSurface;
+    private EGLContext eglContext = EGL14.EGL_NO_CONTEXT;
+    private EGLSurface pbufferSurface = EGL14.EGL_NO_SURFACE;
+    private int glVersion;
 
     public EGLRenderTarget() {
         init();
@@ -44,12 +54,32 @@ public class EGLRenderTarget {
             abortWithEGLError("eglInitialize");
         }
 
+        // Prefer ES3 for pixel buffer readback; everything else only needs ES2.
+        if (!createContext(3) && !createContext(2)) {
+            abortWithEGLError("eglCreateContext");
+        }
+
+        int[] pbufferAttribs = {
+                EGL14.EGL_WIDTH, 1,
+                EGL14.EGL_HEIGHT, 1,
+                EGL14.EGL_NONE
+        };
+        pbufferSurface = EGL14.eglCreatePbufferSurface(eglDisplay, eglConfig, pbufferAttribs, 0);
+
+        if (pbufferSurface == null || pbufferSurface == EGL14.EGL_NO_SURFACE) {
+            abortWithEGLError("eglCreatePbufferSurface");
+        }
+    }
+
+    private boolean createContext(int version) {
         final int[] attributeList = {
                 EGL14.EGL_RED_SIZE, 8,
                 EGL14.EGL_GREEN_SIZE, 8,
                 EGL14.EGL_BLUE_SIZE, 8,
                 EGL14.EGL_ALPHA_SIZE, 8,
-                EGL14.EGL_RENDERABLE_TYPE, EGL14.EGL_OPENGL_ES2_BIT,
+                EGL14.EGL_RENDERABLE_TYPE,
+                version >= 3 ? EGLExt.EGL_OPENGL_ES3_BIT_KHR : EGL14.EGL_OPENGL_ES2_BIT,
+                EGL14.EGL_SURFACE_TYPE, EGL14.EGL_WINDOW_BIT | EGL14.EGL_PBUFFER_BIT,
                 EGL14.EGL_NONE
         };
 
@@ -63,29 +93,41 @@ public class EGLRenderTarget {
                 0,
                 configs.length,
                 numConfigs,
-                0)) {
-            abortWithEGLError("eglChooseConfig");
+                0) || numConfigs[0] <= 0) {
+            Log.w(TAG, "No EGL config found for GLES " + version);
+            return false;
         }
 
-        if (numConfigs[0] <= 0) {
-            abortWithEGLError("No EGL config found for attribute list");
-        }
-
-        eglConfig = configs[0];
-
         int[] contextAttribs = {
-                EGL14.EGL_CONTEXT_CLIENT_VERSION, 2,
+                EGL14.EGL_CONTEXT_CLIENT_VERSION, version,
                 EGL14.EGL_NONE
         };
-        eglContext = EGL14.eglCreateContext(
-                eglDisplay, eglConfig, EGL14.EGL_NO_CONTEXT, contextAttribs, 0);
+        EGLContext context = EGL14.eglCreateContext(
+                eglDisplay, configs[0], EGL14.EGL_NO_CONTEXT, contextAttribs, 0);
 
-        if (eglContext == null) {
-            abortWithEGLError("eglCreateContext");
+        if (context == null || context == EGL14.EGL_NO_CONTEXT) {
+            Log.w(TAG, "Could not create GLES " + version + " context");
+            return false;
         }
+
+        eglConfig = configs[0];
+        eglContext = context;
+        glVersion = version;
+        return true;
     }
 
-    public void createRenderSurface(SurfaceTexture surfaceTexture) {
+    /**
+     * Major GLES version of the context: 3 when available, otherwise 2.
+     */
+    public int getGlVersion() {
+        return glVersion;
+    }
+
+    /**
+     * Creates a window surface for the given native window (a SurfaceTexture
+     * or Surface) in the shared context and makes it current.
+     */
+    public EGLSurface createRenderSurface(Object nativeWindow) {
         if (!hasValidContext()) {
             init();
         }
@@ -94,17 +136,41 @@ public class EGLRenderTarget {
                 EGL14.EGL_NONE
         };
 
-        eglSurface = EGL14.eglCreateWindowSurface(
-                eglDisplay, eglConfig, surfaceTexture, surfaceAttribs, 0);
+        EGLSurface eglSurface = EGL14.eglCreateWindowSurface(
+                eglDisplay, eglConfig, nativeWindow, surfaceAttribs, 0);
 
         if (eglSurface == null || eglSurface == EGL14.EGL_NO_SURFACE) {
             abortWithEGLError("eglCreateWindowSurface");
         }
 
-        makeCurrent();
+        makeCurrent(eglSurface);
+        return eglSurface;
     }
 
-    public void swapBuffers() {
+    /**
+     * Makes {@code eglSurface} current and sets how many vsyncs
+     * eglSwapBuffers waits for on it. With 0 the window's queue replaces
+     * frames not yet shown instead of blocking.
+     */
+    public void setSwapInterval(EGLSurface eglSurface, int interval) {
+        makeCurrent(eglSurface);
+        if (!EGL14.eglSwapInterval(eglDisplay, interval)) {
+            Log.w(TAG, "eglSwapInterval(" + interval + ") failed: EGL error: 0x"
+                    + Integer.toHexString(EGL14.eglGetError()));
+        }
+    }
+
+    public void releaseRenderSurface(EGLSurface eglSurface) {
+        if (eglSurface == null || eglSurface == EGL14.EGL_NO_SURFACE) {
+            return;
+        }
+
+        // Never leave a destroyed surface bound; fall back to the pbuffer.
+        makeCurrentNoWindow();
+        EGL14.eglDestroySurface(eglDisplay, eglSurface);
+    }
+
+    public void swapBuffers(EGLSurface eglSurface) {
         if (!EGL14.eglSwapBuffers(eglDisplay, eglSurface)) {
             abortWithEGLError("eglSwapBuffers");
         }
@@ -117,17 +183,26 @@ public class EGLRenderTarget {
                 GLUtils.getEGLErrorString(error));
     }
 
-    public void makeCurrent() {
+    public void makeCurrent(EGLSurface eglSurface) {
         if (!EGL14.eglMakeCurrent(eglDisplay, eglSurface, eglSurface, eglContext)) {
             abortWithEGLError("eglMakeCurrent");
         }
     }
 
+    public void makeCurrentNoWindow() {
+        makeCurrent(pbufferSurface);
+    }
+
     public void release() {
-        EGL14.eglDestroySurface(eglDisplay, eglSurface);
+        EGL14.eglMakeCurrent(
+                eglDisplay,
+                EGL14.EGL_NO_SURFACE,
+                EGL14.EGL_NO_SURFACE,
+                EGL14.EGL_NO_CONTEXT);
+        EGL14.eglDestroySurface(eglDisplay, pbufferSurface);
         EGL14.eglDestroyContext(eglDisplay, eglContext);
         eglDisplay = EGL14.EGL_NO_DISPLAY;
-        eglSurface = EGL14.EGL_NO_SURFACE;
+        pbufferSurface = EGL14.EGL_NO_SURFACE;
         eglContext = EGL14.EGL_NO_CONTEXT;
     }
 
@@ -0,0 +1,103 @@
+/**
+ * Copyright 2016-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * Licensed under the Creative Commons CC BY-NC 4.0 Attribution-NonCommercial
+ * License (the "License"). You may obtain a copy of the License at
+ * https://creativecommons.org/licenses/by-nc/4.0/.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.oculus.sample.gles;
+
+import android.opengl.GLES20;
+
+/**
+ * An offscreen framebuffer backed by an RGBA texture.
+ *
+ * The texture is allocated once at the full output size; callers render into
+ * a smaller viewport of it and sample only that region, so changing the
+ * render scale never reallocates GPU memory.
+ */
+public class FramebufferTarget {
+    private int framebufferId;
+    private int textureId;
+    private int width;
+    private int height;
+
+    public FramebufferTarget(int width, int height) {
+        this.width = width;
+        this.height = height;
+
+        int[] ids = new int[1];
+        GLES20.glGenTextures(1, ids, 0);
+        textureId = ids[0];
+        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, textureId);
+        GLES20.glTexImage2D(
+                GLES20.GL_TEXTURE_2D, 0, GLES20.GL_RGBA, width, height, 0,
+                GLES20.GL_RGBA, GLES20.GL_UNSIGNED_BYTE, null);
+        GLES20.glTexParameteri(
+                GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MIN_FILTER, GLES20.GL_LINEAR);
+        GLES20.glTexParameteri(
+                GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_LINEAR);
+        GLES20.glTexParameteri(
+                GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_S, GLES20.GL_CLAMP_TO_EDGE);
+        GLES20.glTexParameteri(
+                GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_T, GLES20.GL_CLAMP_TO_EDGE);
+        GLHelpers.checkGlError("glTexImage2D");
+
+        GLES20.glGenFramebuffers(1, ids, 0);
+        framebufferId = ids[0];
+        GLES20.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, framebufferId);
+        GLES20.glFramebufferTexture2D(
+                GLES20.GL_FRAMEBUFFER, GLES20.GL_COLOR_ATTACHMENT0,
+                GLES20.GL_TEXTURE_2D, textureId, 0);
+
+        int status = GLES20.glCheckFramebufferStatus(GLES20.GL_FRAMEBUFFER);
+        GLES20.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, 0);
+        if (status != GLES20.GL_FRAMEBUFFER_COMPLETE) {
+            release();
+            throw new RuntimeException(
+                    "Framebuffer incomplete: 0x" + Integer.toHexString(status));
+        }
+    }
+
+    public int getTextureId() {
+        return textureId;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public void bind() {
+        GLES20.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, framebufferId);
+    }
+
+    public void unbind() {
+        GLES20.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, 0);
+    }
+
+    public void release() {
+        int[] ids = new int[1];
+        if (framebufferId != 0) {
+            ids[0] = framebufferId;
+            GLES20.glDeleteFramebuffers(1, ids, 0);
+            framebufferId = 0;
+        }
+        if (textureId != 0) {
+            ids[0] = textureId;
+            GLES20.glDeleteTextures(1, ids, 0);
+            textureId = 0;
+        }
+    }
+}
@@ -23,39 +23,33 @@ public class GLHelpers {
     private static final String TAG = GLHelpers.class.getSimpleName();
 
     public static int generateExternalTexture() {
-        int externalTextureId = -1;
+        return generateTexture(GLES11Ext.GL_TEXTURE_EXTERNAL_OES);
+    }
+
+    public static int generateTexture2D() {
+        return generateTexture(GLES20.GL_TEXTURE_2D);
+    }
+
+    private static int generateTexture(int target) {
+        int textureId = -1;
         int[] textures = new int[1];
         try {
             GLES20.glGenTextures(1, textures, 0);
-            externalTextureId = textures[0];
+            textureId = textures[0];
             GLES20.glActiveTexture(GLES20.GL_TEXTURE0);
-            GLES20.glBindTexture(
-                    GLES11Ext.GL_TEXTURE_EXTERNAL_OES,
-                    externalTextureId);
-            GLES20.glTexParameterf(
-                    GLES11Ext.GL_TEXTURE_EXTERNAL_OES,
-                    GLES20.GL_TEXTURE_MIN_FILTER,
-                    GLES20.GL_LINEAR);
-            GLES20.glTexParameterf(
-                    GLES11Ext.GL_TEXTURE_EXTERNAL_OES,
-                    GLES20.GL_TEXTURE_MAG_FILTER,
-                    GLES20.GL_LINEAR);
-            GLES20.glTexParameteri(
-                    GLES11Ext.GL_TEXTURE_EXTERNAL_OES,
-                    GLES20.GL_TEXTURE_WRAP_S,
-                    GLES20.GL_CLAMP_TO_EDGE);
-            GLES20.glTexParameteri(
-                    GLES11Ext.GL_TEXTURE_EXTERNAL_OES,
-                    GLES20.GL_TEXTURE_WRAP_T,
-                    GLES20.GL_CLAMP_TO_EDGE);
+            GLES20.glBindTexture(target, textureId);
+            GLES20.glTexParameterf(target, GLES20.GL_TEXTURE_MIN_FILTER, GLES20.GL_LINEAR);
+            GLES20.glTexParameterf(target, GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_LINEAR);
+            GLES20.glTexParameteri(target, GLES20.GL_TEXTURE_WRAP_S, GLES20.GL_CLAMP_TO_EDGE);
+            GLES20.glTexParameteri(target, GLES20.GL_TEXTURE_WRAP_T, GLES20.GL_CLAMP_TO_EDGE);
         } catch (RuntimeException e) {
             Log.e(TAG, e.toString(), e);
-            if (externalTextureId != -1) {
+            if (textureId != -1) {
                 GLES20.glDeleteTextures(1, textures, 0);
             }
             return -1;
         }
-        return externalTextureId;
+        return textureId;
     }
 
     public static void checkGlError(String op) {
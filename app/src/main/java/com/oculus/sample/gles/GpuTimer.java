@@ -0,0 +1,136 @@
+/**
+ * Copyright 2016-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * Licensed under the Creative Commons CC BY-NC 4.0 Attribution-NonCommercial
+ * License (the "License"). You may obtain a copy of the License at
+ * https://creativecommons.org/licenses/by-nc/4.0/.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.oculus.sample.gles;
+
+import android.opengl.GLES20;
+import android.opengl.GLES30;
+
+/**
+ * Measures how long the GPU spends on a stretch of draw calls with
+ * GL_EXT_disjoint_timer_query.
+ *
+ * Each {@link #begin}/{@link #end} pair issues a query from a small ring;
+ * {@link #poll}, called on later frames, returns results only once the GPU
+ * has produced them, so the render thread never waits. When every query is
+ * still in flight the measurement is skipped rather than stalling.
+ *
+ * Needs an ES3 context, whose query entry points the extension reuses.
+ */
+public class GpuTimer {
+    private static final String EXTENSION = "GL_EXT_disjoint_timer_query";
+
+    // From GL_EXT_disjoint_timer_query; not in GLES30.
+    private static final int GL_TIME_ELAPSED_EXT = 0x88BF;
+    private static final int GL_GPU_DISJOINT_EXT = 0x8FBB;
+
+    private static final int QUERY_COUNT = 4;
+
+    private final int[] queries = new int[QUERY_COUNT];
+    private final int[] result = new int[1];
+    private int oldestQuery;
+    private int pendingQueries;
+    private int discardedQueries;
+    private boolean timing;
+
+    /**
+     * Whether the current context can time draw calls. Call with the context
+     * current.
+     */
+    public static boolean isSupported(int glVersion) {
+        if (glVersion < 3) {
+            return false;
+        }
+        String extensions = GLES20.glGetString(GLES20.GL_EXTENSIONS);
+        return extensions != null && extensions.contains(EXTENSION);
+    }
+
+    public GpuTimer() {
+        GLES30.glGenQueries(QUERY_COUNT, queries, 0);
+        GLHelpers.checkGlError("glGenQueries");
+    }
+
+    /**
+     * Starts timing the draw calls that follow, unless every query is still
+     * waiting for the GPU.
+     */
+    public void begin() {
+        if (timing || pendingQueries == QUERY_COUNT) {
+            return;
+        }
+        int query = queries[(oldestQuery + pendingQueries) % QUERY_COUNT];
+        GLES30.glBeginQuery(GL_TIME_ELAPSED_EXT, query);
+        timing = true;
+    }
+
+    public void end() {
+        if (!timing) {
+            return;
+        }
+        GLES30.glEndQuery(GL_TIME_ELAPSED_EXT);
+        timing = false;
+        pendingQueries++;
+    }
+
+    /**
+     * Drops the measurements still in flight, e.g. because what they timed
+     * has changed since.
+     */
+    public void discardPending() {
+        discardedQueries = pendingQueries;
+    }
+
+    /**
+     * @return GPU nanoseconds of the oldest finished measurement, or -1 when
+     *     none has finished
+     */
+    public long poll() {
+        while (pendingQueries > 0) {
+            int query = queries[oldestQuery];
+            GLES30.glGetQueryObjectuiv(query, GLES30.GL_QUERY_RESULT_AVAILABLE, result, 0);
+            if (result[0] == 0) {
+                return -1;
+            }
+            GLES30.glGetQueryObjectuiv(query, GLES30.GL_QUERY_RESULT, result, 0);
+            long elapsedNanos = result[0] & 0xffffffffL;
+            oldestQuery = (oldestQuery + 1) % QUERY_COUNT;
+            pendingQueries--;
+
+            if (discardedQueries > 0) {
+                discardedQueries--;
+                continue;
+            }
+
+            // A disjoint event, e.g. a GPU frequency change, invalidates
+            // every result read since the last check.
+            GLES20.glGetIntegerv(GL_GPU_DISJOINT_EXT, result, 0);
+            if (result[0] != 0) {
+                continue;
+            }
+            return elapsedNanos;
+        }
+        return -1;
+    }
+
+    public void release() {
+        if (timing) {
+            GLES30.glEndQuery(GL_TIME_ELAPSED_EXT);
+            timing = false;
+        }
+        GLES30.glDeleteQueries(QUERY_COUNT, queries, 0);
+        pendingQueries = 0;
+        discardedQueries = 0;
+    }
+}
@@ -0,0 +1,94 @@
+/**
+ * Copyright 2016-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * Licensed under the Creative Commons CC BY-NC 4.0 Attribution-NonCommercial
+ * License (the "License"). You may obtain a copy of the License at
+ * https://creativecommons.org/licenses/by-nc/4.0/.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.oculus.sample.gles;
+
+import android.graphics.Bitmap;
+import android.opengl.GLES20;
+import android.opengl.GLUtils;
+
+import com.oculus.sample.overlay.HotspotBatch;
+
+/**
+ * One view's hotspots on the GPU: the batch's vertices and indices in
+ * buffer objects and the atlas in a texture, drawn by a
+ * {@link HotspotRenderer}.
+ *
+ * Made on any thread; {@link #upload()}, drawing and {@link #release()}
+ * happen on the GL thread.
+ */
+public class HotspotLayer {
+    private final HotspotBatch batch;
+    private Bitmap atlas;
+
+    private final int[] buffers = new int[2];
+    private int atlasTextureId = -1;
+
+    /**
+     * @param atlas only read, on the GL thread, so it may stay in use elsewhere
+     */
+    public HotspotLayer(HotspotBatch batch, Bitmap atlas) {
+        this.batch = batch;
+        this.atlas = atlas;
+    }
+
+    public void upload() {
+        GLES20.glGenBuffers(2, buffers, 0);
+        GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, buffers[0]);
+        GLES20.glBufferData(GLES20.GL_ARRAY_BUFFER, batch.getVertices().capacity() * 4,
+                batch.getVertices(), GLES20.GL_STATIC_DRAW);
+        GLES20.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, buffers[1]);
+        GLES20.glBufferData(GLES20.GL_ELEMENT_ARRAY_BUFFER, batch.getIndices().capacity() * 2,
+                batch.getIndices(), GLES20.GL_STATIC_DRAW);
+        GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, 0);
+        GLES20.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, 0);
+        GLHelpers.checkGlError("glBufferData");
+
+        atlasTextureId = GLHelpers.generateTexture2D();
+        GLUtils.texImage2D(GLES20.GL_TEXTURE_2D, 0, atlas, 0);
+        GLHelpers.checkGlError("texImage2D");
+        // The bitmap is not needed once it is on the GPU.
+        atlas = null;
+    }
+
+    int getVertexBuffer() {
+        return buffers[0];
+    }
+
+    int getIndexBuffer() {
+        return buffers[1];
+    }
+
+    int getIndexCount() {
+        return batch.getIndexCount();
+    }
+
+    int getAtlasTextureId() {
+        return atlasTextureId;
+    }
+
+    public void release() {
+        if (buffers[0] != 0) {
+            GLES20.glDeleteBuffers(2, buffers, 0);
+            buffers[0] = 0;
+            buffers[1] = 0;
+        }
+        if (atlasTextureId != -1) {
+            int[] textures = {atlasTextureId};
+            GLES20.glDeleteTextures(1, textures, 0);
+            atlasTextureId = -1;
+        }
+    }
+}
@@ -0,0 +1,101 @@
+/**
+ * Copyright 2016-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * Licensed under the Creative Commons CC BY-NC 4.0 Attribution-NonCommercial
+ * License (the "License"). You may obtain a copy of the License at
+ * https://creativecommons.org/licenses/by-nc/4.0/.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.oculus.sample.gles;
+
+import android.content.Context;
+import android.opengl.GLES20;
+
+import com.oculus.sample.R;
+import com.oculus.sample.SphericalPlayerActivity;
+import com.oculus.sample.overlay.HotspotBatch;
+
+/**
+ * Draws a {@link HotspotLayer} over the sphere: every billboard in one
+ * glDrawElements from buffers uploaded once, so the CPU cost of a frame
+ * does not depend on the number of hotspots. Atlas images are expected
+ * with premultiplied alpha, as Bitmaps are uploaded.
+ *
+ * Shared by every view drawn in the same GL context, like
+ * {@link SphericalSceneRenderer}.
+ */
+public class HotspotRenderer {
+    private final ShaderProgram shaderProgram;
+    private final int aCenterLocation;
+    private final int aCornerLocation;
+    private final int aTextureCoordLocation;
+    private final int uViewMatrixLocation;
+    private final int uProjectionMatrixLocation;
+
+    public HotspotRenderer(Context context) {
+        shaderProgram = new ShaderProgram(
+                SphericalPlayerActivity.readRawTextFile(context, R.raw.hotspot_vertex_shader),
+                SphericalPlayerActivity.readRawTextFile(context, R.raw.hotspot_fragment_shader));
+        aCenterLocation = shaderProgram.getAttribute("aCenter");
+        aCornerLocation = shaderProgram.getAttribute("aCorner");
+        aTextureCoordLocation = shaderProgram.getAttribute("aTextureCoord");
+        uViewMatrixLocation = shaderProgram.getUniform("uViewMatrix");
+        uProjectionMatrixLocation = shaderProgram.getUniform("uProjectionMatrix");
+    }
+
+    /**
+     * @param viewMatrix the camera's view matrix; billboards are placed in
+     *                   world space, without the sphere's model matrix
+     */
+    public void draw(HotspotLayer layer, float[] viewMatrix, float[] projectionMatrix) {
+        if (layer.getIndexCount() == 0) {
+            return;
+        }
+
+        GLES20.glUseProgram(shaderProgram.getShaderHandle());
+        GLES20.glUniformMatrix4fv(uViewMatrixLocation, 1, false, viewMatrix, 0);
+        GLES20.glUniformMatrix4fv(uProjectionMatrixLocation, 1, false, projectionMatrix, 0);
+
+        GLES20.glActiveTexture(GLES20.GL_TEXTURE0);
+        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, layer.getAtlasTextureId());
+
+        GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, layer.getVertexBuffer());
+        enableAttribute(aCenterLocation, 3, HotspotBatch.CENTER_OFFSET_BYTES);
+        enableAttribute(aCornerLocation, 2, HotspotBatch.CORNER_OFFSET_BYTES);
+        enableAttribute(aTextureCoordLocation, 2, HotspotBatch.TEXTURE_COORD_OFFSET_BYTES);
+        GLES20.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, layer.getIndexBuffer());
+
+        GLES20.glEnable(GLES20.GL_BLEND);
+        GLES20.glBlendFunc(GLES20.GL_ONE, GLES20.GL_ONE_MINUS_SRC_ALPHA);
+        GLES20.glDrawElements(
+                GLES20.GL_TRIANGLES, layer.getIndexCount(), GLES20.GL_UNSIGNED_SHORT, 0);
+        GLES20.glDisable(GLES20.GL_BLEND);
+
+        // The sphere draws from client memory: unbind so its pointers are
+        // not taken as buffer offsets, and leave no array pointing into a
+        // buffer that may be deleted.
+        GLES20.glDisableVertexAttribArray(aCenterLocation);
+        GLES20.glDisableVertexAttribArray(aCornerLocation);
+        GLES20.glDisableVertexAttribArray(aTextureCoordLocation);
+        GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, 0);
+        GLES20.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, 0);
+        GLHelpers.checkGlError("draw hotspots");
+    }
+
+    public void release() {
+        shaderProgram.release();
+    }
+
+    private static void enableAttribute(int location, int size, int offsetBytes) {
+        GLES20.glEnableVertexAttribArray(location);
+        GLES20.glVertexAttribPointer(location, size, GLES20.GL_FLOAT, false,
+                HotspotBatch.STRIDE_BYTES, offsetBytes);
+    }
+}
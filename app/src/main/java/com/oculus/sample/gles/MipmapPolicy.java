@@ -0,0 +1,108 @@
+/**
+ * Copyright 2016-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * Licensed under the Creative Commons CC BY-NC 4.0 Attribution-NonCommercial
+ * License (the "License"). You may obtain a copy of the License at
+ * https://creativecommons.org/licenses/by-nc/4.0/.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.oculus.sample.gles;
+
+import com.oculus.sample.projection.SphericalCamera;
+
+/**
+ * Decides when video frames are worth copying into a mipmapped texture.
+ *
+ * External textures can only be sampled with GL_LINEAR, which skips
+ * texels, and shimmers, once a screen pixel covers more than about one
+ * and a half of them. The minification is estimated at the view center
+ * from the field of view, the rendered height and the video size. Above
+ * the enable threshold frames are copied; they are sampled directly again
+ * only once it falls below the lower disable threshold, so a pinch
+ * hovering around the limit does not flip between the two every frame.
+ *
+ * Plain Java so zoom sequences can be checked off device.
+ */
+public class MipmapPolicy {
+    public static final float DEFAULT_ENABLE_MINIFICATION = 1.5f;
+    public static final float DEFAULT_DISABLE_MINIFICATION = 1.2f;
+
+    // The eye sits behind the sphere center, so the view center is further
+    // away than the radius and covers more of the sphere per pixel.
+    private static final float EYE_DISTANCE_RATIO =
+            (SphericalCamera.SPHERE_RADIUS + SphericalCamera.CAMERA_DISTANCE)
+                    / SphericalCamera.SPHERE_RADIUS;
+
+    private final float enableMinification;
+    private final float disableMinification;
+
+    private boolean active;
+
+    public MipmapPolicy() {
+        this(DEFAULT_ENABLE_MINIFICATION, DEFAULT_DISABLE_MINIFICATION);
+    }
+
+    public MipmapPolicy(float enableMinification, float disableMinification) {
+        if (disableMinification > enableMinification) {
+            throw new IllegalArgumentException(
+                    "disableMinification must not be above enableMinification");
+        }
+        this.enableMinification = enableMinification;
+        this.disableMinification = disableMinification;
+    }
+
+    public void reset() {
+        active = false;
+    }
+
+    public boolean isActive() {
+        return active;
+    }
+
+    /**
+     * Feeds the minification of the frame about to be drawn and returns
+     * whether it should be sampled from mipmaps.
+     */
+    public boolean update(float minification) {
+        if (active) {
+            active = minification >= disableMinification;
+        } else {
+            active = minification > enableMinification;
+        }
+        return active;
+    }
+
+    /**
+     * Video texels per screen pixel at the view center of an equirectangular
+     * frame. Towards the poles rows are squeezed horizontally at any zoom;
+     * only the part that depends on the zoom is measured, so looking up or
+     * down alone never makes copying worthwhile.
+     *
+     * @param viewportHeight pixels rendered, after any resolution scaling
+     */
+    public static float minification(
+            float fovY, float viewportHeight, int videoWidth, int videoHeight) {
+        double sphereRadiansPerPixel = EYE_DISTANCE_RATIO
+                * 2 * Math.tan(Math.toRadians(fovY) / 2) / viewportHeight;
+        double texelsPerRadian = Math.max(videoWidth / (2 * Math.PI), videoHeight / Math.PI);
+        return (float) (sphereRadiansPerPixel * texelsPerRadian);
+    }
+
+    /**
+     * Size of the copy's base level along one axis: the largest power of
+     * two, as GLES 2 mipmaps require, not above the video's. Copies are only
+     * made when a pixel covers more than one texel, so the base level loses
+     * little, and it is filled with at most a 2:1 bilinear reduction, which
+     * skips no texels.
+     */
+    public static int copySize(int videoSize, int maxTextureSize) {
+        return Integer.highestOneBit(Math.max(1, Math.min(videoSize, maxTextureSize)));
+    }
+}
@@ -0,0 +1,123 @@
+/**
+ * Copyright 2016-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * Licensed under the Creative Commons CC BY-NC 4.0 Attribution-NonCommercial
+ * License (the "License"). You may obtain a copy of the License at
+ * https://creativecommons.org/licenses/by-nc/4.0/.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.oculus.sample.gles;
+
+import android.opengl.GLES20;
+
+/**
+ * A power of two RGBA texture with a full mipmap chain, whose base level
+ * can be rendered to. Video frames are blitted into it and sampled with
+ * trilinear filtering when the view is zoomed out far enough for
+ * GL_LINEAR to alias.
+ */
+public class MipmappedTexture {
+    private int framebufferId;
+    private int textureId;
+    private final int width;
+    private final int height;
+
+    /**
+     * @param width  a power of two
+     * @param height a power of two
+     */
+    public MipmappedTexture(int width, int height) {
+        if (Integer.bitCount(width) != 1 || Integer.bitCount(height) != 1) {
+            throw new IllegalArgumentException(
+                    "Mipmapped texture must be a power of two, not " + width + "x" + height);
+        }
+        this.width = width;
+        this.height = height;
+
+        int[] ids = new int[1];
+        GLES20.glGenTextures(1, ids, 0);
+        textureId = ids[0];
+        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, textureId);
+        GLES20.glTexImage2D(
+                GLES20.GL_TEXTURE_2D, 0, GLES20.GL_RGBA, width, height, 0,
+                GLES20.GL_RGBA, GLES20.GL_UNSIGNED_BYTE, null);
+        GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D,
+                GLES20.GL_TEXTURE_MIN_FILTER, GLES20.GL_LINEAR_MIPMAP_LINEAR);
+        GLES20.glTexParameteri(
+                GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_LINEAR);
+        GLES20.glTexParameteri(
+                GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_S, GLES20.GL_CLAMP_TO_EDGE);
+        GLES20.glTexParameteri(
+                GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_T, GLES20.GL_CLAMP_TO_EDGE);
+        // Allocates the smaller levels, so the texture is complete before the first copy.
+        GLES20.glGenerateMipmap(GLES20.GL_TEXTURE_2D);
+        GLHelpers.checkGlError("glTexImage2D");
+
+        GLES20.glGenFramebuffers(1, ids, 0);
+        framebufferId = ids[0];
+        GLES20.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, framebufferId);
+        GLES20.glFramebufferTexture2D(
+                GLES20.GL_FRAMEBUFFER, GLES20.GL_COLOR_ATTACHMENT0,
+                GLES20.GL_TEXTURE_2D, textureId, 0);
+
+        int status = GLES20.glCheckFramebufferStatus(GLES20.GL_FRAMEBUFFER);
+        GLES20.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, 0);
+        if (status != GLES20.GL_FRAMEBUFFER_COMPLETE) {
+            release();
+            throw new RuntimeException(
+                    "Framebuffer incomplete: 0x" + Integer.toHexString(status));
+        }
+    }
+
+    public int getTextureId() {
+        return textureId;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Binds the base level for rendering, with a viewport covering it.
+     */
+    public void bind() {
+        GLES20.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, framebufferId);
+        GLES20.glViewport(0, 0, width, height);
+    }
+
+    /**
+     * Goes back to the window and rebuilds the smaller levels from the
+     * base level just drawn.
+     */
+    public void unbindAndGenerateMipmaps() {
+        GLES20.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, 0);
+        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, textureId);
+        GLES20.glGenerateMipmap(GLES20.GL_TEXTURE_2D);
+        GLHelpers.checkGlError("glGenerateMipmap");
+    }
+
+    public void release() {
+        int[] ids = new int[1];
+        if (framebufferId != 0) {
+            ids[0] = framebufferId;
+            GLES20.glDeleteFramebuffers(1, ids, 0);
+            framebufferId = 0;
+        }
+        if (textureId != 0) {
+            ids[0] = textureId;
+            GLES20.glDeleteTextures(1, ids, 0);
+            textureId = 0;
+        }
+    }
+}
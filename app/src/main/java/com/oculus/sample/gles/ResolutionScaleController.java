@@ -0,0 +1,185 @@
+/**
+ * Copyright 2016-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * Licensed under the Creative Commons CC BY-NC 4.0 Attribution-NonCommercial
+ * License (the "License"). You may obtain a copy of the License at
+ * https://creativecommons.org/licenses/by-nc/4.0/.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.oculus.sample.gles;
+
+/**
+ * Picks the offscreen render scale from measured frame times.
+ *
+ * Frame times are smoothed with an exponential moving average. The scale
+ * steps down quickly once the average stays above the high-water mark and
+ * steps up only after a much longer run below the low-water mark, so a
+ * single fast or slow frame never makes it oscillate.
+ *
+ * Where the GPU time of a frame cannot be measured, {@link #onPresentInterval}
+ * drives the same counters from missed vsyncs instead.
+ *
+ * Plain Java so it can be driven by recorded frame-time sequences off device.
+ */
+public class ResolutionScaleController {
+    private static final float DEFAULT_MIN_SCALE = 0.5f;
+    private static final float DEFAULT_MAX_SCALE = 1.0f;
+    private static final float DEFAULT_SCALE_STEP = 0.1f;
+    private static final float DEFAULT_HIGH_WATER = 0.9f;
+    private static final float DEFAULT_LOW_WATER = 0.65f;
+    private static final int DEFAULT_FRAMES_TO_DECREASE = 3;
+    private static final int DEFAULT_FRAMES_TO_INCREASE = 60;
+    private static final float SMOOTHING = 0.2f;
+
+    private final long frameBudgetNanos;
+    private final float minScale;
+    private final float maxScale;
+    private final float scaleStep;
+    private final float highWater;
+    private final float lowWater;
+    private final int framesToDecrease;
+    private final int framesToIncrease;
+
+    private float scale;
+    private double averageFrameNanos;
+    private int framesOverBudget;
+    private int framesUnderBudget;
+
+    /**
+     * @param frameBudgetNanos the display's refresh period
+     */
+    public ResolutionScaleController(long frameBudgetNanos) {
+        this(frameBudgetNanos,
+                DEFAULT_MIN_SCALE,
+                DEFAULT_MAX_SCALE,
+                DEFAULT_SCALE_STEP,
+                DEFAULT_HIGH_WATER,
+                DEFAULT_LOW_WATER,
+                DEFAULT_FRAMES_TO_DECREASE,
+                DEFAULT_FRAMES_TO_INCREASE);
+    }
+
+    /**
+     * @param highWater fraction of the budget above which the scale drops
+     * @param lowWater fraction of the budget below which the scale may rise
+     * @param framesToDecrease consecutive frames above highWater before stepping down
+     * @param framesToIncrease consecutive frames below lowWater before stepping up
+     */
+    public ResolutionScaleController(
+            long frameBudgetNanos,
+            float minScale,
+            float maxScale,
+            float scaleStep,
+            float highWater,
+            float lowWater,
+            int framesToDecrease,
+            int framesToIncrease) {
+        if (frameBudgetNanos <= 0) {
+            throw new IllegalArgumentException("Frame budget must be positive");
+        }
+        if (minScale <= 0 || minScale > maxScale) {
+            throw new IllegalArgumentException(
+                    "Invalid scale range [" + minScale + ", " + maxScale + "]");
+        }
+        if (lowWater >= highWater) {
+            throw new IllegalArgumentException("lowWater must be below highWater");
+        }
+
+        this.frameBudgetNanos = frameBudgetNanos;
+        this.minScale = minScale;
+        this.maxScale = maxScale;
+        this.scaleStep = scaleStep;
+        this.highWater = highWater;
+        this.lowWater = lowWater;
+        this.framesToDecrease = framesToDecrease;
+        this.framesToIncrease = framesToIncrease;
+
+        reset();
+    }
+
+    public void reset() {
+        scale = maxScale;
+        averageFrameNanos = 0;
+        framesOverBudget = 0;
+        framesUnderBudget = 0;
+    }
+
+    public float getScale() {
+        return scale;
+    }
+
+    public double getAverageFrameNanos() {
+        return averageFrameNanos;
+    }
+
+    /**
+     * Feeds the time one frame took to render and returns the scale to use
+     * for the next frame.
+     */
+    public float onFrameTime(long frameNanos) {
+        if (averageFrameNanos == 0) {
+            averageFrameNanos = frameNanos;
+        } else {
+            averageFrameNanos += SMOOTHING * (frameNanos - averageFrameNanos);
+        }
+
+        if (averageFrameNanos > frameBudgetNanos * highWater) {
+            framesOverBudget++;
+            framesUnderBudget = 0;
+        } else if (averageFrameNanos < frameBudgetNanos * lowWater) {
+            framesUnderBudget++;
+            framesOverBudget = 0;
+        } else {
+            framesOverBudget = 0;
+            framesUnderBudget = 0;
+        }
+
+        return applyCounts();
+    }
+
+    /**
+     * Feeds the time since the previous frame was presented, for a frame
+     * drawn on the vsync right after it, and returns the scale to use for
+     * the next frame.
+     *
+     * A frame presented more than one budget after the previous one missed a
+     * vsync and counts as over budget; one presented on time counts as under
+     * it. Half a budget of slack absorbs jitter in when presents return.
+     */
+    public float onPresentInterval(long intervalNanos) {
+        if (2 * intervalNanos > 3 * frameBudgetNanos) {
+            framesOverBudget++;
+            framesUnderBudget = 0;
+        } else {
+            framesUnderBudget++;
+            framesOverBudget = 0;
+        }
+
+        return applyCounts();
+    }
+
+    private float applyCounts() {
+        if (framesOverBudget >= framesToDecrease && scale > minScale) {
+            setScale(Math.max(minScale, scale - scaleStep));
+        } else if (framesUnderBudget >= framesToIncrease && scale < maxScale) {
+            setScale(Math.min(maxScale, scale + scaleStep));
+        }
+
+        return scale;
+    }
+
+    private void setScale(float newScale) {
+        scale = newScale;
+        // Frames measured at the old scale say nothing about the new one.
+        averageFrameNanos = 0;
+        framesOverBudget = 0;
+        framesUnderBudget = 0;
+    }
+}
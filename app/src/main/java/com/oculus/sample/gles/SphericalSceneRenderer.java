@@ -22,57 +22,108 @@ import android.opengl.Matrix;
 
 import com.oculus.sample.SphericalPlayerActivity;
 import com.oculus.sample.R;
+import com.oculus.sample.projection.DualFisheyeProjection;
+import com.oculus.sample.projection.SphericalCamera;
+
+import java.nio.Buffer;
 
 /**
- * Creates and renders a sphere centered at (0, 0, 0) textured with the current video frame.
+ * Creates and renders a sphere centered at (0, 0, 0) textured with the current video frame,
+ * or with a still preview image in a regular 2D texture. Frames are equirectangular, or raw
+ * dual fisheye mapped onto the sphere per pixel by a {@link DualFisheyeProjection}.
+ *
+ * One instance is shared by every view drawn in the same GL context, so
+ * per-view state (matrices, texture and viewport) is passed in on each draw.
  */
 public class SphericalSceneRenderer {
     public static final int SPHERE_SLICES = 180;
     private static final int SPHERE_INDICES_PER_VERTEX = 1;
-    private static final float SPHERE_RADIUS = 500.0f;
 
-    private ShaderProgram shaderProgram;
+    private static class SphereProgram {
+        final ShaderProgram shaderProgram;
+        final int aPositionLocation;
+        final int uMVPMatrixLocation;
+        final int uTextureMatrixLocation;
+        // -1 for programs that derive texture coordinates from the position.
+        final int aTextureCoordLocation;
+
+        SphereProgram(String vertexShader, String fragmentShader, boolean textureCoords) {
+            shaderProgram = new ShaderProgram(vertexShader, fragmentShader);
+            aPositionLocation = shaderProgram.getAttribute("aPosition");
+            uMVPMatrixLocation = shaderProgram.getUniform("uMVPMatrix");
+            uTextureMatrixLocation = shaderProgram.getUniform("uTextureMatrix");
+            aTextureCoordLocation = textureCoords ? shaderProgram.getAttribute("aTextureCoord") : -1;
+        }
+    }
+
+    private SphereProgram videoProgram;
+    private SphereProgram previewProgram;
+    private SphereProgram fisheyeProgram;
+    private int uLensBasisLocation;
+    private int uLensImageLocation;
+    private int uLensModelLocation;
+    private int uBlendRadiansLocation;
 
-    private int aPositionLocation;
-    private int uMVPMatrixLocation;
-    private int uTextureMatrixLocation;
-    private int aTextureCoordLocation;
+    // The equirect texture coordinates need an offset the caller's matrix lacks.
+    private float[] sphereTextureMatrix = new float[16];
 
     private float[] pvMatrix = new float[16];
     private float[] mvpMatrix = new float[16];
 
     private Sphere sphere;
+    private Buffer sphereTextureCoords;
 
     public SphericalSceneRenderer(Context context) {
-        shaderProgram = new ShaderProgram(
-                SphericalPlayerActivity.readRawTextFile(context, R.raw.video_vertex_shader),
-                SphericalPlayerActivity.readRawTextFile(context, R.raw.video_fragment_shader));
-
-        aPositionLocation = shaderProgram.getAttribute("aPosition");
-        uMVPMatrixLocation = shaderProgram.getUniform("uMVPMatrix");
-        uTextureMatrixLocation = shaderProgram.getUniform("uTextureMatrix");
-        aTextureCoordLocation = shaderProgram.getAttribute("aTextureCoord");
+        String vertexShader =
+                SphericalPlayerActivity.readRawTextFile(context, R.raw.video_vertex_shader);
+        videoProgram = new SphereProgram(vertexShader,
+                SphericalPlayerActivity.readRawTextFile(context, R.raw.video_fragment_shader),
+                true);
+        previewProgram = new SphereProgram(vertexShader,
+                SphericalPlayerActivity.readRawTextFile(context, R.raw.preview_fragment_shader),
+                true);
+        fisheyeProgram = new SphereProgram(
+                SphericalPlayerActivity.readRawTextFile(context, R.raw.fisheye_vertex_shader),
+                SphericalPlayerActivity.readRawTextFile(context, R.raw.fisheye_fragment_shader),
+                false);
+        uLensBasisLocation = fisheyeProgram.shaderProgram.getUniform("uLensBasis");
+        uLensImageLocation = fisheyeProgram.shaderProgram.getUniform("uLensImage");
+        uLensModelLocation = fisheyeProgram.shaderProgram.getUniform("uLensModel");
+        uBlendRadiansLocation = fisheyeProgram.shaderProgram.getUniform("uBlendRadians");
 
         GLES20.glDisable(GLES20.GL_DEPTH_TEST);
 
-        sphere = new Sphere(SPHERE_SLICES, 0.f, 0.f, 0.f, SPHERE_RADIUS, SPHERE_INDICES_PER_VERTEX);
+        sphere = new Sphere(SPHERE_SLICES, 0.f, 0.f, 0.f, SphericalCamera.SPHERE_RADIUS, SPHERE_INDICES_PER_VERTEX);
+        sphereTextureCoords = sphere.getVertices().duplicate().position(3);
+
+        useProgram(videoProgram);
+    }
 
-        GLES20.glUseProgram(shaderProgram.getShaderHandle());
+    /**
+     * Binds a sphere program and vertex arrays. Other passes (e.g. the
+     * upscale blit) share the context, so this is redone before every draw.
+     */
+    private void useProgram(SphereProgram program) {
+        GLES20.glUseProgram(program.shaderProgram.getShaderHandle());
 
-        GLES20.glEnableVertexAttribArray(aPositionLocation);
+        GLES20.glEnableVertexAttribArray(program.aPositionLocation);
         GLHelpers.checkGlError("glEnableVertexAttribArray");
 
-        GLES20.glVertexAttribPointer(aPositionLocation, 3,
+        GLES20.glVertexAttribPointer(program.aPositionLocation, 3,
                 GLES20.GL_FLOAT, false, sphere.getVerticesStride(), sphere.getVertices());
 
         GLHelpers.checkGlError("glVertexAttribPointer");
 
-        GLES20.glEnableVertexAttribArray(aTextureCoordLocation);
+        if (program.aTextureCoordLocation < 0) {
+            return;
+        }
+
+        GLES20.glEnableVertexAttribArray(program.aTextureCoordLocation);
         GLHelpers.checkGlError("glEnableVertexAttribArray");
 
-        GLES20.glVertexAttribPointer(aTextureCoordLocation, 2,
+        GLES20.glVertexAttribPointer(program.aTextureCoordLocation, 2,
                 GLES20.GL_FLOAT, false, sphere.getVerticesStride(),
-                sphere.getVertices().duplicate().position(3));
+                sphereTextureCoords);
         GLHelpers.checkGlError("glVertexAttribPointer");
     }
 
@@ -82,20 +133,65 @@ public class SphericalSceneRenderer {
             float[] modelMatrix,
             float[] viewMatrix,
             float[] projectionMatrix) {
+        Matrix.translateM(sphereTextureMatrix, 0, textureMatrix, 0, 0, 1, 0);
+        draw(videoProgram, GLES11Ext.GL_TEXTURE_EXTERNAL_OES, textureId,
+                sphereTextureMatrix, modelMatrix, viewMatrix, projectionMatrix);
+    }
+
+    /**
+     * Draws the sphere textured with a GL_TEXTURE_2D image laid out like a
+     * video frame, e.g. a scrub preview.
+     */
+    public void onDrawPreview(
+            int textureId,
+            float[] textureMatrix,
+            float[] modelMatrix,
+            float[] viewMatrix,
+            float[] projectionMatrix) {
+        Matrix.translateM(sphereTextureMatrix, 0, textureMatrix, 0, 0, 1, 0);
+        draw(previewProgram, GLES20.GL_TEXTURE_2D, textureId,
+                sphereTextureMatrix, modelMatrix, viewMatrix, projectionMatrix);
+    }
 
-        Matrix.translateM(textureMatrix, 0, 0, 1, 0);
+    /**
+     * Draws the sphere textured with a raw dual fisheye video frame.
+     */
+    public void onDrawFisheye(
+            int textureId,
+            float[] textureMatrix,
+            DualFisheyeProjection projection,
+            float[] modelMatrix,
+            float[] viewMatrix,
+            float[] projectionMatrix) {
+        GLES20.glUseProgram(fisheyeProgram.shaderProgram.getShaderHandle());
+        GLES20.glUniformMatrix3fv(uLensBasisLocation, 2, false, projection.getShaderBasis(), 0);
+        GLES20.glUniform4fv(uLensImageLocation, 2, projection.getShaderImage(), 0);
+        GLES20.glUniform4fv(uLensModelLocation, 2, projection.getShaderModel(), 0);
+        GLES20.glUniform1f(uBlendRadiansLocation, projection.getBlendRadians());
+
+        draw(fisheyeProgram, GLES11Ext.GL_TEXTURE_EXTERNAL_OES, textureId,
+                textureMatrix, modelMatrix, viewMatrix, projectionMatrix);
+    }
 
+    private void draw(
+            SphereProgram program,
+            int textureTarget,
+            int textureId,
+            float[] textureMatrix,
+            float[] modelMatrix,
+            float[] viewMatrix,
+            float[] projectionMatrix) {
         Matrix.multiplyMM(pvMatrix, 0, projectionMatrix, 0, viewMatrix, 0);
         Matrix.multiplyMM(mvpMatrix, 0, pvMatrix, 0, modelMatrix , 0);
 
         GLES20.glClear(GLES20.GL_COLOR_BUFFER_BIT);
 
-        GLES20.glBindTexture(
-                GLES11Ext.GL_TEXTURE_EXTERNAL_OES,
-                textureId);
+        useProgram(program);
+
+        GLES20.glBindTexture(textureTarget, textureId);
 
-        GLES20.glUniformMatrix4fv(uTextureMatrixLocation, 1, false, textureMatrix, 0);
-        GLES20.glUniformMatrix4fv(uMVPMatrixLocation, 1, false, mvpMatrix, 0);
+        GLES20.glUniformMatrix4fv(program.uTextureMatrixLocation, 1, false, textureMatrix, 0);
+        GLES20.glUniformMatrix4fv(program.uMVPMatrixLocation, 1, false, mvpMatrix, 0);
 
         for (int j = 0; j < sphere.getNumIndices().length; ++j) {
             GLES20.glDrawElements(GLES20.GL_TRIANGLES,
@@ -105,6 +201,8 @@ public class SphericalSceneRenderer {
     }
 
     public void release() {
-        shaderProgram.release();
+        videoProgram.shaderProgram.release();
+        previewProgram.shaderProgram.release();
+        fisheyeProgram.shaderProgram.release();
     }
 }
@@ -0,0 +1,179 @@
+/**
+ * Copyright 2016-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * Licensed under the Creative Commons CC BY-NC 4.0 Attribution-NonCommercial
+ * License (the "License"). You may obtain a copy of the License at
+ * https://creativecommons.org/licenses/by-nc/4.0/.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.oculus.sample.media;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Several assets stored back to back in one file, found through an index at
+ * its start:
+ *
+ *     "360PACK1"
+ *     int entry count
+ *     per entry: UTF name, long offset from the start of the file, long length
+ *     entry data, in index order
+ *
+ * All integers are big-endian. Entries are stored uncompressed so they can
+ * be mapped, or handed to a decoder as a file descriptor range, in place.
+ */
+public class AssetPack {
+    private static final String MAGIC = "360PACK1";
+
+    public static class Entry {
+        public final String name;
+        public final long offset;
+        public final long length;
+
+        Entry(String name, long offset, long length) {
+            this.name = name;
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+
+    private final File file;
+    private final Map<String, Entry> entries;
+
+    private AssetPack(File file, Map<String, Entry> entries) {
+        this.file = file;
+        this.entries = entries;
+    }
+
+    public static AssetPack open(File file) throws IOException {
+        DataInputStream in = new DataInputStream(new FileInputStream(file));
+        try {
+            byte[] magic = new byte[MAGIC.length()];
+            in.readFully(magic);
+            if (!MAGIC.equals(new String(magic, "US-ASCII"))) {
+                throw new IOException(file + " is not an asset pack");
+            }
+
+            long fileLength = file.length();
+            int count = in.readInt();
+            Map<String, Entry> entries = new LinkedHashMap<>();
+            for (int i = 0; i < count; i++) {
+                Entry entry = new Entry(in.readUTF(), in.readLong(), in.readLong());
+                if (entry.offset < 0 || entry.length < 0
+                        || entry.offset + entry.length > fileLength) {
+                    throw new IOException("Entry " + entry.name + " outside of " + file);
+                }
+                entries.put(entry.name, entry);
+            }
+            return new AssetPack(file, Collections.unmodifiableMap(entries));
+        } finally {
+            in.close();
+        }
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public Map<String, Entry> getEntries() {
+        return entries;
+    }
+
+    public Entry getEntry(String name) throws IOException {
+        Entry entry = entries.get(name);
+        if (entry == null) {
+            throw new IOException("No entry " + name + " in " + file);
+        }
+        return entry;
+    }
+
+    public MappedFile map(String name) throws IOException {
+        Entry entry = getEntry(name);
+        FileChannel channel = new FileInputStream(file).getChannel();
+        try {
+            return new MappedFile(channel, entry.offset, entry.length);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Writes {@code inputs} into a new pack, each entry named after its file.
+     */
+    public static void write(File output, List<File> inputs) throws IOException {
+        DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(output)));
+        try {
+            // The index size depends on the encoded names, so measure it first.
+            long indexLength = MAGIC.length() + 4;
+            for (File input : inputs) {
+                indexLength += utfLength(input.getName()) + 8 + 8;
+            }
+
+            out.writeBytes(MAGIC);
+            out.writeInt(inputs.size());
+            long offset = indexLength;
+            for (File input : inputs) {
+                out.writeUTF(input.getName());
+                out.writeLong(offset);
+                out.writeLong(input.length());
+                offset += input.length();
+            }
+
+            byte[] buffer = new byte[64 * 1024];
+            for (File input : inputs) {
+                InputStream in = new FileInputStream(input);
+                try {
+                    int read;
+                    while ((read = in.read(buffer)) != -1) {
+                        out.write(buffer, 0, read);
+                    }
+                } finally {
+                    in.close();
+                }
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Bytes {@link DataOutputStream#writeUTF} writes for {@code s}, length
+     * prefix included. Its modified UTF-8 differs from standard UTF-8 for
+     * NUL and for characters outside the BMP.
+     */
+    static int utfLength(String s) {
+        int length = 2;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c >= 0x0001 && c <= 0x007f) {
+                length += 1;
+            } else if (c <= 0x07ff) {
+                length += 2;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+}
@@ -0,0 +1,154 @@
+/**
+ * Copyright 2016-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * Licensed under the Creative Commons CC BY-NC 4.0 Attribution-NonCommercial
+ * License (the "License"). You may obtain a copy of the License at
+ * https://creativecommons.org/licenses/by-nc/4.0/.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.oculus.sample.media;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Presentation times of the video keyframes of one file, so seeks can be
+ * snapped to a position the decoder can start at without decoding the
+ * frames before it. Cached on disk as:
+ *
+ *     "360KFI01"
+ *     UTF source key
+ *     int keyframe count
+ *     long time in microseconds, per keyframe, ascending
+ *
+ * The source key identifies the exact file contents the index was built
+ * from (e.g. path, length and modification time); a cached index with a
+ * different key is ignored.
+ */
+public class KeyframeIndex {
+    private static final String MAGIC = "360KFI01";
+
+    private final long[] timesUs;
+
+    public KeyframeIndex(long[] timesUs) {
+        if (timesUs.length == 0) {
+            throw new IllegalArgumentException("No keyframes");
+        }
+        for (int i = 1; i < timesUs.length; i++) {
+            if (timesUs[i] <= timesUs[i - 1]) {
+                throw new IllegalArgumentException("Keyframe times must be ascending");
+            }
+        }
+        this.timesUs = timesUs.clone();
+    }
+
+    public int size() {
+        return timesUs.length;
+    }
+
+    public long getTimeUs(int index) {
+        return timesUs[index];
+    }
+
+    /**
+     * Index of the last keyframe at or before {@code timeUs}, or 0 when
+     * {@code timeUs} is before the first one.
+     */
+    public int floorIndex(long timeUs) {
+        int index = Arrays.binarySearch(timesUs, timeUs);
+        if (index >= 0) {
+            return index;
+        }
+        return Math.max(0, -index - 2);
+    }
+
+    /**
+     * Index of the keyframe closest to {@code timeUs}, the earlier one on a
+     * tie.
+     */
+    public int nearestIndex(long timeUs) {
+        int floor = floorIndex(timeUs);
+        if (floor + 1 < timesUs.length
+                && timesUs[floor + 1] - timeUs < Math.abs(timeUs - timesUs[floor])) {
+            return floor + 1;
+        }
+        return floor;
+    }
+
+    public void write(File file, String sourceKey) throws IOException {
+        // Written under a temporary name so a reader never sees a partial index.
+        File partial = new File(file.getPath() + ".tmp");
+        DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(partial)));
+        try {
+            out.writeBytes(MAGIC);
+            out.writeUTF(sourceKey);
+            out.writeInt(timesUs.length);
+            for (long timeUs : timesUs) {
+                out.writeLong(timeUs);
+            }
+        } finally {
+            out.close();
+        }
+
+        if (!partial.renameTo(file)) {
+            partial.delete();
+            throw new IOException("Cannot rename " + partial + " to " + file);
+        }
+    }
+
+    /**
+     * @return the cached index, or null when there is none for
+     *         {@code sourceKey}
+     * @throws IOException if the file cannot be read or is corrupt
+     */
+    public static KeyframeIndex read(File file, String sourceKey) throws IOException {
+        DataInputStream in;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        } catch (FileNotFoundException e) {
+            return null;
+        }
+
+        try {
+            byte[] magic = new byte[MAGIC.length()];
+            in.readFully(magic);
+            if (!MAGIC.equals(new String(magic, "US-ASCII"))) {
+                throw new IOException(file + " is not a keyframe index");
+            }
+            if (!sourceKey.equals(in.readUTF())) {
+                return null;
+            }
+
+            int count = in.readInt();
+            if (count <= 0 || count > file.length() / 8) {
+                throw new IOException("Invalid keyframe count " + count + " in " + file);
+            }
+            long[] timesUs = new long[count];
+            for (int i = 0; i < count; i++) {
+                timesUs[i] = in.readLong();
+            }
+            return new KeyframeIndex(timesUs);
+        } catch (EOFException | IllegalArgumentException e) {
+            throw new IOException("Corrupt keyframe index " + file, e);
+        } finally {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,150 @@
+/**
+ * Copyright 2016-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * Licensed under the Creative Commons CC BY-NC 4.0 Attribution-NonCommercial
+ * License (the "License"). You may obtain a copy of the License at
+ * https://creativecommons.org/licenses/by-nc/4.0/.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.oculus.sample.media;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * A read-only byte range of a file, memory mapped in windows so regions
+ * larger than the 2GB a single MappedByteBuffer can hold still work, and so
+ * 32-bit processes never reserve address space for the whole file.
+ *
+ * Reads copy straight from the mapping into the caller's array. Windows are
+ * mapped on first use and the least recently used one is dropped when more
+ * than {@code maxWindows} are needed; the kernel unmaps it once collected.
+ */
+public class MappedFile implements Closeable {
+    public static final int DEFAULT_WINDOW_SIZE = 64 * 1024 * 1024;
+    public static final int DEFAULT_MAX_WINDOWS = 4;
+
+    private final FileChannel channel;
+    private final long offset;
+    private final long length;
+    private final int windowSize;
+
+    private final MappedByteBuffer[] windows;
+    private final long[] windowIndices;
+    private final long[] windowLastUse;
+    private long useCounter;
+
+    /**
+     * Maps all of {@code file}.
+     */
+    public static MappedFile open(File file) throws IOException {
+        FileChannel channel = new FileInputStream(file).getChannel();
+        try {
+            return new MappedFile(channel, 0, channel.size());
+        } catch (RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Takes ownership of {@code channel}; {@link #close()} closes it.
+     */
+    public MappedFile(FileChannel channel, long offset, long length) throws IOException {
+        this(channel, offset, length, DEFAULT_WINDOW_SIZE, DEFAULT_MAX_WINDOWS);
+    }
+
+    public MappedFile(
+            FileChannel channel, long offset, long length, int windowSize, int maxWindows)
+            throws IOException {
+        if (offset < 0 || length < 0 || offset + length > channel.size()) {
+            throw new IllegalArgumentException("Range " + offset + "+" + length
+                    + " outside of file of size " + channel.size());
+        }
+        if (windowSize <= 0 || maxWindows <= 0) {
+            throw new IllegalArgumentException("Invalid windows " + maxWindows + "x" + windowSize);
+        }
+
+        this.channel = channel;
+        this.offset = offset;
+        this.length = length;
+        this.windowSize = windowSize;
+        windows = new MappedByteBuffer[maxWindows];
+        windowIndices = new long[maxWindows];
+        windowLastUse = new long[maxWindows];
+    }
+
+    public long getLength() {
+        return length;
+    }
+
+    /**
+     * Copies up to {@code size} bytes at {@code position} into {@code buffer}.
+     *
+     * @return bytes read, or -1 at the end of the region or outside of it
+     */
+    public synchronized int read(long position, byte[] buffer, int bufferOffset, int size)
+            throws IOException {
+        if (!channel.isOpen()) {
+            throw new IOException("MappedFile is closed");
+        }
+        if (position < 0 || position >= length) {
+            return -1;
+        }
+
+        int total = (int) Math.min(size, length - position);
+        int copied = 0;
+        while (copied < total) {
+            long current = position + copied;
+            long windowIndex = current / windowSize;
+            MappedByteBuffer window = getWindow(windowIndex);
+
+            int windowOffset = (int) (current - windowIndex * windowSize);
+            int count = Math.min(total - copied, window.capacity() - windowOffset);
+            window.position(windowOffset);
+            window.get(buffer, bufferOffset + copied, count);
+            copied += count;
+        }
+        return copied;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        for (int i = 0; i < windows.length; i++) {
+            windows[i] = null;
+        }
+        channel.close();
+    }
+
+    private MappedByteBuffer getWindow(long windowIndex) throws IOException {
+        int slot = 0;
+        for (int i = 0; i < windows.length; i++) {
+            if (windows[i] != null && windowIndices[i] == windowIndex) {
+                windowLastUse[i] = ++useCounter;
+                return windows[i];
+            }
+            if (windows[i] == null
+                    || (windows[slot] != null && windowLastUse[i] < windowLastUse[slot])) {
+                slot = i;
+            }
+        }
+
+        long start = windowIndex * windowSize;
+        long size = Math.min(windowSize, length - start);
+        windows[slot] = channel.map(FileChannel.MapMode.READ_ONLY, offset + start, size);
+        windowIndices[slot] = windowIndex;
+        windowLastUse[slot] = ++useCounter;
+        return windows[slot];
+    }
+}
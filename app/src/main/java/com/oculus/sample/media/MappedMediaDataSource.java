@@ -0,0 +1,54 @@
+/**
+ * Copyright 2016-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * Licensed under the Creative Commons CC BY-NC 4.0 Attribution-NonCommercial
+ * License (the "License"). You may obtain a copy of the License at
+ * https://creativecommons.org/licenses/by-nc/4.0/.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.oculus.sample.media;
+
+import android.annotation.TargetApi;
+import android.media.MediaDataSource;
+import android.os.Build;
+
+import java.io.IOException;
+
+/**
+ * Feeds MediaPlayer from a {@link MappedFile}: every readAt is a single copy
+ * out of the page cache into the extractor's buffer, with no stream or
+ * binder hop in between.
+ */
+@TargetApi(Build.VERSION_CODES.M)
+public class MappedMediaDataSource extends MediaDataSource {
+    private final MappedFile file;
+
+    /**
+     * Takes ownership of {@code file}; MediaPlayer closes it on release.
+     */
+    public MappedMediaDataSource(MappedFile file) {
+        this.file = file;
+    }
+
+    @Override
+    public int readAt(long position, byte[] buffer, int offset, int size) throws IOException {
+        return file.read(position, buffer, offset, size);
+    }
+
+    @Override
+    public long getSize() {
+        return file.getLength();
+    }
+
+    @Override
+    public void close() throws IOException {
+        file.close();
+    }
+}
@@ -0,0 +1,62 @@
+/**
+ * Copyright 2016-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * Licensed under the Creative Commons CC BY-NC 4.0 Attribution-NonCommercial
+ * License (the "License"). You may obtain a copy of the License at
+ * https://creativecommons.org/licenses/by-nc/4.0/.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.oculus.sample.media;
+
+import java.util.Comparator;
+
+/**
+ * One encoding of a video. All renditions of a video must share its timeline
+ * so playback can move between them at any keyframe.
+ */
+public class Rendition {
+    /** Orders renditions from cheapest to most expensive to decode. */
+    public static final Comparator<Rendition> BY_COST = new Comparator<Rendition>() {
+        @Override
+        public int compare(Rendition a, Rendition b) {
+            long pixelsA = (long) a.width * a.height;
+            long pixelsB = (long) b.width * b.height;
+            if (pixelsA != pixelsB) {
+                return pixelsA < pixelsB ? -1 : 1;
+            }
+            return a.bitrate < b.bitrate ? -1 : (a.bitrate == b.bitrate ? 0 : 1);
+        }
+    };
+
+    public final String uri;
+    public final int width;
+    public final int height;
+    /** Bits per second. */
+    public final int bitrate;
+    public final float frameRate;
+
+    public Rendition(String uri, int width, int height, int bitrate, float frameRate) {
+        if (width <= 0 || height <= 0 || frameRate <= 0) {
+            throw new IllegalArgumentException("Invalid rendition " + width + "x" + height
+                    + "@" + frameRate);
+        }
+
+        this.uri = uri;
+        this.width = width;
+        this.height = height;
+        this.bitrate = bitrate;
+        this.frameRate = frameRate;
+    }
+
+    @Override
+    public String toString() {
+        return width + "x" + height + "@" + frameRate + " " + bitrate / 1000 + "kbps";
+    }
+}
@@ -0,0 +1,200 @@
+/**
+ * Copyright 2016-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * Licensed under the Creative Commons CC BY-NC 4.0 Attribution-NonCommercial
+ * License (the "License"). You may obtain a copy of the License at
+ * https://creativecommons.org/licenses/by-nc/4.0/.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.oculus.sample.media;
+
+/**
+ * Picks which of a list of renditions, ordered from cheapest to most
+ * expensive, should be playing, from periodic throughput samples.
+ *
+ * Each sample gives three ratios:
+ * - decode: frames decoded over frames the content has in that time
+ * - drop: frames dropped over frames decoded
+ * - render load: average render work per frame over the refresh period
+ *
+ * The policy steps down one level once playback has struggled for
+ * {@code downSwitchDelayNanos} and up one level once it has been
+ * comfortably healthy for {@code upSwitchDelayNanos}; samples between the
+ * two bands reset both timers. A level that had to be left soon after
+ * switching up to it is not tried again for a backoff that doubles with
+ * every such failure, so the player does not oscillate between two levels.
+ * Samples taken right after a switch are ignored while the new decoder
+ * settles.
+ *
+ * Not thread safe; time is passed in so the policy runs on a plain JVM.
+ */
+public class RenditionPolicy {
+    public static final long DEFAULT_DOWN_SWITCH_DELAY_NANOS = 2000000000L;
+    public static final long DEFAULT_UP_SWITCH_DELAY_NANOS = 10000000000L;
+    public static final long DEFAULT_SETTLE_NANOS = 1000000000L;
+    public static final long MAX_UP_SWITCH_BACKOFF_NANOS = 160000000000L;
+
+    // Struggling below or above these.
+    private static final float MIN_DECODE_RATIO = 0.9f;
+    private static final float MAX_DROP_RATIO = 0.05f;
+    private static final float MAX_RENDER_LOAD = 0.9f;
+    // Healthy enough to try the next level only within these.
+    private static final float UP_MIN_DECODE_RATIO = 0.98f;
+    private static final float UP_MAX_DROP_RATIO = 0.005f;
+    private static final float UP_MAX_RENDER_LOAD = 0.6f;
+
+    private final int levelCount;
+    private final long downSwitchDelayNanos;
+    private final long upSwitchDelayNanos;
+    private final long settleNanos;
+
+    private int level;
+    private int previousLevel = -1;
+    private long strugglingSinceNanos = -1;
+    private long healthySinceNanos = -1;
+    private long lastSwitchNanos = -1;
+    private boolean lastSwitchWasUp;
+
+    private int blockedLevel = -1;
+    private long blockedUntilNanos;
+    private long backoffNanos;
+
+    public RenditionPolicy(int levelCount, int initialLevel) {
+        this(levelCount,
+                initialLevel,
+                DEFAULT_DOWN_SWITCH_DELAY_NANOS,
+                DEFAULT_UP_SWITCH_DELAY_NANOS,
+                DEFAULT_SETTLE_NANOS);
+    }
+
+    public RenditionPolicy(
+            int levelCount,
+            int initialLevel,
+            long downSwitchDelayNanos,
+            long upSwitchDelayNanos,
+            long settleNanos) {
+        if (levelCount <= 0 || initialLevel < 0 || initialLevel >= levelCount) {
+            throw new IllegalArgumentException(
+                    "Invalid level " + initialLevel + " of " + levelCount);
+        }
+
+        this.levelCount = levelCount;
+        this.level = initialLevel;
+        this.downSwitchDelayNanos = downSwitchDelayNanos;
+        this.upSwitchDelayNanos = upSwitchDelayNanos;
+        this.settleNanos = settleNanos;
+        backoffNanos = upSwitchDelayNanos;
+    }
+
+    public int getLevel() {
+        return level;
+    }
+
+    /**
+     * @return the level that should be playing; differs from the previous
+     *         {@link #getLevel()} when a switch is due
+     */
+    public int onSample(long nowNanos, float decodeRatio, float dropRatio, float renderLoad) {
+        if (lastSwitchNanos >= 0 && nowNanos - lastSwitchNanos < settleNanos) {
+            return level;
+        }
+
+        boolean struggling = decodeRatio < MIN_DECODE_RATIO
+                || dropRatio > MAX_DROP_RATIO
+                || renderLoad > MAX_RENDER_LOAD;
+        boolean healthy = decodeRatio >= UP_MIN_DECODE_RATIO
+                && dropRatio <= UP_MAX_DROP_RATIO
+                && renderLoad <= UP_MAX_RENDER_LOAD;
+
+        if (struggling) {
+            healthySinceNanos = -1;
+            if (strugglingSinceNanos < 0) {
+                strugglingSinceNanos = nowNanos;
+            }
+            if (level > 0 && nowNanos - strugglingSinceNanos >= downSwitchDelayNanos) {
+                switchDown(nowNanos);
+            }
+        } else if (healthy) {
+            strugglingSinceNanos = -1;
+            if (healthySinceNanos < 0) {
+                healthySinceNanos = nowNanos;
+            }
+            if (level < levelCount - 1
+                    && nowNanos - healthySinceNanos >= upSwitchDelayNanos
+                    && !(level + 1 == blockedLevel && nowNanos < blockedUntilNanos)) {
+                switchTo(level + 1, nowNanos);
+                lastSwitchWasUp = true;
+            }
+        } else {
+            strugglingSinceNanos = -1;
+            healthySinceNanos = -1;
+        }
+        return level;
+    }
+
+    /**
+     * Returns to the previous level when switching to the current one
+     * failed, e.g. because its decoder could not start, and blocks the
+     * failed level like an up-switch that did not last.
+     */
+    public int onSwitchFailed(long nowNanos) {
+        if (previousLevel < 0) {
+            return level;
+        }
+
+        block(level, nowNanos);
+        switchTo(previousLevel, nowNanos);
+        lastSwitchWasUp = false;
+        return level;
+    }
+
+    /**
+     * Returns to the previous level when the switch to the current one was
+     * abandoned before it took effect, e.g. because playback stopped,
+     * without holding it against that level.
+     */
+    public int onSwitchCancelled(long nowNanos) {
+        if (previousLevel < 0) {
+            return level;
+        }
+
+        switchTo(previousLevel, nowNanos);
+        lastSwitchWasUp = false;
+        return level;
+    }
+
+    private void switchDown(long nowNanos) {
+        // Leaving a level soon after trying it means it is too expensive here.
+        boolean failedUpSwitch = lastSwitchWasUp
+                && nowNanos - lastSwitchNanos < upSwitchDelayNanos + downSwitchDelayNanos;
+        if (failedUpSwitch) {
+            block(level, nowNanos);
+        }
+
+        switchTo(level - 1, nowNanos);
+        lastSwitchWasUp = false;
+    }
+
+    private void block(int failedLevel, long nowNanos) {
+        backoffNanos = blockedLevel == failedLevel
+                ? Math.min(backoffNanos * 2, MAX_UP_SWITCH_BACKOFF_NANOS)
+                : upSwitchDelayNanos;
+        blockedLevel = failedLevel;
+        blockedUntilNanos = nowNanos + backoffNanos;
+    }
+
+    private void switchTo(int newLevel, long nowNanos) {
+        previousLevel = level;
+        level = newLevel;
+        lastSwitchNanos = nowNanos;
+        strugglingSinceNanos = -1;
+        healthySinceNanos = -1;
+    }
+}
@@ -0,0 +1,62 @@
+/**
+ * Copyright 2016-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * Licensed under the Creative Commons CC BY-NC 4.0 Attribution-NonCommercial
+ * License (the "License"). You may obtain a copy of the License at
+ * https://creativecommons.org/licenses/by-nc/4.0/.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.oculus.sample.overlay;
+
+/**
+ * A clickable marker or label on the sphere: a square billboard that always
+ * faces the viewer, showing one region of the overlay's texture atlas.
+ *
+ * Positions use the camera's longitude and latitude, so a hotspot at
+ * (lon, lat) is in the middle of the screen when the camera is turned to
+ * (lon, lat).
+ */
+public class Hotspot {
+    public final int id;
+    public final float lon;
+    public final float lat;
+    /** Width and height as an angle seen from the sphere center. */
+    public final float sizeDegrees;
+    // Atlas region in texture coordinates, v down from the top of the image.
+    public final float u0;
+    public final float v0;
+    public final float u1;
+    public final float v1;
+
+    public Hotspot(
+            int id, float lon, float lat, float sizeDegrees,
+            float u0, float v0, float u1, float v1) {
+        if (sizeDegrees <= 0 || sizeDegrees >= 90) {
+            throw new IllegalArgumentException("Invalid hotspot size " + sizeDegrees);
+        }
+        if (lat < -90 || lat > 90) {
+            throw new IllegalArgumentException("Invalid hotspot latitude " + lat);
+        }
+
+        this.id = id;
+        this.lon = lon;
+        this.lat = lat;
+        this.sizeDegrees = sizeDegrees;
+        this.u0 = u0;
+        this.v0 = v0;
+        this.u1 = u1;
+        this.v1 = v1;
+    }
+
+    @Override
+    public String toString() {
+        return "Hotspot " + id + " at " + lon + ", " + lat;
+    }
+}
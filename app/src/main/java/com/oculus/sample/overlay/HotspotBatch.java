@@ -0,0 +1,114 @@
+/**
+ * Copyright 2016-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * Licensed under the Creative Commons CC BY-NC 4.0 Attribution-NonCommercial
+ * License (the "License"). You may obtain a copy of the License at
+ * https://creativecommons.org/licenses/by-nc/4.0/.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.oculus.sample.overlay;
+
+import com.oculus.sample.projection.SphericalCamera;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.ShortBuffer;
+import java.util.List;
+
+/**
+ * Vertex and index data for drawing any number of hotspot billboards in a
+ * single draw call.
+ *
+ * GLES 2 has no instancing, so the per-billboard data is repeated in each
+ * of the quad's four vertices instead: the center on the sphere in world
+ * space, the corner's offset from it in view space and the corner's atlas
+ * coordinates. The vertex shader moves the center into view space and adds
+ * the offset, so quads face the viewer whatever the camera does and the
+ * data only has to be built and uploaded when the hotspots change.
+ */
+public class HotspotBatch {
+    // Center xyz, corner offset xy, texture coordinates st.
+    public static final int FLOATS_PER_VERTEX = 7;
+    public static final int STRIDE_BYTES = FLOATS_PER_VERTEX * 4;
+    public static final int CENTER_OFFSET_BYTES = 0;
+    public static final int CORNER_OFFSET_BYTES = 3 * 4;
+    public static final int TEXTURE_COORD_OFFSET_BYTES = 5 * 4;
+    // Unsigned 16-bit indices address 65536 vertices.
+    public static final int MAX_HOTSPOTS = 65536 / 4;
+
+    private static final float[] CORNER_X = {-1, 1, 1, -1};
+    private static final float[] CORNER_Y = {-1, -1, 1, 1};
+
+    private final FloatBuffer vertices;
+    private final ShortBuffer indices;
+    private final int indexCount;
+
+    /**
+     * @param radius distance of the billboards from the sphere center;
+     *               {@link SphericalCamera#SPHERE_RADIUS} keeps them on the
+     *               video without parallax
+     */
+    public HotspotBatch(List<Hotspot> hotspots, float radius) {
+        int count = hotspots.size();
+        if (count > MAX_HOTSPOTS) {
+            throw new IllegalArgumentException(
+                    count + " hotspots, at most " + MAX_HOTSPOTS + " fit in one batch");
+        }
+
+        indexCount = count * 6;
+        vertices = ByteBuffer.allocateDirect(Math.max(1, count * 4 * STRIDE_BYTES))
+                .order(ByteOrder.nativeOrder()).asFloatBuffer();
+        indices = ByteBuffer.allocateDirect(Math.max(1, indexCount * 2))
+                .order(ByteOrder.nativeOrder()).asShortBuffer();
+
+        float[] quad = new float[4 * FLOATS_PER_VERTEX];
+        short[] quadIndices = new short[6];
+        for (int i = 0; i < count; i++) {
+            Hotspot hotspot = hotspots.get(i);
+            SphericalCamera.lonLatToWorld(hotspot.lon, hotspot.lat, radius, quad, 0);
+            float halfSize = radius * (float) Math.tan(Math.toRadians(hotspot.sizeDegrees / 2));
+
+            for (int corner = 0; corner < 4; corner++) {
+                int base = corner * FLOATS_PER_VERTEX;
+                System.arraycopy(quad, 0, quad, base, 3);
+                quad[base + 3] = CORNER_X[corner] * halfSize;
+                quad[base + 4] = CORNER_Y[corner] * halfSize;
+                // Atlas v grows downwards, corner y upwards.
+                quad[base + 5] = CORNER_X[corner] < 0 ? hotspot.u0 : hotspot.u1;
+                quad[base + 6] = CORNER_Y[corner] < 0 ? hotspot.v1 : hotspot.v0;
+            }
+            vertices.put(quad);
+
+            int first = i * 4;
+            quadIndices[0] = (short) first;
+            quadIndices[1] = (short) (first + 1);
+            quadIndices[2] = (short) (first + 2);
+            quadIndices[3] = (short) first;
+            quadIndices[4] = (short) (first + 2);
+            quadIndices[5] = (short) (first + 3);
+            indices.put(quadIndices);
+        }
+        vertices.position(0);
+        indices.position(0);
+    }
+
+    public FloatBuffer getVertices() {
+        return vertices;
+    }
+
+    public ShortBuffer getIndices() {
+        return indices;
+    }
+
+    public int getIndexCount() {
+        return indexCount;
+    }
+}
@@ -0,0 +1,163 @@
+/**
+ * Copyright 2016-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * Licensed under the Creative Commons CC BY-NC 4.0 Attribution-NonCommercial
+ * License (the "License"). You may obtain a copy of the License at
+ * https://creativecommons.org/licenses/by-nc/4.0/.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.oculus.sample.overlay;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Finds the hotspot at a (lon, lat) without looking at all of them.
+ *
+ * Hotspots are binned by their center into a CELL_DEGREES grid over
+ * longitude and latitude, stored as one array of hotspot indices sorted by
+ * cell with each cell's start offset alongside. A lookup only visits the
+ * cells within the largest hotspot radius of the point, wider in
+ * longitude towards the poles where meridians converge, and compares
+ * angles with dot products of precomputed unit vectors. Hit areas are
+ * round, with the hotspot's size as diameter; where hotspots overlap the
+ * one whose center is closest wins, then the one first in the list.
+ *
+ * Immutable; lookups allocate nothing and are safe from any thread.
+ */
+public class HotspotIndex {
+    static final float CELL_DEGREES = 10.f;
+    private static final int COLUMNS = (int) (360 / CELL_DEGREES);
+    private static final int ROWS = (int) (180 / CELL_DEGREES);
+
+    private final List<Hotspot> hotspots;
+    private final float[] unitX;
+    private final float[] unitY;
+    private final float[] unitZ;
+    private final float[] cosRadius;
+    private final float maxRadiusDegrees;
+
+    private final int[] cellStart = new int[COLUMNS * ROWS + 1];
+    private final int[] cellItems;
+
+    public HotspotIndex(List<Hotspot> hotspots) {
+        this.hotspots = Collections.unmodifiableList(new ArrayList<>(hotspots));
+        int count = this.hotspots.size();
+        unitX = new float[count];
+        unitY = new float[count];
+        unitZ = new float[count];
+        cosRadius = new float[count];
+        cellItems = new int[count];
+
+        float maxRadius = 0;
+        int[] cells = new int[count];
+        for (int i = 0; i < count; i++) {
+            Hotspot hotspot = this.hotspots.get(i);
+            double lon = Math.toRadians(hotspot.lon);
+            double lat = Math.toRadians(hotspot.lat);
+            unitX[i] = (float) (Math.cos(lat) * Math.cos(lon));
+            unitY[i] = (float) Math.sin(lat);
+            unitZ[i] = (float) (Math.cos(lat) * Math.sin(lon));
+
+            float radius = hotspot.sizeDegrees / 2;
+            cosRadius[i] = (float) Math.cos(Math.toRadians(radius));
+            maxRadius = Math.max(maxRadius, radius);
+
+            cells[i] = row(hotspot.lat) * COLUMNS + column(hotspot.lon);
+            cellStart[cells[i] + 1]++;
+        }
+        maxRadiusDegrees = maxRadius;
+
+        for (int cell = 0; cell < COLUMNS * ROWS; cell++) {
+            cellStart[cell + 1] += cellStart[cell];
+        }
+        int[] filled = new int[COLUMNS * ROWS];
+        for (int i = 0; i < count; i++) {
+            cellItems[cellStart[cells[i]] + filled[cells[i]]++] = i;
+        }
+    }
+
+    public List<Hotspot> getHotspots() {
+        return hotspots;
+    }
+
+    /**
+     * The hotspot covering (lon, lat), or null if none does.
+     */
+    public Hotspot find(float lon, float lat) {
+        int index = findIndex(lon, lat);
+        return index >= 0 ? hotspots.get(index) : null;
+    }
+
+    /**
+     * Position in {@link #getHotspots()} of the hotspot covering
+     * (lon, lat), or -1 if none does.
+     */
+    public int findIndex(float lon, float lat) {
+        if (hotspots.isEmpty()) {
+            return -1;
+        }
+
+        double lonRadians = Math.toRadians(lon);
+        double latRadians = Math.toRadians(lat);
+        float x = (float) (Math.cos(latRadians) * Math.cos(lonRadians));
+        float y = (float) Math.sin(latRadians);
+        float z = (float) (Math.cos(latRadians) * Math.sin(lonRadians));
+
+        float r = maxRadiusDegrees;
+        int firstRow = row(lat - r);
+        int lastRow = row(lat + r);
+
+        int firstColumn = 0;
+        int columns = COLUMNS;
+        if (Math.abs(lat) + r < 90) {
+            // Points within r of (lon, lat) are at most this far away in longitude.
+            double lonRadius = Math.toDegrees(Math.asin(
+                    Math.sin(Math.toRadians(r)) / Math.cos(latRadians)));
+            if (lonRadius < 180 - CELL_DEGREES) {
+                firstColumn = column((float) (lon - lonRadius));
+                int lastColumn = column((float) (lon + lonRadius));
+                columns = (lastColumn - firstColumn + COLUMNS) % COLUMNS + 1;
+            }
+        }
+
+        int best = -1;
+        float bestDot = -2;
+        for (int row = firstRow; row <= lastRow; row++) {
+            for (int c = 0; c < columns; c++) {
+                int cell = row * COLUMNS + (firstColumn + c) % COLUMNS;
+                for (int k = cellStart[cell]; k < cellStart[cell + 1]; k++) {
+                    int i = cellItems[k];
+                    float dot = x * unitX[i] + y * unitY[i] + z * unitZ[i];
+                    // Ties go to the first in the list, whatever cell order is.
+                    if (dot >= cosRadius[i] && (dot > bestDot || dot == bestDot && i < best)) {
+                        best = i;
+                        bestDot = dot;
+                    }
+                }
+            }
+        }
+        return best;
+    }
+
+    private static int row(float lat) {
+        int row = (int) Math.floor((lat + 90) / CELL_DEGREES);
+        return Math.max(0, Math.min(ROWS - 1, row));
+    }
+
+    private static int column(float lon) {
+        float wrapped = lon % 360;
+        if (wrapped < 0) {
+            wrapped += 360;
+        }
+        return Math.min(COLUMNS - 1, (int) (wrapped / CELL_DEGREES));
+    }
+}
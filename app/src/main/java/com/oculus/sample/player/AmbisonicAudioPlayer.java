@@ -0,0 +1,497 @@
+/**
+ * Copyright 2016-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * Licensed under the Creative Commons CC BY-NC 4.0 Attribution-NonCommercial
+ * License (the "License"). You may obtain a copy of the License at
+ * https://creativecommons.org/licenses/by-nc/4.0/.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.oculus.sample.player;
+
+import android.annotation.TargetApi;
+import android.content.Context;
+import android.content.res.AssetFileDescriptor;
+import android.media.AudioAttributes;
+import android.media.AudioFormat;
+import android.media.AudioManager;
+import android.media.AudioTrack;
+import android.media.MediaCodec;
+import android.media.MediaExtractor;
+import android.media.MediaFormat;
+import android.net.Uri;
+import android.os.Build;
+import android.os.Process;
+import android.util.Log;
+
+import com.oculus.sample.audio.AmbisonicDecoder;
+import com.oculus.sample.audio.ListenerOrientation;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+
+/**
+ * Plays the first order ambisonic track of a video as stereo that follows
+ * the view, in place of the MediaPlayer's own audio.
+ *
+ * One thread decodes the track with MediaCodec, renders it through an
+ * {@link AmbisonicDecoder} in small blocks and writes them to a streaming
+ * AudioTrack. A block is only rendered once the track has room for it, and
+ * the listener orientation is read right before, so head movement is heard
+ * after at most the AudioTrack buffer. The writes never block; while the
+ * track is full the thread sleeps until a block has played.
+ *
+ * The track is kept small for that: two bursts of the output mixer, sized
+ * in frames once it exists. Content at the device's native sample rate
+ * also qualifies for the mixer's fast path; a low latency performance mode
+ * cannot be requested before API 26. Samples go through preallocated
+ * blocks; once playback runs, the only allocations are the framework's
+ * wrapper of each codec buffer and a 16-bit view of it, never per block.
+ *
+ * The MediaPlayer keeps the clock. The track pauses with it, and is
+ * reseeked to it when it starts again or drifts off by more than
+ * MAX_DRIFT_US.
+ */
+@TargetApi(Build.VERSION_CODES.M)
+class AmbisonicAudioPlayer {
+    interface Listener {
+        /**
+         * Called on the audio thread when playback stops on an error, so
+         * the MediaPlayer's own audio can be brought back.
+         */
+        void onSpatialAudioFailed(Exception e);
+    }
+
+    private static final String TAG = AmbisonicAudioPlayer.class.getSimpleName();
+    private static final String THREAD_NAME = "360SpatialAudio";
+    private static final String AUDIO_MIME_PREFIX = "audio/";
+
+    // About 5ms at 48kHz.
+    private static final int FRAMES_PER_BLOCK = 256;
+    private static final long MAX_DRIFT_US = 80000;
+    private static final long CODEC_TIMEOUT_US = 10000;
+    private static final long PAUSED_POLL_MS = 10;
+    private static final int BYTES_PER_SAMPLE = 2;
+    private static final int BURSTS_PER_TRACK = 2;
+    // Used when the device does not report its mixer burst.
+    private static final int DEFAULT_BURST_FRAMES = 256;
+
+    private final Context context;
+    private final SeekController.Source source;
+    private final PlaybackClock clock;
+    private final ListenerOrientation orientation;
+    private final Listener listener;
+    private final AmbisonicDecoder decoder = new AmbisonicDecoder();
+    private final MediaCodec.BufferInfo info = new MediaCodec.BufferInfo();
+    private final short[] inputBlock =
+            new short[FRAMES_PER_BLOCK * AmbisonicDecoder.INPUT_CHANNELS];
+    private final short[] outputBlock =
+            new short[FRAMES_PER_BLOCK * AmbisonicDecoder.OUTPUT_CHANNELS];
+
+    private AssetFileDescriptor afd;
+    private MediaExtractor extractor;
+    private MediaCodec codec;
+    private AudioTrack track;
+    private long durationUs;
+    private int sampleRate;
+    private int trackFrames;
+
+    private volatile boolean running;
+    private Thread thread;
+    private volatile long resyncs;
+
+    // Audio thread only.
+    // The codec output being rendered, -1 if none.
+    private int outputIndex = -1;
+    private ShortBuffer outputSamples;
+    private int outputFrames;
+    // Samples of outputBlock the track has not taken yet.
+    private int blockWritten;
+    private int blockLength;
+    private long framesWritten;
+    private long lastOrientation;
+    private boolean needsResync = true;
+
+    AmbisonicAudioPlayer(
+            Context context,
+            SeekController.Source source,
+            PlaybackClock clock,
+            ListenerOrientation orientation,
+            Listener listener) {
+        this.context = context;
+        this.source = source;
+        this.clock = clock;
+        this.orientation = orientation;
+        this.listener = listener;
+    }
+
+    /**
+     * Opens the source's ambisonic track and starts following the clock.
+     *
+     * @throws IOException if the source has no four channel audio track
+     */
+    void start() throws IOException {
+        try {
+            open();
+        } catch (IOException | RuntimeException e) {
+            release();
+            throw e;
+        }
+
+        running = true;
+        thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                Process.setThreadPriority(Process.THREAD_PRIORITY_URGENT_AUDIO);
+                try {
+                    renderLoop();
+                } catch (IllegalStateException e) {
+                    Log.e(TAG, "Spatial audio failed", e);
+                    listener.onSpatialAudioFailed(e);
+                }
+            }
+        }, THREAD_NAME);
+        thread.start();
+    }
+
+    private void open() throws IOException {
+        extractor = new MediaExtractor();
+        afd = source.openFd();
+        if (afd != null) {
+            extractor.setDataSource(
+                    afd.getFileDescriptor(), afd.getStartOffset(), afd.getLength());
+        } else {
+            extractor.setDataSource(context, Uri.parse(source.getUri()), null);
+        }
+
+        MediaFormat format = selectAmbisonicTrack(extractor);
+        if (format == null) {
+            throw new IOException("No first order ambisonic track");
+        }
+        sampleRate = format.getInteger(MediaFormat.KEY_SAMPLE_RATE);
+        durationUs = format.containsKey(MediaFormat.KEY_DURATION)
+                ? format.getLong(MediaFormat.KEY_DURATION)
+                : 0;
+
+        codec = MediaCodec.createDecoderByType(format.getString(MediaFormat.KEY_MIME));
+        codec.configure(format, null, null, 0);
+        codec.start();
+        createTrack();
+    }
+
+    /**
+     * Stops the audio thread and releases the decoder and track.
+     */
+    void release() {
+        running = false;
+        if (thread != null) {
+            thread.interrupt();
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            thread = null;
+        }
+        if (track != null) {
+            track.release();
+            track = null;
+        }
+        if (codec != null) {
+            codec.stop();
+            codec.release();
+            codec = null;
+        }
+        if (extractor != null) {
+            extractor.release();
+            extractor = null;
+        }
+        if (afd != null) {
+            try {
+                afd.close();
+            } catch (IOException e) {
+                Log.e(TAG, "Cannot close the audio source", e);
+            }
+            afd = null;
+        }
+    }
+
+    /**
+     * Times the track was reseeked to the video clock.
+     */
+    long getResyncCount() {
+        return resyncs;
+    }
+
+    private void renderLoop() {
+        while (running) {
+            if (!clock.isPlaying()) {
+                if (!needsResync) {
+                    track.pause();
+                    track.flush();
+                    needsResync = true;
+                }
+                try {
+                    Thread.sleep(PAUSED_POLL_MS);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                continue;
+            }
+
+            if (needsResync) {
+                resync();
+            }
+            queueInput();
+            if (outputIndex < 0) {
+                dequeueOutput();
+            }
+            if (outputIndex >= 0 && !renderOutput()) {
+                try {
+                    waitForRoom();
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }
+    }
+
+    private void resync() {
+        long positionUs = clock.getPositionMs(System.nanoTime()) * 1000L;
+        track.pause();
+        track.flush();
+        // Hands every buffer back, including the one being rendered.
+        codec.flush();
+        outputIndex = -1;
+        blockWritten = 0;
+        blockLength = 0;
+        extractor.seekTo(positionUs, MediaExtractor.SEEK_TO_CLOSEST_SYNC);
+        framesWritten = 0;
+
+        lastOrientation = orientation.get();
+        decoder.reset(ListenerOrientation.yaw(lastOrientation),
+                ListenerOrientation.pitch(lastOrientation));
+        track.play();
+        needsResync = false;
+        resyncs++;
+    }
+
+    private void queueInput() {
+        int index = codec.dequeueInputBuffer(0);
+        if (index < 0) {
+            return;
+        }
+
+        ByteBuffer input = codec.getInputBuffer(index);
+        int size = extractor.readSampleData(input, 0);
+        if (size < 0) {
+            // The video loops, so the audio does too.
+            extractor.seekTo(0, MediaExtractor.SEEK_TO_CLOSEST_SYNC);
+            size = extractor.readSampleData(input, 0);
+        }
+        if (size < 0) {
+            codec.queueInputBuffer(index, 0, 0, 0, 0);
+            return;
+        }
+        codec.queueInputBuffer(index, 0, size, extractor.getSampleTime(), 0);
+        extractor.advance();
+    }
+
+    private void dequeueOutput() {
+        int index = codec.dequeueOutputBuffer(info, CODEC_TIMEOUT_US);
+        if (index == MediaCodec.INFO_OUTPUT_FORMAT_CHANGED) {
+            MediaFormat format = codec.getOutputFormat();
+            if (format.getInteger(MediaFormat.KEY_CHANNEL_COUNT)
+                    != AmbisonicDecoder.INPUT_CHANNELS) {
+                throw new IllegalStateException("Decoder downmixes the ambisonic track");
+            }
+            if (format.getInteger(MediaFormat.KEY_SAMPLE_RATE) != sampleRate) {
+                sampleRate = format.getInteger(MediaFormat.KEY_SAMPLE_RATE);
+                track.release();
+                createTrack();
+                needsResync = true;
+            }
+            return;
+        } else if (index < 0) {
+            return;
+        }
+
+        if (isDrifting(info.presentationTimeUs)) {
+            codec.releaseOutputBuffer(index, false);
+            needsResync = true;
+            return;
+        }
+
+        ByteBuffer output = codec.getOutputBuffer(index);
+        output.position(info.offset);
+        output.limit(info.offset + info.size);
+        outputSamples = output.order(ByteOrder.nativeOrder()).asShortBuffer();
+        outputFrames = info.size / (BYTES_PER_SAMPLE * AmbisonicDecoder.INPUT_CHANNELS);
+        outputIndex = index;
+    }
+
+    /**
+     * Renders the current codec output block by block while the track has
+     * room, and hands the buffer back once all of it is written.
+     *
+     * @return false if the track filled up first
+     */
+    private boolean renderOutput() {
+        while (running) {
+            if (blockWritten < blockLength) {
+                int written = track.write(outputBlock, blockWritten,
+                        blockLength - blockWritten, AudioTrack.WRITE_NON_BLOCKING);
+                if (written < 0) {
+                    throw new IllegalStateException("AudioTrack write failed: " + written);
+                }
+                blockWritten += written;
+                framesWritten += written / AmbisonicDecoder.OUTPUT_CHANNELS;
+                if (blockWritten < blockLength) {
+                    return false;
+                }
+            }
+
+            if (outputFrames == 0) {
+                codec.releaseOutputBuffer(outputIndex, false);
+                outputIndex = -1;
+                return true;
+            }
+
+            int blockFrames = Math.min(outputFrames, FRAMES_PER_BLOCK);
+            if (getQueuedFrames() + blockFrames > trackFrames) {
+                return false;
+            }
+
+            long current = orientation.get();
+            if (current != lastOrientation) {
+                decoder.setOrientation(
+                        ListenerOrientation.yaw(current), ListenerOrientation.pitch(current));
+                lastOrientation = current;
+            }
+
+            outputSamples.get(inputBlock, 0, blockFrames * AmbisonicDecoder.INPUT_CHANNELS);
+            decoder.process(inputBlock, 0, outputBlock, 0, blockFrames);
+            blockWritten = 0;
+            blockLength = blockFrames * AmbisonicDecoder.OUTPUT_CHANNELS;
+            outputFrames -= blockFrames;
+        }
+        return true;
+    }
+
+    /**
+     * Sleeps until about one block has played out of the full track.
+     */
+    private void waitForRoom() throws InterruptedException {
+        long sleepNanos = FRAMES_PER_BLOCK * 1000000000L / sampleRate;
+        Thread.sleep(sleepNanos / 1000000L, (int) (sleepNanos % 1000000L));
+    }
+
+    private long getQueuedFrames() {
+        return framesWritten - (track.getPlaybackHeadPosition() & 0xffffffffL);
+    }
+
+    /**
+     * Whether a buffer that starts at {@code presentationUs}, heard once
+     * what is already queued in the track has played, is off the clock.
+     */
+    private boolean isDrifting(long presentationUs) {
+        long nowNanos = System.nanoTime();
+        long audioUs = presentationUs - getQueuedFrames() * 1000000L / sampleRate;
+        long driftUs = audioUs - clock.getPositionMs(nowNanos) * 1000L;
+        if (durationUs > 0) {
+            // Compare around the loop point.
+            driftUs %= durationUs;
+            if (driftUs > durationUs / 2) {
+                driftUs -= durationUs;
+            } else if (driftUs < -durationUs / 2) {
+                driftUs += durationUs;
+            }
+        }
+        return Math.abs(driftUs) > MAX_DRIFT_US;
+    }
+
+    private void createTrack() {
+        int minBufferSize = AudioTrack.getMinBufferSize(
+                sampleRate, AudioFormat.CHANNEL_OUT_STEREO, AudioFormat.ENCODING_PCM_16BIT);
+        if (minBufferSize <= 0) {
+            throw new IllegalStateException("Unsupported sample rate " + sampleRate);
+        }
+
+        AudioManager audioManager =
+                (AudioManager) context.getSystemService(Context.AUDIO_SERVICE);
+        int nativeRate = parseProperty(
+                audioManager.getProperty(AudioManager.PROPERTY_OUTPUT_SAMPLE_RATE), 0);
+        int burstFrames = parseProperty(
+                audioManager.getProperty(AudioManager.PROPERTY_OUTPUT_FRAMES_PER_BUFFER),
+                DEFAULT_BURST_FRAMES);
+        int targetFrames = BURSTS_PER_TRACK * Math.max(burstFrames, FRAMES_PER_BLOCK);
+        if (nativeRate > 0 && nativeRate != sampleRate) {
+            Log.i(TAG, "Track at " + sampleRate + "Hz is resampled to " + nativeRate
+                    + "Hz, without the fast mixer");
+        }
+
+        track = new AudioTrack.Builder()
+                .setAudioAttributes(new AudioAttributes.Builder()
+                        .setUsage(AudioAttributes.USAGE_MEDIA)
+                        .setContentType(AudioAttributes.CONTENT_TYPE_MOVIE)
+                        .build())
+                .setAudioFormat(new AudioFormat.Builder()
+                        .setSampleRate(sampleRate)
+                        .setChannelMask(AudioFormat.CHANNEL_OUT_STEREO)
+                        .setEncoding(AudioFormat.ENCODING_PCM_16BIT)
+                        .build())
+                .setBufferSizeInBytes(Math.max(minBufferSize, targetFrames
+                        * AmbisonicDecoder.OUTPUT_CHANNELS * BYTES_PER_SAMPLE))
+                .setTransferMode(AudioTrack.MODE_STREAM)
+                .build();
+        if (track.getState() != AudioTrack.STATE_INITIALIZED) {
+            track.release();
+            track = null;
+            throw new IllegalStateException("Cannot create AudioTrack at " + sampleRate + "Hz");
+        }
+
+        // The track only starts playing once it holds this many frames, so
+        // it is filled up to them and no further. Before N that is the
+        // whole allocation, which the minimum buffer size may make larger.
+        trackFrames = track.getBufferSizeInFrames();
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
+            int frames = track.setBufferSizeInFrames(targetFrames);
+            if (frames > 0) {
+                trackFrames = frames;
+            }
+        }
+    }
+
+    private static int parseProperty(String value, int defaultValue) {
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+    private static MediaFormat selectAmbisonicTrack(MediaExtractor extractor) {
+        for (int i = 0; i < extractor.getTrackCount(); i++) {
+            MediaFormat format = extractor.getTrackFormat(i);
+            String mime = format.getString(MediaFormat.KEY_MIME);
+            if (mime != null && mime.startsWith(AUDIO_MIME_PREFIX)
+                    && format.getInteger(MediaFormat.KEY_CHANNEL_COUNT)
+                            == AmbisonicDecoder.INPUT_CHANNELS) {
+                extractor.selectTrack(i);
+                return format;
+            }
+        }
+        return null;
+    }
+}
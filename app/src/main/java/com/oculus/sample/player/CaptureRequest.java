@@ -0,0 +1,47 @@
+/**
+ * Copyright 2016-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * Licensed under the Creative Commons CC BY-NC 4.0 Attribution-NonCommercial
+ * License (the "License"). You may obtain a copy of the License at
+ * https://creativecommons.org/licenses/by-nc/4.0/.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.oculus.sample.player;
+
+import android.graphics.Bitmap;
+
+/**
+ * A pending screenshot of one view: either a single frame or every
+ * {@code frameInterval}-th drawn frame until stopped.
+ */
+class CaptureRequest {
+    final RenderView view;
+    final Bitmap.CompressFormat format;
+    final int quality;
+    final int frameInterval;
+    final SphericalVideoPlayer.FrameCaptureCallback callback;
+
+    CaptureRequest(
+            RenderView view,
+            Bitmap.CompressFormat format,
+            int quality,
+            int frameInterval,
+            SphericalVideoPlayer.FrameCaptureCallback callback) {
+        this.view = view;
+        this.format = format;
+        this.quality = quality;
+        this.frameInterval = frameInterval;
+        this.callback = callback;
+    }
+
+    boolean isContinuous() {
+        return frameInterval > 0;
+    }
+}
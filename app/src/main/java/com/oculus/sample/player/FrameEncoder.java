@@ -0,0 +1,105 @@
+/**
+ * Copyright 2016-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * Licensed under the Creative Commons CC BY-NC 4.0 Attribution-NonCommercial
+ * License (the "License"). You may obtain a copy of the License at
+ * https://creativecommons.org/licenses/by-nc/4.0/.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.oculus.sample.player;
+
+import android.graphics.Bitmap;
+import android.os.Process;
+
+import com.oculus.sample.gles.AsyncFrameReader;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Encodes captured RGBA frames to PNG/JPEG on a background thread so the
+ * render thread only ever pays for the copy out of the pixel buffer. Frames
+ * arrive bottom row first, as GL reads them, and are flipped here.
+ */
+class FrameEncoder {
+    private static final String THREAD_NAME = "360FrameEncoder";
+
+    // Continuous capture skips frames rather than queueing more than this.
+    private static final int MAX_FRAMES_IN_FLIGHT = 2;
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(
+            new ThreadFactory() {
+                @Override
+                public Thread newThread(final Runnable r) {
+                    return new Thread(new Runnable() {
+                        @Override
+                        public void run() {
+                            Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                            r.run();
+                        }
+                    }, THREAD_NAME);
+                }
+            });
+
+    private final AtomicInteger framesInFlight = new AtomicInteger();
+
+    boolean isBusy() {
+        return framesInFlight.get() >= MAX_FRAMES_IN_FLIGHT;
+    }
+
+    /**
+     * Takes ownership of {@code rgba} and hands it back to {@code reader}
+     * once encoded.
+     */
+    void encode(
+            final ByteBuffer rgba,
+            final int width,
+            final int height,
+            final CaptureRequest request,
+            final AsyncFrameReader reader) {
+        framesInFlight.incrementAndGet();
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                Bitmap bitmap = null;
+                try {
+                    try {
+                        AsyncFrameReader.flipRows(rgba, width, height);
+                        bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+                        bitmap.copyPixelsFromBuffer(rgba);
+                    } finally {
+                        reader.recycle(rgba);
+                    }
+
+                    ByteArrayOutputStream out = new ByteArrayOutputStream();
+                    if (!bitmap.compress(request.format, request.quality, out)) {
+                        throw new RuntimeException("Could not encode frame as " + request.format);
+                    }
+                    request.callback.onFrameCaptured(out.toByteArray(), width, height);
+                } catch (RuntimeException e) {
+                    request.callback.onFrameCaptureFailed(e);
+                } finally {
+                    if (bitmap != null) {
+                        bitmap.recycle();
+                    }
+                    framesInFlight.decrementAndGet();
+                }
+            }
+        });
+    }
+
+    void shutdown() {
+        executor.shutdown();
+    }
+}
@@ -0,0 +1,370 @@
+/**
+ * Copyright 2016-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * Licensed under the Creative Commons CC BY-NC 4.0 Attribution-NonCommercial
+ * License (the "License"). You may obtain a copy of the License at
+ * https://creativecommons.org/licenses/by-nc/4.0/.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.oculus.sample.player;
+
+import android.media.MediaCodec;
+import android.media.MediaFormat;
+import android.os.Build;
+import android.os.Process;
+import android.util.Log;
+import android.view.Surface;
+
+import com.oculus.sample.rtp.AccessUnit;
+import com.oculus.sample.rtp.JitterBuffer;
+import com.oculus.sample.rtp.LoopbackRtpSender;
+import com.oculus.sample.rtp.RtpDepacketizer;
+import com.oculus.sample.rtp.RtpPacket;
+import com.oculus.sample.telemetry.LiveLatencyStats;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetSocketAddress;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Locale;
+
+/**
+ * Receives an H.264 or H.265 RTP stream on a UDP port and decodes it
+ * straight to a view's decode surface with MediaCodec, for live preview of
+ * a 360 camera.
+ *
+ * One thread receives: packets go through a jitter buffer that only waits
+ * briefly for reordered packets, are reassembled into pictures and queued
+ * to the decoder as soon as they are complete. The kernel socket buffer
+ * absorbs bursts while it waits for a decoder input buffer. A second thread
+ * releases every decoded frame to the surface the moment it is ready
+ * instead of scheduling it, so the render loop shows it at the next vsync.
+ *
+ * Decoding starts at the first keyframe that comes with its parameter
+ * sets. After a damaged picture, pictures are skipped until the next
+ * keyframe rather than decoded against a broken reference, so the sender
+ * should send keyframes at a regular interval.
+ */
+class LiveStreamDecoder {
+    private static final String TAG = LiveStreamDecoder.class.getSimpleName();
+    private static final String THREAD_NAME = "360LiveReceive";
+    private static final String OUTPUT_THREAD_NAME = "360LiveOutput";
+
+    private static final int SOCKET_BUFFER_BYTES = 4 * 1024 * 1024;
+    private static final int JITTER_BUFFER_PACKETS = 1024;
+    private static final long REORDER_WAIT_NANOS = 10 * 1000000L;
+    private static final int IDLE_RECEIVE_TIMEOUT_MS = 100;
+    private static final long INPUT_TIMEOUT_US = 5000;
+    private static final long OUTPUT_TIMEOUT_US = 10000;
+    private static final int LATENCY_SAMPLES = 256;
+    // MediaFormat.KEY_LOW_LATENCY, newer than the SDK this compiles against.
+    private static final String KEY_LOW_LATENCY = "low-latency";
+    private static final int PRIORITY_REALTIME = 0;
+
+    private final int port;
+    private final String mime;
+    private final int width;
+    private final int height;
+    private final Surface surface;
+    private final boolean localSenderClock;
+
+    private final LiveLatencyStats latencyStats = new LiveLatencyStats(LATENCY_SAMPLES);
+    private final JitterBuffer jitterBuffer =
+            new JitterBuffer(JITTER_BUFFER_PACKETS, REORDER_WAIT_NANOS);
+    private final RtpDepacketizer depacketizer;
+    private final ArrayDeque<RtpPacket> packetPool = new ArrayDeque<>();
+    private final MediaCodec.BufferInfo outputInfo = new MediaCodec.BufferInfo();
+
+    private volatile boolean running;
+    private Thread thread;
+    private DatagramSocket socket;
+
+    // Receive thread only.
+    private MediaCodec codec;
+    private Thread outputThread;
+    private boolean waitingForKeyframe = true;
+    private long lastPresentationUs = -1;
+    private volatile long picturesQueued;
+    private volatile long picturesSkipped;
+    private volatile long framesReleased;
+
+    /**
+     * @param width largest expected picture width, for the decoder to size
+     *              its buffers before the stream tells it the real one
+     * @param localSenderClock whether the sender timestamps pictures with
+     *                         this device's clock, as
+     *                         {@link LoopbackRtpSender} does, so network
+     *                         latency can be measured
+     */
+    LiveStreamDecoder(
+            int port,
+            String mime,
+            int width,
+            int height,
+            Surface surface,
+            boolean localSenderClock) {
+        this.port = port;
+        this.mime = mime;
+        this.width = width;
+        this.height = height;
+        this.surface = surface;
+        this.localSenderClock = localSenderClock;
+        depacketizer = new RtpDepacketizer(mime, new RtpDepacketizer.Listener() {
+            @Override
+            public void onAccessUnit(AccessUnit unit) {
+                queueAccessUnit(unit);
+            }
+        });
+    }
+
+    LiveLatencyStats getLatencyStats() {
+        return latencyStats;
+    }
+
+    /**
+     * Binds the port and starts receiving.
+     */
+    void start() throws SocketException {
+        socket = new DatagramSocket(null);
+        socket.setReuseAddress(true);
+        socket.setReceiveBufferSize(SOCKET_BUFFER_BYTES);
+        socket.bind(new InetSocketAddress(port));
+
+        running = true;
+        thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                Process.setThreadPriority(Process.THREAD_PRIORITY_URGENT_DISPLAY);
+                try {
+                    receiveLoop();
+                } catch (IOException | RuntimeException e) {
+                    if (running) {
+                        Log.e(TAG, "Live stream on port " + port + " failed", e);
+                    }
+                } finally {
+                    running = false;
+                    releaseCodec();
+                }
+            }
+        }, THREAD_NAME);
+        thread.start();
+        Log.i(TAG, "Receiving " + mime + " RTP on port " + port);
+    }
+
+    /**
+     * Stops receiving and releases the decoder before returning, so the
+     * decode surface can be destroyed.
+     */
+    void release() {
+        running = false;
+        if (socket != null) {
+            // Unblocks receive().
+            socket.close();
+        }
+        if (thread != null) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            thread = null;
+        }
+    }
+
+    /**
+     * Packet and picture counters plus latency stages, as JSON.
+     */
+    String getStatsJson() {
+        // Counters of the jitter buffer and depacketizer are read racily;
+        // they only ever grow, so at worst a value is slightly stale.
+        return String.format(Locale.US,
+                "{\"packetsReceived\":%d,\"packetsLost\":%d,\"packetsLate\":%d,"
+                        + "\"packetsReordered\":%d,\"pictures\":%d,\"picturesDamaged\":%d,"
+                        + "\"picturesQueued\":%d,\"picturesSkipped\":%d,\"framesReleased\":%d,"
+                        + "\"latency\":%s}",
+                jitterBuffer.getPacketsReceived(),
+                jitterBuffer.getPacketsLost(),
+                jitterBuffer.getPacketsLate(),
+                jitterBuffer.getPacketsReordered(),
+                depacketizer.getAccessUnits(),
+                depacketizer.getDamagedAccessUnits(),
+                picturesQueued,
+                picturesSkipped,
+                framesReleased,
+                latencyStats.toJson());
+    }
+
+    private void receiveLoop() throws IOException {
+        DatagramPacket datagram = new DatagramPacket(new byte[0], 0);
+        while (running) {
+            RtpPacket packet = packetPool.isEmpty() ? new RtpPacket() : packetPool.pop();
+            datagram.setData(packet.buffer);
+            socket.setSoTimeout(getReceiveTimeoutMs());
+            try {
+                socket.receive(datagram);
+                if (!packet.parse(datagram.getLength(), System.nanoTime())
+                        || !jitterBuffer.add(packet)) {
+                    packetPool.push(packet);
+                }
+            } catch (SocketTimeoutException e) {
+                packetPool.push(packet);
+            }
+
+            RtpPacket ready;
+            while ((ready = jitterBuffer.poll(System.nanoTime())) != null) {
+                depacketizer.push(ready);
+                packetPool.push(ready);
+            }
+        }
+    }
+
+    /**
+     * Short while a jitter buffer gap is pending, so giving it up does not
+     * wait for the next packet.
+     */
+    private int getReceiveTimeoutMs() {
+        long deadlineNanos = jitterBuffer.getDeadlineNanos();
+        if (deadlineNanos < 0) {
+            return IDLE_RECEIVE_TIMEOUT_MS;
+        }
+        long remainingMs = (deadlineNanos - System.nanoTime()) / 1000000L;
+        return (int) Math.max(1, Math.min(IDLE_RECEIVE_TIMEOUT_MS, remainingMs));
+    }
+
+    private void queueAccessUnit(AccessUnit unit) {
+        long completeNanos = System.nanoTime();
+        if (unit.damaged) {
+            waitingForKeyframe = true;
+        }
+        if (waitingForKeyframe && !(unit.keyframe && !unit.damaged)) {
+            picturesSkipped++;
+            return;
+        }
+        if (codec == null) {
+            if (!unit.hasParameterSets) {
+                picturesSkipped++;
+                return;
+            }
+            try {
+                createCodec(unit);
+            } catch (IOException e) {
+                throw new IllegalStateException("Cannot create " + mime + " decoder", e);
+            }
+        }
+
+        int index = codec.dequeueInputBuffer(INPUT_TIMEOUT_US);
+        if (index < 0) {
+            // The decoder is behind; dropping a picture breaks the
+            // references of the ones after it.
+            picturesSkipped++;
+            waitingForKeyframe = true;
+            return;
+        }
+
+        ByteBuffer input = Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP
+                ? codec.getInputBuffer(index)
+                : codec.getInputBuffers()[index];
+        input.clear();
+        if (input.remaining() < unit.size) {
+            // Input buffers are sized from the stream's resolution; a picture
+            // that does not fit is skipped like one the decoder had no room for.
+            Log.w(TAG, "Skipping " + unit.size + " byte picture, input buffer holds "
+                    + input.remaining());
+            // Handed back empty so the decoder does not run out of buffers.
+            codec.queueInputBuffer(index, 0, 0, lastPresentationUs, 0);
+            picturesSkipped++;
+            waitingForKeyframe = true;
+            return;
+        }
+        waitingForKeyframe = false;
+        input.put(unit.data, 0, unit.size);
+
+        // The arrival time doubles as the key the frame is tracked by up to
+        // the render thread, where it comes back as the SurfaceTexture
+        // timestamp.
+        long presentationUs = Math.max(unit.firstPacketNanos / 1000, lastPresentationUs + 1);
+        lastPresentationUs = presentationUs;
+        long captureNanos = localSenderClock
+                ? LoopbackRtpSender.toLocalNanos(unit.timestamp, unit.firstPacketNanos)
+                : -1;
+        latencyStats.onAccessUnit(
+                presentationUs, captureNanos, unit.firstPacketNanos, completeNanos);
+
+        codec.queueInputBuffer(index, 0, unit.size, presentationUs,
+                unit.keyframe ? MediaCodec.BUFFER_FLAG_KEY_FRAME : 0);
+        latencyStats.onQueued(presentationUs, System.nanoTime());
+        picturesQueued++;
+    }
+
+    private void releaseOutput(MediaCodec decoder) {
+        Process.setThreadPriority(Process.THREAD_PRIORITY_URGENT_DISPLAY);
+        while (running) {
+            int index = decoder.dequeueOutputBuffer(outputInfo, OUTPUT_TIMEOUT_US);
+            if (index >= 0) {
+                latencyStats.onReleased(outputInfo.presentationTimeUs, System.nanoTime());
+                decoder.releaseOutputBuffer(index, true);
+                framesReleased++;
+            } else if (index == MediaCodec.INFO_OUTPUT_FORMAT_CHANGED) {
+                Log.i(TAG, "Live stream format " + decoder.getOutputFormat());
+            }
+        }
+    }
+
+    /**
+     * Creates the decoder for the stream's first keyframe. Its parameter
+     * sets are queued in band with it rather than as codec specific data.
+     */
+    private void createCodec(AccessUnit keyframe) throws IOException {
+        MediaFormat format = MediaFormat.createVideoFormat(mime, width, height);
+        format.setInteger(MediaFormat.KEY_MAX_INPUT_SIZE, Math.max(width * height, keyframe.size));
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+            format.setInteger(MediaFormat.KEY_PRIORITY, PRIORITY_REALTIME);
+        }
+        // Codecs ignore keys they do not know, so no version check is needed.
+        format.setInteger(KEY_LOW_LATENCY, 1);
+
+        final MediaCodec decoder = MediaCodec.createDecoderByType(mime);
+        decoder.configure(format, surface, null, 0);
+        decoder.start();
+        codec = decoder;
+
+        outputThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    releaseOutput(decoder);
+                } catch (IllegalStateException e) {
+                    Log.e(TAG, "Live stream decoder failed", e);
+                }
+            }
+        }, OUTPUT_THREAD_NAME);
+        outputThread.start();
+    }
+
+    private void releaseCodec() {
+        if (outputThread != null) {
+            try {
+                outputThread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            outputThread = null;
+        }
+        if (codec != null) {
+            codec.stop();
+            codec.release();
+            codec = null;
+        }
+    }
+}
@@ -0,0 +1,60 @@
+/**
+ * Copyright 2016-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * Licensed under the Creative Commons CC BY-NC 4.0 Attribution-NonCommercial
+ * License (the "License"). You may obtain a copy of the License at
+ * https://creativecommons.org/licenses/by-nc/4.0/.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.oculus.sample.player;
+
+/**
+ * Video position estimate that can be read every frame without a binder
+ * call into MediaPlayer. The player anchors it with getCurrentPosition() a
+ * few times per second and readers extrapolate from the monotonic clock.
+ */
+class PlaybackClock {
+    private static class Anchor {
+        final long positionMs;
+        final long anchorNanos;
+        final boolean playing;
+        final long durationMs;
+
+        Anchor(long positionMs, long anchorNanos, boolean playing, long durationMs) {
+            this.positionMs = positionMs;
+            this.anchorNanos = anchorNanos;
+            this.playing = playing;
+            this.durationMs = durationMs;
+        }
+    }
+
+    private volatile Anchor anchor = new Anchor(0, 0, false, 0);
+
+    /**
+     * @param durationMs used to wrap the estimate when looping, 0 if unknown
+     */
+    void update(long positionMs, long nowNanos, boolean playing, long durationMs) {
+        anchor = new Anchor(positionMs, nowNanos, playing, durationMs);
+    }
+
+    boolean isPlaying() {
+        return anchor.playing;
+    }
+
+    long getPositionMs(long nowNanos) {
+        Anchor a = anchor;
+        if (!a.playing) {
+            return a.positionMs;
+        }
+
+        long positionMs = a.positionMs + (nowNanos - a.anchorNanos) / 1000000L;
+        return a.durationMs > 0 ? positionMs % a.durationMs : positionMs;
+    }
+}
@@ -0,0 +1,1272 @@
+/**
+ * Copyright 2016-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * Licensed under the Creative Commons CC BY-NC 4.0 Attribution-NonCommercial
+ * License (the "License"). You may obtain a copy of the License at
+ * https://creativecommons.org/licenses/by-nc/4.0/.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.oculus.sample.player;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.SurfaceTexture;
+import android.opengl.EGL14;
+import android.opengl.GLES20;
+import android.opengl.GLUtils;
+import android.os.Debug;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Message;
+import android.os.Process;
+import android.util.Log;
+import android.view.Choreographer;
+import android.view.Surface;
+import android.view.WindowManager;
+
+import com.oculus.sample.gles.AsyncFrameReader;
+import com.oculus.sample.gles.BlitRenderer;
+import com.oculus.sample.gles.EGLRenderTarget;
+import com.oculus.sample.gles.FramebufferTarget;
+import com.oculus.sample.gles.GLHelpers;
+import com.oculus.sample.gles.GpuTimer;
+import com.oculus.sample.gles.HotspotLayer;
+import com.oculus.sample.gles.HotspotRenderer;
+import com.oculus.sample.gles.MipmapPolicy;
+import com.oculus.sample.gles.MipmappedTexture;
+import com.oculus.sample.gles.ResolutionScaleController;
+import com.oculus.sample.gles.SphericalSceneRenderer;
+import com.oculus.sample.projection.DualFisheyeProjection;
+import com.oculus.sample.projection.SphericalCamera;
+import com.oculus.sample.renderloop.AvSyncPolicy;
+import com.oculus.sample.renderloop.RenderLoop;
+import com.oculus.sample.telemetry.FrameTimeStats;
+import com.oculus.sample.telemetry.JankWatchdog;
+import com.oculus.sample.telemetry.LiveLatencyStats;
+import com.oculus.sample.telemetry.ViewportRecorder;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+/**
+ * RenderThread is shared by every SphericalVideoPlayer in the process. It owns
+ * one GL context, one shader program and one sphere mesh, and draws each
+ * attached RenderView into its own window surface.
+ *
+ * When a player's SurfaceTexture becomes available the thread creates a
+ * window surface for it and an external texture for the video decoder to
+ * output to, then attaches the view to a {@link RenderLoop}, which asks for
+ * vsync updates from the Choreographer. On every vsync each view that has a
+ * new video frame or a pending drag event is redrawn with its own camera.
+ * A view can also be mirrored into a second window, e.g. on another
+ * display, which is drawn from the same decode texture right after it.
+ *
+ * Only GL work runs here, at display priority. Drags update each view's
+ * pose directly from the UI thread and at most one wakeup per view is
+ * queued. Vsync and decoded frame callbacks are handled without another trip
+ * through the message queue, and player callbacks that may block, like
+ * releasing a MediaPlayer, run on a separate control thread.
+ *
+ * A {@link JankWatchdog} times every message and every stage of each frame,
+ * and records the likely cause of frames that end later than one refresh
+ * period after their vsync.
+ */
+class RenderThread extends HandlerThread {
+    private static final String TAG = RenderThread.class.getSimpleName();
+    private static final String RENDER_THREAD_NAME = "360RenderThread";
+    private static final String CONTROL_THREAD_NAME = "360PlayerControl";
+
+    static final int MSG_SURFACE_AVAILABLE = 0x1;
+    static final int MSG_SURFACE_DESTROYED = 0x4;
+    static final int MSG_SHUTDOWN = 0x6;
+    static final int MSG_CAPTURE = 0x7;
+    static final int MSG_STOP_CAPTURE = 0x8;
+    static final int MSG_INVALIDATE = 0x9;
+    static final int MSG_SHOW_PREVIEW = 0xa;
+    static final int MSG_HIDE_PREVIEW = 0xb;
+    static final int MSG_SET_HOTSPOTS = 0xc;
+    static final int MSG_SET_MIRROR = 0xd;
+    static final int MSG_SURFACE_SIZE_CHANGED = 0xe;
+    static final int MSG_RESET_AV_SYNC = 0xf;
+
+    // Frame stages reported to the jank watchdog.
+    private static final String STAGE_POLL = "poll";
+    private static final String STAGE_LATCH = "latch";
+    private static final String STAGE_MIPMAP = "mipmap";
+    private static final String STAGE_DRAW = "draw";
+    private static final String STAGE_CAPTURE = "capture";
+    private static final String STAGE_SWAP = "swap";
+    private static final String STAGE_TELEMETRY = "telemetry";
+    private static final String STAGE_MIRROR = "mirror";
+
+    private static final int JANK_LOG_CAPACITY = 64;
+    private static final long STATS_LOG_INTERVAL_NANOS = 5000000000L;
+
+    // Bitmaps are stored top row first, like decoded video buffers, whose
+    // SurfaceTexture transform flips them vertically.
+    private static final float[] PREVIEW_TEXTURE_MATRIX = {
+            1, 0, 0, 0,
+            0, -1, 0, 0,
+            0, 0, 1, 0,
+            0, 1, 0, 1,
+    };
+
+    private static RenderThread sharedInstance;
+    private static int sharedRefCount;
+    private static int threadPriority = Process.THREAD_PRIORITY_DISPLAY;
+
+    private static class SurfaceHolder {
+        final RenderView view;
+        final SurfaceTexture surfaceTexture;
+
+        SurfaceHolder(RenderView view, SurfaceTexture surfaceTexture) {
+            this.view = view;
+            this.surfaceTexture = surfaceTexture;
+        }
+    }
+
+    private final Context context;
+
+    private Handler handler;
+    private final HandlerThread controlThread;
+    private Handler controlHandler;
+    private final JankWatchdog jankWatchdog;
+    private final long refreshPeriodNanos;
+    private long vsyncNanos;
+    private long vsyncCount;
+    private Choreographer.FrameCallback frameCallback = new ChoreographerCallback();
+
+    private EGLRenderTarget eglRenderTarget;
+    private SphericalSceneRenderer renderer;
+    private BlitRenderer blitRenderer;
+    private HotspotRenderer hotspotRenderer;
+    private int maxTextureSize;
+    private boolean gpuTimerSupported;
+    private FrameEncoder frameEncoder;
+
+    private final RenderLoop renderLoop;
+    private boolean readbacksPending;
+    private int framesDrawnThisVsync;
+
+    private final RenderLoop.Observer loopObserver = new RenderLoop.Observer() {
+        @Override
+        public void onPresented(
+                RenderLoop.Target target,
+                long presentNanos,
+                long frameLatencyNanos,
+                long inputLatencyNanos) {
+            if (inputLatencyNanos >= 0) {
+                statsInputCount++;
+                statsTotalInputLatencyNanos += inputLatencyNanos;
+                statsMaxInputLatencyNanos = Math.max(statsMaxInputLatencyNanos, inputLatencyNanos);
+            }
+        }
+
+        @Override
+        public void onVsyncHandled(long frameTimeNanos, int targetsDrawn) {
+        }
+    };
+
+    private long statsWindowStartNanos;
+    private int statsVsyncCount;
+    private int statsFramesDrawn;
+    private long statsTotalWorkNanos;
+    private long statsMaxWorkNanos;
+    private int statsInputCount;
+    private long statsTotalInputLatencyNanos;
+    private long statsMaxInputLatencyNanos;
+    private int statsJankCount;
+
+    private class ChoreographerCallback implements Choreographer.FrameCallback {
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            // Already on the render thread's looper, so draw right away
+            // instead of queueing behind other messages once more.
+            onVSync(frameTimeNanos);
+        }
+    }
+
+    private final RenderLoop.Host loopHost = new RenderLoop.Host() {
+        @Override
+        public void requestVsync() {
+            Choreographer.getInstance().postFrameCallback(frameCallback);
+        }
+
+        @Override
+        public void prepare(RenderLoop.Target target) {
+            jankWatchdog.enterStage(STAGE_POLL);
+            RenderView view = (RenderView) target;
+            // A frame swapped during this vsync is scanned out on the next one.
+            view.onVsync(vsyncNanos + refreshPeriodNanos);
+            pollCapturedFrames(view);
+        }
+
+        @Override
+        public void draw(RenderLoop.Target target, boolean latchFrame) {
+            drawView((RenderView) target, latchFrame);
+            framesDrawnThisVsync++;
+        }
+
+        @Override
+        public boolean hasPendingWork() {
+            return readbacksPending;
+        }
+    };
+
+    /**
+     * Returns the process-wide render thread, starting it if needed. Every
+     * call must be balanced by a call to {@link #release(RenderThread)}.
+     */
+    static synchronized RenderThread acquire(Context context) {
+        if (sharedInstance == null) {
+            sharedInstance = new RenderThread(context.getApplicationContext());
+            sharedInstance.start();
+        }
+        sharedRefCount++;
+        return sharedInstance;
+    }
+
+    /**
+     * Sets the scheduling priority of the render thread, applied right away
+     * if it is running and to any thread started later. Defaults to
+     * {@link Process#THREAD_PRIORITY_DISPLAY}.
+     */
+    static synchronized void setThreadPriority(int priority) {
+        threadPriority = priority;
+        if (sharedInstance != null && sharedInstance.getThreadId() != -1) {
+            Process.setThreadPriority(sharedInstance.getThreadId(), priority);
+        }
+    }
+
+    static synchronized void release(RenderThread renderThread) {
+        if (renderThread != sharedInstance) {
+            return;
+        }
+
+        sharedRefCount--;
+        if (sharedRefCount <= 0) {
+            // Queued behind any pending MSG_SURFACE_DESTROYED so views are torn down first.
+            sharedInstance.handler.sendEmptyMessage(MSG_SHUTDOWN);
+            sharedInstance = null;
+            sharedRefCount = 0;
+        }
+    }
+
+    private RenderThread(Context context) {
+        super(RENDER_THREAD_NAME, threadPriority);
+        this.context = context;
+        controlThread = new HandlerThread(CONTROL_THREAD_NAME);
+        renderLoop = new RenderLoop(loopHost, RenderLoop.SYSTEM_CLOCK);
+        renderLoop.setObserver(loopObserver);
+
+        WindowManager windowManager =
+                (WindowManager) context.getSystemService(Context.WINDOW_SERVICE);
+        refreshPeriodNanos =
+                (long) (1e9 / windowManager.getDefaultDisplay().getRefreshRate());
+        jankWatchdog = new JankWatchdog(
+                refreshPeriodNanos, JANK_LOG_CAPACITY, RenderLoop.SYSTEM_CLOCK);
+    }
+
+    @Override
+    protected void onLooperPrepared() {
+        // CPU affinity cannot be set from Java; the tid allows pinning the
+        // thread externally, see benchmark/run-playback-benchmark.sh.
+        Log.i(TAG, "Render thread tid=" + Process.myTid()
+                + " priority=" + Process.getThreadPriority(Process.myTid()));
+    }
+
+    @Override
+    public synchronized void start() {
+        super.start();
+        controlThread.start();
+        controlHandler = new Handler(controlThread.getLooper());
+
+        handler = new Handler(getLooper()) {
+            @Override
+            public void handleMessage(Message msg) {
+                jankWatchdog.onMessageStart(messageName(msg.what));
+                switch (msg.what) {
+                    case MSG_SURFACE_AVAILABLE:
+                        SurfaceHolder holder = (SurfaceHolder) msg.obj;
+                        onSurfaceAvailable(
+                                holder.view, holder.surfaceTexture, msg.arg1, msg.arg2);
+                        break;
+                    case MSG_SURFACE_DESTROYED:
+                        onSurfaceDestroyed((RenderView) msg.obj);
+                        break;
+                    case MSG_SHUTDOWN:
+                        onShutdown();
+                        break;
+                    case MSG_CAPTURE:
+                        onCapture((CaptureRequest) msg.obj);
+                        break;
+                    case MSG_STOP_CAPTURE:
+                        onStopCapture((RenderView) msg.obj);
+                        break;
+                    case MSG_INVALIDATE:
+                        onInvalidate((RenderView) msg.obj);
+                        break;
+                    case MSG_SHOW_PREVIEW:
+                        onShowPreview((RenderView) msg.obj);
+                        break;
+                    case MSG_HIDE_PREVIEW:
+                        onHidePreview((RenderView) msg.obj);
+                        break;
+                    case MSG_SET_HOTSPOTS:
+                        onSetHotspots((RenderView) msg.obj);
+                        break;
+                    case MSG_SET_MIRROR:
+                        SurfaceHolder mirror = (SurfaceHolder) msg.obj;
+                        onSetMirror(mirror.view, mirror.surfaceTexture, msg.arg1, msg.arg2);
+                        break;
+                    case MSG_SURFACE_SIZE_CHANGED:
+                        onSurfaceSizeChanged((RenderView) msg.obj, msg.arg1, msg.arg2);
+                        break;
+                    case MSG_RESET_AV_SYNC:
+                        onResetAvSync((RenderView) msg.obj);
+                        break;
+                }
+                jankWatchdog.onMessageEnd();
+            }
+        };
+    }
+
+    private static String messageName(int what) {
+        switch (what) {
+            case MSG_SURFACE_AVAILABLE:
+                return "surface_available";
+            case MSG_SURFACE_DESTROYED:
+                return "surface_destroyed";
+            case MSG_SHUTDOWN:
+                return "shutdown";
+            case MSG_CAPTURE:
+                return "capture";
+            case MSG_STOP_CAPTURE:
+                return "stop_capture";
+            case MSG_INVALIDATE:
+                return "invalidate";
+            case MSG_SHOW_PREVIEW:
+                return "show_preview";
+            case MSG_HIDE_PREVIEW:
+                return "hide_preview";
+            case MSG_SET_HOTSPOTS:
+                return "set_hotspots";
+            case MSG_SET_MIRROR:
+                return "set_mirror";
+            case MSG_SURFACE_SIZE_CHANGED:
+                return "surface_size_changed";
+            case MSG_RESET_AV_SYNC:
+                return "reset_av_sync";
+            default:
+                return "unknown";
+        }
+    }
+
+    /**
+     * Runs MediaPlayer lifecycle work off the UI and render threads.
+     */
+    Handler getControlHandler() {
+        return controlHandler;
+    }
+
+    long getRefreshPeriodNanos() {
+        return refreshPeriodNanos;
+    }
+
+    /**
+     * Late frames seen so far by the watchdog, for diagnostics. Safe to call
+     * from any thread.
+     */
+    JankWatchdog getJankWatchdog() {
+        return jankWatchdog;
+    }
+
+    List<JankWatchdog.JankRecord> getJankLog() {
+        return jankWatchdog.getRecords();
+    }
+
+    void attachView(RenderView view, SurfaceTexture surfaceTexture, int width, int height) {
+        Message msg = Message.obtain();
+        msg.what = MSG_SURFACE_AVAILABLE;
+        msg.obj = new SurfaceHolder(view, surfaceTexture);
+        msg.arg1 = width;
+        msg.arg2 = height;
+        handler.sendMessage(msg);
+    }
+
+    void resizeView(RenderView view, int width, int height) {
+        Message msg = Message.obtain();
+        msg.what = MSG_SURFACE_SIZE_CHANGED;
+        msg.obj = view;
+        msg.arg1 = width;
+        msg.arg2 = height;
+        handler.sendMessage(msg);
+    }
+
+    void detachView(RenderView view) {
+        Message msg = Message.obtain();
+        msg.what = MSG_SURFACE_DESTROYED;
+        msg.obj = view;
+        handler.sendMessage(msg);
+    }
+
+    /**
+     * Wakes the render thread to redraw the view, e.g. after its pose was
+     * changed directly. Calls before the thread has woken up are coalesced.
+     */
+    void invalidate(RenderView view) {
+        if (!view.invalidatePending.compareAndSet(false, true)) {
+            return;
+        }
+
+        Message msg = Message.obtain();
+        msg.what = MSG_INVALIDATE;
+        msg.obj = view;
+        handler.sendMessage(msg);
+    }
+
+    /**
+     * Shows {@code preview}, an equirectangular image, on the view's sphere
+     * instead of the video until {@link #hidePreview(RenderView)}. The
+     * bitmap is only read, so it may stay cached elsewhere; safe to call
+     * from any thread.
+     */
+    void showPreview(RenderView view, Bitmap preview) {
+        if (view.pendingPreview.getAndSet(preview) != null) {
+            // The render thread has not taken the previous one yet.
+            return;
+        }
+
+        Message msg = Message.obtain();
+        msg.what = MSG_SHOW_PREVIEW;
+        msg.obj = view;
+        handler.sendMessage(msg);
+    }
+
+    /**
+     * Goes back to the video once the decoder outputs its next frame.
+     */
+    void hidePreview(RenderView view) {
+        Message msg = Message.obtain();
+        msg.what = MSG_HIDE_PREVIEW;
+        msg.obj = view;
+        handler.sendMessage(msg);
+    }
+
+    /**
+     * Forgets the frame history AV sync has built up, for when the playback
+     * clock jumps.
+     */
+    void resetAvSync(RenderView view) {
+        Message msg = Message.obtain();
+        msg.what = MSG_RESET_AV_SYNC;
+        msg.obj = view;
+        handler.sendMessage(msg);
+    }
+
+    /**
+     * Replaces the view's hotspot overlay with {@code layer}, which is
+     * uploaded and from then on owned by the render thread. Safe to call
+     * from any thread.
+     */
+    void setHotspots(RenderView view, HotspotLayer layer) {
+        if (view.pendingHotspotLayer.getAndSet(layer) != null) {
+            // Not uploaded yet, so the replaced layer holds no GL objects.
+            return;
+        }
+
+        Message msg = Message.obtain();
+        msg.what = MSG_SET_HOTSPOTS;
+        msg.obj = view;
+        handler.sendMessage(msg);
+    }
+
+    /**
+     * Draws every frame of the view into {@code surfaceTexture} too, or
+     * stops when it is null. Passing the mirrored surface again only
+     * changes its size. The surface is released once it stops being mirrored.
+     */
+    void setMirror(RenderView view, SurfaceTexture surfaceTexture, int width, int height) {
+        Message msg = Message.obtain();
+        msg.what = MSG_SET_MIRROR;
+        msg.obj = new SurfaceHolder(view, surfaceTexture);
+        msg.arg1 = width;
+        msg.arg2 = height;
+        handler.sendMessage(msg);
+    }
+
+    void capture(CaptureRequest request) {
+        Message msg = Message.obtain();
+        msg.what = MSG_CAPTURE;
+        msg.obj = request;
+        handler.sendMessage(msg);
+    }
+
+    void stopContinuousCapture(RenderView view) {
+        Message msg = Message.obtain();
+        msg.what = MSG_STOP_CAPTURE;
+        msg.obj = view;
+        handler.sendMessage(msg);
+    }
+
+    private Surface createVideoDecodeSurface(final RenderView view) {
+        if (eglRenderTarget == null || !eglRenderTarget.hasValidContext()) {
+            throw new IllegalStateException(
+                    "Cannot get video decode surface without GL context");
+        }
+
+        view.videoDecodeTextureId = GLHelpers.generateExternalTexture();
+        view.videoSurfaceTexture = new SurfaceTexture(view.videoDecodeTextureId);
+
+        // The SurfaceTexture was created here, so its listener is called on
+        // this thread's looper and may use the render loop directly.
+        view.videoSurfaceTexture.setOnFrameAvailableListener(
+                new SurfaceTexture.OnFrameAvailableListener() {
+                    @Override
+                    public void onFrameAvailable(SurfaceTexture surfaceTexture) {
+                        view.framesDecoded++;
+                        renderLoop.onFrameAvailable(view);
+                    }
+                });
+        return new Surface(view.videoSurfaceTexture);
+    }
+
+    private void onSurfaceAvailable(
+            RenderView view, SurfaceTexture surfaceTexture, int width, int height) {
+        Log.d(TAG, "onSurfaceAvailable w: " + width + " h: " + height);
+
+        if (eglRenderTarget == null) {
+            eglRenderTarget = new EGLRenderTarget();
+        }
+
+        view.windowSurface = eglRenderTarget.createRenderSurface(surfaceTexture);
+        view.setSize(width, height);
+        view.setAvSyncPolicy(new AvSyncPolicy(refreshPeriodNanos));
+
+        if (renderer == null) {
+            GLES20.glClearColor(1.0f, 0.f, 0.f, 1.f);
+            renderer = new SphericalSceneRenderer(context);
+            gpuTimerSupported = GpuTimer.isSupported(eglRenderTarget.getGlVersion());
+        }
+
+        final Surface decodeSurface = createVideoDecodeSurface(view);
+        renderLoop.addTarget(view);
+
+        final RenderView.Callback callback = view.callback;
+        controlHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                callback.onDecodeSurfaceAvailable(decodeSurface);
+            }
+        });
+    }
+
+    private void onSurfaceSizeChanged(RenderView view, int width, int height) {
+        if (!renderLoop.isAttached(view)) {
+            return;
+        }
+
+        Log.d(TAG, "onSurfaceSizeChanged w: " + width + " h: " + height);
+        // The offscreen target follows on the next scaled frame.
+        view.setSize(width, height);
+        renderLoop.invalidate(view);
+    }
+
+    private void onVSync(long frameTimeNanos) {
+        long startNanos = System.nanoTime();
+        readbacksPending = false;
+        framesDrawnThisVsync = 0;
+        vsyncNanos = frameTimeNanos;
+        vsyncCount++;
+
+        boolean watched = renderLoop.getTargetCount() > 0;
+        if (watched) {
+            jankWatchdog.onFrameStart(frameTimeNanos);
+        }
+
+        renderLoop.onVsync(frameTimeNanos);
+
+        if (watched) {
+            jankWatchdog.onFrameEnd();
+            recordFrameStats(startNanos, System.nanoTime(), framesDrawnThisVsync);
+        }
+    }
+
+    private void drawView(RenderView view, boolean latchFrame) {
+        long frameStartNanos = System.nanoTime();
+
+        jankWatchdog.enterStage(STAGE_LATCH);
+        eglRenderTarget.makeCurrent(view.windowSurface);
+        if (latchFrame) {
+            // The loop latches exactly one frame per onFrameAvailable so that the
+            // internal queue buffers will be freed.
+            view.videoSurfaceTexture.updateTexImage();
+            // MediaPlayer stamps each frame with when its audio clock reaches it.
+            view.syncLatchedFrame(view.videoSurfaceTexture.getTimestamp());
+            view.videoSurfaceTexture.getTransformMatrix(view.videoTextureMatrix);
+            view.mipmappedFrameCurrent = false;
+
+            if (view.hidePreviewOnNextFrame) {
+                view.previewVisible = false;
+                view.hidePreviewOnNextFrame = false;
+            }
+        }
+
+        if (!view.lateLatchEnabled) {
+            view.latchPose();
+        }
+        view.camera.setFovY(view.fovY);
+
+        jankWatchdog.enterStage(STAGE_MIPMAP);
+        updateMipmappedFrame(view);
+
+        jankWatchdog.enterStage(STAGE_DRAW);
+        if (view.dynamicResolutionEnabled) {
+            drawScaled(view);
+        } else {
+            releaseScaledTarget(view);
+            drawDirect(view);
+        }
+
+        jankWatchdog.enterStage(STAGE_CAPTURE);
+        captureFrameIfRequested(view);
+
+        jankWatchdog.enterStage(STAGE_SWAP);
+        eglRenderTarget.swapBuffers(view.windowSurface);
+
+        jankWatchdog.enterStage(STAGE_TELEMETRY);
+
+        long presentNanos = System.nanoTime();
+        view.framesPresented++;
+        view.frameWorkNanos += presentNanos - frameStartNanos;
+
+        FrameTimeStats frameTimeStats = view.frameTimeStats;
+        if (frameTimeStats != null) {
+            frameTimeStats.onFramePresented(presentNanos, presentNanos - frameStartNanos);
+        }
+
+        LiveLatencyStats liveLatencyStats = view.liveLatencyStats;
+        if (liveLatencyStats != null && latchFrame) {
+            // Live frames are timestamped with the key they are tracked by.
+            liveLatencyStats.onPresented(
+                    view.videoSurfaceTexture.getTimestamp() / 1000, presentNanos);
+        }
+
+        ViewportRecorder recorder = view.viewportRecorder;
+        if (recorder != null) {
+            recorder.record(
+                    (int) view.playbackClock.getPositionMs(System.nanoTime()),
+                    view.getLon(),
+                    view.getLat(),
+                    view.getFovY());
+        }
+
+        if (view.resolutionController != null) {
+            updateResolutionScale(view, presentNanos);
+        }
+
+        if (view.mirrorSurface != EGL14.EGL_NO_SURFACE) {
+            jankWatchdog.enterStage(STAGE_MIRROR);
+            drawMirror(view);
+        }
+    }
+
+    /**
+     * Feeds the resolution controller the GPU time of earlier frames where
+     * timer queries exist. Elsewhere it gets the present interval of frames
+     * drawn on back to back vsync callbacks: a callback that comes more than
+     * a refresh period after the previous one means the frame missed a vsync.
+     * CPU time spent issuing draw calls says nothing about GPU load, so it
+     * is not used.
+     */
+    private void updateResolutionScale(RenderView view, long presentNanos) {
+        ResolutionScaleController controller = view.resolutionController;
+        if (view.gpuTimer != null) {
+            long gpuNanos;
+            while ((gpuNanos = view.gpuTimer.poll()) >= 0) {
+                float scale = controller.getScale();
+                if (controller.onFrameTime(gpuNanos) != scale) {
+                    // The rest were drawn at the old scale.
+                    view.gpuTimer.discardPending();
+                }
+            }
+        } else if (view.lastPresentVsync == vsyncCount - 1) {
+            controller.onPresentInterval(presentNanos - view.lastPresentNanos);
+        }
+        view.lastPresentNanos = presentNanos;
+        view.lastPresentVsync = vsyncCount;
+    }
+
+    private void drawDirect(RenderView view) {
+        // Viewport is context state, so it has to be reset for every surface drawn.
+        GLES20.glViewport(0, 0, view.width, view.height);
+        drawSphere(view);
+        drawHotspots(view, view.camera);
+    }
+
+    private void drawSphere(RenderView view) {
+        if (view.lateLatchEnabled) {
+            // Sample input as late as possible: the MVP is built from this
+            // pose right before glDrawElements.
+            view.latchPose();
+        }
+        drawVideo(view, view.camera, view.mipmapPolicy.isActive());
+    }
+
+    /**
+     * Draws the view's current picture on the sphere as seen by
+     * {@code camera}, from the mipmapped copy of the frame if
+     * {@code mipmapped} and it is up to date.
+     */
+    private void drawVideo(RenderView view, SphericalCamera camera, boolean mipmapped) {
+        DualFisheyeProjection fisheyeProjection = view.fisheyeProjection;
+        if (fisheyeProjection != null) {
+            // Only video frames can be mapped, so the video stays up while scrubbing.
+            renderer.onDrawFisheye(
+                    view.videoDecodeTextureId,
+                    view.videoTextureMatrix,
+                    fisheyeProjection,
+                    camera.getModelMatrix(),
+                    camera.getViewMatrix(),
+                    camera.getProjectionMatrix());
+            return;
+        }
+
+        if (view.previewVisible) {
+            renderer.onDrawPreview(
+                    view.previewTextureId,
+                    PREVIEW_TEXTURE_MATRIX,
+                    camera.getModelMatrix(),
+                    camera.getViewMatrix(),
+                    camera.getProjectionMatrix());
+            return;
+        }
+
+        if (mipmapped && view.mipmappedFrameCurrent) {
+            // The copy keeps the buffer layout, so the frame's transform still applies.
+            renderer.onDrawPreview(
+                    view.mipmappedFrame.getTextureId(),
+                    view.videoTextureMatrix,
+                    camera.getModelMatrix(),
+                    camera.getViewMatrix(),
+                    camera.getProjectionMatrix());
+            return;
+        }
+
+        renderer.onDrawFrame(
+                view.videoDecodeTextureId,
+                view.videoTextureMatrix,
+                camera.getModelMatrix(),
+                camera.getViewMatrix(),
+                camera.getProjectionMatrix());
+    }
+
+    /**
+     * Renders the sphere into the lower-left region of an offscreen target
+     * sized by the view's resolution controller, then upscales that region
+     * to the window.
+     */
+    private void drawScaled(RenderView view) {
+        if (view.offscreenTarget != null && (view.offscreenTarget.getWidth() != view.width
+                || view.offscreenTarget.getHeight() != view.height)) {
+            // Resized; the scale picked so far still applies.
+            view.offscreenTarget.release();
+            view.offscreenTarget = null;
+        }
+        if (view.offscreenTarget == null) {
+            view.offscreenTarget = new FramebufferTarget(view.width, view.height);
+        }
+        if (view.resolutionController == null) {
+            view.resolutionController = new ResolutionScaleController(refreshPeriodNanos);
+            if (gpuTimerSupported) {
+                view.gpuTimer = new GpuTimer();
+            }
+        }
+        if (blitRenderer == null) {
+            blitRenderer = new BlitRenderer(context);
+        }
+
+        if (view.gpuTimer != null) {
+            view.gpuTimer.begin();
+        }
+
+        FramebufferTarget target = view.offscreenTarget;
+        float scale = view.resolutionController.getScale();
+        int scaledWidth = Math.max(1, Math.round(target.getWidth() * scale));
+        int scaledHeight = Math.max(1, Math.round(target.getHeight() * scale));
+
+        target.bind();
+        GLES20.glViewport(0, 0, scaledWidth, scaledHeight);
+        drawSphere(view);
+        target.unbind();
+
+        GLES20.glViewport(0, 0, view.width, view.height);
+        blitRenderer.draw(
+                target.getTextureId(),
+                (float) scaledWidth / target.getWidth(),
+                (float) scaledHeight / target.getHeight());
+        // Labels stay sharp at any render scale.
+        drawHotspots(view, view.camera);
+
+        if (view.gpuTimer != null) {
+            view.gpuTimer.end();
+        }
+    }
+
+    private void drawHotspots(RenderView view, SphericalCamera camera) {
+        if (view.hotspotLayer != null) {
+            hotspotRenderer.draw(
+                    view.hotspotLayer,
+                    camera.getViewMatrix(),
+                    camera.getProjectionMatrix());
+        }
+    }
+
+    /**
+     * Draws the frame just presented again into the view's mirror window
+     * with the same texture, mesh and program, at the mirror's size and
+     * through its own camera, which follows the primary one unless given an
+     * orientation of its own. Runs after the primary window is swapped, so
+     * it only delays the view's next frame, by the time of this draw.
+     */
+    private void drawMirror(RenderView view) {
+        long startNanos = System.nanoTime();
+        eglRenderTarget.makeCurrent(view.mirrorSurface);
+
+        SphericalCamera camera = view.mirrorCamera;
+        if (view.mirrorCameraEnabled) {
+            view.mirrorPose.latch(view.mirrorLonLat);
+            camera.setOrientation(view.mirrorLonLat[0], view.mirrorLonLat[1]);
+            camera.setFovY(view.mirrorFovY);
+        } else {
+            camera.setOrientation(view.camera.getLon(), view.camera.getLat());
+            camera.setFovY(view.camera.getFovY());
+        }
+        camera.update();
+
+        // The copy made for the primary window is only sampled where the
+        // mirror minifies the video too; it is smaller than the frame.
+        boolean mipmapped = view.mipmapPolicy.isActive()
+                && view.videoWidth > 0 && view.videoHeight > 0
+                && MipmapPolicy.minification(camera.getFovY(), view.mirrorHeight,
+                        view.videoWidth, view.videoHeight)
+                        >= MipmapPolicy.DEFAULT_DISABLE_MINIFICATION;
+
+        GLES20.glViewport(0, 0, view.mirrorWidth, view.mirrorHeight);
+        drawVideo(view, camera, mipmapped);
+        drawHotspots(view, camera);
+        eglRenderTarget.swapBuffers(view.mirrorSurface);
+
+        long workNanos = System.nanoTime() - startNanos;
+        // Counted as render work of the view, which renditions adapt to.
+        view.frameWorkNanos += workNanos;
+        view.mirrorDrawLatency.record(workNanos);
+    }
+
+    /**
+     * Copies the latched video frame into a mipmapped texture when the
+     * view's zoom minifies it enough to alias, at most once per decoded
+     * frame. At normal zoom nothing is copied.
+     */
+    private void updateMipmappedFrame(RenderView view) {
+        if (!view.mipmapEnabled) {
+            view.mipmapPolicy.reset();
+            releaseMipmappedFrame(view);
+            return;
+        }
+        int videoWidth = view.videoWidth;
+        int videoHeight = view.videoHeight;
+        if (view.fisheyeProjection != null || view.previewVisible
+                || videoWidth == 0 || videoHeight == 0) {
+            view.mipmapPolicy.reset();
+            return;
+        }
+
+        float scale = view.dynamicResolutionEnabled && view.resolutionController != null
+                ? view.resolutionController.getScale() : 1.f;
+        float minification = MipmapPolicy.minification(
+                view.camera.getFovY(), view.height * scale, videoWidth, videoHeight);
+        if (!view.mipmapPolicy.update(minification)) {
+            return;
+        }
+
+        if (maxTextureSize == 0) {
+            int[] size = new int[1];
+            GLES20.glGetIntegerv(GLES20.GL_MAX_TEXTURE_SIZE, size, 0);
+            maxTextureSize = size[0];
+        }
+        int width = MipmapPolicy.copySize(videoWidth, maxTextureSize);
+        int height = MipmapPolicy.copySize(videoHeight, maxTextureSize);
+        if (view.mipmappedFrame != null
+                && (view.mipmappedFrame.getWidth() != width
+                || view.mipmappedFrame.getHeight() != height)) {
+            releaseMipmappedFrame(view);
+        }
+        if (view.mipmappedFrame == null) {
+            view.mipmappedFrame = new MipmappedTexture(width, height);
+        }
+        if (view.mipmappedFrameCurrent) {
+            return;
+        }
+        if (blitRenderer == null) {
+            blitRenderer = new BlitRenderer(context);
+        }
+
+        // ES2 has no timer queries; submission time plus whatever the driver
+        // does synchronously for glGenerateMipmap.
+        long startNanos = System.nanoTime();
+        view.mipmappedFrame.bind();
+        blitRenderer.drawExternal(view.videoDecodeTextureId);
+        view.mipmappedFrame.unbindAndGenerateMipmaps();
+        view.mipmapCopyLatency.record(System.nanoTime() - startNanos);
+        view.mipmappedFrameCurrent = true;
+    }
+
+    private void releaseMipmappedFrame(RenderView view) {
+        if (view.mipmappedFrame != null) {
+            view.mipmappedFrame.release();
+            view.mipmappedFrame = null;
+        }
+        view.mipmappedFrameCurrent = false;
+    }
+
+    private void releaseScaledTarget(RenderView view) {
+        if (view.offscreenTarget != null) {
+            view.offscreenTarget.release();
+            view.offscreenTarget = null;
+            view.resolutionController = null;
+        }
+        if (view.gpuTimer != null) {
+            view.gpuTimer.release();
+            view.gpuTimer = null;
+        }
+    }
+
+    private final AsyncFrameReader.Listener frameReadListener = new AsyncFrameReader.Listener() {
+        @Override
+        public void onFrameRead(ByteBuffer rgba, int width, int height, Object tag) {
+            CaptureRequest request = (CaptureRequest) tag;
+            frameEncoder.encode(rgba, width, height, request, request.view.frameReader);
+        }
+
+        @Override
+        public void onFrameDropped(Object tag) {
+            ((CaptureRequest) tag).callback.onFrameCaptureFailed(
+                    new IllegalStateException(
+                            "Frame was not read back before the view was released"));
+        }
+    };
+
+    private void onCapture(CaptureRequest request) {
+        RenderView view = request.view;
+        if (!renderLoop.isAttached(view)) {
+            request.callback.onFrameCaptureFailed(
+                    new IllegalStateException("View is not attached to the render thread"));
+            return;
+        }
+
+        if (request.isContinuous()) {
+            view.continuousCapture = request;
+            view.framesSinceContinuousCapture = request.frameInterval;
+        } else {
+            view.singleCapture = request;
+            // Make sure a frame is drawn even if the video is paused.
+            renderLoop.invalidate(view);
+        }
+    }
+
+    private void onStopCapture(RenderView view) {
+        view.continuousCapture = null;
+    }
+
+    private void onShowPreview(RenderView view) {
+        Bitmap preview = view.pendingPreview.getAndSet(null);
+        if (preview == null || !renderLoop.isAttached(view)) {
+            return;
+        }
+
+        eglRenderTarget.makeCurrent(view.windowSurface);
+        if (view.previewTextureId == -1) {
+            view.previewTextureId = GLHelpers.generateTexture2D();
+        }
+        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, view.previewTextureId);
+        GLUtils.texImage2D(GLES20.GL_TEXTURE_2D, 0, preview, 0);
+        GLHelpers.checkGlError("texImage2D");
+
+        view.previewVisible = true;
+        view.hidePreviewOnNextFrame = false;
+        renderLoop.invalidate(view);
+    }
+
+    private void onHidePreview(RenderView view) {
+        view.pendingPreview.set(null);
+        if (view.previewVisible) {
+            view.hidePreviewOnNextFrame = true;
+        }
+    }
+
+    private void onResetAvSync(RenderView view) {
+        if (renderLoop.isAttached(view)) {
+            view.resetAvSync();
+        }
+    }
+
+    private void onSetHotspots(RenderView view) {
+        HotspotLayer layer = view.pendingHotspotLayer.getAndSet(null);
+        if (layer == null || !renderLoop.isAttached(view)) {
+            return;
+        }
+
+        eglRenderTarget.makeCurrent(view.windowSurface);
+        if (hotspotRenderer == null) {
+            hotspotRenderer = new HotspotRenderer(context);
+        }
+        if (view.hotspotLayer != null) {
+            view.hotspotLayer.release();
+        }
+        layer.upload();
+        view.hotspotLayer = layer;
+        renderLoop.invalidate(view);
+    }
+
+    private void onSetMirror(
+            RenderView view, SurfaceTexture surfaceTexture, int width, int height) {
+        if (!renderLoop.isAttached(view)) {
+            // The player sets it again once its view is attached.
+            return;
+        }
+
+        if (surfaceTexture != null && surfaceTexture == view.mirrorSurfaceTexture) {
+            view.setMirrorSize(width, height);
+            renderLoop.invalidate(view);
+            return;
+        }
+
+        releaseMirror(view);
+        if (surfaceTexture == null) {
+            return;
+        }
+
+        view.mirrorSurface = eglRenderTarget.createRenderSurface(surfaceTexture);
+        // The other display refreshes at its own rate and phase. Without
+        // waiting for its vsync, frames it has not picked up yet are
+        // replaced instead of blocking the render thread in eglSwapBuffers.
+        eglRenderTarget.setSwapInterval(view.mirrorSurface, 0);
+        view.mirrorSurfaceTexture = surfaceTexture;
+        view.setMirrorSize(width, height);
+        renderLoop.invalidate(view);
+    }
+
+    private void releaseMirror(RenderView view) {
+        if (view.mirrorSurface != EGL14.EGL_NO_SURFACE) {
+            eglRenderTarget.releaseRenderSurface(view.mirrorSurface);
+            view.mirrorSurface = EGL14.EGL_NO_SURFACE;
+        }
+        if (view.mirrorSurfaceTexture != null) {
+            // Its TextureView left it to us by returning false from
+            // onSurfaceTextureDestroyed.
+            view.mirrorSurfaceTexture.release();
+            view.mirrorSurfaceTexture = null;
+        }
+    }
+
+    private void onInvalidate(RenderView view) {
+        view.invalidatePending.set(false);
+        if (renderLoop.isAttached(view)) {
+            renderLoop.invalidate(view);
+        }
+    }
+
+    /**
+     * Queues a readback of the frame just drawn. Continuous captures are
+     * skipped, never delayed, while the pixel buffers or the encoder are busy.
+     */
+    private void captureFrameIfRequested(RenderView view) {
+        CaptureRequest request = view.singleCapture;
+        if (request == null && view.continuousCapture != null) {
+            view.framesSinceContinuousCapture++;
+            if (view.framesSinceContinuousCapture >= view.continuousCapture.frameInterval) {
+                request = view.continuousCapture;
+            }
+        }
+
+        if (request == null) {
+            return;
+        }
+
+        if (view.frameReader == null) {
+            view.frameReader = new AsyncFrameReader(eglRenderTarget.getGlVersion());
+            if (frameEncoder == null) {
+                frameEncoder = new FrameEncoder();
+            }
+        }
+
+        if (!view.frameReader.canRead() || (request.isContinuous() && frameEncoder.isBusy())) {
+            // A single capture stays pending and is retried on the next drawn frame.
+            if (request.isContinuous()) {
+                view.framesSinceContinuousCapture = 0;
+            } else {
+                renderLoop.invalidate(view);
+            }
+            return;
+        }
+
+        view.frameReader.read(view.width, view.height, request, frameReadListener);
+        readbacksPending |= view.frameReader.isAsynchronous();
+        if (request.isContinuous()) {
+            view.framesSinceContinuousCapture = 0;
+        } else {
+            view.singleCapture = null;
+        }
+    }
+
+    private void pollCapturedFrames(RenderView view) {
+        if (view.frameReader == null || !view.frameReader.isAsynchronous()) {
+            return;
+        }
+
+        eglRenderTarget.makeCurrent(view.windowSurface);
+        view.frameReader.poll(frameReadListener);
+        readbacksPending |= view.frameReader.hasPendingReads();
+    }
+
+    private void recordFrameStats(long startNanos, long endNanos, int framesDrawn) {
+        if (statsWindowStartNanos == 0) {
+            statsWindowStartNanos = startNanos;
+        }
+
+        long workNanos = endNanos - startNanos;
+        statsVsyncCount++;
+        statsFramesDrawn += framesDrawn;
+        statsTotalWorkNanos += workNanos;
+        statsMaxWorkNanos = Math.max(statsMaxWorkNanos, workNanos);
+
+        if (endNanos - statsWindowStartNanos < STATS_LOG_INTERVAL_NANOS) {
+            return;
+        }
+
+        // Graphics memory is not visible from here; pair this with `dumpsys meminfo`.
+        Log.i(TAG, "views=" + renderLoop.getTargetCount()
+                + " vsyncs=" + statsVsyncCount
+                + " framesDrawn=" + statsFramesDrawn
+                + " avgVsyncWorkMs=" + (statsTotalWorkNanos / statsVsyncCount) / 1e6
+                + " maxVsyncWorkMs=" + statsMaxWorkNanos / 1e6
+                + " avgInputLatencyMs=" + (statsInputCount > 0
+                        ? (statsTotalInputLatencyNanos / statsInputCount) / 1e6 : 0)
+                + " maxInputLatencyMs=" + statsMaxInputLatencyNanos / 1e6
+                + " jankyFrames=" + (jankWatchdog.getJankCount() - statsJankCount)
+                + " nativeHeapKb=" + Debug.getNativeHeapAllocatedSize() / 1024);
+
+        statsWindowStartNanos = endNanos;
+        statsVsyncCount = 0;
+        statsFramesDrawn = 0;
+        statsTotalWorkNanos = 0;
+        statsMaxWorkNanos = 0;
+        statsInputCount = 0;
+        statsTotalInputLatencyNanos = 0;
+        statsMaxInputLatencyNanos = 0;
+        statsJankCount = jankWatchdog.getJankCount();
+    }
+
+    private void onSurfaceDestroyed(RenderView view) {
+        if (!renderLoop.removeTarget(view)) {
+            return;
+        }
+
+        eglRenderTarget.makeCurrentNoWindow();
+
+        if (view.videoDecodeTextureId != -1) {
+            int[] textures = new int[1];
+            textures[0] = view.videoDecodeTextureId;
+            GLES20.glDeleteTextures(1, textures, 0);
+            view.videoDecodeTextureId = -1;
+        }
+
+        if (view.previewTextureId != -1) {
+            int[] textures = {view.previewTextureId};
+            GLES20.glDeleteTextures(1, textures, 0);
+            view.previewTextureId = -1;
+        }
+        view.previewVisible = false;
+        view.pendingPreview.set(null);
+
+        if (view.hotspotLayer != null) {
+            view.hotspotLayer.release();
+            view.hotspotLayer = null;
+        }
+        view.pendingHotspotLayer.set(null);
+
+        if (view.videoSurfaceTexture != null) {
+            view.videoSurfaceTexture.release();
+            view.videoSurfaceTexture = null;
+        }
+
+        releaseScaledTarget(view);
+        releaseMipmappedFrame(view);
+        view.mipmapPolicy.reset();
+
+        if (view.frameReader != null) {
+            view.frameReader.release(frameReadListener);
+            view.frameReader = null;
+        }
+        if (view.singleCapture != null) {
+            view.singleCapture.callback.onFrameCaptureFailed(
+                    new IllegalStateException("View was released before the frame was drawn"));
+            view.singleCapture = null;
+        }
+        view.continuousCapture = null;
+
+        releaseMirror(view);
+        eglRenderTarget.releaseRenderSurface(view.windowSurface);
+        view.windowSurface = EGL14.EGL_NO_SURFACE;
+
+        final RenderView.Callback callback = view.callback;
+        controlHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                callback.onRenderViewDestroyed();
+            }
+        });
+    }
+
+    private void onShutdown() {
+        Choreographer.getInstance().removeFrameCallback(frameCallback);
+
+        if (renderer != null) {
+            eglRenderTarget.makeCurrentNoWindow();
+            renderer.release();
+            renderer = null;
+        }
+
+        if (blitRenderer != null) {
+            blitRenderer.release();
+            blitRenderer = null;
+        }
+
+        if (hotspotRenderer != null) {
+            hotspotRenderer.release();
+            hotspotRenderer = null;
+        }
+
+        if (frameEncoder != null) {
+            frameEncoder.shutdown();
+            frameEncoder = null;
+        }
+
+        if (eglRenderTarget != null) {
+            eglRenderTarget.release();
+            eglRenderTarget = null;
+        }
+
+        // Let pending player callbacks, like releasing MediaPlayers, finish.
+        controlThread.quitSafely();
+        quit();
+    }
+}
@@ -0,0 +1,225 @@
+/**
+ * Copyright 2016-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * Licensed under the Creative Commons CC BY-NC 4.0 Attribution-NonCommercial
+ * License (the "License"). You may obtain a copy of the License at
+ * https://creativecommons.org/licenses/by-nc/4.0/.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.oculus.sample.player;
+
+import android.graphics.Bitmap;
+import android.graphics.SurfaceTexture;
+import android.opengl.EGL14;
+import android.opengl.EGLSurface;
+import android.view.Surface;
+
+import com.oculus.sample.audio.ListenerOrientation;
+import com.oculus.sample.gles.AsyncFrameReader;
+import com.oculus.sample.gles.FramebufferTarget;
+import com.oculus.sample.gles.GpuTimer;
+import com.oculus.sample.gles.HotspotLayer;
+import com.oculus.sample.gles.MipmapPolicy;
+import com.oculus.sample.gles.MipmappedTexture;
+import com.oculus.sample.gles.ResolutionScaleController;
+import com.oculus.sample.projection.DualFisheyeProjection;
+import com.oculus.sample.projection.SphericalCamera;
+import com.oculus.sample.renderloop.AtomicPose;
+import com.oculus.sample.renderloop.AvSyncTarget;
+import com.oculus.sample.telemetry.AvSyncStats;
+import com.oculus.sample.telemetry.FrameTimeStats;
+import com.oculus.sample.telemetry.LatencyStats;
+import com.oculus.sample.telemetry.LiveLatencyStats;
+import com.oculus.sample.telemetry.ViewportRecorder;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Per-player state drawn by the shared RenderThread: the window surface, the
+ * external texture the decoder outputs to and the camera looking at the
+ * sphere. Everything here is only touched on the render thread unless
+ * marked otherwise.
+ *
+ * When it is redrawn is decided by the RenderLoop it is attached to. The
+ * orientation lives in an AtomicPose that the UI thread writes directly;
+ * the render thread samples it when a frame starts or, with late latching,
+ * right before the sphere is drawn.
+ */
+class RenderView extends AvSyncTarget {
+    private static final int AV_SYNC_STATS_WINDOW = 120;
+
+    interface Callback {
+        /**
+         * Called on the player control thread once the decode surface is
+         * ready to be handed to a video decoder.
+         */
+        void onDecodeSurfaceAvailable(Surface decodeSurface);
+
+        /**
+         * Called on the player control thread after the view's GL resources
+         * have been released.
+         */
+        void onRenderViewDestroyed();
+    }
+
+    final Callback callback;
+    final AtomicPose pose;
+    // Set when a wakeup is queued on the render thread; any thread.
+    final AtomicBoolean invalidatePending = new AtomicBoolean();
+
+    EGLSurface windowSurface = EGL14.EGL_NO_SURFACE;
+    int width;
+    int height;
+
+    SurfaceTexture videoSurfaceTexture;
+    int videoDecodeTextureId = -1;
+
+    final float[] videoTextureMatrix = new float[16];
+
+    // Scrub preview shown instead of the video until the first frame decoded
+    // after the seek. Previews are handed over from any thread; only the
+    // latest one is uploaded.
+    final AtomicReference<Bitmap> pendingPreview = new AtomicReference<>();
+    int previewTextureId = -1;
+    boolean previewVisible;
+    boolean hidePreviewOnNextFrame;
+    // Hotspot overlay, handed over like previews and uploaded on the render
+    // thread.
+    final AtomicReference<HotspotLayer> pendingHotspotLayer = new AtomicReference<>();
+    HotspotLayer hotspotLayer;
+    final SphericalCamera camera = new SphericalCamera();
+
+    // Set from the UI thread, everything below it is render thread only.
+    volatile boolean dynamicResolutionEnabled;
+    volatile boolean lateLatchEnabled;
+    // Null for equirectangular video.
+    volatile DualFisheyeProjection fisheyeProjection;
+    // Written by pinches, applied to the camera on every frame.
+    volatile float fovY = SphericalCamera.DEFAULT_FOVY;
+    volatile boolean mipmapEnabled;
+    // Decoded size, 0 until known.
+    volatile int videoWidth;
+    volatile int videoHeight;
+    FramebufferTarget offscreenTarget;
+    ResolutionScaleController resolutionController;
+    // Null without GL_EXT_disjoint_timer_query.
+    GpuTimer gpuTimer;
+    // When and on which vsync callback the last frame was presented.
+    long lastPresentNanos;
+    long lastPresentVsync = -1;
+    final MipmapPolicy mipmapPolicy = new MipmapPolicy();
+    MipmappedTexture mipmappedFrame;
+    // The latched video frame has been copied into mipmappedFrame.
+    boolean mipmappedFrameCurrent;
+    LatencyStats mipmapCopyLatency;
+
+    // Second window every frame is drawn into again, e.g. on a presentation
+    // display, with its own viewport.
+    EGLSurface mirrorSurface = EGL14.EGL_NO_SURFACE;
+    SurfaceTexture mirrorSurfaceTexture;
+    int mirrorWidth;
+    int mirrorHeight;
+    final SphericalCamera mirrorCamera = new SphericalCamera();
+    final float[] mirrorLonLat = new float[2];
+    LatencyStats mirrorDrawLatency;
+    // Set from the UI thread; without a camera of its own the mirror shows
+    // what the primary camera sees.
+    volatile boolean mirrorCameraEnabled;
+    final AtomicPose mirrorPose = new AtomicPose(SphericalCamera.MAX_LATITUDE);
+    volatile float mirrorFovY = SphericalCamera.DEFAULT_FOVY;
+
+    CaptureRequest singleCapture;
+    CaptureRequest continuousCapture;
+    int framesSinceContinuousCapture;
+    AsyncFrameReader frameReader;
+
+    final PlaybackClock playbackClock = new PlaybackClock();
+    volatile ViewportRecorder viewportRecorder;
+    volatile FrameTimeStats frameTimeStats;
+
+    // The latched pose, for spatial audio.
+    final ListenerOrientation listenerOrientation = new ListenerOrientation();
+
+    // Set while a live stream is decoded to this view.
+    volatile LiveLatencyStats liveLatencyStats;
+
+    // Written on the render thread, read by the player to pick a rendition.
+    volatile long framesDecoded;
+    volatile long framesPresented;
+    volatile long frameWorkNanos;
+
+    RenderView(Callback callback) {
+        this(callback, new AtomicPose(SphericalCamera.MAX_LATITUDE));
+    }
+
+    private RenderView(Callback callback, AtomicPose pose) {
+        super(pose, new AvSyncStats(AV_SYNC_STATS_WINDOW));
+        this.callback = callback;
+        this.pose = pose;
+    }
+
+    void setSize(int width, int height) {
+        this.width = width;
+        this.height = height;
+        camera.setViewportSize(width, height);
+    }
+
+    void setMirrorSize(int width, int height) {
+        mirrorWidth = width;
+        mirrorHeight = height;
+        mirrorCamera.setViewportSize(width, height);
+    }
+
+    float getLon() {
+        return camera.getLon();
+    }
+
+    float getLat() {
+        return camera.getLat();
+    }
+
+    float getFovY() {
+        return camera.getFovY();
+    }
+
+    /**
+     * Applies a drag to the pose. Safe to call from any thread.
+     */
+    void addDrag(float deltaX, float deltaY) {
+        // Content under the finger moves at the same speed at any zoom.
+        float friction = SphericalCamera.DRAG_FRICTION * fovY / SphericalCamera.DEFAULT_FOVY;
+        pose.addDrag(deltaX * friction, -deltaY * friction, System.nanoTime());
+    }
+
+    @Override
+    protected void onScroll(float deltaX, float deltaY) {
+        addDrag(deltaX, deltaY);
+    }
+
+    @Override
+    protected void onPoseLatched(float lon, float lat) {
+        camera.setOrientation(lon, lat);
+        camera.update();
+        listenerOrientation.setFromCamera(camera.getLon(), camera.getLat());
+    }
+
+    @Override
+    protected boolean isPlaying() {
+        return playbackClock.isPlaying();
+    }
+
+    @Override
+    protected long latchQueuedFrame() {
+        // MediaPlayer stamps each frame with when its audio clock reaches it.
+        videoSurfaceTexture.updateTexImage();
+        return videoSurfaceTexture.getTimestamp();
+    }
+}
@@ -0,0 +1,233 @@
+/**
+ * Copyright 2016-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * Licensed under the Creative Commons CC BY-NC 4.0 Attribution-NonCommercial
+ * License (the "License"). You may obtain a copy of the License at
+ * https://creativecommons.org/licenses/by-nc/4.0/.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.oculus.sample.player;
+
+import android.content.Context;
+import android.media.AudioManager;
+import android.media.MediaExtractor;
+import android.media.MediaPlayer;
+import android.net.Uri;
+import android.os.Handler;
+import android.util.Log;
+import android.view.Surface;
+
+import com.oculus.sample.media.Rendition;
+
+import java.io.IOException;
+
+/**
+ * Moves playback from one MediaPlayer to another playing a different
+ * rendition of the same video, at a keyframe of the new rendition.
+ *
+ * The next rendition is prepared and seeked to its first keyframe at least
+ * {@link #SWITCH_LEAD_MS} ahead while the current one keeps playing; when
+ * the current player reaches that position the decode surface is handed
+ * over. The new decoder starts on a sync frame, so the first frame it
+ * outputs is the one due next.
+ *
+ * Everything runs on the player control thread.
+ */
+class RenditionSwitcher {
+    private static final String TAG = RenditionSwitcher.class.getSimpleName();
+
+    // Time to prepare the next player and seek it before the switch point.
+    private static final long SWITCH_LEAD_MS = 1500;
+    private static final long POLL_INTERVAL_MS = 5;
+    private static final int MAX_SEEK_ATTEMPTS = 3;
+
+    interface Listener {
+        /**
+         * Called once {@code player} outputs to the decode surface; the
+         * previous player has already been released. {@code player} is
+         * still muted; the listener sets its volume.
+         */
+        void onRenditionSwitched(MediaPlayer player, int level);
+
+        /**
+         * Called when a switch cannot complete. The current player keeps
+         * playing if it is still there.
+         */
+        void onRenditionSwitchFailed(int level, Exception e);
+    }
+
+    private final Context context;
+    private final Handler handler;
+    private final Listener listener;
+
+    private boolean switching;
+    private MediaPlayer current;
+    private MediaPlayer next;
+    private Surface decodeSurface;
+    private Rendition rendition;
+    private int level;
+    private long switchPositionMs;
+    private int seekAttempts;
+
+    private final Runnable pollSwitchPoint = new Runnable() {
+        @Override
+        public void run() {
+            checkSwitchPoint();
+        }
+    };
+
+    RenditionSwitcher(Context context, Handler controlHandler, Listener listener) {
+        this.context = context;
+        this.handler = controlHandler;
+        this.listener = listener;
+    }
+
+    void switchTo(MediaPlayer current, Surface decodeSurface, Rendition rendition, int level) {
+        if (switching) {
+            return;
+        }
+
+        switching = true;
+        this.current = current;
+        this.decodeSurface = decodeSurface;
+        this.rendition = rendition;
+        this.level = level;
+        seekAttempts = 0;
+
+        try {
+            switchPositionMs = findKeyframeMs(current.getCurrentPosition() + SWITCH_LEAD_MS);
+
+            next = new MediaPlayer();
+            next.setAudioStreamType(AudioManager.STREAM_MUSIC);
+            // Silent until it takes over; the current player is still audible.
+            next.setVolume(0.f, 0.f);
+            next.setDataSource(context, Uri.parse(rendition.uri), null);
+            next.setLooping(true);
+            next.setOnPreparedListener(new MediaPlayer.OnPreparedListener() {
+                @Override
+                public void onPrepared(MediaPlayer mp) {
+                    mp.seekTo((int) switchPositionMs);
+                }
+            });
+            next.setOnSeekCompleteListener(new MediaPlayer.OnSeekCompleteListener() {
+                @Override
+                public void onSeekComplete(MediaPlayer mp) {
+                    checkSwitchPoint();
+                }
+            });
+            next.setOnErrorListener(new MediaPlayer.OnErrorListener() {
+                @Override
+                public boolean onError(MediaPlayer mp, int what, int extra) {
+                    fail(new IOException("MediaPlayer error " + what + "/" + extra));
+                    return true;
+                }
+            });
+            next.prepareAsync();
+        } catch (IOException | IllegalStateException e) {
+            fail(e);
+        }
+    }
+
+    /**
+     * Abandons a switch in progress, releasing the next player.
+     *
+     * @return whether a switch was in progress
+     */
+    boolean cancel() {
+        handler.removeCallbacks(pollSwitchPoint);
+        if (next != null) {
+            next.release();
+            next = null;
+        }
+        current = null;
+        boolean wasSwitching = switching;
+        switching = false;
+        return wasSwitching;
+    }
+
+    private void checkSwitchPoint() {
+        if (next == null) {
+            return;
+        }
+
+        long positionMs;
+        try {
+            positionMs = current.getCurrentPosition();
+        } catch (IllegalStateException e) {
+            // The current player was released meanwhile.
+            fail(e);
+            return;
+        }
+
+        if (positionMs > switchPositionMs + POLL_INTERVAL_MS) {
+            // Preparing took longer than the lead, or playback looped: aim
+            // for a later keyframe.
+            if (++seekAttempts >= MAX_SEEK_ATTEMPTS) {
+                fail(new IOException("Could not reach a keyframe of " + rendition));
+                return;
+            }
+            try {
+                switchPositionMs = findKeyframeMs(positionMs + SWITCH_LEAD_MS);
+            } catch (IOException e) {
+                fail(e);
+                return;
+            }
+            next.seekTo((int) switchPositionMs);
+            return;
+        }
+
+        if (positionMs + POLL_INTERVAL_MS < switchPositionMs) {
+            handler.postDelayed(pollSwitchPoint, POLL_INTERVAL_MS);
+            return;
+        }
+
+        try {
+            // Only one producer can be connected to the decode surface.
+            current.pause();
+            current.setSurface(null);
+            next.setSurface(decodeSurface);
+            next.start();
+        } catch (IllegalStateException e) {
+            fail(e);
+            return;
+        }
+        current.release();
+
+        MediaPlayer player = next;
+        next = null;
+        current = null;
+        switching = false;
+        Log.i(TAG, "Switched to " + rendition + " at " + switchPositionMs + "ms");
+        listener.onRenditionSwitched(player, level);
+    }
+
+    private void fail(Exception e) {
+        Log.e(TAG, "Cannot switch to " + rendition, e);
+        cancel();
+        listener.onRenditionSwitchFailed(level, e);
+    }
+
+    /**
+     * Position of the first video keyframe of the next rendition at or after
+     * {@code positionMs}, wrapping to the start past its end.
+     */
+    private long findKeyframeMs(long positionMs) throws IOException {
+        MediaExtractor extractor = new MediaExtractor();
+        try {
+            extractor.setDataSource(context, Uri.parse(rendition.uri), null);
+            SeekController.selectVideoTrack(extractor);
+            extractor.seekTo(positionMs * 1000, MediaExtractor.SEEK_TO_NEXT_SYNC);
+            long sampleTimeUs = extractor.getSampleTime();
+            return sampleTimeUs < 0 ? 0 : sampleTimeUs / 1000;
+        } finally {
+            extractor.release();
+        }
+    }
+}
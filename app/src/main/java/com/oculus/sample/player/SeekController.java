@@ -0,0 +1,368 @@
+/**
+ * Copyright 2016-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * Licensed under the Creative Commons CC BY-NC 4.0 Attribution-NonCommercial
+ * License (the "License"). You may obtain a copy of the License at
+ * https://creativecommons.org/licenses/by-nc/4.0/.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.oculus.sample.player;
+
+import android.content.Context;
+import android.content.res.AssetFileDescriptor;
+import android.graphics.Bitmap;
+import android.media.MediaExtractor;
+import android.media.MediaFormat;
+import android.media.MediaMetadataRetriever;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.util.Log;
+import android.util.LruCache;
+
+import com.oculus.sample.media.KeyframeIndex;
+import com.oculus.sample.telemetry.LatencyStats;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Keyframe index and scrub previews for the video of one player.
+ *
+ * The index is built once per source by seeking a MediaExtractor from
+ * keyframe to keyframe, which never reads the frames in between, and cached
+ * on disk. Previews are decoded at low resolution from the keyframe at or
+ * before the requested position and kept in memory, so scrubbing back over
+ * a stretch already seen costs nothing. Only the latest preview request is
+ * decoded; requests overtaken while a decode is running are dropped.
+ *
+ * Index building and preview decoding run on a thread of their own, as they
+ * can take from tens of milliseconds to seconds.
+ */
+class SeekController {
+    private static final String TAG = SeekController.class.getSimpleName();
+    private static final String THREAD_NAME = "360Seek";
+
+    // Equirectangular previews are 2:1.
+    static final int PREVIEW_WIDTH = 512;
+    static final int PREVIEW_HEIGHT = 256;
+    private static final int PREVIEW_CACHE_BYTES = 32 * 1024 * 1024;
+    private static final int LATENCY_SAMPLES = 256;
+
+    interface Source {
+        /**
+         * Identifies the exact contents of the source, for the index cache.
+         */
+        String getCacheKey();
+
+        /**
+         * Opens the source as a file descriptor range, which the caller
+         * closes, or returns null if it can only be read through
+         * {@link #getUri()}.
+         */
+        AssetFileDescriptor openFd() throws IOException;
+
+        String getUri();
+    }
+
+    interface Listener {
+        /**
+         * Called on the seek thread.
+         */
+        void onKeyframeIndexReady(KeyframeIndex index);
+
+        /**
+         * Called on the seek thread, or on the requesting thread for a
+         * cached preview. The bitmap stays in the cache and must not be
+         * recycled.
+         */
+        void onPreviewReady(long keyframeUs, Bitmap preview);
+    }
+
+    private final Context context;
+    private final File cacheDir;
+    private final Source source;
+    private final Listener listener;
+    private final HandlerThread thread;
+    private final Handler handler;
+    private final LatencyStats previewLatency = new LatencyStats(LATENCY_SAMPLES);
+
+    private final LruCache<Long, Bitmap> previews = new LruCache<Long, Bitmap>(PREVIEW_CACHE_BYTES) {
+        @Override
+        protected int sizeOf(Long keyframeUs, Bitmap preview) {
+            return preview.getByteCount();
+        }
+    };
+
+    private volatile KeyframeIndex index;
+
+    // Latest preview request, written on any thread.
+    private final Object requestLock = new Object();
+    private long requestedKeyframeUs = -1;
+    private long requestNanos;
+
+    // Seek thread only.
+    private MediaMetadataRetriever retriever;
+
+    private final Runnable decodeRequestedPreview = new Runnable() {
+        @Override
+        public void run() {
+            long keyframeUs;
+            long startNanos;
+            synchronized (requestLock) {
+                keyframeUs = requestedKeyframeUs;
+                startNanos = requestNanos;
+                requestedKeyframeUs = -1;
+            }
+            if (keyframeUs >= 0) {
+                decodePreview(keyframeUs, startNanos);
+            }
+        }
+    };
+
+    SeekController(Context context, File cacheDir, Source source, Listener listener) {
+        this.context = context;
+        this.cacheDir = cacheDir;
+        this.source = source;
+        this.listener = listener;
+
+        thread = new HandlerThread(THREAD_NAME);
+        thread.start();
+        handler = new Handler(thread.getLooper());
+    }
+
+    /**
+     * Loads the keyframe index from the cache, or builds and caches it.
+     */
+    void loadIndex() {
+        handler.post(new Runnable() {
+            @Override
+            public void run() {
+                long startNanos = System.nanoTime();
+                try {
+                    KeyframeIndex loaded = loadOrBuildIndex();
+                    Log.i(TAG, "Keyframe index of " + loaded.size() + " keyframes ready in "
+                            + (System.nanoTime() - startNanos) / 1000000L + "ms");
+                    index = loaded;
+                    listener.onKeyframeIndexReady(loaded);
+                } catch (IOException e) {
+                    Log.e(TAG, "Cannot index keyframes of " + source.getCacheKey(), e);
+                }
+            }
+        });
+    }
+
+    /**
+     * The keyframe index, or null until it is loaded.
+     */
+    KeyframeIndex getIndex() {
+        return index;
+    }
+
+    /**
+     * Time it took previews to become ready after being requested, cache
+     * hits included.
+     */
+    LatencyStats getPreviewLatency() {
+        return previewLatency;
+    }
+
+    /**
+     * Asks for a preview of the keyframe at or before {@code positionUs};
+     * before the index is ready the frame closest to the position is used.
+     */
+    void requestPreview(long positionUs) {
+        long requestStartNanos = System.nanoTime();
+        KeyframeIndex keyframes = index;
+        long keyframeUs = keyframes != null
+                ? keyframes.getTimeUs(keyframes.floorIndex(positionUs))
+                : positionUs;
+
+        Bitmap cached = previews.get(keyframeUs);
+        if (cached != null) {
+            previewLatency.record(System.nanoTime() - requestStartNanos);
+            listener.onPreviewReady(keyframeUs, cached);
+            return;
+        }
+
+        synchronized (requestLock) {
+            boolean posted = requestedKeyframeUs >= 0;
+            requestedKeyframeUs = keyframeUs;
+            requestNanos = requestStartNanos;
+            if (posted) {
+                return;
+            }
+        }
+        handler.post(decodeRequestedPreview);
+    }
+
+    /**
+     * Frees the preview decoder once scrubbing is over; cached previews are
+     * kept.
+     */
+    void endScrub() {
+        synchronized (requestLock) {
+            requestedKeyframeUs = -1;
+        }
+        handler.post(new Runnable() {
+            @Override
+            public void run() {
+                releaseRetriever();
+            }
+        });
+    }
+
+    void release() {
+        handler.removeCallbacksAndMessages(null);
+        handler.post(new Runnable() {
+            @Override
+            public void run() {
+                releaseRetriever();
+                previews.evictAll();
+            }
+        });
+        thread.quitSafely();
+    }
+
+    private void decodePreview(long keyframeUs, long startNanos) {
+        Bitmap preview = previews.get(keyframeUs);
+        if (preview == null) {
+            try {
+                preview = decodeFrame(keyframeUs);
+            } catch (IOException | RuntimeException e) {
+                Log.e(TAG, "Cannot decode preview at " + keyframeUs + "us", e);
+                return;
+            }
+            if (preview == null) {
+                return;
+            }
+            previews.put(keyframeUs, preview);
+        }
+
+        previewLatency.record(System.nanoTime() - startNanos);
+        listener.onPreviewReady(keyframeUs, preview);
+    }
+
+    private Bitmap decodeFrame(long timeUs) throws IOException {
+        if (retriever == null) {
+            retriever = new MediaMetadataRetriever();
+            AssetFileDescriptor afd = source.openFd();
+            if (afd != null) {
+                try {
+                    retriever.setDataSource(
+                            afd.getFileDescriptor(), afd.getStartOffset(), afd.getLength());
+                } finally {
+                    afd.close();
+                }
+            } else {
+                retriever.setDataSource(context, Uri.parse(source.getUri()));
+            }
+        }
+
+        Bitmap frame = retriever.getFrameAtTime(timeUs, MediaMetadataRetriever.OPTION_CLOSEST_SYNC);
+        if (frame == null) {
+            return null;
+        }
+        Bitmap preview = Bitmap.createScaledBitmap(frame, PREVIEW_WIDTH, PREVIEW_HEIGHT, true);
+        if (preview != frame) {
+            frame.recycle();
+        }
+        return preview;
+    }
+
+    private void releaseRetriever() {
+        if (retriever != null) {
+            retriever.release();
+            retriever = null;
+        }
+    }
+
+    private KeyframeIndex loadOrBuildIndex() throws IOException {
+        String key = source.getCacheKey();
+        File file = new File(cacheDir, Integer.toHexString(key.hashCode()) + ".kfi");
+
+        try {
+            KeyframeIndex cached = KeyframeIndex.read(file, key);
+            if (cached != null) {
+                return cached;
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Ignoring keyframe index cache " + file, e);
+        }
+
+        KeyframeIndex built = scanKeyframes();
+        if (cacheDir.isDirectory() || cacheDir.mkdirs()) {
+            try {
+                built.write(file, key);
+            } catch (IOException e) {
+                Log.w(TAG, "Cannot cache keyframe index to " + file, e);
+            }
+        }
+        return built;
+    }
+
+    private KeyframeIndex scanKeyframes() throws IOException {
+        MediaExtractor extractor = new MediaExtractor();
+        AssetFileDescriptor afd = source.openFd();
+        try {
+            if (afd != null) {
+                extractor.setDataSource(
+                        afd.getFileDescriptor(), afd.getStartOffset(), afd.getLength());
+            } else {
+                extractor.setDataSource(context, Uri.parse(source.getUri()), null);
+            }
+            selectVideoTrack(extractor);
+
+            long[] timesUs = new long[256];
+            int count = 0;
+            long lastUs = -1;
+            while (true) {
+                extractor.seekTo(lastUs + 1, MediaExtractor.SEEK_TO_NEXT_SYNC);
+                long timeUs = extractor.getSampleTime();
+                if (timeUs <= lastUs) {
+                    // Past the last keyframe: either no sample or the last one again.
+                    break;
+                }
+                if (count == timesUs.length) {
+                    timesUs = Arrays.copyOf(timesUs, count * 2);
+                }
+                timesUs[count++] = timeUs;
+                lastUs = timeUs;
+            }
+
+            if (count == 0) {
+                throw new IOException("No keyframes in " + source.getCacheKey());
+            }
+            return new KeyframeIndex(Arrays.copyOf(timesUs, count));
+        } finally {
+            extractor.release();
+            if (afd != null) {
+                afd.close();
+            }
+        }
+    }
+
+    /**
+     * Selects the first video track of {@code extractor}.
+     *
+     * @throws IOException if there is none
+     */
+    static void selectVideoTrack(MediaExtractor extractor) throws IOException {
+        for (int i = 0; i < extractor.getTrackCount(); i++) {
+            String mime = extractor.getTrackFormat(i).getString(MediaFormat.KEY_MIME);
+            if (mime != null && mime.startsWith("video/")) {
+                extractor.selectTrack(i);
+                return;
+            }
+        }
+        throw new IOException("No video track");
+    }
+}
@@ -16,56 +16,160 @@
 package com.oculus.sample.player;
 
 import android.content.Context;
+import android.content.res.AssetFileDescriptor;
+import android.graphics.Bitmap;
 import android.graphics.SurfaceTexture;
 import android.media.AudioManager;
 import android.media.MediaPlayer;
 import android.net.Uri;
-import android.opengl.GLES20;
-import android.opengl.Matrix;
-import android.os.Handler;
-import android.os.HandlerThread;
-import android.os.Message;
+import android.os.Build;
+import android.os.ParcelFileDescriptor;
 import android.text.TextUtils;
 import android.util.AttributeSet;
 import android.util.Log;
-import android.view.Choreographer;
 import android.view.GestureDetector;
 import android.view.GestureDetector.SimpleOnGestureListener;
 import android.view.MotionEvent;
+import android.view.ScaleGestureDetector;
 import android.view.Surface;
 import android.view.TextureView;
 import android.view.View;
 
 import static com.oculus.sample.SphericalPlayerActivity.toast;
 
-import com.oculus.sample.gles.EGLRenderTarget;
-import com.oculus.sample.gles.GLHelpers;
-import com.oculus.sample.gles.SphericalSceneRenderer;
-
+import com.oculus.sample.gles.HotspotLayer;
+import com.oculus.sample.media.AssetPack;
+import com.oculus.sample.media.KeyframeIndex;
+import com.oculus.sample.media.MappedFile;
+import com.oculus.sample.media.MappedMediaDataSource;
+import com.oculus.sample.media.Rendition;
+import com.oculus.sample.media.RenditionPolicy;
+import com.oculus.sample.overlay.Hotspot;
+import com.oculus.sample.overlay.HotspotBatch;
+import com.oculus.sample.overlay.HotspotIndex;
+import com.oculus.sample.projection.DualFisheyeProjection;
+import com.oculus.sample.projection.SphericalCamera;
+import com.oculus.sample.telemetry.AvSyncStats;
+import com.oculus.sample.telemetry.FrameTimeStats;
+import com.oculus.sample.telemetry.JankWatchdog;
+import com.oculus.sample.telemetry.LatencyStats;
+import com.oculus.sample.telemetry.LiveLatencyStats;
+import com.oculus.sample.telemetry.ViewportRecorder;
+
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.net.SocketException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 
 /**
  * A TextureView that can playback 360 video with support for drag to rotate.
+ *
+ * All players in a process share a single RenderThread, GL context, shader
+ * program and sphere mesh; each player only owns its window surface, its
+ * decode texture and its camera.
  */
 public class SphericalVideoPlayer extends TextureView {
     private static final String TAG = SphericalVideoPlayer.class.getSimpleName();
-    private static final String RENDER_THREAD_NAME = "360RenderThread";
+    private static final long PLAYBACK_CLOCK_UPDATE_MS = 500;
+    private static final String KEYFRAME_CACHE_DIR = "keyframes";
+    private static final int SEEK_LATENCY_SAMPLES = 256;
+    private static final int MIPMAP_COPY_SAMPLES = 256;
+    private static final int MIRROR_DRAW_SAMPLES = 256;
+
+    public interface FrameCaptureCallback {
+        /**
+         * Called on a background encoder thread with the encoded image.
+         */
+        void onFrameCaptured(byte[] encodedImage, int width, int height);
+
+        void onFrameCaptureFailed(Exception e);
+    }
 
-    private MediaPlayer videoPlayerInternal;
+    public interface OnHotspotClickListener {
+        /**
+         * Called on the UI thread when a tap lands on {@code hotspot}.
+         */
+        void onHotspotClick(Hotspot hotspot);
+    }
+
+    // Created and released on the player control thread.
+    private volatile MediaPlayer videoPlayerInternal;
     private RenderThread renderThread;
+    // Set on the UI thread while attached to the render thread, read on the
+    // control thread too.
+    private volatile RenderView renderView;
 
     private String videoPath;
+    private File videoFile;
+    private File videoPack;
+    private String videoPackEntry;
+    private int videoResourceId;
+
+    // Live RTP input, decoded without MediaPlayer.
+    private int livePort;
+    private String liveMime;
+    private int liveWidth;
+    private int liveHeight;
+    private boolean liveSenderClockLocal;
+    // Created and released on the player control thread.
+    private volatile LiveStreamDecoder liveDecoder;
+
+    // Ordered from cheapest to most expensive; the policy runs on the UI thread.
+    private List<Rendition> renditions;
+    private RenditionPolicy renditionPolicy;
+    private RenditionSwitcher renditionSwitcher;
+    private volatile int renditionLevel;
+    private volatile Surface decodeSurface;
+    private long renditionSampleNanos = -1;
+    private long lastFramesDecoded;
+    private long lastFramesPresented;
+    private long lastFrameWorkNanos;
+    private long lastFramesDropped;
+
+    // Created and released on the player control thread.
+    private volatile SeekController seekController;
+    private final LatencyStats seekLatency = new LatencyStats(SEEK_LATENCY_SAMPLES);
+    private volatile long seekStartNanos;
+    private volatile boolean scrubbing;
+    private boolean resumeAfterScrub;
+    private long scrubPositionMs;
+
+    private long prepareStartNanos;
+    private volatile long prepareTimeNanos = -1;
 
     private boolean readyToPlay;
-
-    private class ScrollDeltaHolder {
-        float deltaX, deltaY;
-
-        ScrollDeltaHolder(float dx, float dy) {
-            deltaX = dx;
-            deltaY = dy;
-        }
-    }
+    private boolean dynamicResolutionEnabled;
+    private boolean lateLatchEnabled;
+    private boolean avSyncCorrectionEnabled = true;
+    private volatile boolean spatialAudioEnabled;
+    // Started and stopped on the control thread.
+    private volatile AmbisonicAudioPlayer spatialAudio;
+    private DualFisheyeProjection fisheyeProjection;
+    private float fovY = SphericalCamera.DEFAULT_FOVY;
+    private boolean mipmapEnabled;
+    private final LatencyStats mipmapCopyLatency = new LatencyStats(MIPMAP_COPY_SAMPLES);
+    private ViewportRecorder viewportRecorder;
+    private FrameTimeStats frameTimeStats;
+
+    private SurfaceTexture mirrorSurface;
+    private int mirrorWidth;
+    private int mirrorHeight;
+    private boolean mirrorCameraEnabled;
+    private float mirrorLon;
+    private float mirrorLat;
+    private float mirrorFovY = SphericalCamera.DEFAULT_FOVY;
+    private final LatencyStats mirrorDrawLatency = new LatencyStats(MIRROR_DRAW_SAMPLES);
+
+    private HotspotIndex hotspotIndex;
+    private HotspotBatch hotspotBatch;
+    private Bitmap hotspotAtlas;
+    private OnHotspotClickListener hotspotClickListener;
+    // Taps are resolved on the UI thread, with a camera of their own.
+    private final SphericalCamera pickCamera = new SphericalCamera();
+    private final float[] pickLonLat = new float[2];
 
     private SimpleOnGestureListener dragListener = new SimpleOnGestureListener() {
         @Override
@@ -75,19 +179,179 @@ public class SphericalVideoPlayer extends TextureView {
 
         @Override
         public boolean onScroll(MotionEvent e1, MotionEvent e2, float distanceX, float distanceY) {
-            if (renderThread == null) {
+            if (renderThread == null || scaleGestureDetector.isInProgress()) {
                 return false;
             }
 
-            Message msg = Message.obtain();
-            msg.what = RenderThread.MSG_ON_SCROLL;
-            msg.obj = new ScrollDeltaHolder(distanceX, distanceY);
-            renderThread.handler.sendMessage(msg);
+            drag(distanceX, distanceY);
+            return true;
+        }
+
+        @Override
+        public boolean onSingleTapUp(MotionEvent e) {
+            if (hotspotClickListener == null) {
+                return false;
+            }
+
+            Hotspot hotspot = findHotspot(e.getX(), e.getY());
+            if (hotspot == null) {
+                return false;
+            }
+            hotspotClickListener.onHotspotClick(hotspot);
             return true;
         }
     };
 
+    private ScaleGestureDetector.SimpleOnScaleGestureListener pinchListener =
+            new ScaleGestureDetector.SimpleOnScaleGestureListener() {
+                @Override
+                public boolean onScale(ScaleGestureDetector detector) {
+                    // Spreading the fingers zooms in.
+                    setFovY(fovY / detector.getScaleFactor());
+                    return true;
+                }
+            };
+
+    private RenderView.Callback renderViewCallback = new RenderView.Callback() {
+        @Override
+        public void onDecodeSurfaceAvailable(Surface decodeSurface) {
+            SphericalVideoPlayer.this.decodeSurface = decodeSurface;
+            if (readyToPlay) {
+                prepareVideo(decodeSurface);
+            }
+        }
+
+        @Override
+        public void onRenderViewDestroyed() {
+            decodeSurface = null;
+            stopSpatialAudio();
+            if (liveDecoder != null) {
+                liveDecoder.release();
+                liveDecoder = null;
+            }
+            if (seekController != null) {
+                seekController.release();
+                seekController = null;
+            }
+            if (renditionSwitcher != null && renditionSwitcher.cancel()) {
+                post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (renditionPolicy != null) {
+                            renditionPolicy.onSwitchCancelled(System.nanoTime());
+                        }
+                    }
+                });
+            }
+            if (videoPlayerInternal != null) {
+                videoPlayerInternal.stop();
+                videoPlayerInternal.release();
+                videoPlayerInternal = null;
+            }
+        }
+    };
+
+    private SeekController.Listener seekListener = new SeekController.Listener() {
+        @Override
+        public void onKeyframeIndexReady(KeyframeIndex index) {
+        }
+
+        @Override
+        public void onPreviewReady(long keyframeUs, Bitmap preview) {
+            RenderThread thread = renderThread;
+            RenderView view = renderView;
+            if (scrubbing && thread != null && view != null) {
+                thread.showPreview(view, preview);
+            }
+        }
+    };
+
+    private final MediaPlayer.OnSeekCompleteListener seekCompleteListener =
+            new MediaPlayer.OnSeekCompleteListener() {
+                @Override
+                public void onSeekComplete(MediaPlayer mp) {
+                    seekLatency.record(System.nanoTime() - seekStartNanos);
+                    post(new Runnable() {
+                        @Override
+                        public void run() {
+                            // Realign the audio clock right away so AV sync
+                            // does not hold the first frames after the seek.
+                            updatePlaybackClock();
+                            resetAvSync();
+                            if (renderThread != null && !scrubbing) {
+                                renderThread.hidePreview(renderView);
+                            }
+                        }
+                    });
+                }
+            };
+
+    private RenditionSwitcher.Listener renditionSwitchListener = new RenditionSwitcher.Listener() {
+        @Override
+        public void onRenditionSwitched(MediaPlayer player, int level) {
+            // Handed over muted; spatial audio keeps it that way.
+            if (spatialAudio == null) {
+                player.setVolume(1.f, 1.f);
+            }
+            setVideoSize(player.getVideoWidth(), player.getVideoHeight());
+            videoPlayerInternal = player;
+            renditionLevel = level;
+            // Frames of the new rendition may not line up with the old one.
+            resetAvSync();
+
+            List<Rendition> list = renditions;
+            if (list != null) {
+                // Keyframes differ between renditions, so previews and seeks
+                // follow the one playing, as does preparing again.
+                videoPath = list.get(level).uri;
+                startSeekController();
+            }
+        }
+
+        @Override
+        public void onRenditionSwitchFailed(int level, Exception e) {
+            post(new Runnable() {
+                @Override
+                public void run() {
+                    if (renditionPolicy != null) {
+                        renditionPolicy.onSwitchFailed(System.nanoTime());
+                    }
+                }
+            });
+        }
+    };
+
+    private final AmbisonicAudioPlayer.Listener spatialAudioListener =
+            new AmbisonicAudioPlayer.Listener() {
+                @Override
+                public void onSpatialAudioFailed(Exception e) {
+                    RenderThread thread = renderThread;
+                    if (thread == null) {
+                        return;
+                    }
+                    thread.getControlHandler().post(new Runnable() {
+                        @Override
+                        public void run() {
+                            stopSpatialAudio();
+                        }
+                    });
+                }
+            };
+
+    // Last position the playback clock was anchored at, on the UI thread.
+    private int lastPlaybackPositionMs;
+
+    private final Runnable playbackClockUpdater = new Runnable() {
+        @Override
+        public void run() {
+            updatePlaybackClock();
+            updateRendition();
+            postDelayed(this, PLAYBACK_CLOCK_UPDATE_MS);
+        }
+    };
+
     private GestureDetector gestureDetector;
+    private ScaleGestureDetector scaleGestureDetector;
 
     public SphericalVideoPlayer(Context context) {
         this(context, null);
@@ -100,309 +364,1085 @@ public class SphericalVideoPlayer extends TextureView {
     public SphericalVideoPlayer(Context context, AttributeSet attrs, int defStyleAttr) {
         super(context, attrs, defStyleAttr);
         gestureDetector = new GestureDetector(getContext(), dragListener);
+        scaleGestureDetector = new ScaleGestureDetector(getContext(), pinchListener);
 
         setOnTouchListener(new OnTouchListener() {
             @Override
             public boolean onTouch(View v, MotionEvent event) {
-                return gestureDetector.onTouchEvent(event);
+                boolean handled = scaleGestureDetector.onTouchEvent(event);
+                return gestureDetector.onTouchEvent(event) || handled;
             }
         });
     }
 
     public void initRenderThread(SurfaceTexture surface, int width, int height) {
-        renderThread = new RenderThread(RENDER_THREAD_NAME);
-        renderThread.start();
+        renderThread = RenderThread.acquire(getContext());
+        renderView = new RenderView(renderViewCallback);
+        renderView.dynamicResolutionEnabled = dynamicResolutionEnabled;
+        renderView.lateLatchEnabled = lateLatchEnabled;
+        renderView.viewportRecorder = viewportRecorder;
+        renderView.frameTimeStats = frameTimeStats;
+        renderView.setAvSyncCorrectionEnabled(avSyncCorrectionEnabled);
+        renderView.fisheyeProjection = fisheyeProjection;
+        renderView.fovY = fovY;
+        renderView.mipmapEnabled = mipmapEnabled;
+        renderView.mipmapCopyLatency = mipmapCopyLatency;
+        renderView.mirrorDrawLatency = mirrorDrawLatency;
+        renderView.mirrorPose.set(mirrorLon, mirrorLat);
+        renderView.mirrorFovY = mirrorFovY;
+        renderView.mirrorCameraEnabled = mirrorCameraEnabled;
+        renditionSwitcher = new RenditionSwitcher(
+                getContext(), renderThread.getControlHandler(), renditionSwitchListener);
+        renderThread.attachView(renderView, surface, width, height);
+        if (hotspotBatch != null) {
+            renderThread.setHotspots(renderView, new HotspotLayer(hotspotBatch, hotspotAtlas));
+        }
+        if (mirrorSurface != null) {
+            renderThread.setMirror(renderView, mirrorSurface, mirrorWidth, mirrorHeight);
+        }
+    }
 
-        Message msg = Message.obtain();
-        msg.what = RenderThread.MSG_SURFACE_AVAILABLE;
-        msg.obj = surface;
-        msg.arg1 = width;
-        msg.arg2 = height;
-        renderThread.handler.sendMessage(msg);
+    /**
+     * Passes on a new size of the surface given to
+     * {@link #initRenderThread(SurfaceTexture, int, int)}, from
+     * onSurfaceTextureSizeChanged.
+     */
+    public void onSurfaceSizeChanged(int width, int height) {
+        if (renderView != null) {
+            renderThread.resizeView(renderView, width, height);
+        }
     }
 
     public void setVideoURIPath(String path) {
+        clearVideoSource();
         videoPath = path;
     }
 
-    public void playWhenReady() {
-        // Wait for render surface creation to start preparing the video.
-        readyToPlay = true;
+    /**
+     * Plays a local file. From Android M on it is memory mapped and read
+     * through a MediaDataSource, which also handles files over 2GB.
+     */
+    public void setVideoFile(File file) {
+        clearVideoSource();
+        videoFile = file;
     }
 
-    private void prepareVideo(String videoPath) {
-        if (renderThread == null) {
-            throw new IllegalStateException("RenderThread has not been initialized");
+    /**
+     * Plays one entry of an {@link AssetPack}, mapped in place like
+     * {@link #setVideoFile(File)}; before M the entry is passed to
+     * MediaPlayer as a file descriptor range.
+     */
+    public void setVideoPackEntry(File pack, String entryName) {
+        clearVideoSource();
+        videoPack = pack;
+        videoPackEntry = entryName;
+    }
+
+    /**
+     * Plays a raw resource straight out of the APK. It must be stored
+     * uncompressed, which aapt does for media files.
+     */
+    public void setVideoResource(int rawResourceId) {
+        clearVideoSource();
+        videoResourceId = rawResourceId;
+    }
+
+    /**
+     * Plays a live H.264 or H.265 stream received as RTP on a UDP port, such
+     * as the output of a 360 camera on the local network, with as little
+     * buffering as the stream allows. There is no audio, seeking or
+     * rendition switching; see {@link #getLiveLatencyStats()} for where
+     * the time from capture to screen goes.
+     *
+     * @param mime "video/avc" or "video/hevc"
+     * @param width largest expected picture width
+     * @param height largest expected picture height
+     * @param senderClockLocal whether the sender stamps pictures with this
+     *                         device's clock, as the loopback sender does,
+     *                         so network latency can be measured
+     */
+    public void setLiveRtpSource(
+            int port, String mime, int width, int height, boolean senderClockLocal) {
+        if (port <= 0 || port > 0xffff) {
+            throw new IllegalArgumentException("Invalid port " + port);
+        }
+
+        clearVideoSource();
+        livePort = port;
+        liveMime = mime;
+        liveWidth = width;
+        liveHeight = height;
+        liveSenderClockLocal = senderClockLocal;
+    }
+
+    /**
+     * Latency of the live stream by stage, or null when not playing one.
+     */
+    public LiveLatencyStats getLiveLatencyStats() {
+        LiveStreamDecoder decoder = liveDecoder;
+        return decoder != null ? decoder.getLatencyStats() : null;
+    }
+
+    /**
+     * Packet loss, picture and latency counters of the live stream as JSON,
+     * or null when not playing one.
+     */
+    public String getLiveStatsJson() {
+        LiveStreamDecoder decoder = liveDecoder;
+        return decoder != null ? decoder.getStatsJson() : null;
+    }
+
+    /**
+     * Plays one of several renditions of the same video, starting with
+     * {@code initialIndex}, and moves between them at keyframes while
+     * playing: down when the decoder falls behind the content frame rate,
+     * AV sync has to drop frames or rendering takes most of the refresh
+     * period, and back up once playback has been comfortably smooth for a
+     * while. All renditions must share the same timeline.
+     */
+    public void setRenditions(List<Rendition> renditions, int initialIndex) {
+        List<Rendition> sorted = new ArrayList<>(renditions);
+        Collections.sort(sorted, Rendition.BY_COST);
+        int level = sorted.indexOf(renditions.get(initialIndex));
+
+        setVideoURIPath(sorted.get(level).uri);
+        this.renditions = sorted;
+        renditionPolicy = new RenditionPolicy(sorted.size(), level);
+        renditionLevel = level;
+        renditionSampleNanos = -1;
+    }
+
+    /**
+     * The rendition playing right now, or null without
+     * {@link #setRenditions(List, int)}.
+     */
+    public Rendition getCurrentRendition() {
+        List<Rendition> list = renditions;
+        return list != null ? list.get(renditionLevel) : null;
+    }
+
+    /**
+     * Time from handing the source to MediaPlayer to it being prepared, or
+     * -1 until then.
+     */
+    public long getPrepareTimeMs() {
+        long nanos = prepareTimeNanos;
+        return nanos < 0 ? -1 : nanos / 1000000L;
+    }
+
+    private void clearVideoSource() {
+        videoPath = null;
+        videoFile = null;
+        videoPack = null;
+        videoPackEntry = null;
+        videoResourceId = 0;
+        livePort = 0;
+        liveMime = null;
+        renditions = null;
+        renditionPolicy = null;
+    }
+
+    /**
+     * Plays the video's first order ambisonic (AmbiX) track, when it has
+     * one, as stereo that turns with the view, in place of the stereo mix
+     * MediaPlayer plays. Videos without one, and releases before Android
+     * M, keep the stereo mix. Takes effect right away if the video is
+     * already prepared.
+     */
+    public void setSpatialAudioEnabled(final boolean enabled) {
+        spatialAudioEnabled = enabled;
+        if (renderThread == null || videoPlayerInternal == null) {
+            // Picked up once the video is prepared.
+            return;
         }
 
-        if (TextUtils.isEmpty(videoPath)) {
-            throw new RuntimeException("Cannot begin playback: video path is empty");
+        renderThread.getControlHandler().post(new Runnable() {
+            @Override
+            public void run() {
+                if (enabled) {
+                    startSpatialAudio();
+                } else {
+                    stopSpatialAudio();
+                }
+            }
+        });
+    }
+
+    /**
+     * Times spatial audio was reseeked to the video, or -1 when it is not
+     * playing. Grows by one per start, seek and resume; growth beyond that
+     * means the audio keeps drifting from the video.
+     */
+    public long getSpatialAudioResyncCount() {
+        AmbisonicAudioPlayer player = spatialAudio;
+        return player != null ? player.getResyncCount() : -1;
+    }
+
+    /**
+     * Shows {@code hotspots} over the video, each one the region of
+     * {@code atlas} it names, replacing any shown before. All of them are
+     * drawn in one draw call, and taps on them are reported to the
+     * {@link OnHotspotClickListener}. The atlas is only read.
+     */
+    public void setHotspots(List<Hotspot> hotspots, Bitmap atlas) {
+        hotspotIndex = new HotspotIndex(hotspots);
+        hotspotBatch = new HotspotBatch(hotspots, SphericalCamera.SPHERE_RADIUS);
+        hotspotAtlas = atlas;
+        if (renderView != null) {
+            renderThread.setHotspots(renderView, new HotspotLayer(hotspotBatch, hotspotAtlas));
         }
+    }
 
-        try {
-            videoPlayerInternal = new MediaPlayer();
-            videoPlayerInternal.setSurface(renderThread.getVideoDecodeSurface());
-            videoPlayerInternal.setAudioStreamType(AudioManager.STREAM_MUSIC);
-            videoPlayerInternal.setDataSource(getContext(), Uri.parse(videoPath), null);
-            videoPlayerInternal.setLooping(true);
+    public void setOnHotspotClickListener(OnHotspotClickListener listener) {
+        hotspotClickListener = listener;
+    }
 
-            toast(getContext(), "Preparing video...");
+    /**
+     * The hotspot shown at view coordinates (x, y), or null. Casts a ray
+     * from the camera through the point and looks up where it meets the
+     * sphere, so the cost does not depend on the number of hotspots.
+     */
+    public Hotspot findHotspot(float x, float y) {
+        if (hotspotIndex == null || renderView == null || getWidth() == 0 || getHeight() == 0) {
+            return null;
+        }
 
-            videoPlayerInternal.setOnPreparedListener(
-                    new MediaPlayer.OnPreparedListener() {
-                        @Override
-                        public void onPrepared(MediaPlayer mp) {
-                            toast(getContext(), "Prepared video");
-                            play();
-                        }
-                    });
-            videoPlayerInternal.setOnBufferingUpdateListener(
-                    new MediaPlayer.OnBufferingUpdateListener() {
-                        @Override
-                        public void onBufferingUpdate(MediaPlayer mp, int percent) {
-                            toast(getContext(), "Buffered video" + percent + "%");
-                        }
-                    });
-            videoPlayerInternal.prepareAsync();
-        } catch (IOException e) {
-            Log.e(TAG, e.toString(), e);
-            toast(getContext(), e.toString());
+        pickCamera.setViewportSize(getWidth(), getHeight());
+        pickCamera.setFovY(renderView.fovY);
+        pickCamera.setOrientation(renderView.pose.getLon(), renderView.pose.getLat());
+        pickCamera.update();
+        float ndcX = 2 * x / getWidth() - 1;
+        float ndcY = 1 - 2 * y / getHeight();
+        if (!pickCamera.pickLonLat(
+                ndcX, ndcY, SphericalCamera.SPHERE_RADIUS, pickLonLat)) {
+            return null;
         }
+        return hotspotIndex.find(pickLonLat[0], pickLonLat[1]);
     }
 
-    public void play() {
-        if (!videoPlayerInternal.isPlaying()) {
-            videoPlayerInternal.start();
+    /**
+     * Renders the sphere offscreen at a scale adjusted every frame from the
+     * measured frame time and upscales it to the view, trading sharpness for
+     * a steady frame rate on high resolution screens.
+     */
+    public void setDynamicResolutionEnabled(boolean enabled) {
+        dynamicResolutionEnabled = enabled;
+        if (renderView != null) {
+            renderView.dynamicResolutionEnabled = enabled;
         }
     }
 
-    public void releaseResources() {
-        renderThread.handler.sendEmptyMessage(RenderThread.MSG_SURFACE_DESTROYED);
+    /**
+     * Plays raw dual fisheye camera output, mapping every pixel of the sphere
+     * into the two lens images with {@code projection} and crossfading the
+     * seam, or equirectangular video again when null. Scrub previews are not
+     * shown for fisheye video.
+     */
+    public void setDualFisheyeProjection(DualFisheyeProjection projection) {
+        fisheyeProjection = projection;
+        if (renderView != null) {
+            renderView.fisheyeProjection = projection;
+            renderThread.invalidate(renderView);
+        }
+    }
+
+    /**
+     * Sets the vertical field of view in degrees, clamped to
+     * [SphericalCamera.MIN_FOVY, SphericalCamera.MAX_FOVY]; pinching
+     * changes it too. Takes effect on the next frame drawn.
+     */
+    public void setFovY(float fovY) {
+        this.fovY = Math.max(SphericalCamera.MIN_FOVY, Math.min(SphericalCamera.MAX_FOVY, fovY));
+        if (renderView != null) {
+            renderView.fovY = this.fovY;
+            renderThread.invalidate(renderView);
+        }
+    }
+
+    public float getFovY() {
+        return fovY;
+    }
+
+    /**
+     * Once zooming out makes a screen pixel cover more than one and a half
+     * video texels, copies every decoded frame into a mipmapped texture and
+     * samples that instead, which stops high resolution video from
+     * shimmering. At normal zoom frames are sampled directly and nothing is
+     * copied. Not applied to dual fisheye video or scrub previews.
+     */
+    public void setMipmappedZoomEnabled(boolean enabled) {
+        mipmapEnabled = enabled;
+        if (renderView != null) {
+            renderView.mipmapEnabled = enabled;
+            renderThread.invalidate(renderView);
+        }
+    }
+
+    public boolean isMipmappedZoomEnabled() {
+        return mipmapEnabled;
     }
 
     /**
-     * RenderThread waits for the SphericalVideoPlayer's SurfaceTexture to be
-     * available then sets up a GL rendering context, creates an external
-     * texture for the video decoder to output to, asks for vsync updates from
-     * the Choreographer, attaches a frame available listener the video decode
-     * SurfaceTexture, then begins video playback.
+     * Time the render thread spent copying and mipmapping frames, one sample
+     * per copied frame. ES2 has no GPU timers, so this is the CPU side; GPU
+     * cost shows in the frame times.
+     */
+    public LatencyStats getMipmapCopyStats() {
+        return mipmapCopyLatency;
+    }
+
+    /**
+     * Also draws every frame into {@code surface}, such as the
+     * SurfaceTexture of a TextureView on a {@link android.app.Presentation},
+     * or stops when null. Call it again with the same surface when its size
+     * changes.
      *
-     * Drag events from the main thread will be forwarded to the RenderThread's
-     * message queue so that it may update the view state.
+     * The video is still decoded once: the mirror is drawn by the same
+     * render thread and GL context from the same decode texture and sphere
+     * mesh, right after this view's own frame is swapped, and without
+     * waiting for the other display's vsync, so this view only pays for the
+     * extra draw.
      *
-     * SphericalSceneRenderer draws the 360 video scene each frame using the
-     * latest latched video texture frame.
+     * The player owns {@code surface} from then on and releases it once it
+     * is replaced, cleared or this player's view is released. Return false
+     * from onSurfaceTextureDestroyed, as for the player's own surface, and
+     * do not release it there: the render thread may draw into the surface
+     * until it sees the change.
+     */
+    public void setMirrorSurface(SurfaceTexture surface, int width, int height) {
+        mirrorSurface = surface;
+        mirrorWidth = width;
+        mirrorHeight = height;
+        if (renderView != null) {
+            renderThread.setMirror(renderView, surface, width, height);
+        }
+    }
+
+    /**
+     * Points the mirror's camera at {@code lon}, {@code lat} with a vertical
+     * field of view of {@code fovY} degrees, independently of this view.
+     * By default the mirror shows what this view shows.
+     */
+    public void setMirrorCamera(float lon, float lat, float fovY) {
+        mirrorLon = lon;
+        mirrorLat = lat;
+        mirrorFovY = Math.max(SphericalCamera.MIN_FOVY, Math.min(SphericalCamera.MAX_FOVY, fovY));
+        mirrorCameraEnabled = true;
+        if (renderView != null) {
+            renderView.mirrorPose.set(mirrorLon, mirrorLat);
+            renderView.mirrorFovY = mirrorFovY;
+            renderView.mirrorCameraEnabled = true;
+            renderThread.invalidate(renderView);
+        }
+    }
+
+    /**
+     * Makes the mirror follow this view's camera again.
      */
-    private class RenderThread extends HandlerThread {
-        private static final int MSG_SURFACE_AVAILABLE = 0x1;
-        private static final int MSG_VSYNC = 0x2;
-        private static final int MSG_FRAME_AVAILABLE = 0x3;
-        private static final int MSG_SURFACE_DESTROYED = 0x4;
-        private static final int MSG_ON_SCROLL = 0x5;
+    public void clearMirrorCamera() {
+        mirrorCameraEnabled = false;
+        if (renderView != null) {
+            renderView.mirrorCameraEnabled = false;
+            renderThread.invalidate(renderView);
+        }
+    }
 
-        private static final float FOVY = 70f;
-        private static final float Z_NEAR = 1f;
-        private static final float Z_FAR = 1000f;
-        private static final float DRAG_FRICTION = 0.1f;
-        private static final float INITIAL_PITCH_DEGREES = 90.f;
+    /**
+     * Render thread time spent on the mirror, from making its surface
+     * current to swapping it, one sample per mirrored frame. This is all
+     * mirroring adds to the frames of this view.
+     */
+    public LatencyStats getMirrorDrawStats() {
+        return mirrorDrawLatency;
+    }
 
-        private Handler handler;
-        private Choreographer.FrameCallback frameCallback = new ChoreographerCallback();
+    private void setVideoSize(int width, int height) {
+        RenderView view = renderView;
+        if (view != null) {
+            view.videoWidth = width;
+            view.videoHeight = height;
+        }
+    }
+
+    /**
+     * Captures the next drawn frame as seen on screen and encodes it in the
+     * background. On GLES3 devices the readback never stalls rendering.
+     */
+    public void captureFrame(
+            Bitmap.CompressFormat format, int quality, FrameCaptureCallback callback) {
+        if (renderThread == null) {
+            callback.onFrameCaptureFailed(
+                    new IllegalStateException("RenderThread has not been initialized"));
+            return;
+        }
+        renderThread.capture(new CaptureRequest(renderView, format, quality, 0, callback));
+    }
 
-        private EGLRenderTarget eglRenderTarget;
-        private SurfaceTexture videoSurfaceTexture;
-        private int videoDecodeTextureId = -1;
+    /**
+     * Captures every {@code frameInterval}-th drawn frame until
+     * {@link #stopContinuousCapture()}. Frames are skipped, never delayed,
+     * when readback or encoding cannot keep up.
+     */
+    public void startContinuousCapture(
+            int frameInterval,
+            Bitmap.CompressFormat format,
+            int quality,
+            FrameCaptureCallback callback) {
+        if (frameInterval <= 0) {
+            throw new IllegalArgumentException("frameInterval must be positive");
+        }
+        if (renderThread == null) {
+            callback.onFrameCaptureFailed(
+                    new IllegalStateException("RenderThread has not been initialized"));
+            return;
+        }
+        renderThread.capture(
+                new CaptureRequest(renderView, format, quality, frameInterval, callback));
+    }
 
-        private float[] videoTextureMatrix = new float[16];
-        private float[] modelMatrix = new float[16];
-        private float[] viewMatrix = new float[16];
-        private float[] projectionMatrix = new float[16];
+    public void stopContinuousCapture() {
+        if (renderThread != null) {
+            renderThread.stopContinuousCapture(renderView);
+        }
+    }
 
-        private float[] camera = new float[3];
+    /**
+     * Logs video position, lon, lat and FOV of every drawn frame to
+     * {@code logFile} in the {@link com.oculus.sample.telemetry.ViewportLog}
+     * format, replacing any recording in progress.
+     */
+    public void startViewportRecording(File logFile) throws IOException {
+        stopViewportRecording();
 
-        private float lon;
-        private float lat;
+        viewportRecorder = new ViewportRecorder(logFile);
+        if (renderView != null) {
+            renderView.viewportRecorder = viewportRecorder;
+        }
+    }
 
-        private boolean frameAvailable;
-        private boolean pendingCameraUpdate;
+    public void stopViewportRecording() {
+        final ViewportRecorder recorder = viewportRecorder;
+        if (recorder == null) {
+            return;
+        }
 
-        private SphericalSceneRenderer renderer;
+        viewportRecorder = null;
+        if (renderView != null) {
+            renderView.viewportRecorder = null;
+        }
 
-        private class ChoreographerCallback implements Choreographer.FrameCallback {
+        // Closing joins the flusher and writes out the rest of the log.
+        Runnable close = new Runnable() {
             @Override
-            public void doFrame(long frameTimeNanos) {
-                handler.sendEmptyMessage(MSG_VSYNC);
+            public void run() {
+                try {
+                    recorder.close();
+                } catch (IOException e) {
+                    Log.e(TAG, e.toString(), e);
+                }
             }
+        };
+        if (renderThread != null) {
+            renderThread.getControlHandler().post(close);
+        } else {
+            close.run();
         }
+    }
 
-        public RenderThread(String name) {
-            super(name);
-            eglRenderTarget = new EGLRenderTarget();
+    /**
+     * Records present intervals and render work of every drawn frame into
+     * {@code stats}, or stops recording when null.
+     */
+    public void setFrameTimeStats(FrameTimeStats stats) {
+        frameTimeStats = stats;
+        if (renderView != null) {
+            renderView.frameTimeStats = stats;
         }
+    }
 
-        @Override
-        public synchronized void start() {
-                super.start();
+    /**
+     * Rotates the view exactly as a touch drag of the given scroll distances
+     * would, for scripted input.
+     */
+    public void dragBy(float distanceX, float distanceY) {
+        if (renderThread != null) {
+            drag(distanceX, distanceY);
+        }
+    }
 
-                handler = new Handler(getLooper()) {
-                    @Override
-                    public void handleMessage(Message msg) {
-                        switch (msg.what) {
-                            case MSG_SURFACE_AVAILABLE:
-                                onSurfaceAvailable((SurfaceTexture)msg.obj, msg.arg1, msg.arg2);
-                                break;
-                            case MSG_VSYNC:
-                                onVSync();
-                                break;
-                            case MSG_FRAME_AVAILABLE:
-                                onFrameAvailable();
-                                break;
-                           case MSG_SURFACE_DESTROYED:
-                               onSurfaceDestroyed();
-                               break;
-                           case MSG_ON_SCROLL:
-                               onScroll((ScrollDeltaHolder)msg.obj);
-                               break;
-                        }
-                    }
-                };
+    /**
+     * Drags always update the view's pose directly from the UI thread. With
+     * late latching the render thread samples it right before drawing the
+     * sphere instead of when the frame starts. The render thread logs
+     * average and max input-to-present latency either way, so both modes
+     * can be compared.
+     */
+    public void setLateLatchEnabled(boolean enabled) {
+        lateLatchEnabled = enabled;
+        if (renderView != null) {
+            renderView.lateLatchEnabled = enabled;
         }
+    }
 
-        private Surface getVideoDecodeSurface() {
-            if (!eglRenderTarget.hasValidContext()) {
-                throw new IllegalStateException(
-                        "Cannot get video decode surface without GL context");
-            }
+    /**
+     * Every latched video frame is compared with the audio clock. With
+     * correction enabled (the default) frames lagging the audio by more
+     * than half a frame are dropped in favor of newer queued ones, and
+     * frames that would be shown more than half a frame early are held for
+     * up to a few vsyncs.
+     */
+    public void setAvSyncCorrectionEnabled(boolean enabled) {
+        avSyncCorrectionEnabled = enabled;
+        if (renderView != null) {
+            renderView.setAvSyncCorrectionEnabled(enabled);
+        }
+    }
 
-            videoDecodeTextureId = GLHelpers.generateExternalTexture();
-            videoSurfaceTexture = new SurfaceTexture(videoDecodeTextureId);
+    /**
+     * Rolling drift between the picture and the audio, measured whether or
+     * not correction is enabled, or null before the render thread is
+     * initialized.
+     */
+    public AvSyncStats getAvSyncStats() {
+        return renderView != null ? renderView.getAvSyncStats() : null;
+    }
 
-            videoSurfaceTexture.setOnFrameAvailableListener(
-                    new SurfaceTexture.OnFrameAvailableListener() {
-                        @Override
-                        public void onFrameAvailable(SurfaceTexture surfaceTexture) {
-                            handler.sendEmptyMessage(RenderThread.MSG_FRAME_AVAILABLE);
-                        }
-                    });
-            return new Surface(videoSurfaceTexture);
+    /**
+     * Sets the scheduling priority of the render thread shared by all
+     * players, one of the {@link android.os.Process} THREAD_PRIORITY
+     * constants. Defaults to THREAD_PRIORITY_DISPLAY.
+     */
+    public static void setRenderThreadPriority(int priority) {
+        RenderThread.setThreadPriority(priority);
+    }
+
+    /**
+     * Recent frames that ended more than one refresh period after their
+     * vsync, oldest first, each with the render thread message and frame
+     * stage that took longest. The log is shared by all players.
+     */
+    public List<JankWatchdog.JankRecord> getJankLog() {
+        if (renderThread == null) {
+            return Collections.emptyList();
         }
+        return renderThread.getJankLog();
+    }
 
-        private void onSurfaceAvailable(SurfaceTexture surfaceTexture, int width, int height) {
-            Log.d(TAG, "onSurfaceAvailable w: " + width + " h: " + height);
+    /**
+     * The jank log with frame counts, as JSON, or null when the render thread
+     * is not running.
+     */
+    public String getJankLogJson() {
+        if (renderThread == null) {
+            return null;
+        }
+        return renderThread.getJankWatchdog().toJson();
+    }
 
-            eglRenderTarget.createRenderSurface(surfaceTexture);
+    public void clearJankLog() {
+        if (renderThread != null) {
+            renderThread.getJankWatchdog().clear();
+        }
+    }
 
-            Choreographer.getInstance().postFrameCallback(frameCallback);
+    /**
+     * Video duration, or -1 before it is prepared.
+     */
+    public long getDurationMs() {
+        MediaPlayer mediaPlayer = videoPlayerInternal;
+        try {
+            return mediaPlayer != null ? mediaPlayer.getDuration() : -1;
+        } catch (IllegalStateException e) {
+            return -1;
+        }
+    }
 
-            GLES20.glViewport(0, 0, width, height);
-            GLHelpers.checkGlError("glViewport");
+    public long getCurrentPositionMs() {
+        MediaPlayer mediaPlayer = videoPlayerInternal;
+        try {
+            return mediaPlayer != null ? mediaPlayer.getCurrentPosition() : -1;
+        } catch (IllegalStateException e) {
+            return -1;
+        }
+    }
 
-            float aspectRatio = (float) width / height;
-            Matrix.perspectiveM(projectionMatrix, 0, FOVY, aspectRatio, Z_NEAR, Z_FAR);
-            Matrix.setIdentityM(viewMatrix, 0);
-            // Apply initial rotation
-            Matrix.setRotateM(modelMatrix, 0, INITIAL_PITCH_DEGREES, 1, 0, 0);
+    /**
+     * Seeks to the keyframe closest to {@code positionMs}, where the decoder
+     * can resume without decoding the frames before it. The keyframe index
+     * is built, or loaded from the cache, while the video prepares; seeks
+     * made before it is ready go to the exact position.
+     */
+    public void seekTo(long positionMs) {
+        MediaPlayer mediaPlayer = videoPlayerInternal;
+        if (mediaPlayer == null) {
+            return;
+        }
+        seekPlayer(mediaPlayer, snapToKeyframeMs(positionMs, false));
+    }
 
-            GLES20.glClearColor(1.0f, 0.f, 0.f, 1.f);
+    /**
+     * Starts scrubbing: playback pauses and {@link #scrubTo(long)} shows low
+     * resolution previews of the keyframes passed over on the sphere,
+     * which can still be dragged around, until {@link #endScrub()}.
+     */
+    public void beginScrub() {
+        MediaPlayer mediaPlayer = videoPlayerInternal;
+        if (scrubbing || mediaPlayer == null || seekController == null) {
+            return;
+        }
 
-            renderer = new SphericalSceneRenderer(getContext());
+        scrubbing = true;
+        scrubPositionMs = getCurrentPositionMs();
+        resumeAfterScrub = mediaPlayer.isPlaying();
+        if (resumeAfterScrub) {
+            mediaPlayer.pause();
+        }
+    }
 
-            if (readyToPlay) {
-                prepareVideo(videoPath);
-            }
+    public void scrubTo(long positionMs) {
+        SeekController controller = seekController;
+        if (!scrubbing || controller == null) {
+            return;
         }
 
-        private void onVSync() {
-            if (!eglRenderTarget.hasValidContext()) {
-                return;
-            }
+        scrubPositionMs = positionMs;
+        controller.requestPreview(positionMs * 1000);
+    }
+
+    /**
+     * Seeks the decoder to the keyframe of the last preview and resumes
+     * playback if scrubbing paused it. The preview stays up until the first
+     * frame decoded after the seek replaces it.
+     */
+    public void endScrub() {
+        if (!scrubbing) {
+            return;
+        }
 
-            Choreographer.getInstance().postFrameCallback(frameCallback);
+        scrubbing = false;
+        SeekController controller = seekController;
+        if (controller != null) {
+            controller.endScrub();
+        }
 
-            // We only redraw when there's a new video frame or if a drag event happened.
-            if (!frameAvailable && !pendingCameraUpdate) {
-                return;
-            }
+        MediaPlayer mediaPlayer = videoPlayerInternal;
+        if (mediaPlayer == null) {
+            return;
+        }
+        seekPlayer(mediaPlayer, snapToKeyframeMs(scrubPositionMs, true));
+        if (resumeAfterScrub) {
+            mediaPlayer.start();
+        }
+    }
+
+    /**
+     * Time from asking MediaPlayer to seek until it reports the seek
+     * complete, for every seek including the one ending a scrub.
+     */
+    public LatencyStats getSeekLatencyStats() {
+        return seekLatency;
+    }
+
+    /**
+     * Time from a scrub position change until its preview was ready, or null
+     * before the video is prepared.
+     */
+    public LatencyStats getScrubPreviewLatencyStats() {
+        SeekController controller = seekController;
+        return controller != null ? controller.getPreviewLatency() : null;
+    }
+
+    private long snapToKeyframeMs(long positionMs, boolean floor) {
+        SeekController controller = seekController;
+        KeyframeIndex index = controller != null ? controller.getIndex() : null;
+        if (index == null) {
+            return positionMs;
+        }
+
+        long positionUs = positionMs * 1000;
+        int keyframe = floor ? index.floorIndex(positionUs) : index.nearestIndex(positionUs);
+        return index.getTimeUs(keyframe) / 1000;
+    }
+
+    private void seekPlayer(MediaPlayer mediaPlayer, long positionMs) {
+        seekStartNanos = System.nanoTime();
+        mediaPlayer.setOnSeekCompleteListener(seekCompleteListener);
+        // Snapped to a keyframe, so there is nothing to decode up to it.
+        mediaPlayer.seekTo((int) positionMs);
+    }
+
+    private void drag(float distanceX, float distanceY) {
+        renderView.addDrag(distanceX, distanceY);
+        renderThread.invalidate(renderView);
+    }
+
+    public void playWhenReady() {
+        // Wait for render surface creation to start preparing the video.
+        readyToPlay = true;
+    }
 
-            eglRenderTarget.makeCurrent();
-            // Have to be sure to balance onFrameAvailable and updateTexImage calls so that
-            // the internal queue buffers will be freed. For this example, we can rely on the
-            // display refresh rate being higher or equal to the video frame rate (sample is 30fps).
-            videoSurfaceTexture.updateTexImage();
-            videoSurfaceTexture.getTransformMatrix(videoTextureMatrix);
+    private void prepareVideo(Surface decodeSurface) {
+        if (livePort > 0) {
+            startLiveStream(decodeSurface);
+            return;
+        }
+        if (TextUtils.isEmpty(videoPath)
+                && videoFile == null
+                && videoPack == null
+                && videoResourceId == 0) {
+            throw new RuntimeException("Cannot begin playback: no video source set");
+        }
 
-            updateCamera();
+        try {
+            prepareStartNanos = System.nanoTime();
+            prepareTimeNanos = -1;
+            videoPlayerInternal = new MediaPlayer();
+            videoPlayerInternal.setSurface(decodeSurface);
+            videoPlayerInternal.setAudioStreamType(AudioManager.STREAM_MUSIC);
+            setDataSource(videoPlayerInternal);
+            videoPlayerInternal.setLooping(true);
 
-            renderer.onDrawFrame(
-                    videoDecodeTextureId,
-                    videoTextureMatrix,
-                    modelMatrix,
-                    viewMatrix,
-                    projectionMatrix);
+            toast(getContext(), "Preparing video...");
 
-            eglRenderTarget.swapBuffers();
+            videoPlayerInternal.setOnPreparedListener(
+                    new MediaPlayer.OnPreparedListener() {
+                        @Override
+                        public void onPrepared(MediaPlayer mp) {
+                            prepareTimeNanos = System.nanoTime() - prepareStartNanos;
+                            setVideoSize(mp.getVideoWidth(), mp.getVideoHeight());
+                            toast(getContext(), "Prepared video");
+                            startSpatialAudio();
+                            play();
+                        }
+                    });
+            videoPlayerInternal.setOnBufferingUpdateListener(
+                    new MediaPlayer.OnBufferingUpdateListener() {
+                        @Override
+                        public void onBufferingUpdate(MediaPlayer mp, int percent) {
+                            toast(getContext(), "Buffered video" + percent + "%");
+                        }
+                    });
+            videoPlayerInternal.prepareAsync();
 
-            if (frameAvailable) {
-                frameAvailable = false;
+            startSeekController();
+        } catch (IOException e) {
+            Log.e(TAG, e.toString(), e);
+            toast(getContext(), e.toString());
+        }
+    }
+
+    /**
+     * Indexes the current video source for seeking and previews, replacing
+     * the index of the previous one. Runs on the control thread.
+     */
+    private void startSeekController() {
+        if (seekController != null) {
+            seekController.release();
+        }
+        seekController = new SeekController(
+                getContext(),
+                new File(getContext().getCacheDir(), KEYFRAME_CACHE_DIR),
+                createSeekSource(),
+                seekListener);
+        seekController.loadIndex();
+    }
+
+    private void startLiveStream(Surface decodeSurface) {
+        LiveStreamDecoder decoder = new LiveStreamDecoder(
+                livePort, liveMime, liveWidth, liveHeight, decodeSurface, liveSenderClockLocal);
+        try {
+            decoder.start();
+        } catch (SocketException e) {
+            Log.e(TAG, "Cannot receive on port " + livePort, e);
+            toast(getContext(), e.toString());
+            return;
+        }
+
+        liveDecoder = decoder;
+        setVideoSize(liveWidth, liveHeight);
+        RenderView view = renderView;
+        if (view != null) {
+            view.liveLatencyStats = decoder.getLatencyStats();
+        }
+        toast(getContext(), "Waiting for live stream on port " + livePort);
+    }
+
+    private void setDataSource(MediaPlayer mediaPlayer) throws IOException {
+        boolean mapped = Build.VERSION.SDK_INT >= Build.VERSION_CODES.M;
+
+        if (videoFile != null) {
+            if (mapped) {
+                mediaPlayer.setDataSource(new MappedMediaDataSource(MappedFile.open(videoFile)));
+            } else {
+                mediaPlayer.setDataSource(videoFile.getPath());
+            }
+        } else if (videoPack != null) {
+            AssetPack pack = AssetPack.open(videoPack);
+            if (mapped) {
+                mediaPlayer.setDataSource(new MappedMediaDataSource(pack.map(videoPackEntry)));
+            } else {
+                AssetPack.Entry entry = pack.getEntry(videoPackEntry);
+                FileInputStream in = new FileInputStream(videoPack);
+                try {
+                    // MediaPlayer duplicates the descriptor.
+                    mediaPlayer.setDataSource(in.getFD(), entry.offset, entry.length);
+                } finally {
+                    in.close();
+                }
+            }
+        } else if (videoResourceId != 0) {
+            AssetFileDescriptor afd = getContext().getResources().openRawResourceFd(videoResourceId);
+            if (afd == null) {
+                throw new IOException("Raw resource " + videoResourceId + " is compressed");
+            }
+            if (mapped) {
+                // The stream owns the descriptor, so closing the mapping closes it.
+                mediaPlayer.setDataSource(new MappedMediaDataSource(new MappedFile(
+                        afd.createInputStream().getChannel(),
+                        afd.getStartOffset(),
+                        afd.getLength())));
+            } else {
+                try {
+                    mediaPlayer.setDataSource(
+                            afd.getFileDescriptor(), afd.getStartOffset(), afd.getLength());
+                } finally {
+                    afd.close();
+                }
             }
+        } else {
+            mediaPlayer.setDataSource(getContext(), Uri.parse(videoPath), null);
+        }
+    }
 
-            if (pendingCameraUpdate) {
-                pendingCameraUpdate = false;
+    /**
+     * The current video source for indexing and previews, fixed at the time
+     * of the call.
+     */
+    private SeekController.Source createSeekSource() {
+        final File file = videoFile;
+        final File pack = videoPack;
+        final String packEntry = videoPackEntry;
+        final int resourceId = videoResourceId;
+        final String path = videoPath;
+
+        return new SeekController.Source() {
+            @Override
+            public String getCacheKey() {
+                if (file != null) {
+                    return file.getPath() + ":" + file.length() + ":" + file.lastModified();
+                } else if (pack != null) {
+                    return pack.getPath() + "!" + packEntry
+                            + ":" + pack.length() + ":" + pack.lastModified();
+                } else if (resourceId != 0) {
+                    // Resources change only with the APK.
+                    File apk = new File(getContext().getPackageCodePath());
+                    return "res:" + resourceId + ":" + apk.lastModified();
+                }
+                return path;
             }
+
+            @Override
+            public AssetFileDescriptor openFd() throws IOException {
+                if (file != null) {
+                    return new AssetFileDescriptor(
+                            ParcelFileDescriptor.open(file, ParcelFileDescriptor.MODE_READ_ONLY),
+                            0,
+                            file.length());
+                } else if (pack != null) {
+                    AssetPack.Entry entry = AssetPack.open(pack).getEntry(packEntry);
+                    return new AssetFileDescriptor(
+                            ParcelFileDescriptor.open(pack, ParcelFileDescriptor.MODE_READ_ONLY),
+                            entry.offset,
+                            entry.length);
+                } else if (resourceId != 0) {
+                    return getContext().getResources().openRawResourceFd(resourceId);
+                }
+                return null;
+            }
+
+            @Override
+            public String getUri() {
+                return path;
+            }
+        };
+    }
+
+    /**
+     * Runs on the control thread.
+     */
+    private void startSpatialAudio() {
+        MediaPlayer mediaPlayer = videoPlayerInternal;
+        RenderView view = renderView;
+        if (!spatialAudioEnabled || spatialAudio != null || mediaPlayer == null || view == null) {
+            return;
+        }
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.M) {
+            Log.w(TAG, "Playing the stereo mix, spatial audio needs Android M");
+            return;
         }
 
-        private void updateCamera() {
-            lat = Math.max(-85, Math.min(85, lat));
+        AmbisonicAudioPlayer player = new AmbisonicAudioPlayer(
+                getContext(),
+                createSeekSource(),
+                view.playbackClock,
+                view.listenerOrientation,
+                spatialAudioListener);
+        try {
+            player.start();
+        } catch (IOException | IllegalStateException e) {
+            Log.w(TAG, "Playing the stereo mix without spatial audio: " + e);
+            return;
+        }
 
-            float phi = (float)Math.toRadians(90 - lat);
-            float theta = (float)Math.toRadians(lon);
+        spatialAudio = player;
+        mediaPlayer.setVolume(0.f, 0.f);
+    }
 
-            camera[0] = (float)(100.f * Math.sin(phi) * Math.cos(theta));
-            camera[1] = (float)(100.f * Math.cos(phi));
-            camera[2] = (float)(100.f * Math.sin(phi) * Math.sin(theta));
+    /**
+     * Runs on the control thread.
+     */
+    private void stopSpatialAudio() {
+        if (spatialAudio == null) {
+            return;
+        }
 
-            Matrix.setLookAtM(
-                    viewMatrix, 0,
-                    camera[0], camera[1], camera[2],
-                    0, 0, 0,
-                    0, 1, 0
-            );
+        spatialAudio.release();
+        spatialAudio = null;
+        MediaPlayer mediaPlayer = videoPlayerInternal;
+        if (mediaPlayer != null) {
+            mediaPlayer.setVolume(1.f, 1.f);
         }
+    }
 
-        private void onFrameAvailable() {
-            frameAvailable = true;
+    public void play() {
+        if (!videoPlayerInternal.isPlaying()) {
+            videoPlayerInternal.start();
         }
 
-        private void onSurfaceDestroyed() {
-            if (videoPlayerInternal != null) {
-                videoPlayerInternal.stop();
-                videoPlayerInternal.release();
-                videoPlayerInternal = null;
+        // play() may be called from the control thread via onPrepared.
+        post(new Runnable() {
+            @Override
+            public void run() {
+                removeCallbacks(playbackClockUpdater);
+                playbackClockUpdater.run();
+            }
+        });
+    }
+
+    private void updatePlaybackClock() {
+        MediaPlayer mediaPlayer = videoPlayerInternal;
+        RenderView view = renderView;
+        if (mediaPlayer == null || view == null) {
+            return;
+        }
+
+        try {
+            int positionMs = mediaPlayer.getCurrentPosition();
+            boolean playing = mediaPlayer.isPlaying();
+            view.playbackClock.update(
+                    positionMs,
+                    System.nanoTime(),
+                    playing,
+                    mediaPlayer.getDuration());
+
+            // Looping gives no callback; the position going back is the loop.
+            if (playing && positionMs < lastPlaybackPositionMs) {
+                resetAvSync();
             }
+            lastPlaybackPositionMs = positionMs;
+        } catch (IllegalStateException e) {
+            // Released on the control thread in the meantime.
+        }
+    }
+
+    /**
+     * Called whenever the playback clock jumps.
+     */
+    private void resetAvSync() {
+        RenderThread thread = renderThread;
+        RenderView view = renderView;
+        if (thread != null && view != null) {
+            thread.resetAvSync(view);
+        }
+    }
 
-            if (videoDecodeTextureId != -1) {
-                int[] textures = new int[1];
-                textures[0] = videoDecodeTextureId;
-                GLES20.glDeleteTextures(1, textures, 0);
-                videoDecodeTextureId = -1;
+    /**
+     * Feeds the rendition policy the throughput since the last call and
+     * starts a switch when it picks another level.
+     */
+    private void updateRendition() {
+        RenditionPolicy policy = renditionPolicy;
+        MediaPlayer mediaPlayer = videoPlayerInternal;
+        RenderView view = renderView;
+        Surface surface = decodeSurface;
+        if (policy == null || mediaPlayer == null || view == null || surface == null
+                || !view.playbackClock.isPlaying()
+                || policy.getLevel() != renditionLevel) {
+            // Not playing, or a switch is still in progress.
+            renditionSampleNanos = -1;
+            return;
+        }
+
+        long nowNanos = System.nanoTime();
+        long framesDecoded = view.framesDecoded;
+        long framesPresented = view.framesPresented;
+        long frameWorkNanos = view.frameWorkNanos;
+        long framesDropped = view.getAvSyncStats().getFramesDropped();
+
+        if (renditionSampleNanos >= 0) {
+            float seconds = (nowNanos - renditionSampleNanos) / 1e9f;
+            long decoded = framesDecoded - lastFramesDecoded;
+            long presented = framesPresented - lastFramesPresented;
+            Rendition current = renditions.get(renditionLevel);
+
+            float decodeRatio = decoded / (current.frameRate * seconds);
+            float dropRatio = decoded > 0
+                    ? (float) (framesDropped - lastFramesDropped) / decoded
+                    : 0;
+            float renderLoad = presented > 0
+                    ? (float) (frameWorkNanos - lastFrameWorkNanos) / presented
+                            / renderThread.getRefreshPeriodNanos()
+                    : 0;
+
+            final int level = policy.onSample(nowNanos, decodeRatio, dropRatio, renderLoad);
+            if (level != renditionLevel) {
+                Log.i(TAG, String.format("Switching from %s to %s, decode %.2f drop %.3f load %.2f",
+                        current, renditions.get(level), decodeRatio, dropRatio, renderLoad));
+                startRenditionSwitch(mediaPlayer, surface, level);
             }
+        }
+
+        renditionSampleNanos = nowNanos;
+        lastFramesDecoded = framesDecoded;
+        lastFramesPresented = framesPresented;
+        lastFrameWorkNanos = frameWorkNanos;
+        lastFramesDropped = framesDropped;
+    }
 
-            if (videoSurfaceTexture != null) {
-                videoSurfaceTexture.release();
-                videoSurfaceTexture = null;
-                frameAvailable = false;
+    private void startRenditionSwitch(
+            final MediaPlayer current, final Surface surface, final int level) {
+        final Rendition rendition = renditions.get(level);
+        final RenditionSwitcher switcher = renditionSwitcher;
+        renderThread.getControlHandler().post(new Runnable() {
+            @Override
+            public void run() {
+                switcher.switchTo(current, surface, rendition, level);
             }
+        });
+    }
 
-            pendingCameraUpdate = false;
+    public void releaseResources() {
+        removeCallbacks(playbackClockUpdater);
+        stopViewportRecording();
 
-            eglRenderTarget.release();
-            renderer.release();
+        if (renderThread == null) {
+            return;
         }
 
-        private void onScroll(ScrollDeltaHolder deltaHolder) {
-            lon = (deltaHolder.deltaX) * DRAG_FRICTION + lon;
-            lat = -(deltaHolder.deltaY) * DRAG_FRICTION + lat;
-            pendingCameraUpdate = true;
-        }
+        renderThread.detachView(renderView);
+        RenderThread.release(renderThread);
+        renderThread = null;
+        // Setters only reach the render thread while a view is attached.
+        renderView = null;
     }
 }
@@ -0,0 +1,184 @@
+/**
+ * Copyright 2016-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * Licensed under the Creative Commons CC BY-NC 4.0 Attribution-NonCommercial
+ * License (the "License"). You may obtain a copy of the License at
+ * https://creativecommons.org/licenses/by-nc/4.0/.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.oculus.sample.projection;
+
+/**
+ * Maps sphere directions into a frame holding the images of two fisheye
+ * lenses, as recorded by dual-lens 360 cameras, so such frames can be shown
+ * without stitching them to equirectangular first.
+ *
+ * Where the two fields of view overlap, each lens is weighted by how far
+ * inside its image circle the direction is, ramping from 0 at the edge to 1
+ * at {@code blendDegrees} inside it, so the seam is crossfaded instead of
+ * cut. Directions neither lens sees get no weight at all.
+ *
+ * This is the reference for fisheye_fragment_shader.glsl, which does the
+ * same per pixel; {@link #stitch} renders a whole equirectangular frame
+ * with it on the CPU.
+ */
+public class DualFisheyeProjection {
+    public static final float DEFAULT_BLEND_DEGREES = 5.f;
+
+    private static final float PI = (float) Math.PI;
+    private static final float TWO_PI = (float) (Math.PI * 2);
+
+    private final FisheyeLens[] lenses;
+    private final float blendRadians;
+
+    private final float[] shaderBasis = new float[18];
+    private final float[] shaderImage = new float[8];
+    private final float[] shaderModel = new float[8];
+
+    public DualFisheyeProjection(FisheyeLens front, FisheyeLens back, float blendDegrees) {
+        if (blendDegrees <= 0) {
+            throw new IllegalArgumentException("Invalid blend width " + blendDegrees);
+        }
+
+        lenses = new FisheyeLens[] {front, back};
+        blendRadians = (float) Math.toRadians(blendDegrees);
+        for (int i = 0; i < 2; i++) {
+            lenses[i].getShaderParameters(
+                    shaderBasis, i * 9, shaderImage, i * 4, shaderModel, i * 4);
+        }
+    }
+
+    /**
+     * The common side-by-side layout: two image circles filling the left and
+     * right halves of a 2:1 frame, the front lens on the left, both with the
+     * same field of view and no distortion correction.
+     */
+    public static DualFisheyeProjection sideBySide(float fovDegrees) {
+        return new DualFisheyeProjection(
+                new FisheyeLens(0.25f, 0.5f, 0.25f, 0.5f, fovDegrees, 0, 0, 0),
+                new FisheyeLens(0.75f, 0.5f, 0.25f, 0.5f, fovDegrees, 180, 0, 0),
+                DEFAULT_BLEND_DEGREES);
+    }
+
+    public FisheyeLens getLens(int index) {
+        return lenses[index];
+    }
+
+    /**
+     * Samples for a mesh space direction.
+     *
+     * @param out receives u, v of the front lens, u, v of the back lens and
+     *            the front and back weights, which sum to 1 unless neither
+     *            lens sees the direction, when both are 0
+     */
+    public void mapDirection(float x, float y, float z, float[] out) {
+        float frontMargin = lenses[0].project(x, y, z, out, 0);
+        float backMargin = lenses[1].project(x, y, z, out, 2);
+
+        float frontWeight = clamp(frontMargin / blendRadians);
+        float backWeight = clamp(backMargin / blendRadians);
+        float total = frontWeight + backWeight;
+        out[4] = total > 0 ? frontWeight / total : 0;
+        out[5] = total > 0 ? backWeight / total : 0;
+    }
+
+    /**
+     * Same as {@link #mapDirection} for the direction at equirectangular
+     * texture coordinates (u, v), v = 0 at the top.
+     */
+    public void mapEquirect(float u, float v, float[] out) {
+        float polar = v * PI;
+        float azimuth = u * TWO_PI;
+        float sinPolar = (float) Math.sin(polar);
+        mapDirection(
+                sinPolar * (float) Math.sin(azimuth),
+                sinPolar * (float) Math.cos(azimuth),
+                (float) Math.cos(polar),
+                out);
+    }
+
+    /**
+     * Renders the equirectangular frame the shader shows, sampling the
+     * fisheye frame bilinearly; directions neither lens sees are black.
+     *
+     * @param src dual fisheye frame, ARGB packed, row-major
+     * @param dst equirectangular output, ARGB packed, row-major
+     */
+    public void stitch(
+            int[] src, int srcWidth, int srcHeight, int[] dst, int dstWidth, int dstHeight) {
+        if (src.length < srcWidth * srcHeight || dst.length < dstWidth * dstHeight) {
+            throw new IllegalArgumentException("Buffer smaller than its dimensions");
+        }
+
+        float[] sample = new float[6];
+        for (int y = 0; y < dstHeight; y++) {
+            for (int x = 0; x < dstWidth; x++) {
+                mapEquirect((x + 0.5f) / dstWidth, (y + 0.5f) / dstHeight, sample);
+
+                int color = 0xff000000;
+                if (sample[4] > 0 || sample[5] > 0) {
+                    int front = sampleBilinear(src, srcWidth, srcHeight, sample[0], sample[1]);
+                    int back = sampleBilinear(src, srcWidth, srcHeight, sample[2], sample[3]);
+                    color = mix(front, back, sample[4], sample[5]);
+                }
+                dst[y * dstWidth + x] = color;
+            }
+        }
+    }
+
+    /**
+     * Uniforms for the fisheye shader: per lens, a mat3 basis (9 floats),
+     * image circle center and radius (vec4) and lens model (vec4).
+     */
+    public float[] getShaderBasis() {
+        return shaderBasis;
+    }
+
+    public float[] getShaderImage() {
+        return shaderImage;
+    }
+
+    public float[] getShaderModel() {
+        return shaderModel;
+    }
+
+    public float getBlendRadians() {
+        return blendRadians;
+    }
+
+    private static float clamp(float value) {
+        return Math.max(0.f, Math.min(1.f, value));
+    }
+
+    private static int sampleBilinear(int[] src, int width, int height, float u, float v) {
+        float sx = Math.max(0, Math.min(width - 1, u * width - 0.5f));
+        float sy = Math.max(0, Math.min(height - 1, v * height - 0.5f));
+        int x0 = (int) sx;
+        int y0 = (int) sy;
+        int x1 = Math.min(x0 + 1, width - 1);
+        int y1 = Math.min(y0 + 1, height - 1);
+        float fx = sx - x0;
+        float fy = sy - y0;
+
+        int top = mix(src[y0 * width + x0], src[y0 * width + x1], 1 - fx, fx);
+        int bottom = mix(src[y1 * width + x0], src[y1 * width + x1], 1 - fx, fx);
+        return mix(top, bottom, 1 - fy, fy);
+    }
+
+    private static int mix(int a, int b, float weightA, float weightB) {
+        int result = 0;
+        for (int shift = 0; shift < 32; shift += 8) {
+            int channel = (int) (((a >>> shift) & 0xff) * weightA
+                    + ((b >>> shift) & 0xff) * weightB + 0.5f);
+            result |= Math.min(255, channel) << shift;
+        }
+        return result;
+    }
+}
@@ -0,0 +1,365 @@
+/**
+ * Copyright 2016-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * Licensed under the Creative Commons CC BY-NC 4.0 Attribution-NonCommercial
+ * License (the "License"). You may obtain a copy of the License at
+ * https://creativecommons.org/licenses/by-nc/4.0/.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.oculus.sample.projection;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * CPU reference for what the GL renderer shows: reprojects an equirectangular
+ * ARGB frame into a rectilinear viewport using the same camera as
+ * SphericalCamera (lon/lat in degrees, vertical FOV in degrees, eye
+ * offset from the sphere center, initial 90 degree pitch and vertex y flip).
+ *
+ * Rays are built from two tables filled once per call: one vector per output
+ * column and one per output row, so each pixel costs three adds, a ray/sphere
+ * intersection, two polynomial atan2 and one bilinear fetch. Output tiles are processed in parallel
+ * on a ForkJoinPool.
+ *
+ * Texture coordinates follow the sphere mesh: u is the azimuth / 2pi and v
+ * the polar angle / pi, with v = 0 at the top row of the source frame.
+ *
+ * Plain Java so thumbnails and golden images can be produced without a GPU.
+ * Needs ForkJoinPool, so on device it is limited to API 21+.
+ */
+@SuppressWarnings("NewApi")
+public class EquirectReprojector {
+    private static final int TILE_PIXELS = 64 * 64;
+
+    private static final float PI = (float) Math.PI;
+    private static final float HALF_PI = (float) (Math.PI / 2);
+    private static final float TWO_PI = (float) (Math.PI * 2);
+
+    private static class DefaultPoolHolder {
+        static final ForkJoinPool POOL = new ForkJoinPool();
+    }
+
+    private final int outputWidth;
+    private final int outputHeight;
+    private final ForkJoinPool pool;
+
+    // Per-column ray component, x/y/z interleaved.
+    private final float[] columnRays;
+    // Per-row ray component including the forward vector, x/y/z interleaved.
+    private final float[] rowRays;
+
+    private final float[] eye = new float[3];
+
+    private int[] source;
+    private int sourceWidth;
+    private int sourceHeight;
+    private int[] output;
+
+    public EquirectReprojector(int outputWidth, int outputHeight) {
+        this(outputWidth, outputHeight, DefaultPoolHolder.POOL);
+    }
+
+    public EquirectReprojector(int outputWidth, int outputHeight, ForkJoinPool pool) {
+        if (outputWidth <= 0 || outputHeight <= 0) {
+            throw new IllegalArgumentException(
+                    "Invalid output size " + outputWidth + "x" + outputHeight);
+        }
+
+        this.outputWidth = outputWidth;
+        this.outputHeight = outputHeight;
+        this.pool = pool;
+
+        columnRays = new float[outputWidth * 3];
+        rowRays = new float[outputHeight * 3];
+    }
+
+    public int getOutputWidth() {
+        return outputWidth;
+    }
+
+    public int getOutputHeight() {
+        return outputHeight;
+    }
+
+    /**
+     * Renders the viewport into {@code dst}. Not thread safe: one reprojector
+     * serves one call at a time, but uses the pool internally.
+     *
+     * @param src equirectangular frame, ARGB packed, row-major
+     * @param dst output frame of outputWidth x outputHeight, ARGB packed
+     */
+    public void reproject(
+            int[] src,
+            int srcWidth,
+            int srcHeight,
+            float lonDegrees,
+            float latDegrees,
+            float fovYDegrees,
+            int[] dst) {
+        checkBuffers(src, srcWidth, srcHeight, dst);
+        buildRayTables(lonDegrees, latDegrees, fovYDegrees);
+
+        source = src;
+        sourceWidth = srcWidth;
+        sourceHeight = srcHeight;
+        output = dst;
+        try {
+            pool.invoke(new TileTask(0, 0, outputWidth, outputHeight));
+        } finally {
+            source = null;
+            output = null;
+        }
+    }
+
+    /**
+     * Same as {@link #reproject} but on the calling thread only.
+     */
+    public void reprojectSingleThreaded(
+            int[] src,
+            int srcWidth,
+            int srcHeight,
+            float lonDegrees,
+            float latDegrees,
+            float fovYDegrees,
+            int[] dst) {
+        checkBuffers(src, srcWidth, srcHeight, dst);
+        buildRayTables(lonDegrees, latDegrees, fovYDegrees);
+
+        source = src;
+        sourceWidth = srcWidth;
+        sourceHeight = srcHeight;
+        output = dst;
+        try {
+            renderTile(0, 0, outputWidth, outputHeight);
+        } finally {
+            source = null;
+            output = null;
+        }
+    }
+
+    /**
+     * Texture coordinates at the center of the view for a camera at
+     * (lonDegrees, latDegrees). The center ray passes through the sphere
+     * center, so this is exact despite the eye offset.
+     *
+     * @param uv receives u in [0, 1) and v in [0, 1]
+     */
+    public static void viewCenterToTexture(float lonDegrees, float latDegrees, float[] uv) {
+        float lat = Math.max(-SphericalCamera.MAX_LATITUDE,
+                Math.min(SphericalCamera.MAX_LATITUDE, latDegrees));
+        float u = ((lonDegrees - 90.f) % 360.f) / 360.f;
+        uv[0] = u < 0 ? u + 1.f : u;
+        uv[1] = (90.f - lat) / 180.f;
+    }
+
+    private void checkBuffers(int[] src, int srcWidth, int srcHeight, int[] dst) {
+        if (srcWidth <= 0 || srcHeight <= 0 || src.length < srcWidth * srcHeight) {
+            throw new IllegalArgumentException("Source buffer smaller than its dimensions");
+        }
+        if (dst.length < outputWidth * outputHeight) {
+            throw new IllegalArgumentException("Output buffer smaller than the output size");
+        }
+    }
+
+    private void buildRayTables(float lonDegrees, float latDegrees, float fovYDegrees) {
+        float lat = Math.max(-SphericalCamera.MAX_LATITUDE,
+                Math.min(SphericalCamera.MAX_LATITUDE, latDegrees));
+        double phi = Math.toRadians(90 - lat);
+        double theta = Math.toRadians(lonDegrees);
+
+        // Eye position exactly as SphericalCamera.update places it.
+        double ex = Math.sin(phi) * Math.cos(theta);
+        double ey = Math.cos(phi);
+        double ez = Math.sin(phi) * Math.sin(theta);
+
+        // setLookAtM basis: forward towards the origin, side = f x up, up' = s x f.
+        double fx = -ex, fy = -ey, fz = -ez;
+        double sx = -fz, sy = 0, sz = fx;
+        double sLength = Math.sqrt(sx * sx + sz * sz);
+        sx /= sLength;
+        sz /= sLength;
+        double ux = sy * fz - sz * fy;
+        double uy = sz * fx - sx * fz;
+        double uz = sx * fy - sy * fx;
+
+        // World space to mesh space: undo the initial pitch then the vertex y flip.
+        float[] f = toMeshSpace(fx, fy, fz);
+        float[] s = toMeshSpace(sx, sy, sz);
+        float[] u = toMeshSpace(ux, uy, uz);
+        float distance = SphericalCamera.CAMERA_DISTANCE;
+        float[] e = toMeshSpace(ex * distance, ey * distance, ez * distance);
+        System.arraycopy(e, 0, eye, 0, 3);
+
+        double tanHalfFov = Math.tan(Math.toRadians(fovYDegrees) / 2);
+        double aspect = (double) outputWidth / outputHeight;
+
+        for (int x = 0; x < outputWidth; x++) {
+            float cx = (float) ((2.0 * (x + 0.5) / outputWidth - 1.0) * tanHalfFov * aspect);
+            columnRays[x * 3] = cx * s[0];
+            columnRays[x * 3 + 1] = cx * s[1];
+            columnRays[x * 3 + 2] = cx * s[2];
+        }
+
+        for (int y = 0; y < outputHeight; y++) {
+            float cy = (float) ((1.0 - 2.0 * (y + 0.5) / outputHeight) * tanHalfFov);
+            rowRays[y * 3] = cy * u[0] + f[0];
+            rowRays[y * 3 + 1] = cy * u[1] + f[1];
+            rowRays[y * 3 + 2] = cy * u[2] + f[2];
+        }
+    }
+
+    /**
+     * World = Rx(90) * flipY * mesh, so mesh = flipY * Rx(-90) * world.
+     */
+    private static float[] toMeshSpace(double x, double y, double z) {
+        return new float[] { (float) x, (float) -z, (float) -y };
+    }
+
+    private void renderTile(int x0, int y0, int x1, int y1) {
+        final float ex = eye[0], ey = eye[1], ez = eye[2];
+        final float radius = SphericalCamera.SPHERE_RADIUS;
+        final float eyeTerm = ex * ex + ey * ey + ez * ez - radius * radius;
+
+        for (int y = y0; y < y1; y++) {
+            float rx = rowRays[y * 3];
+            float ry = rowRays[y * 3 + 1];
+            float rz = rowRays[y * 3 + 2];
+            int outRow = y * outputWidth;
+
+            for (int x = x0; x < x1; x++) {
+                float dx = rx + columnRays[x * 3];
+                float dy = ry + columnRays[x * 3 + 1];
+                float dz = rz + columnRays[x * 3 + 2];
+
+                // Far intersection of eye + t * d with the sphere; the eye is inside it.
+                float dd = dx * dx + dy * dy + dz * dz;
+                float b = ex * dx + ey * dy + ez * dz;
+                float t = (float) ((-b + Math.sqrt(b * b - dd * eyeTerm)) / dd);
+
+                float px = ex + t * dx;
+                float py = ey + t * dy;
+                float pz = ez + t * dz;
+
+                float azimuth = atan2(px, py);
+                if (azimuth < 0) {
+                    azimuth += TWO_PI;
+                }
+                float polar = atan2((float) Math.sqrt(px * px + py * py), pz);
+
+                output[outRow + x] = sampleBilinear(azimuth / TWO_PI, polar / PI);
+            }
+        }
+    }
+
+    /**
+     * Polynomial atan2, max error about 2e-6 rad: well under one texel of an
+     * 8K frame and several times faster than Math.atan2.
+     */
+    static float atan2(float y, float x) {
+        float ax = Math.abs(x);
+        float ay = Math.abs(y);
+        float max = Math.max(ax, ay);
+        if (max == 0) {
+            return 0;
+        }
+
+        float a = Math.min(ax, ay) / max;
+        float s = a * a;
+        float r = ((((((-0.01172120f * s + 0.05265332f) * s - 0.11643287f) * s
+                + 0.19354346f) * s - 0.33262347f) * s + 0.99997726f) * a);
+
+        if (ay > ax) {
+            r = HALF_PI - r;
+        }
+        if (x < 0) {
+            r = PI - r;
+        }
+        return y < 0 ? -r : r;
+    }
+
+    private int sampleBilinear(float u, float v) {
+        final int w = sourceWidth;
+        final int h = sourceHeight;
+
+        float sx = u * w - 0.5f;
+        float sy = v * h - 0.5f;
+
+        // sx, sy >= -0.5, so shifting by one truncates like floor without the call.
+        int x0 = (int) (sx + 1) - 1;
+        int y0 = (int) (sy + 1) - 1;
+        float fx = sx - x0;
+        float fy = sy - y0;
+
+        // Wrap horizontally across the 360 seam, clamp at the poles.
+        int xa = x0 < 0 ? x0 + w : (x0 >= w ? x0 - w : x0);
+        int xb = xa + 1 == w ? 0 : xa + 1;
+        int ya = y0 < 0 ? 0 : (y0 >= h ? h - 1 : y0);
+        int yb = y0 + 1 >= h ? h - 1 : (y0 + 1 < 0 ? 0 : y0 + 1);
+
+        int c00 = source[ya * w + xa];
+        int c10 = source[ya * w + xb];
+        int c01 = source[yb * w + xa];
+        int c11 = source[yb * w + xb];
+
+        float w00 = (1 - fx) * (1 - fy);
+        float w10 = fx * (1 - fy);
+        float w01 = (1 - fx) * fy;
+        float w11 = fx * fy;
+
+        int a = blend(c00 >>> 24, c10 >>> 24, c01 >>> 24, c11 >>> 24, w00, w10, w01, w11);
+        int r = blend((c00 >> 16) & 0xff, (c10 >> 16) & 0xff, (c01 >> 16) & 0xff,
+                (c11 >> 16) & 0xff, w00, w10, w01, w11);
+        int g = blend((c00 >> 8) & 0xff, (c10 >> 8) & 0xff, (c01 >> 8) & 0xff,
+                (c11 >> 8) & 0xff, w00, w10, w01, w11);
+        int bl = blend(c00 & 0xff, c10 & 0xff, c01 & 0xff, c11 & 0xff, w00, w10, w01, w11);
+
+        return (a << 24) | (r << 16) | (g << 8) | bl;
+    }
+
+    private static int blend(
+            int c00, int c10, int c01, int c11, float w00, float w10, float w01, float w11) {
+        return (int) (c00 * w00 + c10 * w10 + c01 * w01 + c11 * w11 + 0.5f);
+    }
+
+    private class TileTask extends RecursiveAction {
+        // ForkJoinTask is Serializable; tiles never are serialized.
+        private static final long serialVersionUID = 1L;
+
+        private final int x0, y0, x1, y1;
+
+        TileTask(int x0, int y0, int x1, int y1) {
+            this.x0 = x0;
+            this.y0 = y0;
+            this.x1 = x1;
+            this.y1 = y1;
+        }
+
+        @Override
+        protected void compute() {
+            int width = x1 - x0;
+            int height = y1 - y0;
+
+            if (width * height <= TILE_PIXELS) {
+                renderTile(x0, y0, x1, y1);
+                return;
+            }
+
+            // Split the longer side so tiles stay roughly square.
+            if (width >= height) {
+                int mid = x0 + width / 2;
+                invokeAll(new TileTask(x0, y0, mid, y1), new TileTask(mid, y0, x1, y1));
+            } else {
+                int mid = y0 + height / 2;
+                invokeAll(new TileTask(x0, y0, x1, mid), new TileTask(x0, mid, x1, y1));
+            }
+        }
+    }
+}
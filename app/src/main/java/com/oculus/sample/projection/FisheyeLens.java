@@ -0,0 +1,201 @@
+/**
+ * Copyright 2016-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * Licensed under the Creative Commons CC BY-NC 4.0 Attribution-NonCommercial
+ * License (the "License"). You may obtain a copy of the License at
+ * https://creativecommons.org/licenses/by-nc/4.0/.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.oculus.sample.projection;
+
+/**
+ * Calibration of one fisheye lens of a camera rig and the mapping from a
+ * view direction to where the lens images it in the video frame.
+ *
+ * The lens follows the equidistant model with a polynomial correction: a
+ * ray at angle theta from the optical axis lands at a distance from the
+ * image circle center proportional to theta + k1 * theta^3 + k2 * theta^5,
+ * reaching the circle's edge at half the field of view.
+ *
+ * Directions are in sphere mesh space, the space of the vertices of
+ * {@link com.oculus.sample.gles.Sphere}: a point at equirectangular texture
+ * coordinates (u, v), with v = 0 at the top, is
+ * (sin(v pi) sin(2 pi u), sin(v pi) cos(2 pi u), cos(v pi)). The optical
+ * axis is given by where it would land in a stitched equirectangular frame:
+ * yaw 0 and pitch 0 is the center of the frame, positive yaw to the right
+ * and positive pitch up. Roll turns the lens clockwise as seen from behind.
+ *
+ * Frame coordinates are (u, v) in [0, 1] with v = 0 at the top row, the
+ * same layout as a decoded frame before its SurfaceTexture transform.
+ */
+public class FisheyeLens {
+    private final float centerU;
+    private final float centerV;
+    private final float radiusU;
+    private final float radiusV;
+    private final float maxTheta;
+    private final float k1;
+    private final float k2;
+    private final float edgeRadius;
+
+    // Lens basis in mesh space.
+    private final float[] right = new float[3];
+    private final float[] up = new float[3];
+    private final float[] forward = new float[3];
+
+    /**
+     * Ideal equidistant lens.
+     */
+    public FisheyeLens(
+            float centerU,
+            float centerV,
+            float radiusU,
+            float radiusV,
+            float fovDegrees,
+            float yawDegrees,
+            float pitchDegrees,
+            float rollDegrees) {
+        this(centerU, centerV, radiusU, radiusV, fovDegrees,
+                yawDegrees, pitchDegrees, rollDegrees, 0, 0);
+    }
+
+    /**
+     * @param centerU center of the image circle, as a fraction of the frame width
+     * @param centerV center of the image circle, as a fraction of the frame height
+     * @param radiusU radius of the image circle, as a fraction of the frame width
+     * @param radiusV radius of the image circle, as a fraction of the frame height
+     * @param fovDegrees field of view across the image circle
+     * @param k1 third order distortion coefficient, per radian squared
+     * @param k2 fifth order distortion coefficient, per radian to the fourth
+     */
+    public FisheyeLens(
+            float centerU,
+            float centerV,
+            float radiusU,
+            float radiusV,
+            float fovDegrees,
+            float yawDegrees,
+            float pitchDegrees,
+            float rollDegrees,
+            float k1,
+            float k2) {
+        if (radiusU <= 0 || radiusV <= 0 || fovDegrees <= 0 || fovDegrees >= 360) {
+            throw new IllegalArgumentException("Invalid lens radius "
+                    + radiusU + "x" + radiusV + " or field of view " + fovDegrees);
+        }
+
+        this.centerU = centerU;
+        this.centerV = centerV;
+        this.radiusU = radiusU;
+        this.radiusV = radiusV;
+        this.maxTheta = (float) Math.toRadians(fovDegrees / 2);
+        this.k1 = k1;
+        this.k2 = k2;
+        this.edgeRadius = distort(maxTheta);
+        if (edgeRadius <= 0) {
+            throw new IllegalArgumentException("Distortion folds the image circle");
+        }
+
+        buildBasis(yawDegrees, pitchDegrees, rollDegrees);
+    }
+
+    /**
+     * Angle from the optical axis to the edge of the image circle, in radians.
+     */
+    public float getMaxTheta() {
+        return maxTheta;
+    }
+
+    /**
+     * Where the lens images a mesh space direction, which need not be
+     * normalized.
+     *
+     * @param uv receives the frame coordinates at {@code offset}; outside the
+     *           image circle they are extrapolated and should not be sampled
+     * @return how far inside the field of view the direction is, in radians;
+     *         negative outside of it
+     */
+    public float project(float x, float y, float z, float[] uv, int offset) {
+        float lx = x * right[0] + y * right[1] + z * right[2];
+        float ly = x * up[0] + y * up[1] + z * up[2];
+        float lz = x * forward[0] + y * forward[1] + z * forward[2];
+
+        float planar = (float) Math.sqrt(lx * lx + ly * ly);
+        float theta = (float) Math.atan2(planar, lz);
+        float rho = distort(theta) / edgeRadius;
+
+        if (planar > 0) {
+            uv[offset] = centerU + rho * radiusU * lx / planar;
+            uv[offset + 1] = centerV - rho * radiusV * ly / planar;
+        } else {
+            uv[offset] = centerU;
+            uv[offset + 1] = centerV;
+        }
+        return maxTheta - theta;
+    }
+
+    /**
+     * Lens parameters laid out for the fisheye shader.
+     *
+     * @param basis receives right, up and forward at {@code basisOffset},
+     *              i.e. the columns of a mat3 multiplied from the left by
+     *              the direction
+     * @param image receives center u, v and radius u, v at {@code imageOffset}
+     * @param model receives max theta, k1, k2 and the distorted edge radius
+     *              at {@code modelOffset}
+     */
+    public void getShaderParameters(
+            float[] basis, int basisOffset,
+            float[] image, int imageOffset,
+            float[] model, int modelOffset) {
+        System.arraycopy(right, 0, basis, basisOffset, 3);
+        System.arraycopy(up, 0, basis, basisOffset + 3, 3);
+        System.arraycopy(forward, 0, basis, basisOffset + 6, 3);
+
+        image[imageOffset] = centerU;
+        image[imageOffset + 1] = centerV;
+        image[imageOffset + 2] = radiusU;
+        image[imageOffset + 3] = radiusV;
+
+        model[modelOffset] = maxTheta;
+        model[modelOffset + 1] = k1;
+        model[modelOffset + 2] = k2;
+        model[modelOffset + 3] = edgeRadius;
+    }
+
+    private float distort(float theta) {
+        float theta2 = theta * theta;
+        return theta * (1 + theta2 * (k1 + theta2 * k2));
+    }
+
+    private void buildBasis(float yawDegrees, float pitchDegrees, float rollDegrees) {
+        // Equirectangular position of the axis, with yaw 0 at the frame center.
+        double azimuth = Math.toRadians(yawDegrees + 180);
+        double polar = Math.toRadians(90 - pitchDegrees);
+        double sinPolar = Math.sin(polar);
+        double cosPolar = Math.cos(polar);
+        double sinAzimuth = Math.sin(azimuth);
+        double cosAzimuth = Math.cos(azimuth);
+
+        // The direction and its derivatives towards increasing u and decreasing v.
+        double[] f = {sinPolar * sinAzimuth, sinPolar * cosAzimuth, cosPolar};
+        double[] r = {cosAzimuth, -sinAzimuth, 0};
+        double[] u = {-cosPolar * sinAzimuth, -cosPolar * cosAzimuth, sinPolar};
+
+        double roll = Math.toRadians(rollDegrees);
+        double cosRoll = Math.cos(roll);
+        double sinRoll = Math.sin(roll);
+        for (int i = 0; i < 3; i++) {
+            forward[i] = (float) f[i];
+            right[i] = (float) (r[i] * cosRoll - u[i] * sinRoll);
+            up[i] = (float) (r[i] * sinRoll + u[i] * cosRoll);
+        }
+    }
+}
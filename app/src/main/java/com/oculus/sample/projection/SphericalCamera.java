@@ -0,0 +1,267 @@
+/**
+ * Copyright 2016-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * Licensed under the Creative Commons CC BY-NC 4.0 Attribution-NonCommercial
+ * License (the "License"). You may obtain a copy of the License at
+ * https://creativecommons.org/licenses/by-nc/4.0/.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.oculus.sample.projection;
+
+/**
+ * The camera looking at the video sphere: drags move it in longitude and
+ * latitude around a point CAMERA_DISTANCE from the center, always facing the
+ * center.
+ *
+ * Matrices are column-major and laid out like android.opengl.Matrix, which
+ * they replace, so the camera can be benchmarked on a plain JVM.
+ */
+public class SphericalCamera {
+    public static final float DEFAULT_FOVY = 70f;
+    public static final float MIN_FOVY = 20f;
+    public static final float MAX_FOVY = 110f;
+    public static final float CAMERA_DISTANCE = 100.f;
+    /** Radius of the video sphere, centered on the origin. */
+    public static final float SPHERE_RADIUS = 500.f;
+    public static final float MAX_LATITUDE = 85.f;
+    /** Degrees of rotation per pixel of drag. */
+    public static final float DRAG_FRICTION = 0.1f;
+
+    private static final float Z_NEAR = 1f;
+    private static final float Z_FAR = 1000f;
+    private static final float INITIAL_PITCH_DEGREES = 90.f;
+
+    private final float[] modelMatrix = new float[16];
+    private final float[] viewMatrix = new float[16];
+    private final float[] projectionMatrix = new float[16];
+
+    private float lon;
+    private float lat;
+    private float fovY = DEFAULT_FOVY;
+    private float aspectRatio = 1.f;
+
+    public SphericalCamera() {
+        setIdentity(viewMatrix);
+        setRotateX(modelMatrix, INITIAL_PITCH_DEGREES);
+        setPerspective(projectionMatrix, fovY, aspectRatio, Z_NEAR, Z_FAR);
+    }
+
+    public void setViewportSize(int width, int height) {
+        aspectRatio = (float) width / height;
+        setPerspective(projectionMatrix, fovY, aspectRatio, Z_NEAR, Z_FAR);
+    }
+
+    /**
+     * Sets the vertical field of view, clamped to [MIN_FOVY, MAX_FOVY].
+     */
+    public void setFovY(float fovY) {
+        fovY = Math.max(MIN_FOVY, Math.min(MAX_FOVY, fovY));
+        if (fovY == this.fovY) {
+            return;
+        }
+        this.fovY = fovY;
+        setPerspective(projectionMatrix, fovY, aspectRatio, Z_NEAR, Z_FAR);
+    }
+
+    public void onScroll(float deltaX, float deltaY) {
+        lon = deltaX * DRAG_FRICTION + lon;
+        lat = -deltaY * DRAG_FRICTION + lat;
+    }
+
+    public void setOrientation(float lon, float lat) {
+        this.lon = lon;
+        this.lat = lat;
+    }
+
+    /**
+     * Recomputes the view matrix from the current longitude and latitude.
+     */
+    public void update() {
+        lat = Math.max(-MAX_LATITUDE, Math.min(MAX_LATITUDE, lat));
+
+        float phi = (float) Math.toRadians(90 - lat);
+        float theta = (float) Math.toRadians(lon);
+
+        float eyeX = (float) (CAMERA_DISTANCE * Math.sin(phi) * Math.cos(theta));
+        float eyeY = (float) (CAMERA_DISTANCE * Math.cos(phi));
+        float eyeZ = (float) (CAMERA_DISTANCE * Math.sin(phi) * Math.sin(theta));
+
+        setLookAtOrigin(viewMatrix, eyeX, eyeY, eyeZ);
+    }
+
+    /**
+     * Finds what a point of the screen shows: casts a ray from the eye
+     * through it and returns, in {@code lonLat}, the orientation at which
+     * the camera would look straight at the ray's far intersection with a
+     * sphere of {@code radius} around the center. Uses the orientation of
+     * the last {@link #update()}.
+     *
+     * @param ndcX -1 at the left edge of the viewport, 1 at the right
+     * @param ndcY -1 at the bottom edge, 1 at the top
+     * @return false if the eye is not inside the sphere
+     */
+    public boolean pickLonLat(float ndcX, float ndcY, float radius, float[] lonLat) {
+        double phi = Math.toRadians(90 - lat);
+        double theta = Math.toRadians(lon);
+        double ex = CAMERA_DISTANCE * Math.sin(phi) * Math.cos(theta);
+        double ey = CAMERA_DISTANCE * Math.cos(phi);
+        double ez = CAMERA_DISTANCE * Math.sin(phi) * Math.sin(theta);
+        double eyeTerm = ex * ex + ey * ey + ez * ez - radius * radius;
+        if (eyeTerm >= 0) {
+            return false;
+        }
+
+        // The basis of setLookAtOrigin: forward, side = f x up, up' = s x f.
+        double fx = -ex / CAMERA_DISTANCE;
+        double fy = -ey / CAMERA_DISTANCE;
+        double fz = -ez / CAMERA_DISTANCE;
+        double sLength = Math.sqrt(fz * fz + fx * fx);
+        double sx = -fz / sLength;
+        double sz = fx / sLength;
+        double ux = -sz * fy;
+        double uy = sz * fx - sx * fz;
+        double uz = sx * fy;
+
+        double tanHalfFov = Math.tan(Math.toRadians(fovY) / 2);
+        double cx = ndcX * tanHalfFov * aspectRatio;
+        double cy = ndcY * tanHalfFov;
+        double dx = fx + cx * sx + cy * ux;
+        double dy = fy + cy * uy;
+        double dz = fz + cx * sz + cy * uz;
+
+        // Far intersection of eye + t * d with the sphere.
+        double dd = dx * dx + dy * dy + dz * dz;
+        double b = ex * dx + ey * dy + ez * dz;
+        double t = (-b + Math.sqrt(b * b - dd * eyeTerm)) / dd;
+        double px = ex + t * dx;
+        double py = ey + t * dy;
+        double pz = ez + t * dz;
+
+        // The view center of (lon, lat) is at -radius * (cos lat cos lon, sin lat, cos lat sin lon).
+        lonLat[0] = (float) Math.toDegrees(Math.atan2(-pz, -px));
+        lonLat[1] = (float) Math.toDegrees(Math.asin(Math.max(-1, Math.min(1, -py / radius))));
+        return true;
+    }
+
+    /**
+     * The point on a sphere of {@code radius} around the center that a
+     * camera at (lon, lat) looks straight at, in world space (the space of
+     * the view matrix, before the model matrix).
+     *
+     * @param out receives x, y and z at {@code offset}
+     */
+    public static void lonLatToWorld(float lon, float lat, float radius, float[] out, int offset) {
+        double lonRadians = Math.toRadians(lon);
+        double latRadians = Math.toRadians(lat);
+        double cosLat = Math.cos(latRadians);
+        out[offset] = (float) (-radius * cosLat * Math.cos(lonRadians));
+        out[offset + 1] = (float) (-radius * Math.sin(latRadians));
+        out[offset + 2] = (float) (-radius * cosLat * Math.sin(lonRadians));
+    }
+
+    public float getLon() {
+        return lon;
+    }
+
+    public float getLat() {
+        return lat;
+    }
+
+    public float getFovY() {
+        return fovY;
+    }
+
+    public float[] getModelMatrix() {
+        return modelMatrix;
+    }
+
+    public float[] getViewMatrix() {
+        return viewMatrix;
+    }
+
+    public float[] getProjectionMatrix() {
+        return projectionMatrix;
+    }
+
+    private static void setIdentity(float[] m) {
+        for (int i = 0; i < 16; i++) {
+            m[i] = (i % 5 == 0) ? 1.f : 0.f;
+        }
+    }
+
+    private static void setRotateX(float[] m, float degrees) {
+        setIdentity(m);
+        double radians = Math.toRadians(degrees);
+        float sin = (float) Math.sin(radians);
+        float cos = (float) Math.cos(radians);
+        m[5] = cos;
+        m[6] = sin;
+        m[9] = -sin;
+        m[10] = cos;
+    }
+
+    private static void setPerspective(
+            float[] m, float fovYDegrees, float aspect, float zNear, float zFar) {
+        float f = 1.f / (float) Math.tan(Math.toRadians(fovYDegrees) / 2);
+        float rangeReciprocal = 1.f / (zNear - zFar);
+
+        for (int i = 0; i < 16; i++) {
+            m[i] = 0;
+        }
+        m[0] = f / aspect;
+        m[5] = f;
+        m[10] = (zFar + zNear) * rangeReciprocal;
+        m[11] = -1.f;
+        m[14] = 2.f * zFar * zNear * rangeReciprocal;
+    }
+
+    /**
+     * Look-at matrix from the eye towards the origin with +y up.
+     */
+    private static void setLookAtOrigin(float[] m, float eyeX, float eyeY, float eyeZ) {
+        float fx = -eyeX;
+        float fy = -eyeY;
+        float fz = -eyeZ;
+        float rlf = 1.f / (float) Math.sqrt(fx * fx + fy * fy + fz * fz);
+        fx *= rlf;
+        fy *= rlf;
+        fz *= rlf;
+
+        // s = f x up, with up = (0, 1, 0).
+        float sx = -fz;
+        float sy = 0.f;
+        float sz = fx;
+        float rls = 1.f / (float) Math.sqrt(sx * sx + sz * sz);
+        sx *= rls;
+        sz *= rls;
+
+        // u = s x f
+        float ux = sy * fz - sz * fy;
+        float uy = sz * fx - sx * fz;
+        float uz = sx * fy - sy * fx;
+
+        m[0] = sx;
+        m[1] = ux;
+        m[2] = -fx;
+        m[3] = 0.f;
+        m[4] = sy;
+        m[5] = uy;
+        m[6] = -fy;
+        m[7] = 0.f;
+        m[8] = sz;
+        m[9] = uz;
+        m[10] = -fz;
+        m[11] = 0.f;
+        m[12] = -(sx * eyeX + sy * eyeY + sz * eyeZ);
+        m[13] = -(ux * eyeX + uy * eyeY + uz * eyeZ);
+        m[14] = fx * eyeX + fy * eyeY + fz * eyeZ;
+        m[15] = 1.f;
+    }
+}
@@ -0,0 +1,103 @@
+/**
+ * Copyright 2016-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * Licensed under the Creative Commons CC BY-NC 4.0 Attribution-NonCommercial
+ * License (the "License"). You may obtain a copy of the License at
+ * https://creativecommons.org/licenses/by-nc/4.0/.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.oculus.sample.renderloop;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Camera orientation (longitude and latitude in degrees) that input threads
+ * update and the drawing thread samples, without locks or messages.
+ *
+ * Both angles are packed into one AtomicLong so a reader never sees a
+ * longitude from one drag and a latitude from another. The time of the
+ * oldest drag not yet sampled is kept alongside for latency measurements.
+ */
+public class AtomicPose {
+    private final float maxLatitude;
+    private final AtomicLong orientation = new AtomicLong(pack(0.f, 0.f));
+    private final AtomicLong firstUnlatchedInputNanos = new AtomicLong(-1);
+
+    /**
+     * @param maxLatitude latitude is clamped to [-maxLatitude, maxLatitude]
+     */
+    public AtomicPose(float maxLatitude) {
+        this.maxLatitude = maxLatitude;
+    }
+
+    /**
+     * Adds a drag. Safe to call from any thread.
+     *
+     * @param eventNanos when the input happened, on the drawing thread's clock
+     */
+    public void addDrag(float deltaLon, float deltaLat, long eventNanos) {
+        long current;
+        long updated;
+        do {
+            current = orientation.get();
+            float lon = unpackLon(current) + deltaLon;
+            float lat = Math.max(-maxLatitude,
+                    Math.min(maxLatitude, unpackLat(current) + deltaLat));
+            updated = pack(lon, lat);
+        } while (!orientation.compareAndSet(current, updated));
+
+        firstUnlatchedInputNanos.compareAndSet(-1, eventNanos);
+    }
+
+    public void set(float lon, float lat) {
+        orientation.set(pack(lon, Math.max(-maxLatitude, Math.min(maxLatitude, lat))));
+    }
+
+    public boolean hasUnlatchedInput() {
+        return firstUnlatchedInputNanos.get() >= 0;
+    }
+
+    /**
+     * Samples the current orientation into {@code lonLat} and marks all input
+     * so far as consumed.
+     *
+     * @return time of the oldest drag not sampled before, or -1 if none
+     */
+    public long latch(float[] lonLat) {
+        // Take the input time first: a drag landing in between is then only
+        // drawn early, never reported as drawn when it was not.
+        long inputNanos = firstUnlatchedInputNanos.getAndSet(-1);
+        long packed = orientation.get();
+        lonLat[0] = unpackLon(packed);
+        lonLat[1] = unpackLat(packed);
+        return inputNanos;
+    }
+
+    public float getLon() {
+        return unpackLon(orientation.get());
+    }
+
+    public float getLat() {
+        return unpackLat(orientation.get());
+    }
+
+    private static long pack(float lon, float lat) {
+        return ((long) Float.floatToRawIntBits(lon) << 32)
+                | (Float.floatToRawIntBits(lat) & 0xffffffffL);
+    }
+
+    private static float unpackLon(long packed) {
+        return Float.intBitsToFloat((int) (packed >>> 32));
+    }
+
+    private static float unpackLat(long packed) {
+        return Float.intBitsToFloat((int) packed);
+    }
+}
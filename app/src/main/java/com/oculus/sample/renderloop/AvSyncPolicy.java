@@ -0,0 +1,166 @@
+/**
+ * Copyright 2016-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * Licensed under the Creative Commons CC BY-NC 4.0 Attribution-NonCommercial
+ * License (the "License"). You may obtain a copy of the License at
+ * https://creativecommons.org/licenses/by-nc/4.0/.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.oculus.sample.renderloop;
+
+/**
+ * Measures how far each latched video frame is off the audio clock and
+ * decides when to drop or hold frames to bring it back.
+ *
+ * Everything is on the System.nanoTime() clock. A frame's due time is when
+ * the audio clock reaches it; MediaPlayer releases every decoded frame with
+ * that time, and it is what SurfaceTexture.getTimestamp() reports. Drift is
+ * the expected scanout time minus the due time, positive when the picture
+ * lags the audio.
+ *
+ * Each vsync shows whichever frame is closest to its due time: while the
+ * next queued frame would be nearer than the one latched, it is latched
+ * over it and the stale one dropped, and while the frame latched would be
+ * further off than the one already on screen, it is held back for a few
+ * vsyncs at most. Once corrected, frames up to the display's rate are shown
+ * within one vsync of their due time.
+ *
+ * Only touched on the drawing thread.
+ */
+public class AvSyncPolicy {
+    /** Returned for frames whose drift is not known. */
+    public static final long UNKNOWN_DRIFT = Long.MIN_VALUE;
+
+    public static final int DEFAULT_MAX_DROPS_PER_VSYNC = 4;
+    public static final int DEFAULT_MAX_CONSECUTIVE_HOLDS = 3;
+
+    // Anything further off is a seek, a loop or a stream switch, not drift.
+    private static final long DISCONTINUITY_NANOS = 1000000000L;
+
+    private final long vsyncPeriodNanos;
+    private final int maxDropsPerVsync;
+    private final int maxConsecutiveHolds;
+
+    private long lastFrameDueNanos = -1;
+    private long frameIntervalNanos;
+    private int dropsThisVsync;
+    private int consecutiveHolds;
+
+    /**
+     * @param vsyncPeriodNanos the display's refresh period
+     */
+    public AvSyncPolicy(long vsyncPeriodNanos) {
+        this(vsyncPeriodNanos, DEFAULT_MAX_DROPS_PER_VSYNC, DEFAULT_MAX_CONSECUTIVE_HOLDS);
+    }
+
+    public AvSyncPolicy(long vsyncPeriodNanos, int maxDropsPerVsync, int maxConsecutiveHolds) {
+        if (vsyncPeriodNanos <= 0) {
+            throw new IllegalArgumentException("Invalid vsync period " + vsyncPeriodNanos);
+        }
+
+        this.vsyncPeriodNanos = vsyncPeriodNanos;
+        this.maxDropsPerVsync = maxDropsPerVsync;
+        this.maxConsecutiveHolds = maxConsecutiveHolds;
+    }
+
+    /**
+     * Records a latched frame.
+     *
+     * @param frameDueNanos when the frame is due on screen
+     * @param presentNanos when the frame is expected on screen
+     * @return the frame's drift, or {@link #UNKNOWN_DRIFT}
+     */
+    public long onFrameLatched(long frameDueNanos, long presentNanos) {
+        if (lastFrameDueNanos >= 0) {
+            long interval = frameDueNanos - lastFrameDueNanos;
+            if (interval > 0 && interval < DISCONTINUITY_NANOS) {
+                frameIntervalNanos = frameIntervalNanos == 0
+                        ? interval : (frameIntervalNanos * 7 + interval) / 8;
+            }
+        }
+        lastFrameDueNanos = frameDueNanos;
+        consecutiveHolds = 0;
+
+        return drift(frameDueNanos, presentNanos);
+    }
+
+    /**
+     * Call once per vsync, before any frame is latched.
+     */
+    public void onVsync() {
+        dropsThisVsync = 0;
+    }
+
+    /**
+     * True when the frame just latched lags by more than half a frame, so
+     * the next queued one is nearer its due time and should be latched on
+     * top of it. Counts the drop if so.
+     */
+    public boolean shouldDrop(long driftNanos, int queuedFrames) {
+        if (driftNanos == UNKNOWN_DRIFT
+                || 2 * driftNanos <= getExpectedIntervalNanos()
+                || queuedFrames <= 0
+                || dropsThisVsync >= maxDropsPerVsync) {
+            return false;
+        }
+
+        dropsThisVsync++;
+        return true;
+    }
+
+    /**
+     * True when the next queued frame would be shown more than half a frame
+     * early, further off than the frame already on screen, and should be
+     * left queued for this vsync. Counts the hold if so.
+     */
+    public boolean shouldHold(long presentNanos) {
+        if (lastFrameDueNanos < 0
+                || frameIntervalNanos == 0
+                || consecutiveHolds >= maxConsecutiveHolds) {
+            return false;
+        }
+
+        long predictedDrift = drift(lastFrameDueNanos + frameIntervalNanos, presentNanos);
+        if (predictedDrift == UNKNOWN_DRIFT || -2 * predictedDrift <= frameIntervalNanos) {
+            return false;
+        }
+
+        consecutiveHolds++;
+        return true;
+    }
+
+    public long getFrameIntervalNanos() {
+        return frameIntervalNanos;
+    }
+
+    public long getVsyncPeriodNanos() {
+        return vsyncPeriodNanos;
+    }
+
+    /**
+     * Forgets frame history, e.g. after a seek.
+     */
+    public void reset() {
+        lastFrameDueNanos = -1;
+        frameIntervalNanos = 0;
+        dropsThisVsync = 0;
+        consecutiveHolds = 0;
+    }
+
+    // Until the frame rate is known, frames are assumed to come every vsync.
+    private long getExpectedIntervalNanos() {
+        return frameIntervalNanos > 0 ? frameIntervalNanos : vsyncPeriodNanos;
+    }
+
+    private static long drift(long frameDueNanos, long presentNanos) {
+        long drift = presentNanos - frameDueNanos;
+        return Math.abs(drift) < DISCONTINUITY_NANOS ? drift : UNKNOWN_DRIFT;
+    }
+}
@@ -0,0 +1,123 @@
+/**
+ * Copyright 2016-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * Licensed under the Creative Commons CC BY-NC 4.0 Attribution-NonCommercial
+ * License (the "License"). You may obtain a copy of the License at
+ * https://creativecommons.org/licenses/by-nc/4.0/.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.oculus.sample.renderloop;
+
+import com.oculus.sample.telemetry.AvSyncStats;
+
+/**
+ * Target whose video frames are matched to the audio clock by an
+ * {@link AvSyncPolicy}: frames that would be shown too early are held
+ * queued, and frames latched too late have newer queued ones latched over
+ * them, while playback runs and correction is enabled.
+ *
+ * The host calls {@link #onVsync} from {@link RenderLoop.Host#prepare} and
+ * {@link #syncLatchedFrame} right after latching a frame in
+ * {@link RenderLoop.Host#draw}. Drift is measured whether or not correction
+ * is enabled.
+ */
+public abstract class AvSyncTarget extends RenderLoop.Target {
+    private final AvSyncStats stats;
+    private AvSyncPolicy policy;
+    private volatile boolean correctionEnabled = true;
+    private long expectedPresentNanos;
+
+    public AvSyncTarget(AtomicPose pose, AvSyncStats stats) {
+        super(pose);
+        this.stats = stats;
+    }
+
+    public void setAvSyncPolicy(AvSyncPolicy policy) {
+        this.policy = policy;
+    }
+
+    public AvSyncStats getAvSyncStats() {
+        return stats;
+    }
+
+    /**
+     * Safe to call from any thread.
+     */
+    public void setAvSyncCorrectionEnabled(boolean enabled) {
+        correctionEnabled = enabled;
+    }
+
+    /**
+     * @param presentNanos when a frame drawn on this vsync is expected on screen
+     */
+    public void onVsync(long presentNanos) {
+        expectedPresentNanos = presentNanos;
+        policy.onVsync();
+    }
+
+    /**
+     * Measures the drift of the frame just latched and, while it lags too
+     * far behind, latches newer queued frames over it.
+     *
+     * @param frameDueNanos when the latched frame is due on screen
+     */
+    public final void syncLatchedFrame(long frameDueNanos) {
+        if (!isPlaying()) {
+            return;
+        }
+
+        long drift = policy.onFrameLatched(frameDueNanos, expectedPresentNanos);
+        while (correctionEnabled
+                && policy.shouldDrop(drift, getQueuedFrameCount())
+                && dropQueuedFrame()) {
+            stats.onFrameDropped();
+            drift = policy.onFrameLatched(latchQueuedFrame(), expectedPresentNanos);
+        }
+
+        if (drift != AvSyncPolicy.UNKNOWN_DRIFT) {
+            stats.onDrift(drift);
+        }
+    }
+
+    /**
+     * Forgets frame history. Call whenever the playback clock jumps, after a
+     * seek, a loop or a stream switch, so the old frame rate and due times
+     * do not hold or drop the first frames after it.
+     */
+    public void resetAvSync() {
+        policy.reset();
+    }
+
+    /**
+     * Whether the clock frames are due by is running.
+     */
+    protected abstract boolean isPlaying();
+
+    /**
+     * Latches the next queued frame over the one latched, on the drawing
+     * thread.
+     *
+     * @return when the newly latched frame is due on screen
+     */
+    protected abstract long latchQueuedFrame();
+
+    @Override
+    protected boolean shouldHoldFrame() {
+        if (!correctionEnabled || !isPlaying()) {
+            return false;
+        }
+
+        if (policy.shouldHold(expectedPresentNanos)) {
+            stats.onVsyncHeld();
+            return true;
+        }
+        return false;
+    }
+}
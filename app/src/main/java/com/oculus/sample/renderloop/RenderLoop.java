@@ -0,0 +1,383 @@
+/**
+ * Copyright 2016-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * Licensed under the Creative Commons CC BY-NC 4.0 Attribution-NonCommercial
+ * License (the "License"). You may obtain a copy of the License at
+ * https://creativecommons.org/licenses/by-nc/4.0/.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.oculus.sample.renderloop;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Decides when each attached target is redrawn.
+ *
+ * Decoded video frames, drag input and vsync are fed in as events. On every
+ * vsync each target with a queued video frame or a camera change is drawn
+ * once, latching at most one video frame so decoder output and
+ * updateTexImage calls stay balanced.
+ *
+ * Targets may also read their orientation from an {@link AtomicPose} that
+ * input threads write directly. The host then calls
+ * {@link Target#latchPose()} as late as possible while drawing, so drags
+ * still queued behind other messages are shown anyway.
+ *
+ * For audio-video sync a target may hold its next video frame back for a
+ * vsync, see {@link Target#shouldHoldFrame()}, and the host may drop queued
+ * frames with {@link Target#dropQueuedFrame()}.
+ *
+ * GL, EGL, the Choreographer and the decoder all sit behind {@link Host} and
+ * {@link Clock}, so the same scheduling runs in a JVM simulator. Everything
+ * must be called on the drawing thread.
+ */
+public class RenderLoop {
+    public interface Clock {
+        long nanoTime();
+    }
+
+    public static final Clock SYSTEM_CLOCK = new Clock() {
+        @Override
+        public long nanoTime() {
+            return System.nanoTime();
+        }
+    };
+
+    public interface Host {
+        /**
+         * Asks for a single call to {@link RenderLoop#onVsync} on the next vsync.
+         */
+        void requestVsync();
+
+        /**
+         * Called for every attached target on every vsync, drawn or not.
+         */
+        void prepare(Target target);
+
+        /**
+         * Draws and presents the target. When latchFrame is true the oldest
+         * queued video frame has to be latched first.
+         */
+        void draw(Target target, boolean latchFrame);
+
+        /**
+         * True while the host needs vsyncs for work other than drawing, such
+         * as outstanding frame readbacks.
+         */
+        boolean hasPendingWork();
+    }
+
+    /**
+     * Receives timing for every presented frame, for stats and simulation.
+     */
+    public interface Observer {
+        /**
+         * @param frameLatencyNanos time from the latched video frame being
+         *                          decoded to present, or -1 if none was latched
+         * @param inputLatencyNanos time from the oldest drag event shown by
+         *                          this frame to present, or -1 if none
+         */
+        void onPresented(
+                Target target, long presentNanos, long frameLatencyNanos, long inputLatencyNanos);
+
+        void onVsyncHandled(long frameTimeNanos, int targetsDrawn);
+    }
+
+    /**
+     * Scheduling state of one drawn surface.
+     */
+    public static class Target {
+        private static final int MAX_TRACKED_FRAMES = 16;
+
+        private final long[] frameArrivalNanos = new long[MAX_TRACKED_FRAMES];
+        private int firstTrackedFrame;
+        private int trackedFrames;
+        private int queuedFrames;
+
+        private boolean pendingCameraUpdate;
+        private long firstUnpresentedInputNanos = -1;
+
+        private final AtomicPose pose;
+        private final float[] latchedLonLat = new float[2];
+        private long latchedInputNanos = -1;
+
+        public Target() {
+            this(null);
+        }
+
+        /**
+         * @param pose orientation written by input threads, or null if all
+         *             input arrives through {@link RenderLoop#onScroll}
+         */
+        public Target(AtomicPose pose) {
+            this.pose = pose;
+        }
+
+        public int getQueuedFrameCount() {
+            return queuedFrames;
+        }
+
+        public boolean needsRedraw() {
+            return queuedFrames > 0 || needsRedrawWithoutFrame();
+        }
+
+        /**
+         * Consumes the oldest queued video frame without drawing it. The host
+         * calls this while drawing, after latching one frame, for every
+         * extra frame it latches over it.
+         *
+         * @return false if no frame was queued
+         */
+        public final boolean dropQueuedFrame() {
+            if (queuedFrames == 0) {
+                return false;
+            }
+
+            dequeueFrame();
+            return true;
+        }
+
+        /**
+         * Samples the target's pose and hands it to {@link #onPoseLatched}.
+         * Called by the host while drawing, right before the orientation is
+         * used.
+         */
+        public final void latchPose() {
+            if (pose == null) {
+                return;
+            }
+
+            long inputNanos = pose.latch(latchedLonLat);
+            if (inputNanos >= 0 && (latchedInputNanos < 0 || inputNanos < latchedInputNanos)) {
+                latchedInputNanos = inputNanos;
+            }
+            onPoseLatched(latchedLonLat[0], latchedLonLat[1]);
+        }
+
+        /**
+         * Applies a drag to the target's camera. Called on the drawing thread.
+         */
+        protected void onScroll(float deltaX, float deltaY) {
+        }
+
+        protected void onPoseLatched(float lon, float lat) {
+        }
+
+        /**
+         * Called on every vsync with a queued video frame. Returning true
+         * leaves the frame queued, and the target is only drawn if its
+         * camera changed.
+         */
+        protected boolean shouldHoldFrame() {
+            return false;
+        }
+
+        private boolean needsRedrawWithoutFrame() {
+            return pendingCameraUpdate || (pose != null && pose.hasUnlatchedInput());
+        }
+
+        private void queueFrame(long nowNanos) {
+            // Once a frame goes untracked, stop tracking until the queue drains
+            // so latencies are never matched to the wrong frame.
+            if (trackedFrames == queuedFrames && trackedFrames < MAX_TRACKED_FRAMES) {
+                frameArrivalNanos[(firstTrackedFrame + trackedFrames) % MAX_TRACKED_FRAMES] =
+                        nowNanos;
+                trackedFrames++;
+            }
+            queuedFrames++;
+        }
+
+        private long dequeueFrame() {
+            queuedFrames--;
+            if (trackedFrames == 0) {
+                return -1;
+            }
+
+            long arrivalNanos = frameArrivalNanos[firstTrackedFrame];
+            firstTrackedFrame = (firstTrackedFrame + 1) % MAX_TRACKED_FRAMES;
+            trackedFrames--;
+            return arrivalNanos;
+        }
+
+        private void reset() {
+            firstTrackedFrame = 0;
+            trackedFrames = 0;
+            queuedFrames = 0;
+            pendingCameraUpdate = false;
+            firstUnpresentedInputNanos = -1;
+            latchedInputNanos = -1;
+        }
+    }
+
+    private final Host host;
+    private final Clock clock;
+    private final List<Target> targets = new ArrayList<>();
+    private Observer observer;
+
+    private boolean continuousVsync = true;
+    private boolean vsyncRequested;
+
+    public RenderLoop(Host host, Clock clock) {
+        this.host = host;
+        this.clock = clock;
+    }
+
+    public void setObserver(Observer observer) {
+        this.observer = observer;
+    }
+
+    /**
+     * With continuous vsync (the default) the loop wakes up on every vsync
+     * while any target is attached. Otherwise it only asks for vsyncs while
+     * a target needs redrawing or the host has pending work.
+     */
+    public void setContinuousVsync(boolean continuousVsync) {
+        this.continuousVsync = continuousVsync;
+        if (continuousVsync && !targets.isEmpty()) {
+            requestVsync();
+        }
+    }
+
+    public boolean isAttached(Target target) {
+        return targets.contains(target);
+    }
+
+    public int getTargetCount() {
+        return targets.size();
+    }
+
+    public void addTarget(Target target) {
+        if (targets.contains(target)) {
+            return;
+        }
+
+        target.reset();
+        targets.add(target);
+        invalidate(target);
+    }
+
+    public boolean removeTarget(Target target) {
+        if (!targets.remove(target)) {
+            return false;
+        }
+
+        target.reset();
+        return true;
+    }
+
+    public void onFrameAvailable(Target target) {
+        if (!targets.contains(target)) {
+            return;
+        }
+
+        target.queueFrame(clock.nanoTime());
+        requestVsync();
+    }
+
+    /**
+     * @param eventNanos when the drag happened, on the {@link Clock} timebase
+     */
+    public void onScroll(Target target, float deltaX, float deltaY, long eventNanos) {
+        if (!targets.contains(target)) {
+            return;
+        }
+
+        target.onScroll(deltaX, deltaY);
+        if (target.firstUnpresentedInputNanos < 0) {
+            target.firstUnpresentedInputNanos = eventNanos;
+        }
+        invalidate(target);
+    }
+
+    /**
+     * Redraws the target on the next vsync even without a new video frame.
+     */
+    public void invalidate(Target target) {
+        target.pendingCameraUpdate = true;
+        requestVsync();
+    }
+
+    /**
+     * Asks for another vsync without redrawing anything, for hosts that
+     * poll for work on vsync.
+     */
+    public void requestVsync() {
+        if (!vsyncRequested && !targets.isEmpty()) {
+            vsyncRequested = true;
+            host.requestVsync();
+        }
+    }
+
+    public void onVsync(long frameTimeNanos) {
+        vsyncRequested = false;
+
+        if (targets.isEmpty()) {
+            return;
+        }
+
+        int targetsDrawn = 0;
+        for (int i = 0; i < targets.size(); i++) {
+            Target target = targets.get(i);
+            host.prepare(target);
+
+            if (!target.needsRedraw()) {
+                continue;
+            }
+
+            boolean latchFrame = target.queuedFrames > 0 && !target.shouldHoldFrame();
+            if (!latchFrame && !target.needsRedrawWithoutFrame()) {
+                continue;
+            }
+
+            long frameArrivalNanos = latchFrame ? target.dequeueFrame() : -1;
+            long inputNanos = target.firstUnpresentedInputNanos;
+
+            // Cleared before drawing so the host can invalidate again from draw().
+            target.pendingCameraUpdate = false;
+            target.firstUnpresentedInputNanos = -1;
+            target.latchedInputNanos = -1;
+
+            host.draw(target, latchFrame);
+            targetsDrawn++;
+
+            long poseInputNanos = target.latchedInputNanos;
+            if (poseInputNanos >= 0 && (inputNanos < 0 || poseInputNanos < inputNanos)) {
+                inputNanos = poseInputNanos;
+            }
+
+            if (observer != null) {
+                long presentNanos = clock.nanoTime();
+                observer.onPresented(
+                        target,
+                        presentNanos,
+                        frameArrivalNanos < 0 ? -1 : presentNanos - frameArrivalNanos,
+                        inputNanos < 0 ? -1 : presentNanos - inputNanos);
+            }
+        }
+
+        if (observer != null) {
+            observer.onVsyncHandled(frameTimeNanos, targetsDrawn);
+        }
+
+        if (continuousVsync || host.hasPendingWork() || anyTargetNeedsRedraw()) {
+            requestVsync();
+        }
+    }
+
+    private boolean anyTargetNeedsRedraw() {
+        for (int i = 0; i < targets.size(); i++) {
+            if (targets.get(i).needsRedraw()) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
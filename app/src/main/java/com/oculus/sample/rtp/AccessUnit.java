@@ -0,0 +1,69 @@
+/**
+ * Copyright 2016-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * Licensed under the Creative Commons CC BY-NC 4.0 Attribution-NonCommercial
+ * License (the "License"). You may obtain a copy of the License at
+ * https://creativecommons.org/licenses/by-nc/4.0/.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.oculus.sample.rtp;
+
+import java.util.Arrays;
+
+/**
+ * The NAL units of one coded picture as an Annex B byte stream, ready to be
+ * queued to a decoder. Reused for every picture, so it is only valid until
+ * the listener it was handed to returns.
+ */
+public class AccessUnit {
+    private static final int INITIAL_CAPACITY = 256 * 1024;
+
+    public byte[] data = new byte[INITIAL_CAPACITY];
+    public int size;
+
+    /** Unsigned 32 bit RTP timestamp, the sender's capture time. */
+    public long timestamp;
+    /** Arrival of the first packet of the picture, System.nanoTime(). */
+    public long firstPacketNanos;
+    /** Arrival of the packet completing it. */
+    public long lastPacketNanos;
+
+    public boolean keyframe;
+    public boolean hasParameterSets;
+    /** Packets of it were lost or could not be depacketized. */
+    public boolean damaged;
+
+    void reset(long timestamp, long firstPacketNanos) {
+        size = 0;
+        this.timestamp = timestamp;
+        this.firstPacketNanos = firstPacketNanos;
+        lastPacketNanos = firstPacketNanos;
+        keyframe = false;
+        hasParameterSets = false;
+        damaged = false;
+    }
+
+    void append(byte[] source, int offset, int length) {
+        ensureCapacity(size + length);
+        System.arraycopy(source, offset, data, size, length);
+        size += length;
+    }
+
+    void append(byte value) {
+        ensureCapacity(size + 1);
+        data[size++] = value;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > data.length) {
+            data = Arrays.copyOf(data, Math.max(capacity, data.length * 2));
+        }
+    }
+}
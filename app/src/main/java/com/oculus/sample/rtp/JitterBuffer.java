@@ -0,0 +1,199 @@
+/**
+ * Copyright 2016-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * Licensed under the Creative Commons CC BY-NC 4.0 Attribution-NonCommercial
+ * License (the "License"). You may obtain a copy of the License at
+ * https://creativecommons.org/licenses/by-nc/4.0/.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.oculus.sample.rtp;
+
+/**
+ * Puts RTP packets back into sequence order with as little delay as
+ * possible: packets that arrive in order are released immediately, and a
+ * gap is only waited for until the packet after it has been held for
+ * {@code maxDelayNanos}, after which the missing packets are given up as
+ * lost. There is no playout delay; smoothing arrival jitter is left to the
+ * render loop, which shows each frame at the first vsync after it decodes.
+ *
+ * A packet from another source (SSRC), or too far behind to be a late one,
+ * means the sender restarted and starts the sequence over.
+ *
+ * Used on one thread.
+ */
+public class JitterBuffer {
+    private final RtpPacket[] slots;
+    private final long maxDelayNanos;
+
+    // Sequence number of the next packet to release, -1 before the first.
+    private int nextSequence = -1;
+    private int highestSequence;
+    private int ssrc;
+    private int buffered;
+
+    private long packetsReceived;
+    private long packetsLost;
+    private long packetsLate;
+    private long packetsReordered;
+
+    /**
+     * @param capacity packets held while waiting for a gap, which should
+     *                 cover the packets of a few frames at the stream's
+     *                 bitrate; a power of two, so slots stay in order
+     *                 across the 16 bit sequence number wrap
+     */
+    public JitterBuffer(int capacity, long maxDelayNanos) {
+        if (Integer.bitCount(capacity) != 1 || capacity > 0x10000 || maxDelayNanos < 0) {
+            throw new IllegalArgumentException(
+                    "Invalid capacity " + capacity + " or delay " + maxDelayNanos);
+        }
+        slots = new RtpPacket[capacity];
+        this.maxDelayNanos = maxDelayNanos;
+    }
+
+    /**
+     * @return false if the packet was dropped as a duplicate or as arriving
+     *         after its gap was given up, in which case the caller keeps it
+     */
+    public boolean add(RtpPacket packet) {
+        int offset = nextSequence < 0
+                ? 0
+                : RtpPacket.sequenceDelta(packet.sequenceNumber, nextSequence);
+        if (nextSequence < 0 || packet.ssrc != ssrc || offset < -slots.length) {
+            clear();
+            nextSequence = packet.sequenceNumber;
+            highestSequence = packet.sequenceNumber;
+            ssrc = packet.ssrc;
+            offset = 0;
+        }
+        if (offset < 0) {
+            packetsLate++;
+            return false;
+        }
+        if (offset >= slots.length) {
+            // Far ahead after an outage: waiting would only add delay.
+            skip(offset - slots.length + 1);
+            offset = slots.length - 1;
+        }
+
+        int slot = slotOf(packet.sequenceNumber);
+        if (slots[slot] != null) {
+            packetsLate++;
+            return false;
+        }
+
+        slots[slot] = packet;
+        buffered++;
+        packetsReceived++;
+        if (RtpPacket.sequenceDelta(packet.sequenceNumber, highestSequence) < 0) {
+            packetsReordered++;
+        } else {
+            highestSequence = packet.sequenceNumber;
+        }
+        return true;
+    }
+
+    /**
+     * The next packet in sequence order, or null if there is none or a gap
+     * before it is still being waited for.
+     */
+    public RtpPacket poll(long nowNanos) {
+        if (buffered == 0) {
+            return null;
+        }
+
+        RtpPacket head = slots[slotOf(nextSequence)];
+        if (head == null) {
+            int gap = findNextBuffered();
+            if (nowNanos - slots[slotOf(nextSequence + gap)].arrivalNanos < maxDelayNanos) {
+                return null;
+            }
+            packetsLost += gap;
+            nextSequence = (nextSequence + gap) & 0xffff;
+            head = slots[slotOf(nextSequence)];
+        }
+
+        slots[slotOf(nextSequence)] = null;
+        buffered--;
+        nextSequence = (nextSequence + 1) & 0xffff;
+        return head;
+    }
+
+    /**
+     * When {@link #poll(long)} gives up the current gap, or -1 if there is
+     * none being waited for.
+     */
+    public long getDeadlineNanos() {
+        if (buffered == 0 || slots[slotOf(nextSequence)] != null) {
+            return -1;
+        }
+        return slots[slotOf(nextSequence + findNextBuffered())].arrivalNanos + maxDelayNanos;
+    }
+
+    public void clear() {
+        for (int i = 0; i < slots.length; i++) {
+            slots[i] = null;
+        }
+        buffered = 0;
+        nextSequence = -1;
+    }
+
+    public long getPacketsReceived() {
+        return packetsReceived;
+    }
+
+    /**
+     * Packets never released: not received before their gap was given up,
+     * or dropped when a later one did not fit the buffer.
+     */
+    public long getPacketsLost() {
+        return packetsLost;
+    }
+
+    /**
+     * Duplicates and packets received after their gap was given up.
+     */
+    public long getPacketsLate() {
+        return packetsLate;
+    }
+
+    /**
+     * Packets received after one with a higher sequence number.
+     */
+    public long getPacketsReordered() {
+        return packetsReordered;
+    }
+
+    private int slotOf(int sequence) {
+        return sequence & (slots.length - 1);
+    }
+
+    private int findNextBuffered() {
+        for (int gap = 1; gap < slots.length; gap++) {
+            if (slots[slotOf(nextSequence + gap)] != null) {
+                return gap;
+            }
+        }
+        throw new IllegalStateException("Buffered packets not found");
+    }
+
+    private void skip(int count) {
+        for (int i = 0; i < count; i++) {
+            int slot = slotOf(nextSequence);
+            if (slots[slot] != null) {
+                // Dropped unreleased, so the caller's pool loses it.
+                slots[slot] = null;
+                buffered--;
+            }
+            packetsLost++;
+            nextSequence = (nextSequence + 1) & 0xffff;
+        }
+    }
+}
@@ -0,0 +1,267 @@
+/**
+ * Copyright 2016-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * Licensed under the Creative Commons CC BY-NC 4.0 Attribution-NonCommercial
+ * License (the "License"). You may obtain a copy of the License at
+ * https://creativecommons.org/licenses/by-nc/4.0/.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.oculus.sample.rtp;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Stand-in for a live 360 camera: streams an H.264 or H.265 Annex B
+ * elementary stream over RTP to a port on the same host, in a loop, at a
+ * fixed frame rate.
+ *
+ * Pictures are timestamped with the local monotonic clock when they are
+ * sent, as a camera stamps them when they are captured, so a receiver in
+ * the same process or on the same host can turn timestamps back into
+ * capture times with {@link #toLocalNanos(long, long)} and measure the
+ * whole path from capture to display. Packet loss and reordering can be
+ * simulated with a seeded generator to exercise the receiver's jitter
+ * buffer.
+ */
+public class LoopbackRtpSender {
+    private static final String THREAD_NAME = "360RtpSender";
+    private static final long NANOS_PER_SECOND = 1000000000L;
+
+    private final String mime;
+    private final byte[] stream;
+    private final int[] accessUnitOffsets;
+    private final int port;
+    private final float frameRate;
+
+    private float lossRate;
+    private float reorderRate;
+    private long seed = 360;
+
+    private volatile boolean running;
+    private Thread thread;
+    private volatile long accessUnitsSent;
+    private volatile long packetsSent;
+    private volatile IOException error;
+
+    /**
+     * @param stream Annex B elementary stream, read to the end and closed
+     */
+    public LoopbackRtpSender(String mime, InputStream stream, int port, float frameRate)
+            throws IOException {
+        if (frameRate <= 0) {
+            throw new IllegalArgumentException("Invalid frame rate " + frameRate);
+        }
+
+        this.mime = mime;
+        this.stream = readFully(stream);
+        this.accessUnitOffsets = splitAccessUnits(NalUnits.isHevc(mime), this.stream);
+        this.port = port;
+        this.frameRate = frameRate;
+        if (accessUnitOffsets.length < 2) {
+            throw new IOException("No pictures in the elementary stream");
+        }
+    }
+
+    /**
+     * Drops and swaps packets at the given rates, from a generator seeded
+     * with {@code seed}. Takes effect on {@link #start()}.
+     */
+    public void setImpairments(float lossRate, float reorderRate, long seed) {
+        this.lossRate = lossRate;
+        this.reorderRate = reorderRate;
+        this.seed = seed;
+    }
+
+    public int getAccessUnitCount() {
+        return accessUnitOffsets.length - 1;
+    }
+
+    public long getAccessUnitsSent() {
+        return accessUnitsSent;
+    }
+
+    public long getPacketsSent() {
+        return packetsSent;
+    }
+
+    /**
+     * The error that stopped the sender, or null if none did.
+     */
+    public IOException getError() {
+        return error;
+    }
+
+    public void start() throws IOException {
+        if (running) {
+            throw new IllegalStateException("Already sending");
+        }
+
+        final DatagramSocket socket = new DatagramSocket();
+        error = null;
+        running = true;
+        thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    sendLoop(socket);
+                } catch (IOException e) {
+                    error = e;
+                } finally {
+                    socket.close();
+                }
+            }
+        }, THREAD_NAME);
+        thread.start();
+    }
+
+    public void stop() {
+        running = false;
+        if (thread == null) {
+            return;
+        }
+
+        thread.interrupt();
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        thread = null;
+    }
+
+    /**
+     * RTP timestamp of a System.nanoTime() instant.
+     */
+    public static long toTimestamp(long nanos) {
+        return (long) (nanos / (double) NANOS_PER_SECOND * RtpPacket.VIDEO_CLOCK_RATE)
+                & 0xffffffffL;
+    }
+
+    /**
+     * System.nanoTime() instant of an RTP timestamp made by
+     * {@link #toTimestamp(long)} less than 13 hours before {@code nowNanos}.
+     */
+    public static long toLocalNanos(long timestamp, long nowNanos) {
+        long ticksAgo = (toTimestamp(nowNanos) - timestamp) & 0xffffffffL;
+        return nowNanos - ticksAgo * NANOS_PER_SECOND / RtpPacket.VIDEO_CLOCK_RATE;
+    }
+
+    private void sendLoop(final DatagramSocket socket) throws IOException {
+        final InetAddress loopback = InetAddress.getByName(null);
+        final Random random = new Random(seed);
+        final DatagramPacket datagram = new DatagramPacket(new byte[0], 0, loopback, port);
+        final byte[] held = new byte[RtpPacket.MAX_SIZE];
+        final int[] heldLength = {0};
+
+        RtpPacketizer packetizer = new RtpPacketizer(
+                mime,
+                RtpPacketizer.DYNAMIC_PAYLOAD_TYPE,
+                random.nextInt(),
+                RtpPacketizer.DEFAULT_MAX_PAYLOAD,
+                new RtpPacketizer.Sink() {
+                    @Override
+                    public void send(RtpPacket packet) throws IOException {
+                        packetsSent++;
+                        if (random.nextFloat() < lossRate) {
+                            return;
+                        }
+                        if (heldLength[0] == 0 && !packet.marker
+                                && random.nextFloat() < reorderRate) {
+                            // Goes out after the next packet of the same picture.
+                            System.arraycopy(packet.buffer, 0, held, 0, packet.length);
+                            heldLength[0] = packet.length;
+                            return;
+                        }
+
+                        datagram.setData(packet.buffer, 0, packet.length);
+                        socket.send(datagram);
+                        if (heldLength[0] > 0) {
+                            datagram.setData(held, 0, heldLength[0]);
+                            socket.send(datagram);
+                            heldLength[0] = 0;
+                        }
+                    }
+                });
+
+        long frameNanos = (long) (NANOS_PER_SECOND / frameRate);
+        long nextFrameNanos = System.nanoTime();
+        int index = 0;
+        while (running) {
+            long sleepNanos = nextFrameNanos - System.nanoTime();
+            if (sleepNanos > 0) {
+                try {
+                    Thread.sleep(sleepNanos / 1000000L, (int) (sleepNanos % 1000000L));
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+
+            int offset = accessUnitOffsets[index];
+            packetizer.send(stream, offset, accessUnitOffsets[index + 1] - offset,
+                    toTimestamp(System.nanoTime()));
+            accessUnitsSent++;
+
+            index = (index + 1) % (accessUnitOffsets.length - 1);
+            nextFrameNanos += frameNanos;
+        }
+    }
+
+    /**
+     * Start offsets of the access units of an Annex B stream, followed by
+     * the stream length.
+     */
+    static int[] splitAccessUnits(boolean hevc, byte[] stream) {
+        List<Integer> offsets = new ArrayList<>();
+        boolean hasSlice = false;
+        int nal = NalUnits.findNalUnit(stream, 0, stream.length);
+        while (nal >= 0) {
+            int nalEnd = NalUnits.findNalUnitEnd(stream, nal, stream.length);
+            int startCode = nal >= 4 && stream[nal - 4] == 0 ? nal - 4 : nal - 3;
+            if (nalEnd > nal) {
+                if (offsets.isEmpty()
+                        || NalUnits.startsAccessUnit(hevc, stream, nal, nalEnd - nal, hasSlice)) {
+                    offsets.add(startCode);
+                    hasSlice = false;
+                }
+                hasSlice |= NalUnits.isSlice(hevc, NalUnits.type(hevc, stream[nal]));
+            }
+            nal = NalUnits.findNalUnit(stream, nalEnd, stream.length);
+        }
+
+        int[] result = new int[offsets.size() + 1];
+        for (int i = 0; i < offsets.size(); i++) {
+            result[i] = offsets.get(i);
+        }
+        result[offsets.size()] = stream.length;
+        return result;
+    }
+
+    private static byte[] readFully(InputStream in) throws IOException {
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[64 * 1024];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            return out.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+}
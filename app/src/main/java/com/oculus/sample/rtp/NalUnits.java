@@ -0,0 +1,135 @@
+/**
+ * Copyright 2016-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * Licensed under the Creative Commons CC BY-NC 4.0 Attribution-NonCommercial
+ * License (the "License"). You may obtain a copy of the License at
+ * https://creativecommons.org/licenses/by-nc/4.0/.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.oculus.sample.rtp;
+
+/**
+ * NAL unit header fields of H.264 and H.265 and Annex B byte stream
+ * scanning, for the codec given by its MIME type.
+ */
+public class NalUnits {
+    public static final String MIME_AVC = "video/avc";
+    public static final String MIME_HEVC = "video/hevc";
+
+    static final byte[] START_CODE = {0, 0, 0, 1};
+
+    private static final int AVC_IDR = 5;
+    private static final int AVC_SEI = 6;
+    private static final int AVC_SPS = 7;
+    private static final int AVC_PPS = 8;
+    private static final int AVC_AUD = 9;
+
+    private static final int HEVC_VCL_END = 31;
+    private static final int HEVC_IRAP_FIRST = 16;
+    private static final int HEVC_IRAP_LAST = 21;
+    private static final int HEVC_VPS = 32;
+    private static final int HEVC_PPS = 34;
+    private static final int HEVC_PREFIX_SEI = 39;
+
+    private NalUnits() {
+    }
+
+    /**
+     * @throws IllegalArgumentException for anything but H.264 and H.265
+     */
+    public static boolean isHevc(String mime) {
+        if (MIME_HEVC.equals(mime)) {
+            return true;
+        } else if (MIME_AVC.equals(mime)) {
+            return false;
+        }
+        throw new IllegalArgumentException("Unsupported video codec " + mime);
+    }
+
+    public static int headerSize(boolean hevc) {
+        return hevc ? 2 : 1;
+    }
+
+    public static int type(boolean hevc, byte firstHeaderByte) {
+        return hevc ? (firstHeaderByte >> 1) & 0x3f : firstHeaderByte & 0x1f;
+    }
+
+    /**
+     * Whether the decoder can start at this NAL unit without any before it.
+     */
+    public static boolean isKeyframe(boolean hevc, int type) {
+        return hevc ? type >= HEVC_IRAP_FIRST && type <= HEVC_IRAP_LAST : type == AVC_IDR;
+    }
+
+    /**
+     * SPS and PPS, plus the VPS for H.265.
+     */
+    public static boolean isParameterSet(boolean hevc, int type) {
+        return hevc ? type >= HEVC_VPS && type <= HEVC_PPS : type == AVC_SPS || type == AVC_PPS;
+    }
+
+    /**
+     * Whether the NAL unit at {@code offset} starts a new access unit,
+     * given whether the current one already holds a coded slice.
+     */
+    public static boolean startsAccessUnit(
+            boolean hevc, byte[] data, int offset, int length, boolean hasSlice) {
+        int type = type(hevc, data[offset]);
+        int headerSize = headerSize(hevc);
+        // first_mb_in_slice == 0 or first_slice_segment_in_pic_flag, which
+        // both come down to the first bit after the header being set.
+        boolean firstSlice = length > headerSize && (data[offset + headerSize] & 0x80) != 0;
+
+        if (hevc) {
+            if (type <= HEVC_VCL_END) {
+                return hasSlice && firstSlice;
+            }
+            return hasSlice && type >= HEVC_VPS && type <= HEVC_PREFIX_SEI;
+        }
+        if (type >= 1 && type <= AVC_IDR) {
+            return hasSlice && firstSlice;
+        }
+        return hasSlice && type >= AVC_SEI && type <= AVC_AUD;
+    }
+
+    public static boolean isSlice(boolean hevc, int type) {
+        return hevc ? type <= HEVC_VCL_END : type >= 1 && type <= AVC_IDR;
+    }
+
+    /**
+     * Offset of the first NAL unit at or after {@code from} in an Annex B
+     * byte stream, just past its start code, or -1 if there is none before
+     * {@code end}.
+     */
+    public static int findNalUnit(byte[] data, int from, int end) {
+        for (int i = from; i + 2 < end; i++) {
+            if (data[i] == 0 && data[i + 1] == 0 && data[i + 2] == 1) {
+                return i + 3;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * End of the NAL unit starting at {@code offset}: the start of the next
+     * start code, without its leading zero byte, or {@code end}.
+     */
+    public static int findNalUnitEnd(byte[] data, int offset, int end) {
+        int next = findNalUnit(data, offset, end);
+        if (next < 0) {
+            return end;
+        }
+        int nalEnd = next - 3;
+        while (nalEnd > offset && data[nalEnd - 1] == 0) {
+            nalEnd--;
+        }
+        return nalEnd;
+    }
+}
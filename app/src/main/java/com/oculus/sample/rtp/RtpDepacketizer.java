@@ -0,0 +1,206 @@
+/**
+ * Copyright 2016-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * Licensed under the Creative Commons CC BY-NC 4.0 Attribution-NonCommercial
+ * License (the "License"). You may obtain a copy of the License at
+ * https://creativecommons.org/licenses/by-nc/4.0/.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.oculus.sample.rtp;
+
+/**
+ * Reassembles H.264 (RFC 6184) or H.265 (RFC 7798) RTP payloads, in
+ * sequence order, into access units.
+ *
+ * Handles single NAL unit packets, STAP-A / AP aggregation and FU-A / FU
+ * fragmentation, which is what encoders in non-interleaved mode send. A
+ * picture is complete at the packet with the marker bit set, or, if that
+ * one was lost, when a packet with a new timestamp arrives. Fragments of a
+ * NAL unit whose other fragments were lost are dropped and the picture is
+ * marked damaged, so the caller can wait for the next keyframe rather than
+ * decode from a broken reference.
+ *
+ * Used on one thread.
+ */
+public class RtpDepacketizer {
+    public interface Listener {
+        /**
+         * Called from {@link #push(RtpPacket)} with each complete picture,
+         * which is only valid until it returns. Damaged pictures are passed
+         * on even when nothing of them could be kept.
+         */
+        void onAccessUnit(AccessUnit unit);
+    }
+
+    private static final int AVC_STAP_A = 24;
+    private static final int AVC_FU_A = 28;
+    private static final int HEVC_AP = 48;
+    private static final int HEVC_FU = 49;
+
+    private final boolean hevc;
+    private final Listener listener;
+    private final AccessUnit unit = new AccessUnit();
+
+    private boolean inUnit;
+    private int lastSequence = -1;
+    // Start of the NAL unit being reassembled from fragments, or -1.
+    private int fragmentStart = -1;
+
+    private long accessUnits;
+    private long damagedAccessUnits;
+
+    public RtpDepacketizer(String mime, Listener listener) {
+        this.hevc = NalUnits.isHevc(mime);
+        this.listener = listener;
+    }
+
+    public void push(RtpPacket packet) {
+        boolean lost = lastSequence >= 0
+                && RtpPacket.sequenceDelta(packet.sequenceNumber, lastSequence) != 1;
+        lastSequence = packet.sequenceNumber;
+
+        if (inUnit && packet.timestamp != unit.timestamp) {
+            // The marker packet of the previous picture never came.
+            unit.damaged = true;
+            finishUnit();
+        }
+        if (!inUnit) {
+            unit.reset(packet.timestamp, packet.arrivalNanos);
+            inUnit = true;
+        }
+        if (lost) {
+            unit.damaged = true;
+            abortFragment();
+        }
+
+        unit.lastPacketNanos = packet.arrivalNanos;
+        parsePayload(packet.buffer, packet.payloadOffset, packet.payloadLength);
+
+        if (packet.marker) {
+            finishUnit();
+        }
+    }
+
+    public long getAccessUnits() {
+        return accessUnits;
+    }
+
+    public long getDamagedAccessUnits() {
+        return damagedAccessUnits;
+    }
+
+    private void parsePayload(byte[] data, int offset, int length) {
+        int headerSize = NalUnits.headerSize(hevc);
+        if (length < headerSize) {
+            unit.damaged = true;
+            return;
+        }
+
+        int type = NalUnits.type(hevc, data[offset]);
+        if (type == (hevc ? HEVC_AP : AVC_STAP_A)) {
+            parseAggregate(data, offset + headerSize, length - headerSize);
+        } else if (type == (hevc ? HEVC_FU : AVC_FU_A)) {
+            parseFragment(data, offset, length);
+        } else if (hevc ? type < HEVC_AP : type >= 1 && type < AVC_STAP_A) {
+            abortFragment();
+            appendNalUnit(data, offset, length);
+        } else {
+            // STAP-B, MTAP, FU-B and PACI only appear in interleaved mode.
+            unit.damaged = true;
+        }
+    }
+
+    private void parseAggregate(byte[] data, int offset, int length) {
+        abortFragment();
+        int end = offset + length;
+        while (offset + 2 <= end) {
+            int size = RtpPacket.readShort(data, offset);
+            offset += 2;
+            if (size == 0 || offset + size > end) {
+                unit.damaged = true;
+                return;
+            }
+            appendNalUnit(data, offset, size);
+            offset += size;
+        }
+    }
+
+    private void parseFragment(byte[] data, int offset, int length) {
+        int headerSize = NalUnits.headerSize(hevc);
+        if (length <= headerSize + 1) {
+            unit.damaged = true;
+            return;
+        }
+
+        byte fuHeader = data[offset + headerSize];
+        boolean start = (fuHeader & 0x80) != 0;
+        boolean end = (fuHeader & 0x40) != 0;
+        int payloadOffset = offset + headerSize + 1;
+        int payloadLength = length - headerSize - 1;
+
+        if (start) {
+            abortFragment();
+            fragmentStart = unit.size;
+            unit.append(NalUnits.START_CODE, 0, NalUnits.START_CODE.length);
+            if (hevc) {
+                unit.append((byte) ((data[offset] & 0x81) | (fuHeader & 0x3f) << 1));
+                unit.append(data[offset + 1]);
+            } else {
+                unit.append((byte) ((data[offset] & 0xe0) | (fuHeader & 0x1f)));
+            }
+            onNalUnitType(NalUnits.type(hevc, unit.data[fragmentStart + 4]));
+        } else if (fragmentStart < 0) {
+            // The start of this NAL unit was lost.
+            unit.damaged = true;
+            return;
+        }
+
+        unit.append(data, payloadOffset, payloadLength);
+        if (end) {
+            fragmentStart = -1;
+        }
+    }
+
+    private void appendNalUnit(byte[] data, int offset, int length) {
+        unit.append(NalUnits.START_CODE, 0, NalUnits.START_CODE.length);
+        unit.append(data, offset, length);
+        onNalUnitType(NalUnits.type(hevc, data[offset]));
+    }
+
+    private void onNalUnitType(int type) {
+        if (NalUnits.isKeyframe(hevc, type)) {
+            unit.keyframe = true;
+        } else if (NalUnits.isParameterSet(hevc, type)) {
+            unit.hasParameterSets = true;
+        }
+    }
+
+    private void abortFragment() {
+        if (fragmentStart >= 0) {
+            unit.size = fragmentStart;
+            unit.damaged = true;
+            fragmentStart = -1;
+        }
+    }
+
+    private void finishUnit() {
+        abortFragment();
+        inUnit = false;
+        if (unit.size == 0 && !unit.damaged) {
+            return;
+        }
+
+        accessUnits++;
+        if (unit.damaged) {
+            damagedAccessUnits++;
+        }
+        listener.onAccessUnit(unit);
+    }
+}
@@ -0,0 +1,147 @@
+/**
+ * Copyright 2016-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * Licensed under the Creative Commons CC BY-NC 4.0 Attribution-NonCommercial
+ * License (the "License"). You may obtain a copy of the License at
+ * https://creativecommons.org/licenses/by-nc/4.0/.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.oculus.sample.rtp;
+
+/**
+ * One RTP packet (RFC 3550) in a buffer of its own, received into and
+ * parsed in place so packets can be pooled instead of allocated per
+ * datagram.
+ */
+public class RtpPacket {
+    /** Fits any packet sent without IP fragmentation on Ethernet or loopback. */
+    public static final int MAX_SIZE = 2048;
+    public static final int HEADER_SIZE = 12;
+    /** Clock rate of the RTP timestamps of every video payload format. */
+    public static final int VIDEO_CLOCK_RATE = 90000;
+
+    private static final int VERSION = 2;
+
+    public final byte[] buffer = new byte[MAX_SIZE];
+    public int length;
+
+    public int payloadType;
+    public boolean marker;
+    public int sequenceNumber;
+    /** Unsigned 32 bit. */
+    public long timestamp;
+    public int ssrc;
+    public int payloadOffset;
+    public int payloadLength;
+
+    /** System.nanoTime() when the datagram was received. */
+    public long arrivalNanos;
+
+    /**
+     * Parses the first {@code length} bytes of {@link #buffer}.
+     *
+     * @return false if they are not an RTP packet, which should be dropped
+     */
+    public boolean parse(int length, long arrivalNanos) {
+        this.length = length;
+        this.arrivalNanos = arrivalNanos;
+        if (length < HEADER_SIZE || (buffer[0] & 0xc0) >> 6 != VERSION) {
+            return false;
+        }
+
+        boolean padding = (buffer[0] & 0x20) != 0;
+        boolean extension = (buffer[0] & 0x10) != 0;
+        int csrcCount = buffer[0] & 0x0f;
+        marker = (buffer[1] & 0x80) != 0;
+        payloadType = buffer[1] & 0x7f;
+        sequenceNumber = readShort(buffer, 2);
+        timestamp = readInt(buffer, 4) & 0xffffffffL;
+        ssrc = readInt(buffer, 8);
+
+        int offset = HEADER_SIZE + csrcCount * 4;
+        if (extension) {
+            if (offset + 4 > length) {
+                return false;
+            }
+            offset += 4 + readShort(buffer, offset + 2) * 4;
+        }
+        int end = length;
+        if (padding) {
+            end -= buffer[length - 1] & 0xff;
+        }
+        if (offset >= end) {
+            return false;
+        }
+
+        payloadOffset = offset;
+        payloadLength = end - offset;
+        return true;
+    }
+
+    /**
+     * Writes a header without CSRCs, extension or padding and the payload
+     * into {@link #buffer}.
+     */
+    public void set(
+            int payloadType,
+            boolean marker,
+            int sequenceNumber,
+            long timestamp,
+            int ssrc,
+            byte[] payload,
+            int offset,
+            int payloadLength) {
+        if (HEADER_SIZE + payloadLength > MAX_SIZE) {
+            throw new IllegalArgumentException("Payload too large: " + payloadLength);
+        }
+
+        buffer[0] = (byte) (VERSION << 6);
+        buffer[1] = (byte) ((marker ? 0x80 : 0) | (payloadType & 0x7f));
+        writeShort(buffer, 2, sequenceNumber);
+        writeInt(buffer, 4, (int) timestamp);
+        writeInt(buffer, 8, ssrc);
+        System.arraycopy(payload, offset, buffer, HEADER_SIZE, payloadLength);
+
+        this.payloadType = payloadType;
+        this.marker = marker;
+        this.sequenceNumber = sequenceNumber & 0xffff;
+        this.timestamp = timestamp & 0xffffffffL;
+        this.ssrc = ssrc;
+        this.payloadOffset = HEADER_SIZE;
+        this.payloadLength = payloadLength;
+        this.length = HEADER_SIZE + payloadLength;
+    }
+
+    /**
+     * Distance from sequence number {@code b} to {@code a}, negative if
+     * {@code a} comes first, across the 16 bit wrap.
+     */
+    public static int sequenceDelta(int a, int b) {
+        return (short) (a - b);
+    }
+
+    static int readShort(byte[] data, int offset) {
+        return (data[offset] & 0xff) << 8 | (data[offset + 1] & 0xff);
+    }
+
+    static void writeShort(byte[] data, int offset, int value) {
+        data[offset] = (byte) (value >> 8);
+        data[offset + 1] = (byte) value;
+    }
+
+    private static int readInt(byte[] data, int offset) {
+        return readShort(data, offset) << 16 | readShort(data, offset + 2);
+    }
+
+    private static void writeInt(byte[] data, int offset, int value) {
+        writeShort(data, offset, value >>> 16);
+        writeShort(data, offset + 2, value);
+    }
+}
@@ -0,0 +1,120 @@
+/**
+ * Copyright 2016-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * Licensed under the Creative Commons CC BY-NC 4.0 Attribution-NonCommercial
+ * License (the "License"). You may obtain a copy of the License at
+ * https://creativecommons.org/licenses/by-nc/4.0/.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.oculus.sample.rtp;
+
+import java.io.IOException;
+
+/**
+ * Splits Annex B access units into H.264 or H.265 RTP packets, the inverse
+ * of {@link RtpDepacketizer}: NAL units that fit are sent as they are,
+ * larger ones as FU-A / FU fragments, and the last packet of each access
+ * unit carries the marker bit.
+ *
+ * Used on one thread.
+ */
+public class RtpPacketizer {
+    public interface Sink {
+        /**
+         * Sends the packet, which is reused once this returns.
+         */
+        void send(RtpPacket packet) throws IOException;
+    }
+
+    public static final int DYNAMIC_PAYLOAD_TYPE = 96;
+    /** Keeps packets within a 1500 byte MTU after IP and UDP headers. */
+    public static final int DEFAULT_MAX_PAYLOAD = 1400;
+
+    private static final int AVC_FU_A_TYPE = 28;
+    private static final int HEVC_FU_TYPE = 49;
+
+    private final boolean hevc;
+    private final int payloadType;
+    private final int ssrc;
+    private final int maxPayload;
+    private final Sink sink;
+    private final RtpPacket packet = new RtpPacket();
+    private final byte[] fragment;
+
+    private int sequenceNumber;
+
+    public RtpPacketizer(String mime, int payloadType, int ssrc, int maxPayload, Sink sink) {
+        this.hevc = NalUnits.isHevc(mime);
+        if (maxPayload <= NalUnits.headerSize(hevc) + 1
+                || RtpPacket.HEADER_SIZE + maxPayload > RtpPacket.MAX_SIZE) {
+            throw new IllegalArgumentException("Invalid maximum payload " + maxPayload);
+        }
+
+        this.payloadType = payloadType;
+        this.ssrc = ssrc;
+        this.maxPayload = maxPayload;
+        this.sink = sink;
+        fragment = new byte[maxPayload];
+        sequenceNumber = ssrc & 0xffff;
+    }
+
+    /**
+     * Sends the NAL units of an Annex B access unit.
+     *
+     * @param timestamp RTP timestamp of the picture
+     */
+    public void send(byte[] data, int offset, int length, long timestamp) throws IOException {
+        int end = offset + length;
+        int nal = NalUnits.findNalUnit(data, offset, end);
+        while (nal >= 0) {
+            int nalEnd = NalUnits.findNalUnitEnd(data, nal, end);
+            int next = NalUnits.findNalUnit(data, nalEnd, end);
+            if (nalEnd > nal) {
+                sendNalUnit(data, nal, nalEnd - nal, timestamp, next < 0);
+            }
+            nal = next;
+        }
+    }
+
+    private void sendNalUnit(byte[] data, int offset, int length, long timestamp, boolean last)
+            throws IOException {
+        if (length <= maxPayload) {
+            sendPacket(data, offset, length, timestamp, last);
+            return;
+        }
+
+        int headerSize = NalUnits.headerSize(hevc);
+        int type = NalUnits.type(hevc, data[offset]);
+        if (hevc) {
+            fragment[0] = (byte) ((data[offset] & 0x81) | HEVC_FU_TYPE << 1);
+            fragment[1] = data[offset + 1];
+        } else {
+            fragment[0] = (byte) ((data[offset] & 0xe0) | AVC_FU_A_TYPE);
+        }
+
+        int fragmentHeaderSize = headerSize + 1;
+        int chunk = maxPayload - fragmentHeaderSize;
+        for (int position = offset + headerSize; position < offset + length; position += chunk) {
+            int size = Math.min(chunk, offset + length - position);
+            boolean start = position == offset + headerSize;
+            boolean end = position + size == offset + length;
+            fragment[headerSize] = (byte) ((start ? 0x80 : 0) | (end ? 0x40 : 0) | type);
+            System.arraycopy(data, position, fragment, fragmentHeaderSize, size);
+            sendPacket(fragment, 0, fragmentHeaderSize + size, timestamp, last && end);
+        }
+    }
+
+    private void sendPacket(byte[] payload, int offset, int length, long timestamp, boolean marker)
+            throws IOException {
+        packet.set(payloadType, marker, sequenceNumber, timestamp, ssrc, payload, offset, length);
+        sequenceNumber = (sequenceNumber + 1) & 0xffff;
+        sink.send(packet);
+    }
+}
@@ -0,0 +1,121 @@
+/**
+ * Copyright 2016-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * Licensed under the Creative Commons CC BY-NC 4.0 Attribution-NonCommercial
+ * License (the "License"). You may obtain a copy of the License at
+ * https://creativecommons.org/licenses/by-nc/4.0/.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.oculus.sample.telemetry;
+
+import java.util.Locale;
+
+/**
+ * Rolling audio-video drift of one view over the last {@code window} shown
+ * frames, plus totals of frames dropped and vsyncs held to correct it.
+ * Drift is positive when the picture lags the audio.
+ *
+ * Written on the render thread and read on any other, so every method is
+ * synchronized.
+ */
+public class AvSyncStats {
+    private static final double NANOS_PER_MS = 1e6;
+
+    private final long[] driftNanos;
+    private int next;
+    private int count;
+    private long totalDriftNanos;
+
+    private long samples;
+    private long framesDropped;
+    private long vsyncsHeld;
+
+    public AvSyncStats(int window) {
+        if (window <= 0) {
+            throw new IllegalArgumentException("Invalid window " + window);
+        }
+        driftNanos = new long[window];
+    }
+
+    public synchronized void onDrift(long drift) {
+        if (count == driftNanos.length) {
+            totalDriftNanos -= driftNanos[next];
+        } else {
+            count++;
+        }
+        driftNanos[next] = drift;
+        totalDriftNanos += drift;
+        next = (next + 1) % driftNanos.length;
+        samples++;
+    }
+
+    public synchronized void onFrameDropped() {
+        framesDropped++;
+    }
+
+    public synchronized void onVsyncHeld() {
+        vsyncsHeld++;
+    }
+
+    public synchronized long getSampleCount() {
+        return samples;
+    }
+
+    public synchronized long getFramesDropped() {
+        return framesDropped;
+    }
+
+    public synchronized long getVsyncsHeld() {
+        return vsyncsHeld;
+    }
+
+    public synchronized double getMeanDriftMs() {
+        return count == 0 ? 0 : totalDriftNanos / (double) count / NANOS_PER_MS;
+    }
+
+    public synchronized double getStdDevDriftMs() {
+        if (count == 0) {
+            return 0;
+        }
+
+        double mean = totalDriftNanos / (double) count;
+        double sumSquares = 0;
+        for (int i = 0; i < count; i++) {
+            double d = driftNanos[i] - mean;
+            sumSquares += d * d;
+        }
+        return Math.sqrt(sumSquares / count) / NANOS_PER_MS;
+    }
+
+    public synchronized double getMinDriftMs() {
+        long min = Long.MAX_VALUE;
+        for (int i = 0; i < count; i++) {
+            min = Math.min(min, driftNanos[i]);
+        }
+        return count == 0 ? 0 : min / NANOS_PER_MS;
+    }
+
+    public synchronized double getMaxDriftMs() {
+        long max = Long.MIN_VALUE;
+        for (int i = 0; i < count; i++) {
+            max = Math.max(max, driftNanos[i]);
+        }
+        return count == 0 ? 0 : max / NANOS_PER_MS;
+    }
+
+    public synchronized String toJson() {
+        return String.format(Locale.US,
+                "{\"samples\":%d,\"window\":%d,\"mean_ms\":%.3f,\"stddev_ms\":%.3f"
+                        + ",\"min_ms\":%.3f,\"max_ms\":%.3f"
+                        + ",\"frames_dropped\":%d,\"vsyncs_held\":%d}",
+                samples, count, getMeanDriftMs(), getStdDevDriftMs(),
+                getMinDriftMs(), getMaxDriftMs(), framesDropped, vsyncsHeld);
+    }
+}
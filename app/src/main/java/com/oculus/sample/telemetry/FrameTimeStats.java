@@ -0,0 +1,143 @@
+/**
+ * Copyright 2016-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * Licensed under the Creative Commons CC BY-NC 4.0 Attribution-NonCommercial
+ * License (the "License"). You may obtain a copy of the License at
+ * https://creativecommons.org/licenses/by-nc/4.0/.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.oculus.sample.telemetry;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Per-frame timings of one view: the interval between consecutive presents
+ * and the render thread work that went into each frame.
+ *
+ * Samples go into preallocated arrays; once full, further frames are only
+ * counted. Recording happens on the render thread and reading on any other,
+ * so every method is synchronized; the lock is never contended while
+ * recording.
+ */
+public class FrameTimeStats {
+    private static final double NANOS_PER_MS = 1e6;
+    private static final int[] REPORTED_PERCENTILES = {50, 90, 95, 99};
+
+    private final long[] intervalNanos;
+    private final long[] workNanos;
+    private final long jankThresholdNanos;
+    private int count;
+    private int overflow;
+    private int jankyFrames;
+    private long lastPresentNanos;
+
+    /**
+     * @param capacity number of frames kept for percentiles
+     * @param refreshPeriodNanos display refresh period; intervals longer than
+     *                           1.5 periods count as janky
+     */
+    public FrameTimeStats(int capacity, long refreshPeriodNanos) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Invalid capacity " + capacity);
+        }
+
+        intervalNanos = new long[capacity];
+        workNanos = new long[capacity];
+        jankThresholdNanos = refreshPeriodNanos * 3 / 2;
+    }
+
+    /**
+     * @param presentNanos when the frame was swapped, System.nanoTime() based
+     * @param frameWorkNanos render thread time spent on the frame
+     */
+    public synchronized void onFramePresented(long presentNanos, long frameWorkNanos) {
+        long interval = lastPresentNanos == 0 ? -1 : presentNanos - lastPresentNanos;
+        lastPresentNanos = presentNanos;
+        if (interval < 0) {
+            // The first frame only starts the clock.
+            return;
+        }
+
+        if (interval > jankThresholdNanos) {
+            jankyFrames++;
+        }
+
+        if (count == intervalNanos.length) {
+            overflow++;
+            return;
+        }
+        intervalNanos[count] = interval;
+        workNanos[count] = frameWorkNanos;
+        count++;
+    }
+
+    public synchronized int getFrameCount() {
+        return count + overflow;
+    }
+
+    public synchronized int getJankyFrameCount() {
+        return jankyFrames;
+    }
+
+    /**
+     * Present interval at the given percentile, in milliseconds.
+     */
+    public synchronized double getIntervalPercentileMs(double percentile) {
+        return percentileMs(intervalNanos, percentile);
+    }
+
+    /**
+     * Render thread work per frame at the given percentile, in milliseconds.
+     */
+    public synchronized double getWorkPercentileMs(double percentile) {
+        return percentileMs(workNanos, percentile);
+    }
+
+    /**
+     * JSON object with frame counts and interval and work percentiles.
+     */
+    public synchronized String toJson() {
+        StringBuilder json = new StringBuilder();
+        json.append("{\"frames\":").append(getFrameCount())
+                .append(",\"sampledFrames\":").append(count)
+                .append(",\"jankyFrames\":").append(jankyFrames)
+                .append(",\"frameIntervalMs\":");
+        appendPercentiles(json, intervalNanos);
+        json.append(",\"frameWorkMs\":");
+        appendPercentiles(json, workNanos);
+        json.append('}');
+        return json.toString();
+    }
+
+    private void appendPercentiles(StringBuilder json, long[] samples) {
+        json.append('{');
+        for (int percentile : REPORTED_PERCENTILES) {
+            json.append("\"p").append(percentile).append("\":")
+                    .append(format(percentileMs(samples, percentile))).append(',');
+        }
+        json.append("\"max\":").append(format(percentileMs(samples, 100))).append('}');
+    }
+
+    private double percentileMs(long[] samples, double percentile) {
+        if (count == 0) {
+            return 0;
+        }
+
+        long[] sorted = Arrays.copyOf(samples, count);
+        Arrays.sort(sorted);
+        int index = (int) Math.ceil(percentile / 100 * count) - 1;
+        return sorted[Math.max(0, Math.min(count - 1, index))] / NANOS_PER_MS;
+    }
+
+    private static String format(double value) {
+        return String.format(Locale.US, "%.3f", value);
+    }
+}
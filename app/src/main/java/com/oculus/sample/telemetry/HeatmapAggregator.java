@@ -0,0 +1,162 @@
+/**
+ * Copyright 2016-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * Licensed under the Creative Commons CC BY-NC 4.0 Attribution-NonCommercial
+ * License (the "License"). You may obtain a copy of the License at
+ * https://creativecommons.org/licenses/by-nc/4.0/.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.oculus.sample.telemetry;
+
+import com.oculus.sample.projection.EquirectReprojector;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Folds viewport logs into one equirectangular heatmap per second of video.
+ *
+ * Logs are streamed record by record, so memory is bounded by video length
+ * times grid size no matter how many logs are added. Samples past the end
+ * of the video are skipped and counted. Each sample adds one to every cell
+ * whose center lies within half the FOV of the view center.
+ *
+ * Grids are row-major with row 0 at the top of the equirect frame, in the
+ * same texture space as {@link EquirectReprojector}.
+ */
+public class HeatmapAggregator implements ViewportSampleBuffer.Consumer {
+    private final int gridWidth;
+    private final int gridHeight;
+    private final int durationMs;
+
+    // Unit direction of every cell center, x/y/z interleaved.
+    private final float[] cellDirections;
+
+    // One per started second of the video, allocated on the first sample.
+    private final int[][] heatmaps;
+    private final float[] uv = new float[2];
+    private long sampleCount;
+    private long outOfRangeCount;
+
+    /**
+     * @param durationMs length of the video the logs were recorded on
+     */
+    public HeatmapAggregator(int gridWidth, int gridHeight, int durationMs) {
+        if (gridWidth <= 0 || gridHeight <= 0) {
+            throw new IllegalArgumentException(
+                    "Invalid grid size " + gridWidth + "x" + gridHeight);
+        }
+        if (durationMs <= 0) {
+            throw new IllegalArgumentException("Invalid duration " + durationMs);
+        }
+
+        this.gridWidth = gridWidth;
+        this.gridHeight = gridHeight;
+        this.durationMs = durationMs;
+        heatmaps = new int[(int) ((durationMs + 999L) / 1000)][];
+
+        cellDirections = new float[gridWidth * gridHeight * 3];
+        for (int row = 0; row < gridHeight; row++) {
+            double polar = Math.PI * (row + 0.5) / gridHeight;
+            for (int col = 0; col < gridWidth; col++) {
+                double azimuth = 2 * Math.PI * (col + 0.5) / gridWidth;
+                int i = (row * gridWidth + col) * 3;
+                cellDirections[i] = (float) (Math.sin(polar) * Math.cos(azimuth));
+                cellDirections[i + 1] = (float) (Math.sin(polar) * Math.sin(azimuth));
+                cellDirections[i + 2] = (float) Math.cos(polar);
+            }
+        }
+    }
+
+    public int getGridWidth() {
+        return gridWidth;
+    }
+
+    public int getGridHeight() {
+        return gridHeight;
+    }
+
+    public long getSampleCount() {
+        return sampleCount;
+    }
+
+    /**
+     * Samples skipped because their position was negative or past the end
+     * of the video.
+     */
+    public long getOutOfRangeCount() {
+        return outOfRangeCount;
+    }
+
+    /**
+     * Number of started seconds in the video.
+     */
+    public int getSecondCount() {
+        return heatmaps.length;
+    }
+
+    /**
+     * @return the grid for the given second, or null if nobody watched it
+     */
+    public int[] getHeatmap(int second) {
+        return second >= 0 && second < heatmaps.length ? heatmaps[second] : null;
+    }
+
+    /**
+     * Streams one log into the heatmaps. Does not close {@code in}.
+     */
+    public long addLog(InputStream in) throws IOException {
+        return ViewportLog.read(in, this);
+    }
+
+    @Override
+    public void onSample(int positionMs, float lon, float lat, float fov) {
+        if (positionMs < 0 || positionMs > durationMs) {
+            outOfRangeCount++;
+            return;
+        }
+        // The last frame can report the duration itself.
+        int second = Math.min(positionMs / 1000, heatmaps.length - 1);
+
+        int[] heatmap = heatmaps[second];
+        if (heatmap == null) {
+            heatmap = new int[gridWidth * gridHeight];
+            heatmaps[second] = heatmap;
+        }
+
+        EquirectReprojector.viewCenterToTexture(lon, lat, uv);
+        double azimuth = 2 * Math.PI * uv[0];
+        double polar = Math.PI * uv[1];
+        float cx = (float) (Math.sin(polar) * Math.cos(azimuth));
+        float cy = (float) (Math.sin(polar) * Math.sin(azimuth));
+        float cz = (float) Math.cos(polar);
+
+        double radius = Math.toRadians(fov) / 2;
+        float minDot = (float) Math.cos(radius);
+
+        // Only rows whose polar band can intersect the view cone.
+        int firstRow = Math.max(0, (int) Math.floor((polar - radius) / Math.PI * gridHeight));
+        int lastRow = Math.min(gridHeight - 1, (int) Math.ceil((polar + radius) / Math.PI * gridHeight));
+
+        for (int row = firstRow; row <= lastRow; row++) {
+            int i = row * gridWidth * 3;
+            int cell = row * gridWidth;
+            for (int col = 0; col < gridWidth; col++, i += 3, cell++) {
+                float dot = cx * cellDirections[i]
+                        + cy * cellDirections[i + 1]
+                        + cz * cellDirections[i + 2];
+                if (dot >= minDot) {
+                    heatmap[cell]++;
+                }
+            }
+        }
+        sampleCount++;
+    }
+}
@@ -0,0 +1,306 @@
+/**
+ * Copyright 2016-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * Licensed under the Creative Commons CC BY-NC 4.0 Attribution-NonCommercial
+ * License (the "License"). You may obtain a copy of the License at
+ * https://creativecommons.org/licenses/by-nc/4.0/.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.oculus.sample.telemetry;
+
+import com.oculus.sample.renderloop.RenderLoop;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Watches the render thread for frames that finish later than one refresh
+ * period after their vsync, and records what was responsible: the longest
+ * message handled since the previous frame, which delays the frame from
+ * starting, and the slowest stage of the frame itself.
+ *
+ * The render thread reports messages, frames and stages as they happen;
+ * names must be constants so nothing is allocated unless a frame is late.
+ * The most recent records are kept in a ring that can be read from any
+ * thread.
+ */
+public class JankWatchdog {
+    private static final int MAX_STAGES = 16;
+
+    public static class JankRecord {
+        /** Vsync time of the late frame. */
+        public final long vsyncNanos;
+        /** From vsync to the end of the frame. */
+        public final long frameNanos;
+        /** From vsync to the frame starting on the render thread. */
+        public final long startDelayNanos;
+        /** Longest message handled since the previous frame, or null. */
+        public final String message;
+        public final long messageNanos;
+        /** Stage of the frame that took longest, or null. */
+        public final String stage;
+        public final long stageNanos;
+
+        JankRecord(
+                long vsyncNanos,
+                long frameNanos,
+                long startDelayNanos,
+                String message,
+                long messageNanos,
+                String stage,
+                long stageNanos) {
+            this.vsyncNanos = vsyncNanos;
+            this.frameNanos = frameNanos;
+            this.startDelayNanos = startDelayNanos;
+            this.message = message;
+            this.messageNanos = messageNanos;
+            this.stage = stage;
+            this.stageNanos = stageNanos;
+        }
+
+        /**
+         * The message if the frame was mostly late to start, else the stage.
+         */
+        public String getCause() {
+            if (message != null && messageNanos >= stageNanos) {
+                return "message:" + message;
+            }
+            return stage != null ? "stage:" + stage : "unknown";
+        }
+
+        String toJson() {
+            return String.format(Locale.US,
+                    "{\"vsync_ns\":%d,\"frame_ms\":%.3f,\"start_delay_ms\":%.3f,"
+                            + "\"message\":%s,\"message_ms\":%.3f,"
+                            + "\"stage\":%s,\"stage_ms\":%.3f,\"cause\":\"%s\"}",
+                    vsyncNanos,
+                    frameNanos / 1e6,
+                    startDelayNanos / 1e6,
+                    quote(message),
+                    messageNanos / 1e6,
+                    quote(stage),
+                    stageNanos / 1e6,
+                    getCause());
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US,
+                    "frame %.2fms (start delay %.2fms) caused by %s; message %s %.2fms, stage %s %.2fms",
+                    frameNanos / 1e6,
+                    startDelayNanos / 1e6,
+                    getCause(),
+                    message,
+                    messageNanos / 1e6,
+                    stage,
+                    stageNanos / 1e6);
+        }
+
+        private static String quote(String s) {
+            return s == null ? "null" : "\"" + s + "\"";
+        }
+    }
+
+    private final RenderLoop.Clock clock;
+    private final long budgetNanos;
+    private final JankRecord[] records;
+    private int firstRecord;
+    private int recordCount;
+    private int frameCount;
+    private int jankCount;
+
+    // Render thread only.
+    private String currentMessage;
+    private long messageStartNanos;
+    private String longestMessage;
+    private long longestMessageNanos;
+
+    private long vsyncNanos = -1;
+    private long frameStartNanos;
+    private final String[] stageNames = new String[MAX_STAGES];
+    private final long[] stageTotalNanos = new long[MAX_STAGES];
+    private int stageCount;
+    private int currentStage = -1;
+    private long stageStartNanos;
+
+    /**
+     * @param budgetNanos a frame is late when it ends more than this after its vsync
+     * @param capacity number of late frames kept
+     */
+    public JankWatchdog(long budgetNanos, int capacity, RenderLoop.Clock clock) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Invalid capacity " + capacity);
+        }
+
+        this.budgetNanos = budgetNanos;
+        this.clock = clock;
+        records = new JankRecord[capacity];
+    }
+
+    public long getBudgetNanos() {
+        return budgetNanos;
+    }
+
+    public void onMessageStart(String message) {
+        currentMessage = message;
+        messageStartNanos = clock.nanoTime();
+    }
+
+    public void onMessageEnd() {
+        if (currentMessage == null) {
+            return;
+        }
+
+        long durationNanos = clock.nanoTime() - messageStartNanos;
+        if (durationNanos > longestMessageNanos) {
+            longestMessage = currentMessage;
+            longestMessageNanos = durationNanos;
+        }
+        currentMessage = null;
+    }
+
+    /**
+     * @param vsyncNanos the vsync this frame was scheduled for, on the watchdog's clock
+     */
+    public void onFrameStart(long vsyncNanos) {
+        this.vsyncNanos = vsyncNanos;
+        frameStartNanos = clock.nanoTime();
+        for (int i = 0; i < stageCount; i++) {
+            stageTotalNanos[i] = 0;
+        }
+        currentStage = -1;
+    }
+
+    /**
+     * Ends the current stage, if any, and starts timing {@code stage}. Time
+     * spent in a stage is summed over all views drawn in the frame.
+     */
+    public void enterStage(String stage) {
+        if (vsyncNanos < 0) {
+            return;
+        }
+
+        long nowNanos = clock.nanoTime();
+        endStage(nowNanos);
+        currentStage = indexOfStage(stage);
+        stageStartNanos = nowNanos;
+    }
+
+    public void onFrameEnd() {
+        if (vsyncNanos < 0) {
+            return;
+        }
+
+        long endNanos = clock.nanoTime();
+        endStage(endNanos);
+
+        long frameNanos = endNanos - vsyncNanos;
+        if (frameNanos > budgetNanos) {
+            int slowest = -1;
+            for (int i = 0; i < stageCount; i++) {
+                if (slowest < 0 || stageTotalNanos[i] > stageTotalNanos[slowest]) {
+                    slowest = i;
+                }
+            }
+            addRecord(new JankRecord(
+                    vsyncNanos,
+                    frameNanos,
+                    frameStartNanos - vsyncNanos,
+                    longestMessage,
+                    longestMessageNanos,
+                    slowest < 0 ? null : stageNames[slowest],
+                    slowest < 0 ? 0 : stageTotalNanos[slowest]));
+        } else {
+            countFrame();
+        }
+
+        vsyncNanos = -1;
+        longestMessage = null;
+        longestMessageNanos = 0;
+    }
+
+    public synchronized int getFrameCount() {
+        return frameCount;
+    }
+
+    public synchronized int getJankCount() {
+        return jankCount;
+    }
+
+    /**
+     * Most recent late frames, oldest first.
+     */
+    public synchronized List<JankRecord> getRecords() {
+        List<JankRecord> result = new ArrayList<>(recordCount);
+        for (int i = 0; i < recordCount; i++) {
+            result.add(records[(firstRecord + i) % records.length]);
+        }
+        return result;
+    }
+
+    public synchronized String toJson() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format(Locale.US,
+                "{\"budget_ms\":%.3f,\"frames\":%d,\"janky_frames\":%d,\"records\":[",
+                budgetNanos / 1e6, frameCount, jankCount));
+        for (int i = 0; i < recordCount; i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append(records[(firstRecord + i) % records.length].toJson());
+        }
+        return sb.append("]}").toString();
+    }
+
+    public synchronized void clear() {
+        firstRecord = 0;
+        recordCount = 0;
+        frameCount = 0;
+        jankCount = 0;
+    }
+
+    private synchronized void countFrame() {
+        frameCount++;
+    }
+
+    private synchronized void addRecord(JankRecord record) {
+        frameCount++;
+        jankCount++;
+        if (recordCount < records.length) {
+            records[(firstRecord + recordCount) % records.length] = record;
+            recordCount++;
+        } else {
+            records[firstRecord] = record;
+            firstRecord = (firstRecord + 1) % records.length;
+        }
+    }
+
+    private void endStage(long nowNanos) {
+        if (currentStage >= 0) {
+            stageTotalNanos[currentStage] += nowNanos - stageStartNanos;
+            currentStage = -1;
+        }
+    }
+
+    private int indexOfStage(String stage) {
+        for (int i = 0; i < stageCount; i++) {
+            if (stageNames[i].equals(stage)) {
+                return i;
+            }
+        }
+        if (stageCount == MAX_STAGES) {
+            throw new IllegalStateException("Too many stages");
+        }
+        stageNames[stageCount] = stage;
+        stageTotalNanos[stageCount] = 0;
+        return stageCount++;
+    }
+}
@@ -0,0 +1,92 @@
+/**
+ * Copyright 2016-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * Licensed under the Creative Commons CC BY-NC 4.0 Attribution-NonCommercial
+ * License (the "License"). You may obtain a copy of the License at
+ * https://creativecommons.org/licenses/by-nc/4.0/.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.oculus.sample.telemetry;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Durations of a recurring operation, such as a seek, kept for the last
+ * {@code capacity} occurrences. Recorded and read on any thread.
+ */
+public class LatencyStats {
+    private static final double NANOS_PER_MS = 1e6;
+    private static final int[] REPORTED_PERCENTILES = {50, 90, 95, 99};
+
+    private final long[] samples;
+    private int next;
+    private int count;
+    private long total;
+
+    public LatencyStats(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Invalid capacity " + capacity);
+        }
+        samples = new long[capacity];
+    }
+
+    public synchronized void record(long nanos) {
+        samples[next] = nanos;
+        next = (next + 1) % samples.length;
+        count = Math.min(count + 1, samples.length);
+        total++;
+    }
+
+    /**
+     * Number of operations recorded, including those no longer kept.
+     */
+    public synchronized long getCount() {
+        return total;
+    }
+
+    /**
+     * Latency at the given percentile of the kept samples, in milliseconds.
+     */
+    public synchronized double getPercentileMs(double percentile) {
+        if (count == 0) {
+            return 0;
+        }
+
+        long[] sorted = Arrays.copyOf(samples, count);
+        Arrays.sort(sorted);
+        int index = (int) Math.ceil(percentile / 100 * count) - 1;
+        return sorted[Math.max(0, Math.min(count - 1, index))] / NANOS_PER_MS;
+    }
+
+    public synchronized void clear() {
+        next = 0;
+        count = 0;
+        total = 0;
+    }
+
+    /**
+     * JSON object with the count and latency percentiles in milliseconds.
+     */
+    public synchronized String toJson() {
+        StringBuilder json = new StringBuilder();
+        json.append("{\"count\":").append(total);
+        for (int percentile : REPORTED_PERCENTILES) {
+            json.append(",\"p").append(percentile).append("Ms\":")
+                    .append(format(getPercentileMs(percentile)));
+        }
+        json.append(",\"maxMs\":").append(format(getPercentileMs(100))).append('}');
+        return json.toString();
+    }
+
+    private static String format(double value) {
+        return String.format(Locale.US, "%.3f", value);
+    }
+}
@@ -0,0 +1,152 @@
+/**
+ * Copyright 2016-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * Licensed under the Creative Commons CC BY-NC 4.0 Attribution-NonCommercial
+ * License (the "License"). You may obtain a copy of the License at
+ * https://creativecommons.org/licenses/by-nc/4.0/.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.oculus.sample.telemetry;
+
+import java.util.Arrays;
+
+/**
+ * Glass-to-glass latency of a live stream, split into the stages a picture
+ * passes through, for the last {@code capacity} pictures shown:
+ *
+ *     network   capture at the sender to the first packet received
+ *     assembly  first to last packet, including jitter buffer waits
+ *     queue     picture complete to queued to the decoder
+ *     decode    queued to the decoded frame released to the display surface
+ *     display   released to swapped on screen, including the vsync wait
+ *     total     capture to swapped, or first packet to swapped when the
+ *               capture time is unknown
+ *
+ * Capture times are only known when the sender stamps pictures with this
+ * device's clock, as the loopback sender does; for a remote camera network
+ * is left empty and total starts at the first packet. Scanout after the
+ * swap and the camera's own sensor-to-packet time are not included.
+ *
+ * Pictures are tracked by a key, their decoder presentation time, from
+ * {@link #onAccessUnit} to {@link #onPresented}; stages are only recorded
+ * for pictures that make it to the screen. Written on the decoder and
+ * render threads and read on any other, so every method is synchronized.
+ */
+public class LiveLatencyStats {
+    public static final int NETWORK = 0;
+    public static final int ASSEMBLY = 1;
+    public static final int QUEUE = 2;
+    public static final int DECODE = 3;
+    public static final int DISPLAY = 4;
+    public static final int TOTAL = 5;
+
+    private static final String[] STAGE_NAMES = {
+            "network", "assembly", "queue", "decode", "display", "total"};
+    // Pictures in flight between the receiver and the screen.
+    private static final int TRACKED_PICTURES = 32;
+
+    private final LatencyStats[] stages = new LatencyStats[STAGE_NAMES.length];
+
+    private final long[] keys = new long[TRACKED_PICTURES];
+    private final long[] captureNanos = new long[TRACKED_PICTURES];
+    private final long[] firstPacketNanos = new long[TRACKED_PICTURES];
+    private final long[] completeNanos = new long[TRACKED_PICTURES];
+    private final long[] queuedNanos = new long[TRACKED_PICTURES];
+    private final long[] releasedNanos = new long[TRACKED_PICTURES];
+    private int next;
+
+    public LiveLatencyStats(int capacity) {
+        for (int i = 0; i < stages.length; i++) {
+            stages[i] = new LatencyStats(capacity);
+        }
+        Arrays.fill(keys, -1);
+    }
+
+    /**
+     * @param captureNanos capture time on this device's clock, or -1
+     */
+    public synchronized void onAccessUnit(
+            long key, long captureNanos, long firstPacketNanos, long completeNanos) {
+        int slot = next;
+        next = (next + 1) % TRACKED_PICTURES;
+        keys[slot] = key;
+        this.captureNanos[slot] = captureNanos;
+        this.firstPacketNanos[slot] = firstPacketNanos;
+        this.completeNanos[slot] = completeNanos;
+        queuedNanos[slot] = -1;
+        releasedNanos[slot] = -1;
+    }
+
+    public synchronized void onQueued(long key, long nanos) {
+        int slot = find(key);
+        if (slot >= 0) {
+            queuedNanos[slot] = nanos;
+        }
+    }
+
+    public synchronized void onReleased(long key, long nanos) {
+        int slot = find(key);
+        if (slot >= 0) {
+            releasedNanos[slot] = nanos;
+        }
+    }
+
+    public synchronized void onPresented(long key, long nanos) {
+        int slot = find(key);
+        if (slot < 0 || queuedNanos[slot] < 0 || releasedNanos[slot] < 0) {
+            return;
+        }
+
+        long capture = captureNanos[slot];
+        if (capture >= 0) {
+            stages[NETWORK].record(firstPacketNanos[slot] - capture);
+        }
+        stages[ASSEMBLY].record(completeNanos[slot] - firstPacketNanos[slot]);
+        stages[QUEUE].record(queuedNanos[slot] - completeNanos[slot]);
+        stages[DECODE].record(releasedNanos[slot] - queuedNanos[slot]);
+        stages[DISPLAY].record(nanos - releasedNanos[slot]);
+        stages[TOTAL].record(nanos - (capture >= 0 ? capture : firstPacketNanos[slot]));
+        keys[slot] = -1;
+    }
+
+    public LatencyStats getStage(int stage) {
+        return stages[stage];
+    }
+
+    public synchronized void clear() {
+        for (LatencyStats stage : stages) {
+            stage.clear();
+        }
+        Arrays.fill(keys, -1);
+    }
+
+    /**
+     * JSON object with the latency percentiles of every stage.
+     */
+    public synchronized String toJson() {
+        StringBuilder json = new StringBuilder("{");
+        for (int i = 0; i < stages.length; i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append('"').append(STAGE_NAMES[i]).append("\":").append(stages[i].toJson());
+        }
+        return json.append('}').toString();
+    }
+
+    private int find(long key) {
+        for (int i = 0; i < TRACKED_PICTURES; i++) {
+            if (keys[i] == key) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
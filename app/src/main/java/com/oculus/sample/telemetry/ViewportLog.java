@@ -0,0 +1,95 @@
+/**
+ * Copyright 2016-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * Licensed under the Creative Commons CC BY-NC 4.0 Attribution-NonCommercial
+ * License (the "License"). You may obtain a copy of the License at
+ * https://creativecommons.org/licenses/by-nc/4.0/.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.oculus.sample.telemetry;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Binary viewport log format: an 8 byte header (magic, version) followed by
+ * 10 byte records of video position (int, ms) and lon, lat and FOV as
+ * shorts in hundredths of a degree. Lon is wrapped to [-180, 180).
+ */
+public final class ViewportLog {
+    static final int MAGIC = 0x56504c47; // "VPLG"
+    static final int VERSION = 1;
+    static final int RECORD_SIZE = 10;
+
+    private static final float SCALE = 100.f;
+
+    private ViewportLog() {
+    }
+
+    static void writeHeader(DataOutputStream out) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+    }
+
+    static void writeRecord(DataOutputStream out, int positionMs, float lon, float lat, float fov)
+            throws IOException {
+        out.writeInt(positionMs);
+        out.writeShort(Math.round(wrapLongitude(lon) * SCALE));
+        out.writeShort(Math.round(Math.max(-90.f, Math.min(90.f, lat)) * SCALE));
+        out.writeShort(Math.round(Math.max(0.f, Math.min(180.f, fov)) * SCALE));
+    }
+
+    static float wrapLongitude(float lon) {
+        float wrapped = (lon + 180.f) % 360.f;
+        if (wrapped < 0) {
+            wrapped += 360.f;
+        }
+        return wrapped - 180.f;
+    }
+
+    /**
+     * Streams every record of a log to {@code consumer} without loading the
+     * whole log into memory. Does not close {@code in}.
+     *
+     * @return number of records read
+     */
+    public static long read(InputStream in, ViewportSampleBuffer.Consumer consumer)
+            throws IOException {
+        DataInputStream data = new DataInputStream(
+                in instanceof BufferedInputStream ? in : new BufferedInputStream(in));
+
+        if (data.readInt() != MAGIC) {
+            throw new IOException("Not a viewport log");
+        }
+        int version = data.readInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported viewport log version " + version);
+        }
+
+        long count = 0;
+        while (true) {
+            int positionMs;
+            try {
+                positionMs = data.readInt();
+            } catch (EOFException e) {
+                return count;
+            }
+            float lon = data.readShort() / SCALE;
+            float lat = data.readShort() / SCALE;
+            float fov = data.readShort() / SCALE;
+            consumer.onSample(positionMs, lon, lat, fov);
+            count++;
+        }
+    }
+}
@@ -0,0 +1,125 @@
+/**
+ * Copyright 2016-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * Licensed under the Creative Commons CC BY-NC 4.0 Attribution-NonCommercial
+ * License (the "License"). You may obtain a copy of the License at
+ * https://creativecommons.org/licenses/by-nc/4.0/.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.oculus.sample.telemetry;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Records where the viewer looks on every drawn frame.
+ *
+ * {@link #record} is called on the render thread and only writes into a
+ * preallocated lock-free ring; a low priority flusher thread drains the ring
+ * into a {@link ViewportLog} stream a few times per second.
+ */
+public class ViewportRecorder {
+    private static final String THREAD_NAME = "360ViewportRecorder";
+
+    // About 30 seconds of samples at 60fps before anything is dropped.
+    private static final int DEFAULT_CAPACITY = 2048;
+    private static final long FLUSH_INTERVAL_MS = 250;
+
+    private final ViewportSampleBuffer buffer;
+    private final DataOutputStream out;
+    private final Thread flusher;
+
+    private volatile boolean closed;
+    private IOException writeError;
+
+    private final ViewportSampleBuffer.Consumer writer = new ViewportSampleBuffer.Consumer() {
+        @Override
+        public void onSample(int positionMs, float lon, float lat, float fov) {
+            if (writeError != null) {
+                return;
+            }
+            try {
+                ViewportLog.writeRecord(out, positionMs, lon, lat, fov);
+            } catch (IOException e) {
+                writeError = e;
+            }
+        }
+    };
+
+    public ViewportRecorder(File logFile) throws IOException {
+        this(new FileOutputStream(logFile), DEFAULT_CAPACITY);
+    }
+
+    public ViewportRecorder(OutputStream stream, int capacity) throws IOException {
+        buffer = new ViewportSampleBuffer(capacity);
+        out = new DataOutputStream(new BufferedOutputStream(stream));
+        ViewportLog.writeHeader(out);
+
+        flusher = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                flushLoop();
+            }
+        }, THREAD_NAME);
+        flusher.setPriority(Thread.MIN_PRIORITY);
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    /**
+     * Render thread only. Never blocks or allocates.
+     */
+    public void record(int positionMs, float lon, float lat, float fov) {
+        buffer.offer(positionMs, lon, lat, fov);
+    }
+
+    public long getDroppedCount() {
+        return buffer.getDroppedCount();
+    }
+
+    /**
+     * Stops the flusher after writing every sample recorded so far.
+     */
+    public void close() throws IOException {
+        closed = true;
+        flusher.interrupt();
+        try {
+            flusher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        buffer.drain(writer);
+        out.close();
+        if (writeError != null) {
+            throw writeError;
+        }
+    }
+
+    private void flushLoop() {
+        while (!closed) {
+            buffer.drain(writer);
+            try {
+                out.flush();
+            } catch (IOException e) {
+                writeError = e;
+            }
+            try {
+                Thread.sleep(FLUSH_INTERVAL_MS);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+}
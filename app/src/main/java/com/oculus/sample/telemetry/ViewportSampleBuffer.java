@@ -0,0 +1,105 @@
+/**
+ * Copyright 2016-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * Licensed under the Creative Commons CC BY-NC 4.0 Attribution-NonCommercial
+ * License (the "License"). You may obtain a copy of the License at
+ * https://creativecommons.org/licenses/by-nc/4.0/.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.oculus.sample.telemetry;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Single-producer, single-consumer ring of viewport samples.
+ *
+ * Samples live in preallocated parallel arrays, so recording on the render
+ * thread neither allocates nor locks. When the consumer falls behind, new
+ * samples are dropped and counted instead of overwriting unread ones.
+ */
+public class ViewportSampleBuffer {
+    public interface Consumer {
+        void onSample(int positionMs, float lon, float lat, float fov);
+    }
+
+    private final int mask;
+    private final int[] positions;
+    private final float[] lons;
+    private final float[] lats;
+    private final float[] fovs;
+
+    // Next slot to write, only advanced by the producer.
+    private final AtomicLong tail = new AtomicLong();
+    // Next slot to read, only advanced by the consumer.
+    private final AtomicLong head = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+
+    /**
+     * @param capacity rounded up to a power of two
+     */
+    public ViewportSampleBuffer(int capacity) {
+        if (capacity <= 0 || capacity > (1 << 30)) {
+            throw new IllegalArgumentException("Invalid capacity " + capacity);
+        }
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) {
+            size <<= 1;
+        }
+
+        mask = size - 1;
+        positions = new int[size];
+        lons = new float[size];
+        lats = new float[size];
+        fovs = new float[size];
+    }
+
+    public int capacity() {
+        return mask + 1;
+    }
+
+    /**
+     * Producer side. Returns false if the buffer is full.
+     */
+    public boolean offer(int positionMs, float lon, float lat, float fov) {
+        long t = tail.get();
+        if (t - head.get() > mask) {
+            dropped.incrementAndGet();
+            return false;
+        }
+
+        int i = (int) t & mask;
+        positions[i] = positionMs;
+        lons[i] = lon;
+        lats[i] = lat;
+        fovs[i] = fov;
+        // Publishes the slot writes above to the consumer.
+        tail.lazySet(t + 1);
+        return true;
+    }
+
+    /**
+     * Consumer side. Hands every published sample to {@code consumer} and
+     * returns how many there were.
+     */
+    public int drain(Consumer consumer) {
+        long h = head.get();
+        long t = tail.get();
+        for (long s = h; s < t; s++) {
+            int i = (int) s & mask;
+            consumer.onSample(positions[i], lons[i], lats[i], fovs[i]);
+        }
+        head.lazySet(t);
+        return (int) (t - h);
+    }
+
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+}
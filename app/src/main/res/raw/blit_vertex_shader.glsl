@@ -0,0 +1,9 @@
+attribute vec4 aPosition;
+attribute vec2 aTextureCoord;
+uniform vec2 uTextureScale;
+varying vec2 vTextureCoord;
+
+void main() {
+    gl_Position = aPosition;
+    vTextureCoord = aTextureCoord * uTextureScale;
+}
@@ -0,0 +1,55 @@
+#extension GL_OES_EGL_image_external : require
+
+// Angles near the edge of a 190 degree lens need more than mediump.
+#ifdef GL_FRAGMENT_PRECISION_HIGH
+precision highp float;
+#else
+precision mediump float;
+#endif
+
+varying vec3 vDirection;
+uniform samplerExternalOES sTexture;
+uniform mat4 uTextureMatrix;
+
+// Per lens, see DualFisheyeProjection: right, up and forward as columns;
+// image circle center and radius; max theta, k1, k2 and edge radius.
+uniform mat3 uLensBasis[2];
+uniform vec4 uLensImage[2];
+uniform vec4 uLensModel[2];
+uniform float uBlendRadians;
+
+vec2 project(vec3 direction, mat3 basis, vec4 image, vec4 model, out float margin) {
+    vec3 local = direction * basis;
+    float planar = length(local.xy);
+    float theta = atan(planar, local.z);
+    float theta2 = theta * theta;
+    float rho = theta * (1.0 + theta2 * (model.y + theta2 * model.z)) / model.w;
+    margin = model.x - theta;
+
+    vec2 offset = planar > 0.0 ? local.xy / planar : vec2(0.0);
+    return image.xy + rho * image.zw * vec2(offset.x, -offset.y);
+}
+
+vec4 sampleFrame(vec2 frameCoord) {
+    // Frame coordinates have v = 0 at the top row, texture coordinates at the bottom.
+    return texture2D(sTexture, (uTextureMatrix * vec4(frameCoord.x, 1.0 - frameCoord.y, 0, 1)).xy);
+}
+
+void main() {
+    vec3 direction = normalize(vDirection);
+
+    float frontMargin;
+    float backMargin;
+    vec2 front = project(direction, uLensBasis[0], uLensImage[0], uLensModel[0], frontMargin);
+    vec2 back = project(direction, uLensBasis[1], uLensImage[1], uLensModel[1], backMargin);
+
+    float frontWeight = clamp(frontMargin / uBlendRadians, 0.0, 1.0);
+    float backWeight = clamp(backMargin / uBlendRadians, 0.0, 1.0);
+    float total = frontWeight + backWeight;
+    if (total <= 0.0) {
+        gl_FragColor = vec4(0.0, 0.0, 0.0, 1.0);
+        return;
+    }
+
+    gl_FragColor = (sampleFrame(front) * frontWeight + sampleFrame(back) * backWeight) / total;
+}
@@ -0,0 +1,9 @@
+uniform mat4 uMVPMatrix;
+attribute vec4 aPosition;
+varying vec3 vDirection;
+
+void main() {
+    gl_Position = uMVPMatrix * aPosition * vec4(1, -1, 1, 1);
+    // The sphere is centered at the origin, so a vertex is its own direction.
+    vDirection = aPosition.xyz;
+}
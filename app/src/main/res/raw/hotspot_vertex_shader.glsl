@@ -0,0 +1,13 @@
+uniform mat4 uViewMatrix;
+uniform mat4 uProjectionMatrix;
+attribute vec3 aCenter;
+attribute vec2 aCorner;
+attribute vec2 aTextureCoord;
+varying vec2 vTextureCoord;
+
+void main() {
+    // Offset in view space so the billboard always faces the camera.
+    vec4 center = uViewMatrix * vec4(aCenter, 1.0);
+    gl_Position = uProjectionMatrix * vec4(center.xy + aCorner, center.zw);
+    vTextureCoord = aTextureCoord;
+}
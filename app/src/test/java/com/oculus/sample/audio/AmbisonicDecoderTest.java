@@ -0,0 +1,173 @@
+/**
+ * Copyright 2016-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * Licensed under the Creative Commons CC BY-NC 4.0 Attribution-NonCommercial
+ * License (the "License"). You may obtain a copy of the License at
+ * https://creativecommons.org/licenses/by-nc/4.0/.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.oculus.sample.audio;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+public class AmbisonicDecoderTest {
+    private static final float LEVEL = 10000.f;
+    private static final int FRAMES = 256;
+    // Rounding of 16-bit output.
+    private static final float TOLERANCE = 2.f;
+
+    /**
+     * Left and right level of a steady source, rendered for a listener that
+     * has been still.
+     */
+    private static float[] render(float azimuth, float elevation, float yaw, float pitch) {
+        AmbisonicDecoder decoder = new AmbisonicDecoder();
+        decoder.reset(yaw, pitch);
+        short[] output = new short[AmbisonicDecoder.OUTPUT_CHANNELS];
+        decoder.process(encode(azimuth, elevation, 1), 0, output, 0, 1);
+        return new float[] {output[0], output[1]};
+    }
+
+    /**
+     * A steady source at (azimuth, elevation) in degrees, panned into AmbiX.
+     */
+    private static short[] encode(float azimuth, float elevation, int frames) {
+        double a = Math.toRadians(azimuth);
+        double e = Math.toRadians(elevation);
+        short[] frame = new short[AmbisonicDecoder.INPUT_CHANNELS];
+        frame[AmbisonicDecoder.W] = (short) Math.round(LEVEL);
+        frame[AmbisonicDecoder.Y] = (short) Math.round(LEVEL * Math.sin(a) * Math.cos(e));
+        frame[AmbisonicDecoder.Z] = (short) Math.round(LEVEL * Math.sin(e));
+        frame[AmbisonicDecoder.X] = (short) Math.round(LEVEL * Math.cos(a) * Math.cos(e));
+
+        short[] samples = new short[frames * AmbisonicDecoder.INPUT_CHANNELS];
+        for (int i = 0; i < samples.length; i++) {
+            samples[i] = frame[i % AmbisonicDecoder.INPUT_CHANNELS];
+        }
+        return samples;
+    }
+
+    @Test
+    public void sourceAheadIsCenteredAndLoudest() {
+        float[] facing = render(30.f, 20.f, 30.f, 20.f);
+        assertEquals(facing[0], facing[1], TOLERANCE);
+
+        for (int yaw = 0; yaw < 360; yaw += 15) {
+            float[] stereo = render(30.f, 20.f, yaw, 0.f);
+            assertTrue("yaw " + yaw, stereo[0] + stereo[1] <= facing[0] + facing[1] + TOLERANCE);
+        }
+    }
+
+    @Test
+    public void sourceToTheSideIsHeardOnThatSide() {
+        // Source at azimuth 0, listener turned right: it is on the left.
+        float[] left = render(0.f, 0.f, -90.f, 0.f);
+        assertTrue(left[0] > 2 * left[1]);
+        float[] right = render(0.f, 0.f, 90.f, 0.f);
+        assertTrue(right[1] > 2 * right[0]);
+
+        // Mirror images.
+        assertEquals(left[0], right[1], TOLERANCE);
+        assertEquals(left[1], right[0], TOLERANCE);
+    }
+
+    @Test
+    public void turningSourceAndListenerTogetherChangesNothing() {
+        Random random = new Random(360);
+        for (int i = 0; i < 1000; i++) {
+            float azimuth = random.nextFloat() * 360.f;
+            float elevation = random.nextFloat() * 160.f - 80.f;
+            float yaw = random.nextFloat() * 360.f;
+            float pitch = random.nextFloat() * 160.f - 80.f;
+            float turn = random.nextFloat() * 720.f - 360.f;
+
+            float[] a = render(azimuth, elevation, yaw, pitch);
+            float[] b = render(azimuth + turn, elevation, yaw + turn, pitch);
+            assertEquals("turn " + turn, a[0], b[0], TOLERANCE);
+            assertEquals("turn " + turn, a[1], b[1], TOLERANCE);
+        }
+    }
+
+    @Test
+    public void lookingUpBringsSourceOverheadInFront() {
+        float[] level = render(0.f, 80.f, 0.f, 0.f);
+        float[] up = render(0.f, 80.f, 0.f, 80.f);
+        float[] down = render(0.f, 80.f, 0.f, -80.f);
+
+        assertTrue(up[0] + up[1] > level[0] + level[1] + TOLERANCE);
+        assertTrue(down[0] + down[1] < level[0] + level[1] - TOLERANCE);
+    }
+
+    @Test
+    public void turnIsRampedOverBlockInEqualSteps() {
+        AmbisonicDecoder decoder = new AmbisonicDecoder();
+        short[] input = encode(0.f, 0.f, FRAMES);
+        short[] output = new short[FRAMES * AmbisonicDecoder.OUTPUT_CHANNELS];
+
+        decoder.reset(-90.f, 0.f);
+        decoder.process(input, 0, output, 0, 1);
+        short before = output[0];
+        decoder.reset(90.f, 0.f);
+        decoder.process(input, 0, output, 0, 1);
+        short after = output[0];
+
+        decoder.reset(-90.f, 0.f);
+        decoder.setOrientation(90.f, 0.f);
+        decoder.process(input, 0, output, 0, FRAMES);
+        assertEquals(before, output[0], TOLERANCE);
+        float maxStep = Math.abs(after - before) / (float) FRAMES + TOLERANCE;
+        for (int i = 1; i < FRAMES; i++) {
+            int step = Math.abs(output[2 * i] - output[2 * (i - 1)]);
+            assertTrue("step " + step + " at frame " + i, step <= maxStep);
+        }
+
+        // The next block starts at the new gains.
+        decoder.process(input, 0, output, 0, 1);
+        assertEquals(after, output[0], TOLERANCE);
+    }
+
+    @Test
+    public void turningHeadAllocatesNothing() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        assumeTrue(threads instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean allocations = (com.sun.management.ThreadMXBean) threads;
+        long threadId = Thread.currentThread().getId();
+
+        AmbisonicDecoder decoder = new AmbisonicDecoder();
+        ListenerOrientation orientation = new ListenerOrientation();
+        short[] input = encode(45.f, 10.f, FRAMES);
+        short[] output = new short[FRAMES * AmbisonicDecoder.OUTPUT_CHANNELS];
+
+        // The first rounds can include one-off allocations of the JVM, such
+        // as compiling the loop; a steady state round allocates nothing.
+        long allocated = Long.MAX_VALUE;
+        for (int round = 0; round < 3; round++) {
+            long before = allocations.getThreadAllocatedBytes(threadId);
+            // The audio thread's per block work, with the head turning every block.
+            for (int i = 0; i < 100000; i++) {
+                orientation.setFromCamera(i * 0.25f, 15.f);
+                long current = orientation.get();
+                decoder.setOrientation(
+                        ListenerOrientation.yaw(current), ListenerOrientation.pitch(current));
+                decoder.process(input, 0, output, 0, FRAMES);
+            }
+            allocated = Math.min(allocated, allocations.getThreadAllocatedBytes(threadId) - before);
+        }
+        assertEquals(0, allocated);
+    }
+}
@@ -0,0 +1,76 @@
+/**
+ * Copyright 2016-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * Licensed under the Creative Commons CC BY-NC 4.0 Attribution-NonCommercial
+ * License (the "License"). You may obtain a copy of the License at
+ * https://creativecommons.org/licenses/by-nc/4.0/.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.oculus.sample.audio;
+
+import com.oculus.sample.projection.EquirectReprojector;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class ListenerOrientationTest {
+    private static final float EPSILON = 1e-3f;
+
+    private static float yawFromCamera(float lon, float lat) {
+        ListenerOrientation orientation = new ListenerOrientation();
+        orientation.setFromCamera(lon, lat);
+        return ListenerOrientation.yaw(orientation.get());
+    }
+
+    private static float wrap(float degrees) {
+        float wrapped = degrees % 360.f;
+        return wrapped < 0 ? wrapped + 360.f : wrapped;
+    }
+
+    @Test
+    public void packsYawAndPitchTogether() {
+        ListenerOrientation orientation = new ListenerOrientation();
+        orientation.set(-123.5f, 42.25f);
+
+        long packed = orientation.get();
+        assertEquals(-123.5f, ListenerOrientation.yaw(packed), 0);
+        assertEquals(42.25f, ListenerOrientation.pitch(packed), 0);
+    }
+
+    @Test
+    public void frameCenterIsFrontOfSoundField() {
+        // The view center is the middle of the frame at lon 270.
+        assertEquals(0.f, wrap(yawFromCamera(270.f, 0.f)), EPSILON);
+        // Turning left, towards smaller u, is a positive azimuth.
+        assertEquals(90.f, wrap(yawFromCamera(180.f, 0.f)), EPSILON);
+        assertEquals(270.f, wrap(yawFromCamera(0.f, 0.f)), EPSILON);
+    }
+
+    @Test
+    public void yawIsAzimuthOfViewCenter() {
+        ListenerOrientation orientation = new ListenerOrientation();
+        float[] uv = new float[2];
+        for (int lon = -720; lon <= 720; lon += 15) {
+            for (int lat = -60; lat <= 60; lat += 30) {
+                orientation.setFromCamera(lon, lat);
+                long current = orientation.get();
+                EquirectReprojector.viewCenterToTexture(lon, lat, uv);
+
+                // Azimuth 0 is the frame center, positive to the left.
+                float expectedYaw = (0.5f - uv[0]) * 360.f;
+                float yawError = wrap(ListenerOrientation.yaw(current) - expectedYaw);
+                assertEquals("lon " + lon, 0.f, Math.min(yawError, 360.f - yawError), EPSILON);
+                assertEquals("lat " + lat,
+                        90.f - uv[1] * 180.f, ListenerOrientation.pitch(current), EPSILON);
+            }
+        }
+    }
+}
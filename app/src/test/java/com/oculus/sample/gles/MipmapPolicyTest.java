@@ -0,0 +1,154 @@
+/**
+ * Copyright 2016-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * Licensed under the Creative Commons CC BY-NC 4.0 Attribution-NonCommercial
+ * License (the "License"). You may obtain a copy of the License at
+ * https://creativecommons.org/licenses/by-nc/4.0/.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.oculus.sample.gles;
+
+import com.oculus.sample.projection.SphericalCamera;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class MipmapPolicyTest {
+    private static final int VIDEO_WIDTH = 3840;
+    private static final int VIDEO_HEIGHT = 1920;
+    // Landscape and portrait phones.
+    private static final int[][] SCREENS = {{1920, 1080}, {2560, 1440}, {1080, 2280}};
+
+    @Test
+    public void startsInactive() {
+        MipmapPolicy policy = new MipmapPolicy();
+        assertFalse(policy.isActive());
+        assertFalse(policy.update(MipmapPolicy.DEFAULT_ENABLE_MINIFICATION));
+    }
+
+    @Test
+    public void switchesOnAboveEnableAndOffBelowDisable() {
+        MipmapPolicy policy = new MipmapPolicy();
+
+        assertTrue(policy.update(MipmapPolicy.DEFAULT_ENABLE_MINIFICATION + 0.01f));
+        // Between the thresholds it stays on.
+        assertTrue(policy.update(1.3f));
+        assertTrue(policy.update(MipmapPolicy.DEFAULT_DISABLE_MINIFICATION));
+        assertFalse(policy.update(MipmapPolicy.DEFAULT_DISABLE_MINIFICATION - 0.01f));
+        // And off once it has switched off.
+        assertFalse(policy.update(1.3f));
+        assertFalse(policy.isActive());
+    }
+
+    @Test
+    public void wobbleAroundThresholdSwitchesOnce() {
+        MipmapPolicy policy = new MipmapPolicy();
+        int switches = 0;
+        boolean active = false;
+        for (int frame = 0; frame < 600; frame++) {
+            float minification = MipmapPolicy.DEFAULT_ENABLE_MINIFICATION
+                    + 0.2f * (float) Math.sin(frame * 0.3);
+            if (policy.update(minification) != active) {
+                active = !active;
+                switches++;
+            }
+        }
+        assertEquals(1, switches);
+    }
+
+    @Test
+    public void resetSwitchesOff() {
+        MipmapPolicy policy = new MipmapPolicy();
+        policy.update(2.f);
+        policy.reset();
+        assertFalse(policy.isActive());
+        assertFalse(policy.update(1.3f));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsDisableAboveEnable() {
+        new MipmapPolicy(1.2f, 1.5f);
+    }
+
+    @Test
+    public void minificationMatchesNeighbouringPixels() {
+        for (int[] screen : SCREENS) {
+            for (float fovY = SphericalCamera.MIN_FOVY; fovY <= SphericalCamera.MAX_FOVY;
+                    fovY += 10) {
+                float measured = measure(fovY, screen[0], screen[1]);
+                float estimated = MipmapPolicy.minification(
+                        fovY, screen[1], VIDEO_WIDTH, VIDEO_HEIGHT);
+                assertEquals(screen[0] + "x" + screen[1] + " at " + fovY + " degrees",
+                        measured, estimated, 0.02f * measured);
+            }
+        }
+    }
+
+    @Test
+    public void minificationScalesWithFieldOfViewAndResolution() {
+        float base = MipmapPolicy.minification(60, 1080, VIDEO_WIDTH, VIDEO_HEIGHT);
+        assertEquals(base / 2, MipmapPolicy.minification(60, 2160, VIDEO_WIDTH, VIDEO_HEIGHT),
+                1e-4f);
+        assertEquals(base * 2, MipmapPolicy.minification(60, 1080, 2 * VIDEO_WIDTH,
+                2 * VIDEO_HEIGHT), 1e-4f);
+        assertTrue(MipmapPolicy.minification(90, 1080, VIDEO_WIDTH, VIDEO_HEIGHT) > base);
+    }
+
+    @Test
+    public void normalZoomCopiesNothing() {
+        for (int[] screen : SCREENS) {
+            MipmapPolicy policy = new MipmapPolicy();
+            assertFalse(screen[0] + "x" + screen[1], policy.update(MipmapPolicy.minification(
+                    SphericalCamera.DEFAULT_FOVY, screen[1], VIDEO_WIDTH, VIDEO_HEIGHT)));
+        }
+    }
+
+    @Test
+    public void zoomedOutCopies() {
+        MipmapPolicy policy = new MipmapPolicy();
+        assertTrue(policy.update(MipmapPolicy.minification(
+                SphericalCamera.MAX_FOVY, 1080, VIDEO_WIDTH, VIDEO_HEIGHT)));
+    }
+
+    @Test
+    public void copySizeIsLargestPowerOfTwoThatFits() {
+        assertEquals(2048, MipmapPolicy.copySize(3840, 8192));
+        assertEquals(4096, MipmapPolicy.copySize(4096, 8192));
+        assertEquals(4096, MipmapPolicy.copySize(7680, 4096));
+        assertEquals(2048, MipmapPolicy.copySize(7680, 3000));
+        assertEquals(1, MipmapPolicy.copySize(1, 8192));
+        assertEquals(1, MipmapPolicy.copySize(0, 8192));
+    }
+
+    /**
+     * Texels between the points seen through the center pixel and the
+     * pixels next to it, vertically and horizontally, at the equator.
+     */
+    private static float measure(float fovY, int width, int height) {
+        SphericalCamera camera = new SphericalCamera();
+        camera.setViewportSize(width, height);
+        camera.setFovY(fovY);
+        camera.update();
+
+        float[] center = new float[2];
+        float[] up = new float[2];
+        float[] right = new float[2];
+        camera.pickLonLat(0, 0, SphericalCamera.SPHERE_RADIUS, center);
+        camera.pickLonLat(0, 2.f / height, SphericalCamera.SPHERE_RADIUS, up);
+        camera.pickLonLat(2.f / width, 0, SphericalCamera.SPHERE_RADIUS, right);
+
+        float vertical = Math.abs(up[1] - center[1]) / 180 * VIDEO_HEIGHT;
+        float horizontal = Math.abs(right[0] - center[0]) / 360 * VIDEO_WIDTH;
+        return Math.max(vertical, horizontal);
+    }
+}
@@ -0,0 +1,168 @@
+/**
+ * Copyright 2016-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * Licensed under the Creative Commons CC BY-NC 4.0 Attribution-NonCommercial
+ * License (the "License"). You may obtain a copy of the License at
+ * https://creativecommons.org/licenses/by-nc/4.0/.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.oculus.sample.gles;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class ResolutionScaleControllerTest {
+    private static final long MS = 1000000L;
+    private static final long BUDGET_60HZ = 16666667L;
+    private static final long BUDGET_90HZ = 11111111L;
+    private static final float EPSILON = 1e-5f;
+
+    private static float feed(ResolutionScaleController controller, long frameNanos, int frames) {
+        float scale = controller.getScale();
+        for (int i = 0; i < frames; i++) {
+            scale = controller.onFrameTime(frameNanos);
+        }
+        return scale;
+    }
+
+    @Test
+    public void stepsDownAfterSustainedOverload() {
+        ResolutionScaleController controller = new ResolutionScaleController(BUDGET_60HZ);
+
+        assertEquals(1.f, feed(controller, 20 * MS, 2), EPSILON);
+        assertEquals(0.9f, feed(controller, 20 * MS, 1), EPSILON);
+        // The average starts over at the new scale.
+        assertEquals(0.9f, feed(controller, 20 * MS, 2), EPSILON);
+        assertEquals(0.8f, feed(controller, 20 * MS, 1), EPSILON);
+    }
+
+    @Test
+    public void singleSpikeDoesNotStepDown() {
+        ResolutionScaleController controller = new ResolutionScaleController(BUDGET_60HZ);
+
+        feed(controller, 8 * MS, 100);
+        assertEquals(1.f, feed(controller, 40 * MS, 1), EPSILON);
+        assertEquals(1.f, feed(controller, 8 * MS, 100), EPSILON);
+    }
+
+    @Test
+    public void holdsBetweenWaterMarks() {
+        ResolutionScaleController controller = new ResolutionScaleController(BUDGET_60HZ);
+        feed(controller, 20 * MS, 6);
+        assertEquals(0.8f, controller.getScale(), EPSILON);
+
+        // Between 65% and 90% of the budget.
+        assertEquals(0.8f, feed(controller, 13 * MS, 1000), EPSILON);
+    }
+
+    @Test
+    public void stepsUpOnlyAfterLongRunBelowLowWater() {
+        ResolutionScaleController controller = new ResolutionScaleController(BUDGET_60HZ);
+        feed(controller, 20 * MS, 3);
+        assertEquals(0.9f, controller.getScale(), EPSILON);
+
+        assertEquals(0.9f, feed(controller, 5 * MS, 59), EPSILON);
+        assertEquals(1.f, feed(controller, 5 * MS, 1), EPSILON);
+    }
+
+    @Test
+    public void slowFrameRestartsStepUp() {
+        ResolutionScaleController controller = new ResolutionScaleController(BUDGET_60HZ);
+        feed(controller, 20 * MS, 3);
+
+        feed(controller, 5 * MS, 50);
+        // Pushes the average back over the low-water mark, restarting the count.
+        feed(controller, 60 * MS, 1);
+        assertEquals(0.9f, feed(controller, 5 * MS, 50), EPSILON);
+    }
+
+    @Test
+    public void clampsToScaleRange() {
+        ResolutionScaleController controller = new ResolutionScaleController(BUDGET_60HZ);
+
+        assertEquals(0.5f, feed(controller, 30 * MS, 1000), EPSILON);
+        assertEquals(1.f, feed(controller, 1 * MS, 10000), EPSILON);
+    }
+
+    @Test
+    public void budgetFollowsRefreshRate() {
+        // 12ms fits a 60Hz frame but not a 90Hz one.
+        assertEquals(1.f,
+                feed(new ResolutionScaleController(BUDGET_60HZ), 12 * MS, 100), EPSILON);
+        assertEquals(0.5f,
+                feed(new ResolutionScaleController(BUDGET_90HZ), 12 * MS, 100), EPSILON);
+    }
+
+    private static float present(ResolutionScaleController controller, long intervalNanos, int frames) {
+        float scale = controller.getScale();
+        for (int i = 0; i < frames; i++) {
+            scale = controller.onPresentInterval(intervalNanos);
+        }
+        return scale;
+    }
+
+    @Test
+    public void missedVsyncsStepDown() {
+        ResolutionScaleController controller = new ResolutionScaleController(BUDGET_60HZ);
+
+        // Each frame shows up two refresh periods after the previous one.
+        assertEquals(1.f, present(controller, 2 * BUDGET_60HZ, 2), EPSILON);
+        assertEquals(0.9f, present(controller, 2 * BUDGET_60HZ, 1), EPSILON);
+        assertEquals(0.8f, present(controller, 2 * BUDGET_60HZ, 3), EPSILON);
+    }
+
+    @Test
+    public void presentJitterIsNotAMiss() {
+        ResolutionScaleController controller = new ResolutionScaleController(BUDGET_60HZ);
+
+        for (int i = 0; i < 100; i++) {
+            controller.onPresentInterval(BUDGET_60HZ + 4 * MS);
+            controller.onPresentInterval(BUDGET_60HZ - 4 * MS);
+        }
+        assertEquals(1.f, controller.getScale(), EPSILON);
+    }
+
+    @Test
+    public void isolatedMissesDoNotStepDown() {
+        ResolutionScaleController controller = new ResolutionScaleController(BUDGET_60HZ);
+
+        for (int i = 0; i < 100; i++) {
+            present(controller, 2 * BUDGET_60HZ, 2);
+            present(controller, BUDGET_60HZ, 1);
+        }
+        assertEquals(1.f, controller.getScale(), EPSILON);
+    }
+
+    @Test
+    public void framesOnTimeStepUpAfterLongRun() {
+        ResolutionScaleController controller = new ResolutionScaleController(BUDGET_60HZ);
+        present(controller, 3 * BUDGET_60HZ, 3);
+        assertEquals(0.9f, controller.getScale(), EPSILON);
+
+        assertEquals(0.9f, present(controller, BUDGET_60HZ, 59), EPSILON);
+        assertEquals(1.f, present(controller, BUDGET_60HZ, 1), EPSILON);
+    }
+
+    @Test
+    public void missRestartsStepUp() {
+        ResolutionScaleController controller = new ResolutionScaleController(BUDGET_60HZ);
+        present(controller, 2 * BUDGET_60HZ, 3);
+
+        present(controller, BUDGET_60HZ, 50);
+        present(controller, 2 * BUDGET_60HZ, 1);
+        assertEquals(0.9f, present(controller, BUDGET_60HZ, 50), EPSILON);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsInvertedWaterMarks() {
+        new ResolutionScaleController(BUDGET_60HZ, 0.5f, 1.f, 0.1f, 0.6f, 0.7f, 3, 60);
+    }
+}
@@ -0,0 +1,118 @@
+/**
+ * Copyright 2016-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * Licensed under the Creative Commons CC BY-NC 4.0 Attribution-NonCommercial
+ * License (the "License"). You may obtain a copy of the License at
+ * https://creativecommons.org/licenses/by-nc/4.0/.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.oculus.sample.media;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class AssetPackTest {
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private File createFile(String name, int size) throws IOException {
+        byte[] data = new byte[size];
+        for (int i = 0; i < size; i++) {
+            data[i] = (byte) (name.hashCode() + i);
+        }
+        File file = folder.newFile(name);
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(data);
+        } finally {
+            out.close();
+        }
+        return file;
+    }
+
+    private static byte[] readAll(MappedFile mapped) throws IOException {
+        byte[] data = new byte[(int) mapped.getLength()];
+        int position = 0;
+        int read;
+        while ((read = mapped.read(position, data, position, data.length - position)) > 0) {
+            position += read;
+        }
+        return data;
+    }
+
+    private static byte[] expected(String name, int size) {
+        byte[] data = new byte[size];
+        for (int i = 0; i < size; i++) {
+            data[i] = (byte) (name.hashCode() + i);
+        }
+        return data;
+    }
+
+    @Test
+    public void measuresNamesAsWriteUtfEncodesThem() throws IOException {
+        for (String name : new String[] {"video.mp4", "\u00e9t\u00e9.mp4", "\u0000",
+                "\u65e5\u672c.mp4", "clip-\ud83c\udfa5.mp4"}) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            new DataOutputStream(bytes).writeUTF(name);
+            assertEquals(name, bytes.size(), AssetPack.utfLength(name));
+        }
+    }
+
+    @Test
+    public void readsBackEntriesWithNonAsciiNames() throws IOException {
+        // Characters outside the BMP take 4 bytes in UTF-8 but 6 in writeUTF.
+        String[] names = {"clip-\ud83c\udfa5.mp4", "\u00e9t\u00e9.mp4", "audio.m4a"};
+        int[] sizes = {1000, 3, 4096};
+        File[] inputs = new File[names.length];
+        for (int i = 0; i < names.length; i++) {
+            inputs[i] = createFile(names[i], sizes[i]);
+        }
+
+        File packFile = new File(folder.getRoot(), "assets.pack");
+        AssetPack.write(packFile, Arrays.asList(inputs));
+        AssetPack pack = AssetPack.open(packFile);
+
+        assertEquals(names.length, pack.getEntries().size());
+        for (int i = 0; i < names.length; i++) {
+            MappedFile mapped = pack.map(names[i]);
+            try {
+                assertArrayEquals(names[i], expected(names[i], sizes[i]), readAll(mapped));
+            } finally {
+                mapped.close();
+            }
+        }
+    }
+
+    @Test
+    public void readsOutsideTheEntryReturnEndOfData() throws IOException {
+        File packFile = new File(folder.getRoot(), "assets.pack");
+        AssetPack.write(packFile, Arrays.asList(createFile("video.mp4", 100)));
+        MappedFile mapped = AssetPack.open(packFile).map("video.mp4");
+        try {
+            byte[] buffer = new byte[10];
+            assertEquals(-1, mapped.read(-1, buffer, 0, buffer.length));
+            assertEquals(-1, mapped.read(100, buffer, 0, buffer.length));
+            assertEquals(5, mapped.read(95, buffer, 0, buffer.length));
+        } finally {
+            mapped.close();
+        }
+    }
+}
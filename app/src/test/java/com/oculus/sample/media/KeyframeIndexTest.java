@@ -0,0 +1,163 @@
+/**
+ * Copyright 2016-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * Licensed under the Creative Commons CC BY-NC 4.0 Attribution-NonCommercial
+ * License (the "License"). You may obtain a copy of the License at
+ * https://creativecommons.org/licenses/by-nc/4.0/.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.oculus.sample.media;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+public class KeyframeIndexTest {
+    private static final long[] TIMES_US = {0, 2000000, 4000000, 6000000};
+    private static final String KEY = "/sdcard/video.mp4:123456:1500000000";
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void floorIndex() {
+        KeyframeIndex index = new KeyframeIndex(TIMES_US);
+        assertEquals(0, index.floorIndex(-1));
+        assertEquals(0, index.floorIndex(0));
+        assertEquals(0, index.floorIndex(1999999));
+        assertEquals(1, index.floorIndex(2000000));
+        assertEquals(2, index.floorIndex(5999999));
+        assertEquals(3, index.floorIndex(6000000));
+        assertEquals(3, index.floorIndex(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void nearestIndex() {
+        KeyframeIndex index = new KeyframeIndex(TIMES_US);
+        assertEquals(0, index.nearestIndex(-5000000));
+        assertEquals(0, index.nearestIndex(999999));
+        // The earlier keyframe on a tie.
+        assertEquals(0, index.nearestIndex(1000000));
+        assertEquals(1, index.nearestIndex(1000001));
+        assertEquals(3, index.nearestIndex(5000001));
+        assertEquals(3, index.nearestIndex(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void singleKeyframe() {
+        KeyframeIndex index = new KeyframeIndex(new long[] {500});
+        assertEquals(0, index.floorIndex(0));
+        assertEquals(0, index.nearestIndex(0));
+        assertEquals(0, index.nearestIndex(1000));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsEmpty() {
+        new KeyframeIndex(new long[0]);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsUnsortedTimes() {
+        new KeyframeIndex(new long[] {0, 2000000, 2000000});
+    }
+
+    @Test
+    public void cacheRoundTrip() throws IOException {
+        File file = new File(folder.getRoot(), "keyframes");
+        new KeyframeIndex(TIMES_US).write(file, KEY);
+        assertFalse(new File(file.getPath() + ".tmp").exists());
+
+        KeyframeIndex read = KeyframeIndex.read(file, KEY);
+        assertNotNull(read);
+        assertEquals(TIMES_US.length, read.size());
+        for (int i = 0; i < TIMES_US.length; i++) {
+            assertEquals(TIMES_US[i], read.getTimeUs(i));
+        }
+    }
+
+    @Test
+    public void missingCacheIsNull() throws IOException {
+        assertNull(KeyframeIndex.read(new File(folder.getRoot(), "missing"), KEY));
+    }
+
+    @Test
+    public void staleCacheIsNull() throws IOException {
+        File file = new File(folder.getRoot(), "keyframes");
+        new KeyframeIndex(TIMES_US).write(file, KEY);
+        assertNull(KeyframeIndex.read(file, KEY + "0"));
+    }
+
+    @Test
+    public void truncatedCacheIsRejected() throws IOException {
+        File file = new File(folder.getRoot(), "keyframes");
+        new KeyframeIndex(TIMES_US).write(file, KEY);
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.setLength(raf.length() - 4);
+        } finally {
+            raf.close();
+        }
+        expectCorrupt(file);
+    }
+
+    @Test
+    public void wrongMagicIsRejected() throws IOException {
+        File file = new File(folder.getRoot(), "keyframes");
+        new KeyframeIndex(TIMES_US).write(file, KEY);
+        overwrite(file, 0, 'X');
+        expectCorrupt(file);
+    }
+
+    @Test
+    public void unsortedCacheIsRejected() throws IOException {
+        File file = new File(folder.getRoot(), "keyframes");
+        new KeyframeIndex(TIMES_US).write(file, KEY);
+        // The high byte of the last time makes it negative.
+        overwrite(file, file.length() - 8, 0x80);
+        expectCorrupt(file);
+    }
+
+    @Test
+    public void hugeCountIsRejected() throws IOException {
+        File file = new File(folder.getRoot(), "keyframes");
+        new KeyframeIndex(TIMES_US).write(file, KEY);
+        // The high byte of the count, after the magic and the UTF key.
+        overwrite(file, 8 + 2 + KEY.length(), 0x7f);
+        expectCorrupt(file);
+    }
+
+    private static void overwrite(File file, long position, int value) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.seek(position);
+            raf.write(value);
+        } finally {
+            raf.close();
+        }
+    }
+
+    private static void expectCorrupt(File file) {
+        try {
+            KeyframeIndex.read(file, KEY);
+            fail("Read corrupt index " + file);
+        } catch (IOException expected) {
+        }
+    }
+}
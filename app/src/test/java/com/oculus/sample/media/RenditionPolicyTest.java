@@ -0,0 +1,168 @@
+/**
+ * Copyright 2016-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * Licensed under the Creative Commons CC BY-NC 4.0 Attribution-NonCommercial
+ * License (the "License"). You may obtain a copy of the License at
+ * https://creativecommons.org/licenses/by-nc/4.0/.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.oculus.sample.media;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class RenditionPolicyTest {
+    private static final long MS = 1000000L;
+    // The player samples twice a second.
+    private static final long SAMPLE_MS = 500;
+
+    // decode ratio, drop ratio, render load
+    private static final float[] HEALTHY = {1.f, 0.f, 0.3f};
+    private static final float[] OK = {0.95f, 0.01f, 0.7f};
+    private static final float[] SLOW_DECODE = {0.8f, 0.f, 0.3f};
+    private static final float[] DROPPING = {1.f, 0.1f, 0.3f};
+    private static final float[] OVERLOADED = {1.f, 0.f, 0.95f};
+
+    private final RenditionPolicy policy = new RenditionPolicy(3, 1);
+    private long nowMs;
+
+    /**
+     * Samples {@code sample} until {@code untilMs}, and returns the time of
+     * the first sample whose level differs from the one before, or -1.
+     */
+    private long feedUntil(long untilMs, float[] sample) {
+        long switchMs = -1;
+        while (nowMs < untilMs) {
+            nowMs += SAMPLE_MS;
+            int before = policy.getLevel();
+            int after = policy.onSample(nowMs * MS, sample[0], sample[1], sample[2]);
+            if (after != before && switchMs < 0) {
+                switchMs = nowMs;
+            }
+        }
+        return switchMs;
+    }
+
+    @Test
+    public void stepsUpAfterLongHealthyRun() {
+        feedUntil(0, HEALTHY);
+        assertEquals(10500, feedUntil(10500, HEALTHY));
+        assertEquals(2, policy.getLevel());
+    }
+
+    @Test
+    public void stepsDownAfterSustainedStruggle() {
+        // First struggling sample at 500ms, two seconds later it steps down.
+        assertEquals(2500, feedUntil(3000, SLOW_DECODE));
+        assertEquals(0, policy.getLevel());
+    }
+
+    @Test
+    public void dropsAndRenderLoadCountAsStruggling() {
+        assertEquals(2500, feedUntil(3000, DROPPING));
+        RenditionPolicy loaded = new RenditionPolicy(3, 1);
+        assertEquals(1, loaded.onSample(0, OVERLOADED[0], OVERLOADED[1], OVERLOADED[2]));
+        assertEquals(0, loaded.onSample(2000 * MS, OVERLOADED[0], OVERLOADED[1], OVERLOADED[2]));
+    }
+
+    @Test
+    public void holdsBetweenBands() {
+        assertEquals(-1, feedUntil(60000, OK));
+        assertEquals(1, policy.getLevel());
+    }
+
+    @Test
+    public void shortStruggleDoesNotSwitch() {
+        feedUntil(1500, DROPPING);
+        // An in-between sample restarts the struggle timer.
+        feedUntil(2000, OK);
+        assertEquals(-1, feedUntil(4000, DROPPING));
+        assertEquals(4500, feedUntil(4500, DROPPING));
+    }
+
+    @Test
+    public void shortHealthyRunDoesNotSwitch() {
+        feedUntil(8000, HEALTHY);
+        feedUntil(8500, OK);
+        assertEquals(-1, feedUntil(18500, HEALTHY));
+        assertEquals(19000, feedUntil(19000, HEALTHY));
+    }
+
+    @Test
+    public void staysWithinLevels() {
+        RenditionPolicy lowest = new RenditionPolicy(2, 0);
+        RenditionPolicy highest = new RenditionPolicy(2, 1);
+        for (long t = 0; t < 60000; t += SAMPLE_MS) {
+            lowest.onSample(t * MS, SLOW_DECODE[0], SLOW_DECODE[1], SLOW_DECODE[2]);
+            highest.onSample(t * MS, HEALTHY[0], HEALTHY[1], HEALTHY[2]);
+        }
+        assertEquals(0, lowest.getLevel());
+        assertEquals(1, highest.getLevel());
+    }
+
+    @Test
+    public void ignoresSamplesWhileSettling() {
+        // Struggling right after the switch does not count towards the next.
+        RenditionPolicy other = new RenditionPolicy(3, 2);
+        feedOther(other, 0, 2000, SLOW_DECODE);
+        assertEquals(1, other.getLevel());
+        feedOther(other, 2500, 4500, SLOW_DECODE);
+        assertEquals(1, other.getLevel());
+        feedOther(other, 5000, 5000, SLOW_DECODE);
+        assertEquals(0, other.getLevel());
+    }
+
+    private static void feedOther(RenditionPolicy other, long fromMs, long toMs, float[] sample) {
+        for (long t = fromMs; t <= toMs; t += SAMPLE_MS) {
+            other.onSample(t * MS, sample[0], sample[1], sample[2]);
+        }
+    }
+
+    @Test
+    public void backsOffFromLevelThatKeepsFailing() {
+        // Up at 10.5s, struggling once settled at 11.5s, back down at 13.5s.
+        assertEquals(10500, feedUntil(10500, HEALTHY));
+        assertEquals(13500, feedUntil(13500, SLOW_DECODE));
+        assertEquals(1, policy.getLevel());
+
+        // The first block lasts the up-switch delay, which the healthy run
+        // after settling takes anyway.
+        assertEquals(24500, feedUntil(24500, HEALTHY));
+        assertEquals(2, policy.getLevel());
+
+        // Failing again doubles it: blocked until 47.5s instead of going up
+        // at 38.5s.
+        assertEquals(27500, feedUntil(27500, SLOW_DECODE));
+        assertEquals(-1, feedUntil(47000, HEALTHY));
+        assertEquals(47500, feedUntil(47500, HEALTHY));
+    }
+
+    @Test
+    public void failedSwitchReturnsToPreviousLevelAndBlocksIt() {
+        feedUntil(10500, HEALTHY);
+        assertEquals(2, policy.getLevel());
+
+        assertEquals(1, policy.onSwitchFailed(nowMs * MS));
+        assertEquals(-1, feedUntil(21000, HEALTHY));
+        assertEquals(21500, feedUntil(21500, HEALTHY));
+    }
+
+    @Test
+    public void cancelledSwitchReturnsToPreviousLevel() {
+        feedUntil(2500, SLOW_DECODE);
+        assertEquals(0, policy.getLevel());
+
+        assertEquals(1, policy.onSwitchCancelled(nowMs * MS));
+        // Not held against the level: struggling again steps down as usual,
+        // two seconds after settling.
+        assertEquals(5500, feedUntil(5500, SLOW_DECODE));
+    }
+}
@@ -0,0 +1,292 @@
+/**
+ * Copyright 2016-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * Licensed under the Creative Commons CC BY-NC 4.0 Attribution-NonCommercial
+ * License (the "License"). You may obtain a copy of the License at
+ * https://creativecommons.org/licenses/by-nc/4.0/.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.oculus.sample.overlay;
+
+import com.oculus.sample.projection.SphericalCamera;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class HotspotIndexTest {
+    private static final float ANGLE_TOLERANCE = 0.01f;
+
+    private static Hotspot hotspot(int id, float lon, float lat, float sizeDegrees) {
+        return new Hotspot(id, lon, lat, sizeDegrees, 0, 0, 1, 1);
+    }
+
+    @Test
+    public void emptyIndexFindsNothing() {
+        HotspotIndex index = new HotspotIndex(Collections.<Hotspot>emptyList());
+        assertEquals(-1, index.findIndex(0, 0));
+        assertNull(index.find(0, 90));
+    }
+
+    @Test
+    public void hitAreaIsRound() {
+        Hotspot hotspot = hotspot(1, 30, 0, 10);
+        HotspotIndex index = new HotspotIndex(Collections.singletonList(hotspot));
+
+        assertSame(hotspot, index.find(30, 0));
+        assertSame(hotspot, index.find(34.9f, 0));
+        assertNull(index.find(35.1f, 0));
+        // Inside the square billboard's corner but outside the circle.
+        assertNull(index.find(34, 4));
+    }
+
+    @Test
+    public void wrapsAcrossTheSeam() {
+        Hotspot hotspot = hotspot(1, 179, 10, 10);
+        HotspotIndex index = new HotspotIndex(Collections.singletonList(hotspot));
+
+        assertSame(hotspot, index.find(-178, 10));
+        assertSame(hotspot, index.find(182, 10));
+        assertSame(hotspot, index.find(179 - 720, 10));
+        assertNull(index.find(-170, 10));
+    }
+
+    @Test
+    public void widensLongitudeSearchNearThePoles() {
+        // At 70 degrees an 8 degree radius spans over 20 degrees of
+        // longitude, more than a cell either side of the center.
+        Hotspot hotspot = hotspot(1, 0, 70, 16);
+        HotspotIndex index = new HotspotIndex(Collections.singletonList(hotspot));
+
+        assertSame(hotspot, index.find(20, 70));
+        assertSame(hotspot, index.find(-20, 70));
+        assertNull(index.find(30, 70));
+    }
+
+    @Test
+    public void searchesOverThePole() {
+        Hotspot hotspot = hotspot(1, 0, 82, 20);
+        HotspotIndex index = new HotspotIndex(Collections.singletonList(hotspot));
+
+        assertSame(hotspot, index.find(40, 82));
+        // On the far side of the pole.
+        assertSame(hotspot, index.find(180, 89));
+        assertNull(index.find(180, 87));
+    }
+
+    @Test
+    public void hotspotAtThePoleCoversEveryLongitude() {
+        Hotspot hotspot = hotspot(1, 0, -90, 10);
+        HotspotIndex index = new HotspotIndex(Collections.singletonList(hotspot));
+
+        for (int lon = -180; lon < 180; lon += 30) {
+            assertSame(hotspot, index.find(lon, -86));
+        }
+        assertNull(index.find(0, -84));
+    }
+
+    @Test
+    public void closestCenterWinsWhereHotspotsOverlap() {
+        Hotspot big = hotspot(1, 0, 0, 40);
+        Hotspot small = hotspot(2, 8, 0, 6);
+        HotspotIndex index = new HotspotIndex(Arrays.asList(big, small));
+
+        assertSame(small, index.find(7, 0));
+        assertSame(big, index.find(3, 0));
+        assertSame(big, index.find(-10, 0));
+    }
+
+    @Test
+    public void tiesGoToTheFirstInTheList() {
+        // Same center, different sizes.
+        Hotspot first = hotspot(1, 10, 10, 8);
+        Hotspot second = hotspot(2, 10, 10, 20);
+        assertSame(first, new HotspotIndex(Arrays.asList(first, second)).find(11, 10));
+        assertSame(second, new HotspotIndex(Arrays.asList(second, first)).find(11, 10));
+
+        // Equidistant centers either side of the seam, so in cells visited
+        // in a different order than the list.
+        Hotspot east = hotspot(3, 2, 0, 10);
+        Hotspot west = hotspot(4, -2, 0, 10);
+        assertSame(east, new HotspotIndex(Arrays.asList(east, west)).find(0, 0));
+        assertSame(west, new HotspotIndex(Arrays.asList(west, east)).find(0, 0));
+    }
+
+    @Test
+    public void matchesSearchOfEveryHotspot() {
+        Random random = new Random(360);
+        int[] counts = {1, 100, 2000};
+        for (int count : counts) {
+            List<Hotspot> hotspots = new ArrayList<>();
+            for (int i = 0; i < count; i++) {
+                // Some hotspots on the seam and at the poles.
+                float lon = i % 10 == 0 ? 180 : random.nextFloat() * 360 - 180;
+                float lat = i % 17 == 0 ? 90 : random.nextFloat() * 180 - 90;
+                hotspots.add(hotspot(i, lon, lat, 1 + random.nextFloat() * 30));
+            }
+            HotspotIndex index = new HotspotIndex(hotspots);
+
+            for (int i = 0; i < 20000; i++) {
+                float lon = random.nextFloat() * 1080 - 540;
+                float lat = random.nextFloat() * 180 - 90;
+                assertEquals(count + " hotspots at " + lon + ", " + lat,
+                        search(hotspots, lon, lat), index.findIndex(lon, lat));
+            }
+        }
+    }
+
+    @Test
+    public void screenCenterPicksCameraOrientation() {
+        SphericalCamera camera = new SphericalCamera();
+        camera.setViewportSize(1080, 1920);
+        float[] lonLat = new float[2];
+        for (int lon = -720; lon <= 720; lon += 15) {
+            for (int lat = -80; lat <= 80; lat += 20) {
+                camera.setOrientation(lon, lat);
+                camera.update();
+                assertTrue(camera.pickLonLat(0, 0, SphericalCamera.SPHERE_RADIUS, lonLat));
+                assertTrue("camera at " + lon + ", " + lat,
+                        angle(lon, lat, lonLat[0], lonLat[1]) < ANGLE_TOLERANCE);
+            }
+        }
+    }
+
+    /**
+     * Projects the vertices of a batch like the hotspot vertex shader, with
+     * a camera turned somewhere near each hotspot, and taps the billboard's
+     * center and 90% of the way to each corner.
+     */
+    @Test
+    public void tapsOnDrawnBillboardsPickThem() {
+        Random random = new Random(42);
+        SphericalCamera camera = new SphericalCamera();
+        camera.setViewportSize(1920, 1080);
+        float[] vertex = new float[HotspotBatch.FLOATS_PER_VERTEX * 4];
+        float[] ndc = new float[2];
+        float[] lonLat = new float[2];
+        int taps = 0;
+
+        for (int i = 0; i < 200; i++) {
+            Hotspot hotspot = hotspot(i, random.nextFloat() * 720 - 360,
+                    random.nextFloat() * 160 - 80, 2 + random.nextFloat() * 20);
+            List<Hotspot> single = Collections.singletonList(hotspot);
+            HotspotIndex index = new HotspotIndex(single);
+            new HotspotBatch(single, SphericalCamera.SPHERE_RADIUS).getVertices().get(vertex);
+
+            camera.setOrientation(hotspot.lon + random.nextFloat() * 40 - 20,
+                    hotspot.lat + random.nextFloat() * 30 - 15);
+            camera.update();
+
+            // Center, then corners pulled 10% towards it: the drawn quad's
+            // square corners stick out of the round hit area.
+            for (int corner = -1; corner < 4; corner++) {
+                float scale = 0.f;
+                int base = 0;
+                if (corner >= 0) {
+                    scale = 0.9f / (float) Math.sqrt(2);
+                    base = corner * HotspotBatch.FLOATS_PER_VERTEX;
+                }
+                if (!project(camera, vertex, base, scale, ndc)) {
+                    continue;
+                }
+                assertTrue(camera.pickLonLat(
+                        ndc[0], ndc[1], SphericalCamera.SPHERE_RADIUS, lonLat));
+                if (corner < 0) {
+                    assertTrue(hotspot + " projects to " + lonLat[0] + ", " + lonLat[1],
+                            angle(hotspot.lon, hotspot.lat, lonLat[0], lonLat[1])
+                                    < ANGLE_TOLERANCE);
+                }
+                assertSame(hotspot, index.find(lonLat[0], lonLat[1]));
+                taps++;
+            }
+        }
+        assertTrue(taps > 400);
+    }
+
+    /**
+     * Where the hotspot vertex shader puts a vertex, with its corner offset
+     * scaled by {@code cornerScale}; false if it is off screen.
+     */
+    private static boolean project(
+            SphericalCamera camera, float[] vertex, int base, float cornerScale, float[] ndc) {
+        float[] center = {vertex[base], vertex[base + 1], vertex[base + 2], 1};
+        float[] eye = multiply(camera.getViewMatrix(), center);
+        eye[0] += vertex[base + 3] * cornerScale;
+        eye[1] += vertex[base + 4] * cornerScale;
+        float[] clip = multiply(camera.getProjectionMatrix(), eye);
+        if (clip[3] <= 0) {
+            return false;
+        }
+        ndc[0] = clip[0] / clip[3];
+        ndc[1] = clip[1] / clip[3];
+        return Math.abs(ndc[0]) < 1 && Math.abs(ndc[1]) < 1;
+    }
+
+    // Column-major, like android.opengl.Matrix.
+    private static float[] multiply(float[] m, float[] v) {
+        float[] result = new float[4];
+        for (int row = 0; row < 4; row++) {
+            result[row] = m[row] * v[0] + m[4 + row] * v[1] + m[8 + row] * v[2] + m[12 + row] * v[3];
+        }
+        return result;
+    }
+
+    /**
+     * Closest covering hotspot, computed like the index does but over every
+     * hotspot.
+     */
+    private static int search(List<Hotspot> hotspots, float lon, float lat) {
+        float[] point = unit(lon, lat);
+        int best = -1;
+        float bestDot = -2;
+        for (int i = 0; i < hotspots.size(); i++) {
+            Hotspot hotspot = hotspots.get(i);
+            float[] center = unit(hotspot.lon, hotspot.lat);
+            float dot = point[0] * center[0] + point[1] * center[1] + point[2] * center[2];
+            float cosRadius = (float) Math.cos(Math.toRadians(hotspot.sizeDegrees / 2));
+            if (dot >= cosRadius && dot > bestDot) {
+                best = i;
+                bestDot = dot;
+            }
+        }
+        return best;
+    }
+
+    private static float[] unit(float lon, float lat) {
+        double lonRadians = Math.toRadians(lon);
+        double latRadians = Math.toRadians(lat);
+        return new float[] {
+                (float) (Math.cos(latRadians) * Math.cos(lonRadians)),
+                (float) Math.sin(latRadians),
+                (float) (Math.cos(latRadians) * Math.sin(lonRadians)),
+        };
+    }
+
+    /**
+     * Great circle distance in degrees.
+     */
+    private static float angle(float lon0, float lat0, float lon1, float lat1) {
+        double lat0Radians = Math.toRadians(lat0);
+        double lat1Radians = Math.toRadians(lat1);
+        double dot = Math.sin(lat0Radians) * Math.sin(lat1Radians)
+                + Math.cos(lat0Radians) * Math.cos(lat1Radians)
+                * Math.cos(Math.toRadians(lon1 - lon0));
+        return (float) Math.toDegrees(Math.acos(Math.max(-1, Math.min(1, dot))));
+    }
+}
@@ -0,0 +1,150 @@
+/**
+ * Copyright 2016-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * Licensed under the Creative Commons CC BY-NC 4.0 Attribution-NonCommercial
+ * License (the "License"). You may obtain a copy of the License at
+ * https://creativecommons.org/licenses/by-nc/4.0/.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.oculus.sample.projection;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class DualFisheyeProjectionTest {
+    private static final float EPSILON = 1e-4f;
+    private static final int RED = 0xffff0000;
+    private static final int BLUE = 0xff0000ff;
+    private static final int BLACK = 0xff000000;
+
+    private static float[] map(DualFisheyeProjection projection, float u, float v) {
+        float[] out = new float[6];
+        projection.mapEquirect(u, v, out);
+        return out;
+    }
+
+    private static void assertWeights(float front, float back, float[] sample) {
+        assertEquals("front weight", front, sample[4], EPSILON);
+        assertEquals("back weight", back, sample[5], EPSILON);
+    }
+
+    @Test
+    public void frameCenterIsFrontLensCenter() {
+        float[] sample = map(DualFisheyeProjection.sideBySide(190), 0.5f, 0.5f);
+
+        assertEquals(0.25f, sample[0], EPSILON);
+        assertEquals(0.5f, sample[1], EPSILON);
+        assertWeights(1, 0, sample);
+    }
+
+    @Test
+    public void frameEdgeIsBackLensCenter() {
+        DualFisheyeProjection projection = DualFisheyeProjection.sideBySide(190);
+
+        for (float u : new float[] {0, 1}) {
+            float[] sample = map(projection, u, 0.5f);
+            assertEquals(0.75f, sample[2], EPSILON);
+            assertEquals(0.5f, sample[3], EPSILON);
+            assertWeights(0, 1, sample);
+        }
+    }
+
+    @Test
+    public void seamIsSplitEvenly() {
+        DualFisheyeProjection projection = DualFisheyeProjection.sideBySide(190);
+        // 90 degrees from both axes, 5 degrees inside both circles.
+        float rho = 90.f / 95.f;
+
+        float[] side = map(projection, 0.25f, 0.5f);
+        assertWeights(0.5f, 0.5f, side);
+        // Left of the front lens, right of the back one.
+        assertEquals(0.25f - rho * 0.25f, side[0], EPSILON);
+        assertEquals(0.75f + rho * 0.25f, side[2], EPSILON);
+
+        float[] top = map(projection, 0.5f, 0);
+        assertWeights(0.5f, 0.5f, top);
+        assertEquals(0.5f - rho * 0.5f, top[1], EPSILON);
+        assertEquals(0.5f - rho * 0.5f, top[3], EPSILON);
+    }
+
+    @Test
+    public void blendBandRampsWithDistanceFromEdge() {
+        DualFisheyeProjection projection = DualFisheyeProjection.sideBySide(190);
+
+        // 92 degrees from the front axis: 3 of the 5 blend degrees inside the
+        // front circle and past the band in the back one.
+        assertWeights(0.6f / 1.6f, 1 / 1.6f, map(projection, 88.f / 360, 0.5f));
+        // Mirrored on the other side of the frame.
+        assertWeights(0.6f / 1.6f, 1 / 1.6f, map(projection, 272.f / 360, 0.5f));
+        // Past the band on both sides of the seam, only one lens is used.
+        assertWeights(0, 1, map(projection, 84.f / 360, 0.5f));
+        assertWeights(1, 0, map(projection, 96.f / 360, 0.5f));
+    }
+
+    @Test
+    public void wideBlendReachesPastSeam() {
+        DualFisheyeProjection narrow = DualFisheyeProjection.sideBySide(190);
+        DualFisheyeProjection projection =
+                new DualFisheyeProjection(narrow.getLens(0), narrow.getLens(1), 20);
+
+        // 3 and 7 degrees inside the two circles, both within the band.
+        assertWeights(0.3f, 0.7f, map(projection, 88.f / 360, 0.5f));
+    }
+
+    @Test
+    public void weightsSumToOneWhereverALensSees() {
+        DualFisheyeProjection projection = DualFisheyeProjection.sideBySide(190);
+        for (int y = 0; y <= 32; y++) {
+            for (int x = 0; x <= 64; x++) {
+                float[] sample = map(projection, x / 64.f, y / 32.f);
+                assertEquals(1, sample[4] + sample[5], EPSILON);
+            }
+        }
+    }
+
+    @Test
+    public void gapBetweenLensesHasNoWeight() {
+        float[] sample = map(DualFisheyeProjection.sideBySide(170), 0.25f, 0.5f);
+        assertWeights(0, 0, sample);
+    }
+
+    @Test
+    public void stitchSamplesEachLensImage() {
+        int srcWidth = 64;
+        int srcHeight = 32;
+        int[] src = new int[srcWidth * srcHeight];
+        for (int y = 0; y < srcHeight; y++) {
+            for (int x = 0; x < srcWidth; x++) {
+                src[y * srcWidth + x] = x < srcWidth / 2 ? RED : BLUE;
+            }
+        }
+
+        // Pixels are 9 degrees wide; row 9 is just above the horizon.
+        int[] dst = new int[40 * 20];
+        DualFisheyeProjection.sideBySide(170).stitch(src, srcWidth, srcHeight, dst, 40, 20);
+        assertEquals(RED, dst[9 * 40 + 19]);
+        assertEquals(BLUE, dst[9 * 40]);
+        assertEquals(BLUE, dst[9 * 40 + 39]);
+        // Centered 85.5 degrees right of the back axis, just outside both circles.
+        assertEquals(BLACK, dst[9 * 40 + 9]);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void stitchRejectsShortBuffers() {
+        DualFisheyeProjection.sideBySide(190).stitch(new int[10], 4, 4, new int[16], 4, 4);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsEmptyBlend() {
+        DualFisheyeProjection projection = DualFisheyeProjection.sideBySide(190);
+        new DualFisheyeProjection(projection.getLens(0), projection.getLens(1), 0);
+    }
+}
@@ -0,0 +1,191 @@
+/**
+ * Copyright 2016-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * Licensed under the Creative Commons CC BY-NC 4.0 Attribution-NonCommercial
+ * License (the "License"). You may obtain a copy of the License at
+ * https://creativecommons.org/licenses/by-nc/4.0/.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.oculus.sample.projection;
+
+import org.junit.Test;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class EquirectReprojectorTest {
+    private static final int SRC_WIDTH = 256;
+    private static final int SRC_HEIGHT = 128;
+    // Odd, so the middle pixel's ray is the view direction.
+    private static final int OUT_SIZE = 33;
+    private static final int CENTER = OUT_SIZE / 2;
+    private static final int BLACK = 0xff000000;
+    private static final int WHITE = 0xffffffff;
+
+    /**
+     * Red is the column and green twice the row, so bilinear fetches away
+     * from the seam decode back to where they sampled.
+     */
+    private static int[] rampFrame() {
+        int[] frame = new int[SRC_WIDTH * SRC_HEIGHT];
+        for (int y = 0; y < SRC_HEIGHT; y++) {
+            for (int x = 0; x < SRC_WIDTH; x++) {
+                frame[y * SRC_WIDTH + x] = BLACK | (x << 16) | ((2 * y) << 8);
+            }
+        }
+        return frame;
+    }
+
+    private static int[] reproject(int[] src, float lon, float lat, float fovY) {
+        int[] dst = new int[OUT_SIZE * OUT_SIZE];
+        new EquirectReprojector(OUT_SIZE, OUT_SIZE)
+                .reprojectSingleThreaded(src, SRC_WIDTH, SRC_HEIGHT, lon, lat, fovY, dst);
+        return dst;
+    }
+
+    private static int center(int[] dst) {
+        return dst[CENTER * OUT_SIZE + CENTER];
+    }
+
+    private static void assertCenterSamples(float lon, float lat) {
+        float[] uv = new float[2];
+        EquirectReprojector.viewCenterToTexture(lon, lat, uv);
+        int pixel = center(reproject(rampFrame(), lon, lat, 70));
+
+        String at = "lon " + lon + " lat " + lat;
+        assertEquals(at, uv[0] * SRC_WIDTH - 0.5f, (pixel >> 16) & 0xff, 1.f);
+        assertEquals(at, 2 * (uv[1] * SRC_HEIGHT - 0.5f), (pixel >> 8) & 0xff, 2.f);
+    }
+
+    @Test
+    public void viewCenterFollowsYawAndPitch() {
+        assertCenterSamples(0, 0);
+        assertCenterSamples(45, 0);
+        assertCenterSamples(200, 30);
+        assertCenterSamples(-30, -60);
+    }
+
+    @Test
+    public void viewCenterTextureCoordinates() {
+        float[] uv = new float[2];
+        EquirectReprojector.viewCenterToTexture(90, 0, uv);
+        assertEquals(0.f, uv[0], 1e-6f);
+        assertEquals(0.5f, uv[1], 1e-6f);
+
+        EquirectReprojector.viewCenterToTexture(0, 45, uv);
+        assertEquals(0.75f, uv[0], 1e-6f);
+        assertEquals(0.25f, uv[1], 1e-6f);
+
+        // Wraps into [0, 1) both ways.
+        EquirectReprojector.viewCenterToTexture(-270, 0, uv);
+        assertEquals(0.f, uv[0], 1e-6f);
+        EquirectReprojector.viewCenterToTexture(540, 0, uv);
+        assertEquals(0.25f, uv[0], 1e-6f);
+    }
+
+    @Test
+    public void seamBlendsAcrossTheWrap() {
+        // Only the first and last columns are white, so a fetch at u = 0
+        // blends them and a clamped fetch would come out half black.
+        int[] frame = new int[SRC_WIDTH * SRC_HEIGHT];
+        for (int y = 0; y < SRC_HEIGHT; y++) {
+            for (int x = 0; x < SRC_WIDTH; x++) {
+                boolean edge = x == 0 || x == SRC_WIDTH - 1;
+                frame[y * SRC_WIDTH + x] = edge ? WHITE : BLACK;
+            }
+        }
+
+        int[] dst = reproject(frame, 90, 0, 70);
+        assertEquals(WHITE, center(dst));
+        // Columns either side of the seam are further off it.
+        assertEquals(BLACK, dst[CENTER * OUT_SIZE + CENTER - 4]);
+        assertEquals(BLACK, dst[CENTER * OUT_SIZE + CENTER + 4]);
+    }
+
+    /**
+     * @return how many pixels show some red and how many some blue
+     */
+    private static int[] countLit(int[] dst) {
+        int[] counts = new int[2];
+        for (int pixel : dst) {
+            counts[0] += (pixel >> 16 & 0xff) > 0 ? 1 : 0;
+            counts[1] += (pixel & 0xff) > 0 ? 1 : 0;
+        }
+        return counts;
+    }
+
+    @Test
+    public void polesClampToTheEdgeRows() {
+        // Only the top row is red and the bottom one blue.
+        int[] frame = new int[SRC_WIDTH * SRC_HEIGHT];
+        for (int y = 0; y < SRC_HEIGHT; y++) {
+            for (int x = 0; x < SRC_WIDTH; x++) {
+                int color = y == 0 ? 0xffff0000 : (y == SRC_HEIGHT - 1 ? 0xff0000ff : BLACK);
+                frame[y * SRC_WIDTH + x] = color;
+            }
+        }
+
+        // Wide enough to see past the pole: fetches there clamp to the
+        // nearest row rather than wrapping to the other pole.
+        int[] up = countLit(reproject(frame, 30, SphericalCamera.MAX_LATITUDE, 110));
+        assertTrue(up[0] > 0);
+        assertEquals(0, up[1]);
+
+        int[] down = countLit(reproject(frame, 30, -SphericalCamera.MAX_LATITUDE, 110));
+        assertEquals(0, down[0]);
+        assertTrue(down[1] > 0);
+    }
+
+    @Test
+    public void latitudeClampsLikeTheCamera() {
+        int[] frame = rampFrame();
+        assertArrayEquals(
+                reproject(frame, 10, SphericalCamera.MAX_LATITUDE, 70),
+                reproject(frame, 10, 90, 70));
+        assertArrayEquals(
+                reproject(frame, 10, -SphericalCamera.MAX_LATITUDE, 70),
+                reproject(frame, 10, -120, 70));
+    }
+
+    @Test
+    public void tiledMatchesSingleThreaded() {
+        int[] frame = new int[SRC_WIDTH * SRC_HEIGHT];
+        Random random = new Random(360);
+        for (int i = 0; i < frame.length; i++) {
+            frame[i] = random.nextInt();
+        }
+
+        // Several 64x64 tiles, the last ones partial.
+        int width = 200;
+        int height = 150;
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            EquirectReprojector reprojector = new EquirectReprojector(width, height, pool);
+            int[] tiled = new int[width * height];
+            int[] single = new int[width * height];
+            reprojector.reproject(frame, SRC_WIDTH, SRC_HEIGHT, 123, -20, 90, tiled);
+            reprojector.reprojectSingleThreaded(
+                    frame, SRC_WIDTH, SRC_HEIGHT, 123, -20, 90, single);
+            assertArrayEquals(single, tiled);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsShortOutput() {
+        new EquirectReprojector(OUT_SIZE, OUT_SIZE).reprojectSingleThreaded(
+                rampFrame(), SRC_WIDTH, SRC_HEIGHT, 0, 0, 70, new int[OUT_SIZE]);
+    }
+}
@@ -0,0 +1,151 @@
+/**
+ * Copyright 2016-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * Licensed under the Creative Commons CC BY-NC 4.0 Attribution-NonCommercial
+ * License (the "License"). You may obtain a copy of the License at
+ * https://creativecommons.org/licenses/by-nc/4.0/.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.oculus.sample.projection;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class FisheyeLensTest {
+    private static final float EPSILON = 1e-5f;
+    private static final float HALF_PI = (float) (Math.PI / 2);
+
+    // Image circle off the frame center, so u and v mix-ups show.
+    private static FisheyeLens lens(float yaw, float pitch, float roll) {
+        return new FisheyeLens(0.3f, 0.6f, 0.2f, 0.4f, 180, yaw, pitch, roll);
+    }
+
+    private static float[] project(FisheyeLens lens, float x, float y, float z) {
+        float[] out = new float[3];
+        out[2] = lens.project(x, y, z, out, 0);
+        return out;
+    }
+
+    private static void assertProjects(
+            float u, float v, float margin, FisheyeLens lens, float x, float y, float z) {
+        float[] out = project(lens, x, y, z);
+        assertEquals("u", u, out[0], EPSILON);
+        assertEquals("v", v, out[1], EPSILON);
+        assertEquals("margin", margin, out[2], EPSILON);
+    }
+
+    @Test
+    public void axisLandsOnCircleCenter() {
+        // Yaw 0, pitch 0 is the middle of an equirectangular frame.
+        assertProjects(0.3f, 0.6f, HALF_PI, lens(0, 0, 0), 0, -1, 0);
+        // Length does not matter.
+        assertProjects(0.3f, 0.6f, HALF_PI, lens(0, 0, 0), 0, -5, 0);
+    }
+
+    @Test
+    public void yawTurnsRightAndPitchUp() {
+        // u = 0.75 is a quarter turn right of the frame center.
+        assertProjects(0.3f, 0.6f, HALF_PI, lens(90, 0, 0), -1, 0, 0);
+        assertProjects(0.3f, 0.6f, HALF_PI, lens(0, 90, 0), 0, 0, 1);
+        assertProjects(0.3f, 0.6f, HALF_PI, lens(180, 0, 0), 0, 1, 0);
+    }
+
+    @Test
+    public void edgeOfFieldOfViewLandsOnCircle() {
+        FisheyeLens lens = lens(0, 0, 0);
+
+        // Right of the axis, then above it.
+        assertProjects(0.5f, 0.6f, 0, lens, -1, 0, 0);
+        assertProjects(0.3f, 0.2f, 0, lens, 0, 0, 1);
+    }
+
+    @Test
+    public void radiusIsProportionalToAngle() {
+        float s = (float) Math.sqrt(0.5);
+        // 45 degrees right and 45 degrees down, half way to the edge.
+        assertProjects(0.4f, 0.6f, HALF_PI / 2, lens(0, 0, 0), -s, -s, 0);
+        assertProjects(0.3f, 0.8f, HALF_PI / 2, lens(0, 0, 0), 0, -s, -s);
+    }
+
+    @Test
+    public void rollTurnsImageClockwise() {
+        // Turning the camera clockwise leaves what is above it on the left.
+        assertProjects(0.1f, 0.6f, 0, lens(0, 0, 90), 0, 0, 1);
+    }
+
+    @Test
+    public void outsideFieldOfViewHasNegativeMargin() {
+        FisheyeLens lens = new FisheyeLens(0.5f, 0.5f, 0.5f, 0.5f, 120, 0, 0, 0);
+
+        assertEquals(-(float) Math.toRadians(30), project(lens, -1, 0, 0)[2], EPSILON);
+        assertEquals(-(float) Math.toRadians(120), project(lens, 0, 1, 0)[2], EPSILON);
+    }
+
+    @Test
+    public void distortionKeepsEdgeOnCircle() {
+        float k1 = 0.05f;
+        float k2 = -0.01f;
+        FisheyeLens lens = new FisheyeLens(0.3f, 0.6f, 0.2f, 0.4f, 180, 0, 0, 0, k1, k2);
+
+        assertProjects(0.5f, 0.6f, 0, lens, -1, 0, 0);
+
+        float theta = HALF_PI / 2;
+        float rho = distort(theta, k1, k2) / distort(HALF_PI, k1, k2);
+        float s = (float) Math.sqrt(0.5);
+        assertProjects(0.3f + rho * 0.2f, 0.6f, theta, lens, -s, -s, 0);
+        assertTrue(rho != 0.5f);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsFullSphereFieldOfView() {
+        new FisheyeLens(0.5f, 0.5f, 0.5f, 0.5f, 360, 0, 0, 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsEmptyImageCircle() {
+        new FisheyeLens(0.5f, 0.5f, 0, 0.5f, 180, 0, 0, 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsDistortionThatFoldsCircle() {
+        new FisheyeLens(0.5f, 0.5f, 0.5f, 0.5f, 180, 0, 0, 0, -1, 0);
+    }
+
+    @Test
+    public void shaderParametersMatchLens() {
+        float k1 = 0.05f;
+        float k2 = -0.01f;
+        FisheyeLens lens = new FisheyeLens(0.3f, 0.6f, 0.2f, 0.4f, 180, 0, 0, 0, k1, k2);
+        float[] basis = new float[10];
+        float[] image = new float[5];
+        float[] model = new float[5];
+        lens.getShaderParameters(basis, 1, image, 1, model, 1);
+
+        float[] expectedBasis = {0, -1, 0, 0, 0, 0, 1, 0, -1, 0};
+        for (int i = 0; i < basis.length; i++) {
+            assertEquals("basis " + i, expectedBasis[i], basis[i], EPSILON);
+        }
+        float[] expectedImage = {0, 0.3f, 0.6f, 0.2f, 0.4f};
+        for (int i = 0; i < image.length; i++) {
+            assertEquals("image " + i, expectedImage[i], image[i], EPSILON);
+        }
+        float[] expectedModel = {0, HALF_PI, k1, k2, distort(HALF_PI, k1, k2)};
+        for (int i = 0; i < model.length; i++) {
+            assertEquals("model " + i, expectedModel[i], model[i], EPSILON);
+        }
+    }
+
+    private static float distort(float theta, float k1, float k2) {
+        float theta2 = theta * theta;
+        return theta * (1 + theta2 * (k1 + theta2 * k2));
+    }
+}
@@ -0,0 +1,112 @@
+/**
+ * Copyright 2016-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * Licensed under the Creative Commons CC BY-NC 4.0 Attribution-NonCommercial
+ * License (the "License"). You may obtain a copy of the License at
+ * https://creativecommons.org/licenses/by-nc/4.0/.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.oculus.sample.renderloop;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class AtomicPoseTest {
+    private static final float EPSILON = 1e-5f;
+
+    @Test
+    public void accumulatesDrags() {
+        AtomicPose pose = new AtomicPose(80.f);
+        pose.addDrag(10.f, 5.f, 1);
+        pose.addDrag(-2.5f, 10.f, 2);
+        pose.addDrag(400.f, -20.f, 3);
+
+        assertEquals(407.5f, pose.getLon(), EPSILON);
+        assertEquals(-5.f, pose.getLat(), EPSILON);
+    }
+
+    @Test
+    public void clampsLatitude() {
+        AtomicPose pose = new AtomicPose(80.f);
+        pose.addDrag(0.f, 100.f, 1);
+        assertEquals(80.f, pose.getLat(), EPSILON);
+        // Dragging back starts from the clamped latitude.
+        pose.addDrag(0.f, -30.f, 2);
+        assertEquals(50.f, pose.getLat(), EPSILON);
+        pose.addDrag(0.f, -200.f, 3);
+        assertEquals(-80.f, pose.getLat(), EPSILON);
+
+        pose.set(15.f, 95.f);
+        assertEquals(15.f, pose.getLon(), EPSILON);
+        assertEquals(80.f, pose.getLat(), EPSILON);
+    }
+
+    @Test
+    public void setIsNotInput() {
+        AtomicPose pose = new AtomicPose(80.f);
+        pose.set(30.f, 20.f);
+        assertFalse(pose.hasUnlatchedInput());
+
+        float[] lonLat = new float[2];
+        assertEquals(-1, pose.latch(lonLat));
+        assertEquals(30.f, lonLat[0], EPSILON);
+        assertEquals(20.f, lonLat[1], EPSILON);
+    }
+
+    @Test
+    public void latchReturnsOldestInputOnce() {
+        AtomicPose pose = new AtomicPose(80.f);
+        assertFalse(pose.hasUnlatchedInput());
+
+        pose.addDrag(1.f, 1.f, 100);
+        pose.addDrag(1.f, 1.f, 200);
+        assertTrue(pose.hasUnlatchedInput());
+
+        float[] lonLat = new float[2];
+        assertEquals(100, pose.latch(lonLat));
+        assertEquals(2.f, lonLat[0], EPSILON);
+        assertEquals(2.f, lonLat[1], EPSILON);
+        assertFalse(pose.hasUnlatchedInput());
+
+        // Latching again still samples the pose but reports no input.
+        assertEquals(-1, pose.latch(lonLat));
+        assertEquals(2.f, lonLat[0], EPSILON);
+
+        pose.addDrag(1.f, 0.f, 300);
+        assertEquals(300, pose.latch(lonLat));
+        assertEquals(3.f, lonLat[0], EPSILON);
+    }
+
+    @Test
+    public void concurrentDragsAreNotLost() throws InterruptedException {
+        final AtomicPose pose = new AtomicPose(90.f);
+        final int dragsPerThread = 10000;
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < dragsPerThread; i++) {
+                        pose.addDrag(1.f, 0.f, i);
+                    }
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(threads.length * dragsPerThread, pose.getLon(), EPSILON);
+    }
+}
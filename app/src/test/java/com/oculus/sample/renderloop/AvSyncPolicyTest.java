@@ -0,0 +1,317 @@
+/**
+ * Copyright 2016-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * Licensed under the Creative Commons CC BY-NC 4.0 Attribution-NonCommercial
+ * License (the "License"). You may obtain a copy of the License at
+ * https://creativecommons.org/licenses/by-nc/4.0/.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.oculus.sample.renderloop;
+
+import com.oculus.sample.telemetry.AvSyncStats;
+
+import org.junit.Test;
+
+import java.util.ArrayDeque;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class AvSyncPolicyTest {
+    private static final long MS = 1000000L;
+    private static final long VSYNC_60HZ = 16666667L;
+    // Frame times and vsyncs round to the nanosecond differently.
+    private static final long ONE_VSYNC = VSYNC_60HZ + 1000;
+
+    /**
+     * Decoded frames queued on a view, each known by when it is due.
+     */
+    private static class PlaybackTarget extends AvSyncTarget {
+        final ArrayDeque<Long> queue = new ArrayDeque<>();
+        long latchedDueNanos;
+
+        PlaybackTarget() {
+            super(null, new AvSyncStats(120));
+        }
+
+        long latchFrame() {
+            latchedDueNanos = queue.poll();
+            return latchedDueNanos;
+        }
+
+        @Override
+        protected boolean isPlaying() {
+            return true;
+        }
+
+        @Override
+        protected long latchQueuedFrame() {
+            return latchFrame();
+        }
+    }
+
+    /**
+     * Plays frames due every {@code 1 / videoFps} through a RenderLoop on a
+     * 60Hz display, with the host doing what the render thread does around
+     * an {@link AvSyncTarget}: each vsync the loop latches the oldest queued
+     * frame, or holds it, and the host drops stale ones, all at the expected
+     * scanout one vsync later. The decoder releases frames {@code leadMs}
+     * ahead of their due time with some jitter and drops them while three
+     * are queued. Every {@code spikeInterval}th draw takes {@code spikeMs},
+     * so its frame is late and the vsyncs it overruns are missed.
+     */
+    private static class Playback implements RenderLoop.Host, RenderLoop.Clock {
+        float videoFps = 30;
+        float leadMs = 20;
+        float jitterMs = 4;
+        int queueCapacity = 3;
+        int spikeInterval;
+        float spikeMs;
+        boolean correction = true;
+        int vsyncs = 600;
+        // The frame rate is only known after a few frames.
+        int warmupVsyncs = 10;
+
+        int framesShown;
+        long framesDropped;
+        long vsyncsHeld;
+        // Over frames drawn at normal cost after warm up. A frame whose own
+        // draw overruns is late by the overrun, which nothing decided at
+        // latch time can make up for.
+        long maxDriftNanos = Long.MIN_VALUE;
+        long minDriftNanos = Long.MAX_VALUE;
+
+        private final PlaybackTarget target = new PlaybackTarget();
+        private long vsyncNanos;
+        private int vsyncIndex;
+        private long busyUntilNanos;
+        private int draws;
+
+        Playback run() {
+            RenderLoop loop = new RenderLoop(this, this);
+            target.setAvSyncPolicy(new AvSyncPolicy(VSYNC_60HZ));
+            target.setAvSyncCorrectionEnabled(correction);
+            loop.addTarget(target);
+
+            Random random = new Random(360);
+            double framePeriodNanos = 1e9 / videoFps;
+            long leadNanos = (long) (leadMs * MS);
+            long jitterNanos = (long) (jitterMs * MS);
+
+            long nextFrame = 0;
+            long nextReleaseNanos = -leadNanos;
+
+            for (vsyncIndex = 0; vsyncIndex < vsyncs; vsyncIndex++) {
+                vsyncNanos = vsyncIndex * VSYNC_60HZ;
+                while (nextReleaseNanos <= vsyncNanos) {
+                    if (target.queue.size() < queueCapacity) {
+                        target.queue.add((long) (nextFrame * framePeriodNanos));
+                        loop.onFrameAvailable(target);
+                    }
+                    nextFrame++;
+                    nextReleaseNanos = (long) (nextFrame * framePeriodNanos) - leadNanos
+                            + (long) ((random.nextDouble() * 2 - 1) * jitterNanos);
+                }
+                if (vsyncNanos >= busyUntilNanos) {
+                    loop.onVsync(vsyncNanos);
+                }
+            }
+
+            framesDropped = target.getAvSyncStats().getFramesDropped();
+            vsyncsHeld = target.getAvSyncStats().getVsyncsHeld();
+            return this;
+        }
+
+        @Override
+        public long nanoTime() {
+            return vsyncNanos;
+        }
+
+        @Override
+        public void requestVsync() {
+        }
+
+        @Override
+        public void prepare(RenderLoop.Target target) {
+            this.target.onVsync(vsyncNanos + VSYNC_60HZ);
+        }
+
+        @Override
+        public void draw(RenderLoop.Target target, boolean latchFrame) {
+            if (!latchFrame) {
+                return;
+            }
+
+            this.target.syncLatchedFrame(this.target.latchFrame());
+            long dueNanos = this.target.latchedDueNanos;
+            assertEquals(this.target.getQueuedFrameCount(), this.target.queue.size());
+            framesShown++;
+
+            draws++;
+            boolean spike = spikeInterval > 0 && draws % spikeInterval == 0;
+            busyUntilNanos = vsyncNanos + (spike ? (long) (spikeMs * MS) : 4 * MS);
+            // Scanned out on the first vsync after the swap.
+            long scanoutNanos = (busyUntilNanos / VSYNC_60HZ + 1) * VSYNC_60HZ;
+            long shownDrift = scanoutNanos - dueNanos;
+
+            if (!spike && vsyncIndex >= warmupVsyncs) {
+                maxDriftNanos = Math.max(maxDriftNanos, shownDrift);
+                minDriftNanos = Math.min(minDriftNanos, shownDrift);
+            }
+        }
+
+        @Override
+        public boolean hasPendingWork() {
+            return false;
+        }
+    }
+
+    @Test
+    public void measuresDriftAtExpectedPresent() {
+        AvSyncPolicy policy = new AvSyncPolicy(VSYNC_60HZ);
+        assertEquals(10 * MS, policy.onFrameLatched(1000 * MS, 1010 * MS));
+        assertEquals(-20 * MS, policy.onFrameLatched(1050 * MS, 1030 * MS));
+        assertEquals(50 * MS, policy.getFrameIntervalNanos());
+    }
+
+    @Test
+    public void treatsJumpsAsDiscontinuities() {
+        AvSyncPolicy policy = new AvSyncPolicy(VSYNC_60HZ);
+        assertEquals(AvSyncPolicy.UNKNOWN_DRIFT, policy.onFrameLatched(0, 5000 * MS));
+        assertFalse(policy.shouldDrop(AvSyncPolicy.UNKNOWN_DRIFT, 3));
+    }
+
+    @Test
+    public void dropsOnlyWhileNextFrameIsNearer() {
+        AvSyncPolicy policy = new AvSyncPolicy(VSYNC_60HZ);
+        policy.onFrameLatched(0, 0);
+        policy.onFrameLatched(33 * MS, 33 * MS);
+
+        // The next frame would be 13ms early rather than 20ms late.
+        assertTrue(policy.shouldDrop(20 * MS, 1));
+        // 17ms early rather than 16ms late.
+        assertFalse(policy.shouldDrop(16 * MS, 1));
+        assertFalse(policy.shouldDrop(40 * MS, 0));
+    }
+
+    @Test
+    public void limitsDropsPerVsync() {
+        AvSyncPolicy policy = new AvSyncPolicy(VSYNC_60HZ, 2, 3);
+        policy.onVsync();
+        assertTrue(policy.shouldDrop(200 * MS, 5));
+        assertTrue(policy.shouldDrop(200 * MS, 4));
+        assertFalse(policy.shouldDrop(200 * MS, 3));
+
+        policy.onVsync();
+        assertTrue(policy.shouldDrop(200 * MS, 3));
+    }
+
+    @Test
+    public void holdsOnlyWhileNextFrameIsFurtherOff() {
+        AvSyncPolicy policy = new AvSyncPolicy(VSYNC_60HZ, 4, 2);
+        policy.onFrameLatched(0, 0);
+        policy.onFrameLatched(33 * MS, 33 * MS);
+
+        // The next frame is due at 66ms.
+        assertFalse(policy.shouldHold(60 * MS));
+        assertFalse(policy.shouldHold(50 * MS));
+        assertTrue(policy.shouldHold(40 * MS));
+        assertTrue(policy.shouldHold(40 * MS));
+        // Never more than maxConsecutiveHolds in a row.
+        assertFalse(policy.shouldHold(40 * MS));
+
+        policy.onFrameLatched(66 * MS, 50 * MS);
+        assertTrue(policy.shouldHold(50 * MS));
+    }
+
+    @Test
+    public void resetForgetsFrameHistory() {
+        AvSyncPolicy policy = new AvSyncPolicy(VSYNC_60HZ);
+        policy.onFrameLatched(0, 0);
+        policy.onFrameLatched(33 * MS, 33 * MS);
+        assertTrue(policy.shouldHold(40 * MS));
+
+        policy.reset();
+        assertEquals(0, policy.getFrameIntervalNanos());
+        assertFalse(policy.shouldHold(40 * MS));
+        // The next frame starts the history over rather than measuring an
+        // interval from before the reset.
+        policy.onFrameLatched(500 * MS, 500 * MS);
+        assertEquals(0, policy.getFrameIntervalNanos());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsInvalidVsyncPeriod() {
+        new AvSyncPolicy(0);
+    }
+
+    @Test
+    public void keeps60fpsWithinOneVsync() {
+        Playback playback = new Playback();
+        playback.videoFps = 60;
+        playback.leadMs = 30;
+        playback.run();
+
+        assertTrue(playback.maxDriftNanos <= ONE_VSYNC);
+        assertTrue(playback.minDriftNanos >= -ONE_VSYNC);
+    }
+
+    @Test
+    public void recovers30fpsWithinOneVsyncAfterSpikes() {
+        Playback uncorrected = new Playback();
+        uncorrected.spikeInterval = 10;
+        uncorrected.spikeMs = 80;
+        uncorrected.correction = false;
+        uncorrected.run();
+
+        Playback corrected = new Playback();
+        corrected.spikeInterval = 10;
+        corrected.spikeMs = 80;
+        corrected.run();
+
+        assertTrue(uncorrected.maxDriftNanos > 3 * VSYNC_60HZ);
+        assertTrue(corrected.maxDriftNanos <= ONE_VSYNC);
+        assertTrue(corrected.minDriftNanos >= -ONE_VSYNC);
+        assertTrue(corrected.framesDropped > 0);
+    }
+
+    @Test
+    public void recovers60fpsWithinOneVsyncAfterSpikes() {
+        Playback uncorrected = new Playback();
+        uncorrected.videoFps = 60;
+        uncorrected.spikeInterval = 20;
+        uncorrected.spikeMs = 40;
+        uncorrected.correction = false;
+        uncorrected.run();
+
+        Playback corrected = new Playback();
+        corrected.videoFps = 60;
+        corrected.spikeInterval = 20;
+        corrected.spikeMs = 40;
+        corrected.run();
+
+        assertTrue(uncorrected.maxDriftNanos > 2 * VSYNC_60HZ);
+        assertTrue(corrected.maxDriftNanos <= ONE_VSYNC);
+        assertTrue(corrected.minDriftNanos >= -ONE_VSYNC);
+    }
+
+    @Test
+    public void holdsFramesReleasedFarAhead() {
+        Playback playback = new Playback();
+        playback.leadMs = 90;
+        playback.run();
+
+        assertTrue(playback.vsyncsHeld > 0);
+        assertTrue(playback.minDriftNanos >= -ONE_VSYNC);
+        assertTrue(playback.maxDriftNanos <= ONE_VSYNC);
+    }
+}
@@ -0,0 +1,396 @@
+/**
+ * Copyright 2016-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * Licensed under the Creative Commons CC BY-NC 4.0 Attribution-NonCommercial
+ * License (the "License"). You may obtain a copy of the License at
+ * https://creativecommons.org/licenses/by-nc/4.0/.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.oculus.sample.renderloop;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class RenderLoopTest {
+    private static final long MS = 1000000L;
+    private static final long VSYNC_60HZ = 16666667L;
+
+    private static class FakeClock implements RenderLoop.Clock {
+        long nowNanos;
+
+        @Override
+        public long nanoTime() {
+            return nowNanos;
+        }
+    }
+
+    /**
+     * Records what the loop asks for. Every draw takes {@code drawNanos} on
+     * the clock and latches the pose half way through.
+     */
+    private static class FakeHost implements RenderLoop.Host {
+        final FakeClock clock;
+        long drawNanos;
+        int vsyncRequests;
+        int prepares;
+        boolean pendingWork;
+        final List<Boolean> draws = new ArrayList<>();
+        // Extra queued frames each draw latches over the first, if queued.
+        int dropsPerDraw;
+        int framesDropped;
+        // Runs once, half way through the next draw, before the pose latch.
+        Runnable duringDraw;
+
+        FakeHost(FakeClock clock) {
+            this.clock = clock;
+        }
+
+        @Override
+        public void requestVsync() {
+            vsyncRequests++;
+        }
+
+        @Override
+        public void prepare(RenderLoop.Target target) {
+            prepares++;
+        }
+
+        @Override
+        public void draw(RenderLoop.Target target, boolean latchFrame) {
+            draws.add(latchFrame);
+            for (int i = 0; i < dropsPerDraw && target.dropQueuedFrame(); i++) {
+                framesDropped++;
+            }
+            clock.nowNanos += drawNanos / 2;
+            if (duringDraw != null) {
+                Runnable runnable = duringDraw;
+                duringDraw = null;
+                runnable.run();
+            }
+            target.latchPose();
+            clock.nowNanos += drawNanos - drawNanos / 2;
+        }
+
+        @Override
+        public boolean hasPendingWork() {
+            return pendingWork;
+        }
+    }
+
+    private static class RecordingObserver implements RenderLoop.Observer {
+        final List<Long> frameLatencies = new ArrayList<>();
+        final List<Long> inputLatencies = new ArrayList<>();
+
+        @Override
+        public void onPresented(RenderLoop.Target target, long presentNanos,
+                long frameLatencyNanos, long inputLatencyNanos) {
+            frameLatencies.add(frameLatencyNanos);
+            inputLatencies.add(inputLatencyNanos);
+        }
+
+        @Override
+        public void onVsyncHandled(long frameTimeNanos, int targetsDrawn) {
+        }
+    }
+
+    private static class HoldingTarget extends RenderLoop.Target {
+        boolean hold;
+        int scrolls;
+
+        HoldingTarget() {
+        }
+
+        HoldingTarget(AtomicPose pose) {
+            super(pose);
+        }
+
+        @Override
+        protected boolean shouldHoldFrame() {
+            return hold;
+        }
+
+        @Override
+        protected void onScroll(float deltaX, float deltaY) {
+            scrolls++;
+        }
+    }
+
+    private FakeClock clock;
+    private FakeHost host;
+    private RecordingObserver observer;
+    private RenderLoop loop;
+    private HoldingTarget target;
+    private int vsyncCount;
+
+    @Before
+    public void setUp() {
+        clock = new FakeClock();
+        host = new FakeHost(clock);
+        observer = new RecordingObserver();
+        loop = new RenderLoop(host, clock);
+        loop.setObserver(observer);
+        target = new HoldingTarget();
+        loop.addTarget(target);
+        // Draws the view once for attaching.
+        vsync();
+        host.draws.clear();
+        observer.frameLatencies.clear();
+        observer.inputLatencies.clear();
+    }
+
+    /**
+     * Swaps the plain target for one reading its orientation from pose.
+     */
+    private HoldingTarget attachPosedTarget(AtomicPose pose) {
+        loop.removeTarget(target);
+        HoldingTarget posed = new HoldingTarget(pose);
+        loop.addTarget(posed);
+        vsync();
+        host.draws.clear();
+        observer.inputLatencies.clear();
+        return posed;
+    }
+
+    private void vsync() {
+        vsyncCount++;
+        clock.nowNanos = Math.max(clock.nowNanos, vsyncCount * VSYNC_60HZ);
+        loop.onVsync(clock.nowNanos);
+    }
+
+    @Test
+    public void latchesOneFramePerVsync() {
+        loop.onFrameAvailable(target);
+        loop.onFrameAvailable(target);
+        loop.onFrameAvailable(target);
+
+        for (int i = 2; i >= 0; i--) {
+            vsync();
+            assertEquals(i, target.getQueuedFrameCount());
+        }
+        assertEquals(3, host.draws.size());
+        for (boolean latched : host.draws) {
+            assertTrue(latched);
+        }
+
+        vsync();
+        assertEquals(3, host.draws.size());
+    }
+
+    @Test
+    public void reportsLatencyFromFrameArrival() {
+        clock.nowNanos += 5 * MS;
+        long arrivalNanos = clock.nowNanos;
+        loop.onFrameAvailable(target);
+        host.drawNanos = 4 * MS;
+        vsync();
+
+        long presentNanos = vsyncCount * VSYNC_60HZ + 4 * MS;
+        assertEquals(presentNanos - arrivalNanos, (long) observer.frameLatencies.get(0));
+        assertEquals(-1, (long) observer.inputLatencies.get(0));
+    }
+
+    @Test
+    public void invalidateRedrawsWithoutFrame() {
+        loop.invalidate(target);
+        vsync();
+        vsync();
+
+        assertEquals(1, host.draws.size());
+        assertFalse(host.draws.get(0));
+    }
+
+    @Test
+    public void scrollRedrawsWithoutFrameAndReportsInputLatency() {
+        long eventNanos = clock.nowNanos + MS;
+        loop.onScroll(target, 1.f, 2.f, eventNanos);
+        loop.onScroll(target, 1.f, 2.f, eventNanos + MS);
+        vsync();
+        long presentNanos = clock.nowNanos;
+        vsync();
+
+        assertEquals(2, target.scrolls);
+        assertEquals(1, host.draws.size());
+        assertFalse(host.draws.get(0));
+        // From the oldest of the drags shown.
+        assertEquals(presentNanos - eventNanos, (long) observer.inputLatencies.get(0));
+    }
+
+    @Test
+    public void lateLatchSavesAVsyncOverMessages() {
+        final AtomicPose pose = new AtomicPose(90.f);
+        HoldingTarget posed = attachPosedTarget(pose);
+        host.drawNanos = 8 * MS;
+        final long[] eventNanos = new long[1];
+
+        // Lands while the frame is drawn, before its pose is latched, and
+        // is shown by that frame.
+        host.duringDraw = new Runnable() {
+            @Override
+            public void run() {
+                pose.addDrag(1.f, 0.f, clock.nowNanos);
+            }
+        };
+        loop.onFrameAvailable(posed);
+        vsync();
+        long lateLatchNanos = observer.inputLatencies.get(0);
+        assertEquals(4 * MS, lateLatchNanos);
+        assertFalse(posed.needsRedraw());
+
+        // The same drag as a message waits behind the draw, then for the
+        // next vsync.
+        host.duringDraw = new Runnable() {
+            @Override
+            public void run() {
+                eventNanos[0] = clock.nowNanos;
+            }
+        };
+        loop.onFrameAvailable(posed);
+        vsync();
+        loop.onScroll(posed, 1.f, 0.f, eventNanos[0]);
+        vsync();
+
+        assertEquals(-1, (long) observer.inputLatencies.get(1));
+        long messageNanos = observer.inputLatencies.get(2);
+        assertEquals(VSYNC_60HZ, messageNanos - lateLatchNanos);
+        assertEquals(1, posed.scrolls);
+    }
+
+    @Test
+    public void heldFrameStaysQueued() {
+        target.hold = true;
+        loop.onFrameAvailable(target);
+        vsync();
+        vsync();
+
+        assertEquals(0, host.draws.size());
+        assertEquals(1, target.getQueuedFrameCount());
+        assertTrue(target.needsRedraw());
+
+        // A camera change still redraws, with the frame on screen.
+        loop.invalidate(target);
+        vsync();
+        assertEquals(1, host.draws.size());
+        assertFalse(host.draws.get(0));
+        assertEquals(1, target.getQueuedFrameCount());
+
+        target.hold = false;
+        vsync();
+        assertEquals(2, host.draws.size());
+        assertTrue(host.draws.get(1));
+        assertEquals(0, target.getQueuedFrameCount());
+    }
+
+    @Test
+    public void droppedFramesLeaveQueue() {
+        assertFalse(target.dropQueuedFrame());
+
+        host.dropsPerDraw = 2;
+        for (int i = 0; i < 4; i++) {
+            loop.onFrameAvailable(target);
+        }
+        vsync();
+
+        // One latched, two dropped over it.
+        assertEquals(2, host.framesDropped);
+        assertEquals(1, target.getQueuedFrameCount());
+
+        vsync();
+        assertEquals(2, host.framesDropped);
+        assertEquals(0, target.getQueuedFrameCount());
+        assertEquals(2, host.draws.size());
+    }
+
+    @Test
+    public void droppedFramesKeepLatencyOfLatchedFrame() {
+        host.dropsPerDraw = 1;
+        long firstArrivalNanos = clock.nowNanos;
+        loop.onFrameAvailable(target);
+        clock.nowNanos += 5 * MS;
+        loop.onFrameAvailable(target);
+        clock.nowNanos += 5 * MS;
+        loop.onFrameAvailable(target);
+        vsync();
+
+        // The oldest frame is the one latched; the next is dropped and the
+        // last one's arrival time is kept for its own latch.
+        assertEquals(clock.nowNanos - firstArrivalNanos, (long) observer.frameLatencies.get(0));
+        vsync();
+        long lastArrivalNanos = firstArrivalNanos + 10 * MS;
+        assertEquals(clock.nowNanos - lastArrivalNanos, (long) observer.frameLatencies.get(1));
+    }
+
+    @Test
+    public void idleLoopRequestsNoVsyncs() {
+        loop.setContinuousVsync(false);
+        vsync();
+        int requests = host.vsyncRequests;
+        vsync();
+        vsync();
+        assertEquals(requests, host.vsyncRequests);
+
+        loop.onFrameAvailable(target);
+        assertEquals(requests + 1, host.vsyncRequests);
+        // Asked for once until it arrives.
+        loop.onFrameAvailable(target);
+        loop.invalidate(target);
+        assertEquals(requests + 1, host.vsyncRequests);
+
+        vsync();
+        // One frame still queued.
+        assertEquals(requests + 2, host.vsyncRequests);
+        vsync();
+        vsync();
+        assertEquals(requests + 2, host.vsyncRequests);
+    }
+
+    @Test
+    public void pendingHostWorkKeepsVsyncsComing() {
+        loop.setContinuousVsync(false);
+        vsync();
+        int requests = host.vsyncRequests;
+
+        host.pendingWork = true;
+        loop.requestVsync();
+        vsync();
+        vsync();
+        assertEquals(requests + 3, host.vsyncRequests);
+        assertEquals(0, host.draws.size());
+    }
+
+    @Test
+    public void continuousLoopRequestsEveryVsync() {
+        int requests = host.vsyncRequests;
+        vsync();
+        vsync();
+        assertEquals(requests + 2, host.vsyncRequests);
+    }
+
+    @Test
+    public void detachedTargetIsIgnored() {
+        assertTrue(loop.removeTarget(target));
+        assertFalse(loop.removeTarget(target));
+        int requests = host.vsyncRequests;
+
+        loop.onFrameAvailable(target);
+        loop.onScroll(target, 1.f, 1.f, clock.nowNanos);
+        vsync();
+        assertEquals(0, target.getQueuedFrameCount());
+        assertEquals(0, target.scrolls);
+        assertEquals(requests, host.vsyncRequests);
+        assertEquals(0, host.draws.size());
+    }
+}
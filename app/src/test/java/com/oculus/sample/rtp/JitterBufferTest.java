@@ -0,0 +1,146 @@
+/**
+ * Copyright 2016-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * Licensed under the Creative Commons CC BY-NC 4.0 Attribution-NonCommercial
+ * License (the "License"). You may obtain a copy of the License at
+ * https://creativecommons.org/licenses/by-nc/4.0/.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.oculus.sample.rtp;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class JitterBufferTest {
+    private static final long MS = 1000000L;
+    private static final int SSRC = 0x1234;
+
+    private static RtpPacket packet(int sequence, long arrivalNanos) {
+        return packet(sequence, arrivalNanos, SSRC);
+    }
+
+    private static RtpPacket packet(int sequence, long arrivalNanos, int ssrc) {
+        RtpPacket packet = new RtpPacket();
+        packet.set(96, false, sequence, 0, ssrc, new byte[1], 0, 1);
+        packet.arrivalNanos = arrivalNanos;
+        return packet;
+    }
+
+    private static void assertPolls(int sequence, JitterBuffer buffer, long nowNanos) {
+        RtpPacket packet = buffer.poll(nowNanos);
+        assertEquals(sequence, packet == null ? -1 : packet.sequenceNumber);
+    }
+
+    @Test
+    public void releasesInOrderPacketsAcrossTheWrap() {
+        JitterBuffer buffer = new JitterBuffer(16, 5 * MS);
+        int[] sequence = {0xfffe, 0xffff, 0, 1};
+        for (int s : sequence) {
+            RtpPacket packet = packet(s, 0);
+            assertTrue(buffer.add(packet));
+            assertSame(packet, buffer.poll(0));
+        }
+
+        assertNull(buffer.poll(0));
+        assertEquals(4, buffer.getPacketsReceived());
+        assertEquals(0, buffer.getPacketsLost());
+        assertEquals(0, buffer.getPacketsReordered());
+    }
+
+    @Test
+    public void waitsForReorderedPacketWithinDelay() {
+        JitterBuffer buffer = new JitterBuffer(16, 5 * MS);
+        buffer.add(packet(0xffff, 0));
+        buffer.add(packet(1, 0));
+        assertPolls(0xffff, buffer, 0);
+        assertPolls(-1, buffer, 4 * MS);
+
+        buffer.add(packet(0, 4 * MS));
+        assertPolls(0, buffer, 4 * MS);
+        assertPolls(1, buffer, 4 * MS);
+        assertEquals(0, buffer.getPacketsLost());
+        assertEquals(1, buffer.getPacketsReordered());
+    }
+
+    @Test
+    public void givesUpGapAfterDelay() {
+        JitterBuffer buffer = new JitterBuffer(16, 5 * MS);
+        buffer.add(packet(10, 0));
+        buffer.add(packet(13, MS));
+        assertPolls(10, buffer, MS);
+        assertEquals(6 * MS, buffer.getDeadlineNanos());
+
+        assertPolls(-1, buffer, 6 * MS - 1);
+        assertPolls(13, buffer, 6 * MS);
+        assertEquals(2, buffer.getPacketsLost());
+        assertEquals(-1, buffer.getDeadlineNanos());
+
+        // Too late once given up.
+        assertFalse(buffer.add(packet(11, 7 * MS)));
+        assertEquals(1, buffer.getPacketsLate());
+    }
+
+    @Test
+    public void dropsDuplicates() {
+        JitterBuffer buffer = new JitterBuffer(16, 5 * MS);
+        buffer.add(packet(1, 0));
+        buffer.add(packet(3, 0));
+        assertFalse(buffer.add(packet(3, 0)));
+        assertEquals(1, buffer.getPacketsLate());
+    }
+
+    @Test
+    public void newSsrcRestartsTheSequence() {
+        JitterBuffer buffer = new JitterBuffer(16, 5 * MS);
+        buffer.add(packet(100, 0));
+        assertPolls(100, buffer, 0);
+
+        // Would be far behind or ahead for the old source.
+        assertTrue(buffer.add(packet(40000, MS, 0x5678)));
+        assertPolls(40000, buffer, MS);
+        assertEquals(0, buffer.getPacketsLost());
+    }
+
+    @Test
+    public void packetFarBehindRestartsTheSequence() {
+        JitterBuffer buffer = new JitterBuffer(16, 5 * MS);
+        buffer.add(packet(1000, 0));
+        assertPolls(1000, buffer, 0);
+
+        assertTrue(buffer.add(packet(900, MS)));
+        assertPolls(900, buffer, MS);
+    }
+
+    @Test
+    public void skipsAheadWhenPacketDoesNotFit() {
+        JitterBuffer buffer = new JitterBuffer(4, 5 * MS);
+        buffer.add(packet(0, 0));
+        assertPolls(0, buffer, 0);
+        buffer.add(packet(2, 0));
+
+        // Offset 9 from the next expected packet, 1.
+        buffer.add(packet(10, 0));
+        assertEquals(6, buffer.getPacketsLost());
+        // Packet 2 went with the skipped ones; 7 to 9 are still waited for.
+        assertPolls(-1, buffer, 0);
+        assertPolls(10, buffer, 5 * MS);
+        assertEquals(9, buffer.getPacketsLost());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsCapacityNotPowerOfTwo() {
+        new JitterBuffer(12, 5 * MS);
+    }
+}
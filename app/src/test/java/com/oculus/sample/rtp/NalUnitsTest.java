@@ -0,0 +1,88 @@
+/**
+ * Copyright 2016-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * Licensed under the Creative Commons CC BY-NC 4.0 Attribution-NonCommercial
+ * License (the "License"). You may obtain a copy of the License at
+ * https://creativecommons.org/licenses/by-nc/4.0/.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.oculus.sample.rtp;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class NalUnitsTest {
+    @Test
+    public void readsTypeFromHeader() {
+        assertEquals(5, NalUnits.type(false, (byte) 0x65));
+        assertEquals(7, NalUnits.type(false, (byte) 0x67));
+        assertEquals(19, NalUnits.type(true, (byte) 0x26));
+        assertEquals(32, NalUnits.type(true, (byte) 0x40));
+    }
+
+    @Test
+    public void classifiesKeyframesAndParameterSets() {
+        assertTrue(NalUnits.isKeyframe(false, 5));
+        assertFalse(NalUnits.isKeyframe(false, 1));
+        // BLA, IDR and CRA pictures.
+        assertTrue(NalUnits.isKeyframe(true, 16));
+        assertTrue(NalUnits.isKeyframe(true, 21));
+        assertFalse(NalUnits.isKeyframe(true, 1));
+
+        assertTrue(NalUnits.isParameterSet(false, 7));
+        assertTrue(NalUnits.isParameterSet(false, 8));
+        assertFalse(NalUnits.isParameterSet(false, 6));
+        assertTrue(NalUnits.isParameterSet(true, 32));
+        assertTrue(NalUnits.isParameterSet(true, 34));
+        assertFalse(NalUnits.isParameterSet(true, 35));
+    }
+
+    @Test
+    public void findsNalUnitsAfterEitherStartCode() {
+        byte[] stream = RtpDepacketizerTest.bytes(
+                0, 0, 0, 1, 0x67, 0x42, 0,
+                0, 0, 1, 0x68, 0xce,
+                0, 0, 0, 1, 0x65, 0x88);
+
+        int sps = NalUnits.findNalUnit(stream, 0, stream.length);
+        assertEquals(4, sps);
+        // The trailing zero of the SPS is the next start code's.
+        assertEquals(6, NalUnits.findNalUnitEnd(stream, sps, stream.length));
+
+        int pps = NalUnits.findNalUnit(stream, sps, stream.length);
+        assertEquals(10, pps);
+        assertEquals(12, NalUnits.findNalUnitEnd(stream, pps, stream.length));
+
+        int idr = NalUnits.findNalUnit(stream, pps, stream.length);
+        assertEquals(16, idr);
+        assertEquals(stream.length, NalUnits.findNalUnitEnd(stream, idr, stream.length));
+        assertEquals(-1, NalUnits.findNalUnit(stream, idr, stream.length));
+    }
+
+    @Test
+    public void firstSliceStartsAccessUnit() {
+        byte[] firstSlice = RtpDepacketizerTest.bytes(0x41, 0x80);
+        byte[] nextSlice = RtpDepacketizerTest.bytes(0x41, 0x40);
+        byte[] sps = RtpDepacketizerTest.bytes(0x67, 0x42);
+
+        assertTrue(NalUnits.startsAccessUnit(false, firstSlice, 0, 2, true));
+        assertFalse(NalUnits.startsAccessUnit(false, firstSlice, 0, 2, false));
+        assertFalse(NalUnits.startsAccessUnit(false, nextSlice, 0, 2, true));
+        assertTrue(NalUnits.startsAccessUnit(false, sps, 0, 2, true));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsOtherCodecs() {
+        NalUnits.isHevc("video/x-vnd.on2.vp9");
+    }
+}
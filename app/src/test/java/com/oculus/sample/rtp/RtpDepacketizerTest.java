@@ -0,0 +1,215 @@
+/**
+ * Copyright 2016-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * Licensed under the Creative Commons CC BY-NC 4.0 Attribution-NonCommercial
+ * License (the "License"). You may obtain a copy of the License at
+ * https://creativecommons.org/licenses/by-nc/4.0/.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.oculus.sample.rtp;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class RtpDepacketizerTest {
+    private static final int SSRC = 0x1234;
+
+    /**
+     * Copies of the access units handed out, which are reused.
+     */
+    private static class Collector implements RtpDepacketizer.Listener {
+        final List<byte[]> data = new ArrayList<>();
+        final List<Boolean> keyframes = new ArrayList<>();
+        final List<Boolean> parameterSets = new ArrayList<>();
+        final List<Boolean> damaged = new ArrayList<>();
+        final List<Long> timestamps = new ArrayList<>();
+
+        @Override
+        public void onAccessUnit(AccessUnit unit) {
+            data.add(Arrays.copyOf(unit.data, unit.size));
+            keyframes.add(unit.keyframe);
+            parameterSets.add(unit.hasParameterSets);
+            damaged.add(unit.damaged);
+            timestamps.add(unit.timestamp);
+        }
+    }
+
+    static byte[] bytes(int... values) {
+        byte[] bytes = new byte[values.length];
+        for (int i = 0; i < values.length; i++) {
+            bytes[i] = (byte) values[i];
+        }
+        return bytes;
+    }
+
+    private static RtpPacket packet(int sequence, long timestamp, boolean marker, int... payload) {
+        RtpPacket packet = new RtpPacket();
+        byte[] data = bytes(payload);
+        packet.set(96, marker, sequence, timestamp, SSRC, data, 0, data.length);
+        return packet;
+    }
+
+    @Test
+    public void singleNalUnitPacket() {
+        Collector collector = new Collector();
+        RtpDepacketizer depacketizer = new RtpDepacketizer(NalUnits.MIME_AVC, collector);
+        depacketizer.push(packet(1, 3000, true, 0x65, 0x88, 0x01));
+
+        assertEquals(1, collector.data.size());
+        assertArrayEquals(bytes(0, 0, 0, 1, 0x65, 0x88, 0x01), collector.data.get(0));
+        assertTrue(collector.keyframes.get(0));
+        assertFalse(collector.damaged.get(0));
+        assertEquals(3000L, (long) collector.timestamps.get(0));
+    }
+
+    @Test
+    public void splitsStapA() {
+        Collector collector = new Collector();
+        RtpDepacketizer depacketizer = new RtpDepacketizer(NalUnits.MIME_AVC, collector);
+        depacketizer.push(packet(1, 0, false,
+                0x18,
+                0, 3, 0x67, 0x42, 0x00,
+                0, 2, 0x68, 0xce));
+        depacketizer.push(packet(2, 0, true, 0x65, 0x88));
+
+        assertArrayEquals(
+                bytes(0, 0, 0, 1, 0x67, 0x42, 0x00,
+                        0, 0, 0, 1, 0x68, 0xce,
+                        0, 0, 0, 1, 0x65, 0x88),
+                collector.data.get(0));
+        assertTrue(collector.parameterSets.get(0));
+        assertTrue(collector.keyframes.get(0));
+        assertFalse(collector.damaged.get(0));
+    }
+
+    @Test
+    public void splitsHevcAggregationPacket() {
+        Collector collector = new Collector();
+        RtpDepacketizer depacketizer = new RtpDepacketizer(NalUnits.MIME_HEVC, collector);
+        depacketizer.push(packet(1, 0, true,
+                0x60, 0x01,
+                0, 3, 0x40, 0x01, 0x0c,
+                0, 3, 0x26, 0x01, 0xaf));
+
+        assertArrayEquals(
+                bytes(0, 0, 0, 1, 0x40, 0x01, 0x0c,
+                        0, 0, 0, 1, 0x26, 0x01, 0xaf),
+                collector.data.get(0));
+        assertTrue(collector.parameterSets.get(0));
+        // Type 19, IDR_W_RADL.
+        assertTrue(collector.keyframes.get(0));
+    }
+
+    @Test
+    public void truncatedAggregateIsDamaged() {
+        Collector collector = new Collector();
+        RtpDepacketizer depacketizer = new RtpDepacketizer(NalUnits.MIME_AVC, collector);
+        depacketizer.push(packet(1, 0, true, 0x18, 0, 9, 0x67, 0x42));
+
+        assertTrue(collector.damaged.get(0));
+    }
+
+    @Test
+    public void reassemblesFuA() {
+        Collector collector = new Collector();
+        RtpDepacketizer depacketizer = new RtpDepacketizer(NalUnits.MIME_AVC, collector);
+        depacketizer.push(packet(1, 0, false, 0x7c, 0x85, 0x01, 0x02));
+        depacketizer.push(packet(2, 0, false, 0x7c, 0x05, 0x03));
+        depacketizer.push(packet(3, 0, true, 0x7c, 0x45, 0x04));
+
+        assertEquals(1, collector.data.size());
+        // The NAL header comes back from the FU indicator and header.
+        assertArrayEquals(bytes(0, 0, 0, 1, 0x65, 0x01, 0x02, 0x03, 0x04),
+                collector.data.get(0));
+        assertTrue(collector.keyframes.get(0));
+        assertFalse(collector.damaged.get(0));
+    }
+
+    @Test
+    public void reassemblesHevcFu() {
+        Collector collector = new Collector();
+        RtpDepacketizer depacketizer = new RtpDepacketizer(NalUnits.MIME_HEVC, collector);
+        depacketizer.push(packet(1, 0, false, 0x62, 0x01, 0x93, 0xaa));
+        depacketizer.push(packet(2, 0, true, 0x62, 0x01, 0x53, 0xbb));
+
+        assertArrayEquals(bytes(0, 0, 0, 1, 0x26, 0x01, 0xaa, 0xbb), collector.data.get(0));
+        assertTrue(collector.keyframes.get(0));
+    }
+
+    @Test
+    public void fragmentWithoutStartIsDamaged() {
+        Collector collector = new Collector();
+        RtpDepacketizer depacketizer = new RtpDepacketizer(NalUnits.MIME_AVC, collector);
+        depacketizer.push(packet(2, 0, false, 0x7c, 0x05, 0x03));
+        depacketizer.push(packet(3, 0, true, 0x7c, 0x45, 0x04));
+
+        assertEquals(1, collector.data.size());
+        assertEquals(0, collector.data.get(0).length);
+        assertTrue(collector.damaged.get(0));
+        assertEquals(1, depacketizer.getDamagedAccessUnits());
+    }
+
+    @Test
+    public void lossInsideFragmentDropsTheNalUnit() {
+        Collector collector = new Collector();
+        RtpDepacketizer depacketizer = new RtpDepacketizer(NalUnits.MIME_AVC, collector);
+        depacketizer.push(packet(1, 0, false, 0x67, 0x42));
+        depacketizer.push(packet(2, 0, false, 0x7c, 0x85, 0x01));
+        // 3 is lost.
+        depacketizer.push(packet(4, 0, true, 0x7c, 0x45, 0x04));
+
+        // What came before the broken NAL unit is kept.
+        assertArrayEquals(bytes(0, 0, 0, 1, 0x67, 0x42), collector.data.get(0));
+        assertTrue(collector.damaged.get(0));
+    }
+
+    @Test
+    public void newTimestampCompletesUnitWithoutMarker() {
+        Collector collector = new Collector();
+        RtpDepacketizer depacketizer = new RtpDepacketizer(NalUnits.MIME_AVC, collector);
+        depacketizer.push(packet(1, 0, false, 0x41, 0x9a));
+        depacketizer.push(packet(2, 3000, true, 0x41, 0x9b));
+
+        assertEquals(2, collector.data.size());
+        assertTrue(collector.damaged.get(0));
+        assertFalse(collector.damaged.get(1));
+        assertEquals(3000L, (long) collector.timestamps.get(1));
+        assertEquals(2, depacketizer.getAccessUnits());
+    }
+
+    @Test
+    public void sequenceWrapIsNotLoss() {
+        Collector collector = new Collector();
+        RtpDepacketizer depacketizer = new RtpDepacketizer(NalUnits.MIME_AVC, collector);
+        depacketizer.push(packet(0xffff, 0, false, 0x7c, 0x85, 0x01));
+        depacketizer.push(packet(0, 0, true, 0x7c, 0x45, 0x02));
+
+        assertArrayEquals(bytes(0, 0, 0, 1, 0x65, 0x01, 0x02), collector.data.get(0));
+        assertFalse(collector.damaged.get(0));
+    }
+
+    @Test
+    public void interleavedModePacketsAreDamaged() {
+        Collector collector = new Collector();
+        RtpDepacketizer depacketizer = new RtpDepacketizer(NalUnits.MIME_AVC, collector);
+        // STAP-B.
+        depacketizer.push(packet(1, 0, true, 0x19, 0, 0, 0, 2, 0x67, 0x42));
+
+        assertTrue(collector.damaged.get(0));
+    }
+}
@@ -0,0 +1,102 @@
+/**
+ * Copyright 2016-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * Licensed under the Creative Commons CC BY-NC 4.0 Attribution-NonCommercial
+ * License (the "License"). You may obtain a copy of the License at
+ * https://creativecommons.org/licenses/by-nc/4.0/.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.oculus.sample.rtp;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class RtpPacketTest {
+    private static RtpPacket received(int... bytes) {
+        RtpPacket packet = new RtpPacket();
+        for (int i = 0; i < bytes.length; i++) {
+            packet.buffer[i] = (byte) bytes[i];
+        }
+        return packet;
+    }
+
+    @Test
+    public void parsesWhatSetWrites() {
+        RtpPacket sent = new RtpPacket();
+        byte[] payload = {1, 2, 3, 4, 5};
+        sent.set(96, true, 0xfffe, 0xfffffff0L, 0x12345678, payload, 1, 3);
+
+        RtpPacket packet = new RtpPacket();
+        System.arraycopy(sent.buffer, 0, packet.buffer, 0, sent.length);
+        assertTrue(packet.parse(sent.length, 42));
+        assertEquals(96, packet.payloadType);
+        assertTrue(packet.marker);
+        assertEquals(0xfffe, packet.sequenceNumber);
+        assertEquals(0xfffffff0L, packet.timestamp);
+        assertEquals(0x12345678, packet.ssrc);
+        assertEquals(42, packet.arrivalNanos);
+        assertEquals(RtpPacket.HEADER_SIZE, packet.payloadOffset);
+        assertEquals(3, packet.payloadLength);
+        assertEquals(2, packet.buffer[packet.payloadOffset]);
+    }
+
+    @Test
+    public void skipsCsrcsExtensionAndPadding() {
+        RtpPacket packet = received(
+                // V=2, padding, extension, one CSRC.
+                0xb1, 0x60, 0x00, 0x07,
+                0, 0, 0, 1,
+                0, 0, 0, 2,
+                0xca, 0xfe, 0xba, 0xbe,
+                // Extension of two words.
+                0xbe, 0xde, 0x00, 0x02,
+                1, 2, 3, 4,
+                5, 6, 7, 8,
+                // Payload, then three bytes of padding.
+                0x65, 0x11, 0x22, 0, 0, 3);
+
+        assertTrue(packet.parse(34, 0));
+        assertEquals(7, packet.sequenceNumber);
+        assertEquals(28, packet.payloadOffset);
+        assertEquals(3, packet.payloadLength);
+        assertEquals(0x65, packet.buffer[packet.payloadOffset] & 0xff);
+    }
+
+    @Test
+    public void rejectsMalformedPackets() {
+        // Too short for a header.
+        assertFalse(received(0x80, 0x60, 0, 1).parse(4, 0));
+        // Version 1.
+        assertFalse(received(0x40, 0x60, 0, 1, 0, 0, 0, 0, 0, 0, 0, 0, 0x65).parse(13, 0));
+        // Extension header cut off.
+        assertFalse(received(0x90, 0x60, 0, 1, 0, 0, 0, 0, 0, 0, 0, 0, 0xbe, 0xde)
+                .parse(14, 0));
+        // Padding eats the whole payload.
+        assertFalse(received(0xa0, 0x60, 0, 1, 0, 0, 0, 0, 0, 0, 0, 0, 0x65, 2)
+                .parse(14, 0));
+    }
+
+    @Test
+    public void sequenceDeltaWrapsAt16Bits() {
+        assertEquals(1, RtpPacket.sequenceDelta(0, 0xffff));
+        assertEquals(-1, RtpPacket.sequenceDelta(0xffff, 0));
+        assertEquals(21, RtpPacket.sequenceDelta(5, 0xfff0));
+        assertEquals(-3, RtpPacket.sequenceDelta(100, 103));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsOversizedPayload() {
+        byte[] payload = new byte[RtpPacket.MAX_SIZE];
+        new RtpPacket().set(96, false, 0, 0, 0, payload, 0, payload.length);
+    }
+}
@@ -0,0 +1,146 @@
+/**
+ * Copyright 2016-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * Licensed under the Creative Commons CC BY-NC 4.0 Attribution-NonCommercial
+ * License (the "License"). You may obtain a copy of the License at
+ * https://creativecommons.org/licenses/by-nc/4.0/.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.oculus.sample.rtp;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class RtpPacketizerTest {
+    private static final int SSRC = 0x1234;
+
+    /**
+     * Feeds every packet sent straight into a depacketizer and keeps copies
+     * of what comes out.
+     */
+    private static class Loopback implements RtpPacketizer.Sink, RtpDepacketizer.Listener {
+        final RtpDepacketizer depacketizer;
+        final List<byte[]> units = new ArrayList<>();
+        final List<Boolean> damaged = new ArrayList<>();
+        final List<Integer> payloadLengths = new ArrayList<>();
+        final List<Boolean> markers = new ArrayList<>();
+        final List<Integer> sequenceNumbers = new ArrayList<>();
+
+        Loopback(String mime) {
+            depacketizer = new RtpDepacketizer(mime, this);
+        }
+
+        @Override
+        public void send(RtpPacket packet) throws IOException {
+            payloadLengths.add(packet.payloadLength);
+            markers.add(packet.marker);
+            sequenceNumbers.add(packet.sequenceNumber);
+            depacketizer.push(packet);
+        }
+
+        @Override
+        public void onAccessUnit(AccessUnit unit) {
+            units.add(Arrays.copyOf(unit.data, unit.size));
+            damaged.add(unit.damaged);
+        }
+    }
+
+    /**
+     * An Annex B access unit of parameter sets and one {@code sliceSize}
+     * byte slice of random data without start code emulation.
+     */
+    private static byte[] accessUnit(boolean hevc, int sliceSize) {
+        byte[] header = hevc
+                ? RtpDepacketizerTest.bytes(
+                        0, 0, 0, 1, 0x40, 0x01, 0x0c,
+                        0, 0, 0, 1, 0x42, 0x01, 0x01,
+                        0, 0, 0, 1, 0x26, 0x01)
+                : RtpDepacketizerTest.bytes(
+                        0, 0, 0, 1, 0x67, 0x42, 0x1f,
+                        0, 0, 0, 1, 0x68, 0xce,
+                        0, 0, 0, 1, 0x65);
+        byte[] unit = Arrays.copyOf(header, header.length + sliceSize);
+        Random random = new Random(sliceSize);
+        for (int i = header.length; i < unit.length; i++) {
+            unit[i] = (byte) (1 + random.nextInt(255));
+        }
+        return unit;
+    }
+
+    private static void assertRoundTrips(String mime) throws IOException {
+        boolean hevc = NalUnits.isHevc(mime);
+        Loopback loopback = new Loopback(mime);
+        RtpPacketizer packetizer = new RtpPacketizer(
+                mime, RtpPacketizer.DYNAMIC_PAYLOAD_TYPE, SSRC, 100, loopback);
+
+        byte[] first = accessUnit(hevc, 350);
+        byte[] second = accessUnit(hevc, 40);
+        packetizer.send(first, 0, first.length, 0);
+        packetizer.send(second, 0, second.length, 3000);
+
+        assertEquals(2, loopback.units.size());
+        assertArrayEquals(first, loopback.units.get(0));
+        assertArrayEquals(second, loopback.units.get(1));
+        assertFalse(loopback.damaged.get(0));
+        assertFalse(loopback.damaged.get(1));
+
+        int markers = 0;
+        for (int i = 0; i < loopback.payloadLengths.size(); i++) {
+            assertTrue(loopback.payloadLengths.get(i) <= 100);
+            markers += loopback.markers.get(i) ? 1 : 0;
+        }
+        // One per access unit, on its last packet.
+        assertEquals(2, markers);
+        assertTrue(loopback.markers.get(loopback.markers.size() - 1));
+    }
+
+    @Test
+    public void avcRoundTripsThroughDepacketizer() throws IOException {
+        assertRoundTrips(NalUnits.MIME_AVC);
+    }
+
+    @Test
+    public void hevcRoundTripsThroughDepacketizer() throws IOException {
+        assertRoundTrips(NalUnits.MIME_HEVC);
+    }
+
+    @Test
+    public void sequenceNumbersWrap() throws IOException {
+        Loopback loopback = new Loopback(NalUnits.MIME_AVC);
+        // Starts from the low half of the SSRC.
+        RtpPacketizer packetizer = new RtpPacketizer(
+                NalUnits.MIME_AVC, RtpPacketizer.DYNAMIC_PAYLOAD_TYPE, 0xfffe, 100, loopback);
+
+        byte[] unit = accessUnit(false, 350);
+        packetizer.send(unit, 0, unit.length, 0);
+
+        assertEquals(0xfffe, (int) loopback.sequenceNumbers.get(0));
+        assertEquals(0xffff, (int) loopback.sequenceNumbers.get(1));
+        assertEquals(0, (int) loopback.sequenceNumbers.get(2));
+        assertArrayEquals(unit, loopback.units.get(0));
+        assertFalse(loopback.damaged.get(0));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsPayloadTooSmallToFragment() {
+        new RtpPacketizer(NalUnits.MIME_HEVC, RtpPacketizer.DYNAMIC_PAYLOAD_TYPE, SSRC, 3,
+                new Loopback(NalUnits.MIME_HEVC));
+    }
+}
@@ -0,0 +1,145 @@
+/**
+ * Copyright 2016-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * Licensed under the Creative Commons CC BY-NC 4.0 Attribution-NonCommercial
+ * License (the "License"). You may obtain a copy of the License at
+ * https://creativecommons.org/licenses/by-nc/4.0/.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.oculus.sample.telemetry;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class HeatmapAggregatorTest {
+    // 10 degree cells.
+    private static final int GRID_WIDTH = 36;
+    private static final int GRID_HEIGHT = 18;
+
+    private static int cell(int row, int col) {
+        return row * GRID_WIDTH + col;
+    }
+
+    private static int sum(int[] heatmap) {
+        int sum = 0;
+        for (int value : heatmap) {
+            sum += value;
+        }
+        return sum;
+    }
+
+    /**
+     * A viewer panning right at {@code degreesPerSecond} along the horizon,
+     * recorded at 60fps through a ViewportRecorder.
+     */
+    private static byte[] panningTrace(int durationMs, float degreesPerSecond)
+            throws IOException {
+        ByteArrayOutputStream log = new ByteArrayOutputStream();
+        ViewportRecorder recorder = new ViewportRecorder(log, 8192);
+        for (int positionMs = 0; positionMs < durationMs; positionMs += 16) {
+            recorder.record(positionMs, 90.f + degreesPerSecond * positionMs / 1000.f, 0.f, 20.f);
+        }
+        recorder.close();
+        assertEquals(0, recorder.getDroppedCount());
+        return log.toByteArray();
+    }
+
+    @Test
+    public void marksCellsWithinHalfTheFov() {
+        HeatmapAggregator aggregator = new HeatmapAggregator(GRID_WIDTH, GRID_HEIGHT, 1000);
+        // Looks at u = 0 on the horizon; the 10 degree radius reaches the
+        // cells either side of the seam and of the equator, nothing further.
+        aggregator.onSample(0, 90.f, 0.f, 20.f);
+
+        int[] heatmap = aggregator.getHeatmap(0);
+        assertEquals(1, heatmap[cell(8, 0)]);
+        assertEquals(1, heatmap[cell(9, 0)]);
+        assertEquals(1, heatmap[cell(8, GRID_WIDTH - 1)]);
+        assertEquals(1, heatmap[cell(9, GRID_WIDTH - 1)]);
+        assertEquals(4, sum(heatmap));
+    }
+
+    @Test
+    public void bucketsSamplesBySecond() {
+        HeatmapAggregator aggregator = new HeatmapAggregator(GRID_WIDTH, GRID_HEIGHT, 5000);
+        aggregator.onSample(999, 90.f, 0.f, 20.f);
+        aggregator.onSample(1000, 90.f, 0.f, 20.f);
+        aggregator.onSample(1500, 90.f, 0.f, 20.f);
+
+        assertEquals(4, sum(aggregator.getHeatmap(0)));
+        assertEquals(8, sum(aggregator.getHeatmap(1)));
+        assertNull(aggregator.getHeatmap(2));
+        assertEquals(3, aggregator.getSampleCount());
+    }
+
+    @Test
+    public void boundsHeatmapsByDuration() {
+        HeatmapAggregator aggregator = new HeatmapAggregator(GRID_WIDTH, GRID_HEIGHT, 3000);
+        assertEquals(3, aggregator.getSecondCount());
+
+        // The last frame may report the duration itself.
+        aggregator.onSample(3000, 90.f, 0.f, 20.f);
+        assertEquals(4, sum(aggregator.getHeatmap(2)));
+
+        aggregator.onSample(3001, 90.f, 0.f, 20.f);
+        aggregator.onSample(Integer.MAX_VALUE, 90.f, 0.f, 20.f);
+        aggregator.onSample(-1, 90.f, 0.f, 20.f);
+        assertEquals(3, aggregator.getSecondCount());
+        assertNull(aggregator.getHeatmap(3));
+        assertEquals(1, aggregator.getSampleCount());
+        assertEquals(3, aggregator.getOutOfRangeCount());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsEmptyDuration() {
+        new HeatmapAggregator(GRID_WIDTH, GRID_HEIGHT, 0);
+    }
+
+    @Test
+    public void followsPanningTrace() throws IOException {
+        HeatmapAggregator aggregator = new HeatmapAggregator(GRID_WIDTH, GRID_HEIGHT, 10000);
+        byte[] log = panningTrace(10000, 36.f);
+        assertEquals(625, aggregator.addLog(new ByteArrayInputStream(log)));
+
+        for (int second = 0; second < 10; second++) {
+            int[] heatmap = aggregator.getHeatmap(second);
+            assertNotNull(heatmap);
+            // The view sweeps azimuths [36 * second, 36 * second + 36).
+            int middle = (36 * second + 18) / 10;
+            int opposite = (middle + GRID_WIDTH / 2) % GRID_WIDTH;
+            assertTrue(heatmap[cell(8, middle)] > 0);
+            assertEquals(0, heatmap[cell(8, opposite)]);
+            assertEquals(0, heatmap[cell(0, middle)]);
+        }
+    }
+
+    @Test
+    public void addsUpLogs() throws IOException {
+        HeatmapAggregator aggregator = new HeatmapAggregator(GRID_WIDTH, GRID_HEIGHT, 2000);
+        byte[] log = panningTrace(2000, 0.f);
+        aggregator.addLog(new ByteArrayInputStream(log));
+        int[] once = aggregator.getHeatmap(1).clone();
+        aggregator.addLog(new ByteArrayInputStream(log));
+
+        int[] twice = aggregator.getHeatmap(1);
+        for (int i = 0; i < twice.length; i++) {
+            assertEquals(2 * once[i], twice[i]);
+        }
+        assertEquals(250, aggregator.getSampleCount());
+    }
+}
@@ -0,0 +1,112 @@
+/**
+ * Copyright 2016-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * Licensed under the Creative Commons CC BY-NC 4.0 Attribution-NonCommercial
+ * License (the "License"). You may obtain a copy of the License at
+ * https://creativecommons.org/licenses/by-nc/4.0/.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.oculus.sample.telemetry;
+
+import com.oculus.sample.renderloop.RenderLoop;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class JankWatchdogTest {
+    private static final long MS = 1000000L;
+
+    private static class FakeClock implements RenderLoop.Clock {
+        long nanos;
+
+        @Override
+        public long nanoTime() {
+            return nanos;
+        }
+    }
+
+    @Test
+    public void countsFramesWithinBudget() {
+        FakeClock clock = new FakeClock();
+        JankWatchdog watchdog = new JankWatchdog(16 * MS, 4, clock);
+
+        watchdog.onFrameStart(0);
+        watchdog.enterStage("draw");
+        clock.nanos = 10 * MS;
+        watchdog.onFrameEnd();
+
+        assertEquals(1, watchdog.getFrameCount());
+        assertEquals(0, watchdog.getJankCount());
+    }
+
+    @Test
+    public void sumsStagesByName() {
+        FakeClock clock = new FakeClock();
+        JankWatchdog watchdog = new JankWatchdog(16 * MS, 4, clock);
+
+        // Two views drawn in one frame, with stage names that are equal but
+        // not the same instance.
+        watchdog.onFrameStart(0);
+        watchdog.enterStage(new String("draw"));
+        clock.nanos = 8 * MS;
+        watchdog.enterStage("swap");
+        clock.nanos = 14 * MS;
+        watchdog.enterStage(new String("draw"));
+        clock.nanos = 22 * MS;
+        watchdog.onFrameEnd();
+
+        List<JankWatchdog.JankRecord> records = watchdog.getRecords();
+        assertEquals(1, records.size());
+        assertEquals("draw", records.get(0).stage);
+        assertEquals(16 * MS, records.get(0).stageNanos);
+        assertEquals("stage:draw", records.get(0).getCause());
+    }
+
+    @Test
+    public void blamesLongMessageForLateStart() {
+        FakeClock clock = new FakeClock();
+        JankWatchdog watchdog = new JankWatchdog(16 * MS, 4, clock);
+
+        watchdog.onMessageStart("capture");
+        clock.nanos = 20 * MS;
+        watchdog.onMessageEnd();
+        watchdog.onFrameStart(0);
+        watchdog.enterStage("draw");
+        clock.nanos = 24 * MS;
+        watchdog.onFrameEnd();
+
+        JankWatchdog.JankRecord record = watchdog.getRecords().get(0);
+        assertEquals(20 * MS, record.startDelayNanos);
+        assertEquals("message:capture", record.getCause());
+    }
+
+    @Test
+    public void keepsMostRecentRecords() {
+        FakeClock clock = new FakeClock();
+        JankWatchdog watchdog = new JankWatchdog(16 * MS, 2, clock);
+
+        for (int i = 0; i < 3; i++) {
+            long vsync = i * 100 * MS;
+            clock.nanos = vsync;
+            watchdog.onFrameStart(vsync);
+            clock.nanos = vsync + 20 * MS;
+            watchdog.onFrameEnd();
+        }
+
+        List<JankWatchdog.JankRecord> records = watchdog.getRecords();
+        assertEquals(3, watchdog.getJankCount());
+        assertEquals(2, records.size());
+        assertEquals(100 * MS, records.get(0).vsyncNanos);
+        assertEquals(200 * MS, records.get(1).vsyncNanos);
+    }
+}
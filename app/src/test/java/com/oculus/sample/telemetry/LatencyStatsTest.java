@@ -0,0 +1,95 @@
+/**
+ * Copyright 2016-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * Licensed under the Creative Commons CC BY-NC 4.0 Attribution-NonCommercial
+ * License (the "License"). You may obtain a copy of the License at
+ * https://creativecommons.org/licenses/by-nc/4.0/.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.oculus.sample.telemetry;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class LatencyStatsTest {
+    private static final long MS = 1000000L;
+    private static final double EPSILON = 1e-9;
+
+    @Test
+    public void emptyIsZero() {
+        LatencyStats stats = new LatencyStats(4);
+        assertEquals(0, stats.getCount());
+        assertEquals(0, stats.getPercentileMs(50), EPSILON);
+    }
+
+    @Test
+    public void nearestRankPercentiles() {
+        LatencyStats stats = new LatencyStats(100);
+        // Out of order, 1 to 10 ms.
+        long[] samples = {7, 3, 10, 1, 9, 2, 8, 4, 6, 5};
+        for (long sample : samples) {
+            stats.record(sample * MS);
+        }
+
+        assertEquals(10, stats.getCount());
+        assertEquals(1, stats.getPercentileMs(0), EPSILON);
+        assertEquals(1, stats.getPercentileMs(10), EPSILON);
+        assertEquals(2, stats.getPercentileMs(10.1), EPSILON);
+        assertEquals(5, stats.getPercentileMs(50), EPSILON);
+        assertEquals(9, stats.getPercentileMs(90), EPSILON);
+        assertEquals(10, stats.getPercentileMs(95), EPSILON);
+        assertEquals(10, stats.getPercentileMs(100), EPSILON);
+    }
+
+    @Test
+    public void keepsOnlyLatestSamples() {
+        LatencyStats stats = new LatencyStats(3);
+        stats.record(100 * MS);
+        stats.record(200 * MS);
+        for (int i = 1; i <= 3; i++) {
+            stats.record(i * MS);
+        }
+
+        assertEquals(5, stats.getCount());
+        assertEquals(3, stats.getPercentileMs(100), EPSILON);
+        assertEquals(2, stats.getPercentileMs(50), EPSILON);
+    }
+
+    @Test
+    public void fractionalMilliseconds() {
+        LatencyStats stats = new LatencyStats(1);
+        stats.record(1500000);
+        assertEquals(1.5, stats.getPercentileMs(50), EPSILON);
+    }
+
+    @Test
+    public void clearForgetsEverything() {
+        LatencyStats stats = new LatencyStats(4);
+        stats.record(5 * MS);
+        stats.clear();
+        assertEquals(0, stats.getCount());
+        assertEquals(0, stats.getPercentileMs(100), EPSILON);
+    }
+
+    @Test
+    public void json() {
+        LatencyStats stats = new LatencyStats(4);
+        stats.record(2 * MS);
+        stats.record(4 * MS);
+        assertEquals("{\"count\":2,\"p50Ms\":2.000,\"p90Ms\":4.000,\"p95Ms\":4.000,"
+                + "\"p99Ms\":4.000,\"maxMs\":4.000}", stats.toJson());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsZeroCapacity() {
+        new LatencyStats(0);
+    }
+}
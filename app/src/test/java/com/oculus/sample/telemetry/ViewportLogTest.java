@@ -0,0 +1,115 @@
+/**
+ * Copyright 2016-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * Licensed under the Creative Commons CC BY-NC 4.0 Attribution-NonCommercial
+ * License (the "License"). You may obtain a copy of the License at
+ * https://creativecommons.org/licenses/by-nc/4.0/.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.oculus.sample.telemetry;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class ViewportLogTest {
+    private static final float HUNDREDTH = 0.005f;
+
+    private static class Collector implements ViewportSampleBuffer.Consumer {
+        final List<float[]> samples = new ArrayList<>();
+
+        @Override
+        public void onSample(int positionMs, float lon, float lat, float fov) {
+            samples.add(new float[] {positionMs, lon, lat, fov});
+        }
+    }
+
+    private static byte[] log(float[]... samples) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        ViewportLog.writeHeader(out);
+        for (float[] sample : samples) {
+            ViewportLog.writeRecord(out, (int) sample[0], sample[1], sample[2], sample[3]);
+        }
+        out.close();
+        return bytes.toByteArray();
+    }
+
+    private static Collector read(byte[] log) throws IOException {
+        Collector collector = new Collector();
+        ViewportLog.read(new ByteArrayInputStream(log), collector);
+        return collector;
+    }
+
+    @Test
+    public void roundTripsToHundredthsOfADegree() throws IOException {
+        byte[] log = log(
+                new float[] {0, 12.344f, -45.678f, 70.f},
+                new float[] {33366, -179.99f, 84.999f, 90.126f});
+        assertEquals(8 + 2 * ViewportLog.RECORD_SIZE, log.length);
+
+        Collector collector = read(log);
+        assertEquals(2, collector.samples.size());
+        float[] first = collector.samples.get(0);
+        assertEquals(0.f, first[0], 0.f);
+        assertEquals(12.34f, first[1], HUNDREDTH);
+        assertEquals(-45.68f, first[2], HUNDREDTH);
+        assertEquals(70.f, first[3], HUNDREDTH);
+        float[] second = collector.samples.get(1);
+        assertEquals(33366.f, second[0], 0.f);
+        assertEquals(-179.99f, second[1], HUNDREDTH);
+        assertEquals(85.f, second[2], HUNDREDTH);
+        assertEquals(90.13f, second[3], HUNDREDTH);
+    }
+
+    @Test
+    public void wrapsLongitudeIntoHalfOpenRange() {
+        assertEquals(-90.f, ViewportLog.wrapLongitude(270.f), 0.f);
+        assertEquals(170.f, ViewportLog.wrapLongitude(-190.f), 0.f);
+        assertEquals(-180.f, ViewportLog.wrapLongitude(180.f), 0.f);
+        assertEquals(-180.f, ViewportLog.wrapLongitude(-180.f), 0.f);
+        assertEquals(10.f, ViewportLog.wrapLongitude(730.f), 0.f);
+    }
+
+    @Test
+    public void clampsLatitudeAndFov() throws IOException {
+        float[] sample = read(log(new float[] {0, 0.f, 120.f, 400.f})).samples.get(0);
+        assertEquals(90.f, sample[2], 0.f);
+        assertEquals(180.f, sample[3], 0.f);
+
+        sample = read(log(new float[] {0, 0.f, -120.f, -5.f})).samples.get(0);
+        assertEquals(-90.f, sample[2], 0.f);
+        assertEquals(0.f, sample[3], 0.f);
+    }
+
+    @Test
+    public void readsEmptyLog() throws IOException {
+        assertEquals(0, read(log()).samples.size());
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsForeignFile() throws IOException {
+        read(new byte[] {'R', 'I', 'F', 'F', 0, 0, 0, 0});
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsUnknownVersion() throws IOException {
+        byte[] log = log();
+        log[7] = (byte) (ViewportLog.VERSION + 1);
+        read(log);
+    }
+}
@@ -0,0 +1,160 @@
+/**
+ * Copyright 2016-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * Licensed under the Creative Commons CC BY-NC 4.0 Attribution-NonCommercial
+ * License (the "License"). You may obtain a copy of the License at
+ * https://creativecommons.org/licenses/by-nc/4.0/.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.oculus.sample.telemetry;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ViewportSampleBufferTest {
+    private static class Collector implements ViewportSampleBuffer.Consumer {
+        final List<Integer> positions = new ArrayList<>();
+
+        @Override
+        public void onSample(int positionMs, float lon, float lat, float fov) {
+            positions.add(positionMs);
+        }
+    }
+
+    @Test
+    public void roundsCapacityUpToPowerOfTwo() {
+        assertEquals(1024, new ViewportSampleBuffer(1000).capacity());
+        assertEquals(1024, new ViewportSampleBuffer(1024).capacity());
+        assertEquals(1, new ViewportSampleBuffer(1).capacity());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsEmptyCapacity() {
+        new ViewportSampleBuffer(0);
+    }
+
+    @Test
+    public void drainsEverySampleInOrder() {
+        ViewportSampleBuffer buffer = new ViewportSampleBuffer(8);
+        buffer.offer(10, 1.f, 2.f, 70.f);
+        buffer.offer(20, 3.f, 4.f, 60.f);
+
+        final float[] last = new float[4];
+        int drained = buffer.drain(new ViewportSampleBuffer.Consumer() {
+            @Override
+            public void onSample(int positionMs, float lon, float lat, float fov) {
+                last[0] = positionMs;
+                last[1] = lon;
+                last[2] = lat;
+                last[3] = fov;
+            }
+        });
+
+        assertEquals(2, drained);
+        assertEquals(20.f, last[0], 0.f);
+        assertEquals(3.f, last[1], 0.f);
+        assertEquals(4.f, last[2], 0.f);
+        assertEquals(60.f, last[3], 0.f);
+        assertEquals(0, buffer.drain(new Collector()));
+    }
+
+    @Test
+    public void dropsNewSamplesWhenFull() {
+        ViewportSampleBuffer buffer = new ViewportSampleBuffer(4);
+        for (int i = 0; i < 4; i++) {
+            assertTrue(buffer.offer(i, 0.f, 0.f, 90.f));
+        }
+        assertFalse(buffer.offer(4, 0.f, 0.f, 90.f));
+        assertFalse(buffer.offer(5, 0.f, 0.f, 90.f));
+
+        Collector collector = new Collector();
+        buffer.drain(collector);
+        assertEquals(2, buffer.getDroppedCount());
+        assertEquals(Arrays.asList(0, 1, 2, 3), collector.positions);
+    }
+
+    @Test
+    public void reusesSlotsAfterDrain() {
+        ViewportSampleBuffer buffer = new ViewportSampleBuffer(4);
+        Collector collector = new Collector();
+        for (int i = 0; i < 10; i++) {
+            assertTrue(buffer.offer(i, 0.f, 0.f, 90.f));
+            if (i % 3 == 2) {
+                buffer.drain(collector);
+            }
+        }
+        buffer.drain(collector);
+
+        assertEquals(0, buffer.getDroppedCount());
+        assertEquals(10, collector.positions.size());
+        for (int i = 0; i < 10; i++) {
+            assertEquals(i, (int) collector.positions.get(i));
+        }
+    }
+
+    @Test
+    public void concurrentDrainSeesEverySampleOnce() throws InterruptedException {
+        final int count = 200000;
+        final ViewportSampleBuffer buffer = new ViewportSampleBuffer(64);
+        Thread producer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; i < count; i++) {
+                    // The fields must match the position they were written with.
+                    buffer.offer(i, i, -i, i % 180);
+                }
+            }
+        });
+
+        final int[] received = new int[1];
+        final int[] last = {-1};
+        final boolean[] consistent = {true};
+        ViewportSampleBuffer.Consumer checker = new ViewportSampleBuffer.Consumer() {
+            @Override
+            public void onSample(int positionMs, float lon, float lat, float fov) {
+                consistent[0] &= positionMs > last[0]
+                        && lon == positionMs && lat == -positionMs && fov == positionMs % 180;
+                last[0] = positionMs;
+                received[0]++;
+            }
+        };
+
+        producer.start();
+        while (producer.isAlive()) {
+            buffer.drain(checker);
+        }
+        producer.join();
+        buffer.drain(checker);
+
+        assertTrue(consistent[0]);
+        assertEquals(count, received[0] + buffer.getDroppedCount());
+    }
+
+    @Test
+    public void recorderWritesEverySampleOnClose() throws Exception {
+        ByteArrayOutputStream log = new ByteArrayOutputStream();
+        ViewportRecorder recorder = new ViewportRecorder(log, 256);
+        for (int i = 0; i < 200; i++) {
+            recorder.record(i * 16, 0.f, 0.f, 90.f);
+        }
+        recorder.close();
+
+        assertEquals(0, recorder.getDroppedCount());
+        assertEquals(8 + 200 * ViewportLog.RECORD_SIZE, log.size());
+    }
+}
@@ -0,0 +1,99 @@
+#!/bin/sh
+#
+# Runs PlaybackBenchmarkActivity on the connected device RUNS times and pulls
+# one JSON file of frame-time percentiles per run:
+#
+#     $ ./gradlew installDebug
+#     $ benchmark/run-playback-benchmark.sh
+#
+# RUNS, DURATION (seconds), DRAG_PATH (CSV on the device) and OUT may be set
+# in the environment. SOURCE=mapped reads the clip through a memory mapped
+# MediaDataSource instead of its resource URI. SEEKS spreads that many seeks
+# to fixed pseudo-random positions over the run. FOV sets the vertical field of
+# view in degrees and MIPMAP=1 turns on mipmapped zoom; compare FOV=110 runs
+# with and without it for the cost of the frame copies, and MIPMAP=1 runs at
+# the default FOV to see that none are made. MIRROR=1 also draws every frame
+# to the first presentation display (simulate one with `adb shell settings put
+# global overlay_display_devices 1920x1080/320`); compare with MIRROR=0 runs
+# for what mirroring adds. CPUS, a taskset mask, pins the render thread; that
+# needs `adb root`. Keep the device at the same brightness, plugged in and idle
+# between runs so results stay comparable.
+
+set -e
+
+PACKAGE=com.oculus.sample
+RUNS=${RUNS:-3}
+DURATION=${DURATION:-30}
+SOURCE=${SOURCE:-uri}
+SEEKS=${SEEKS:-0}
+FOV=${FOV:-70}
+MIPMAP=${MIPMAP:-0}
+MIRROR=${MIRROR:-0}
+OUT=${OUT:-$(dirname "$0")/build/reports/playback}
+REMOTE_RESULT=/sdcard/Android/data/$PACKAGE/files/playback_benchmark.json
+
+mkdir -p "$OUT"
+
+# The render thread only exists once the first player has a surface.
+pin_render_thread() {
+    tries=10
+    while [ "$tries" -gt 0 ]; do
+        pid=$(adb shell pidof $PACKAGE | tr -d '\r')
+        if [ -n "$pid" ]; then
+            tid=$(adb shell ps -T -p "$pid" | grep 360RenderThread | awk '{ print $3 }')
+            if [ -n "$tid" ]; then
+                adb shell taskset -p "$CPUS" "$tid" > /dev/null
+                echo "pinned render thread $tid to $CPUS"
+                return
+            fi
+        fi
+        tries=$((tries - 1))
+        sleep 1
+    done
+    echo "Render thread not found, running unpinned" >&2
+}
+
+run=1
+while [ "$run" -le "$RUNS" ]; do
+    adb shell am force-stop $PACKAGE
+    adb shell rm -f $REMOTE_RESULT
+
+    mipmap=false
+    if [ "$MIPMAP" = 1 ]; then
+        mipmap=true
+    fi
+    mirror=false
+    if [ "$MIRROR" = 1 ]; then
+        mirror=true
+    fi
+    if [ -n "$DRAG_PATH" ]; then
+        adb shell am start -n $PACKAGE/.PlaybackBenchmarkActivity \
+                --ei duration_s "$DURATION" --es source "$SOURCE" --ei seeks "$SEEKS" \
+                --ef fov_y "$FOV" --ez mipmap "$mipmap" --ez mirror "$mirror" \
+                --es drag_path "$DRAG_PATH" > /dev/null
+    else
+        adb shell am start -n $PACKAGE/.PlaybackBenchmarkActivity \
+                --ei duration_s "$DURATION" --es source "$SOURCE" --ei seeks "$SEEKS" \
+                --ef fov_y "$FOV" --ez mipmap "$mipmap" --ez mirror "$mirror" \
+                > /dev/null
+    fi
+
+    if [ -n "$CPUS" ]; then
+        pin_render_thread
+    fi
+
+    # Warm-up plus the measured duration plus some slack for startup.
+    timeout=$((DURATION + 30))
+    while ! adb shell "[ -f $REMOTE_RESULT ] && echo done" | grep -q done; do
+        timeout=$((timeout - 1))
+        if [ "$timeout" -le 0 ]; then
+            echo "Run $run timed out; see adb logcat -s PlaybackBenchmarkActivity" >&2
+            exit 1
+        fi
+        sleep 1
+    done
+
+    adb pull $REMOTE_RESULT "$OUT/run-$run.json" > /dev/null
+    echo "run $run: $(cat "$OUT/run-$run.json")"
+    run=$((run + 1))
+done
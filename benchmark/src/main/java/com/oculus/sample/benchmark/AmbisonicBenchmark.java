@@ -0,0 +1,78 @@
+/**
+ * Copyright 2016-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * Licensed under the Creative Commons CC BY-NC 4.0 Attribution-NonCommercial
+ * License (the "License"). You may obtain a copy of the License at
+ * https://creativecommons.org/licenses/by-nc/4.0/.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.oculus.sample.benchmark;
+
+import com.oculus.sample.audio.AmbisonicDecoder;
+import com.oculus.sample.audio.ListenerOrientation;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One block of the spatial audio thread: 256 AmbiX frames, about 5ms at
+ * 48kHz, rendered to stereo with the head still and with the head turning
+ * every block, which adds the trigonometry and the gain ramp.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms512m", "-Xmx512m"})
+@State(Scope.Thread)
+public class AmbisonicBenchmark {
+    private static final int FRAMES = 256;
+
+    private final AmbisonicDecoder decoder = new AmbisonicDecoder();
+    private final ListenerOrientation orientation = new ListenerOrientation();
+    private final short[] input = new short[FRAMES * AmbisonicDecoder.INPUT_CHANNELS];
+    private final short[] output = new short[FRAMES * AmbisonicDecoder.OUTPUT_CHANNELS];
+    private float lon;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(360);
+        for (int i = 0; i < input.length; i++) {
+            input[i] = (short) (random.nextGaussian() * 4000);
+        }
+    }
+
+    @Benchmark
+    public short[] processStill() {
+        decoder.process(input, 0, output, 0, FRAMES);
+        return output;
+    }
+
+    @Benchmark
+    public short[] processTurning() {
+        lon += 0.5f;
+        orientation.setFromCamera(lon, 10.f);
+        long current = orientation.get();
+        decoder.setOrientation(ListenerOrientation.yaw(current), ListenerOrientation.pitch(current));
+        decoder.process(input, 0, output, 0, FRAMES);
+        return output;
+    }
+}
@@ -0,0 +1,101 @@
+/**
+ * Copyright 2016-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * Licensed under the Creative Commons CC BY-NC 4.0 Attribution-NonCommercial
+ * License (the "License"). You may obtain a copy of the License at
+ * https://creativecommons.org/licenses/by-nc/4.0/.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.oculus.sample.benchmark;
+
+import com.oculus.sample.telemetry.HeatmapAggregator;
+import com.oculus.sample.telemetry.ViewportSampleBuffer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Folding one viewer's five minute viewport trace at 60fps into per-second
+ * heatmaps, and the render thread side of recording it. The trace is a
+ * random walk, replayed from memory so only aggregation is measured.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms256m", "-Xmx256m"})
+@State(Scope.Thread)
+public class HeatmapBenchmark {
+    private static final int DURATION_MS = 5 * 60 * 1000;
+    private static final int SAMPLE_COUNT = DURATION_MS / 16;
+
+    @Param({"64", "128"})
+    public int gridWidth;
+
+    private final int[] positions = new int[SAMPLE_COUNT];
+    private final float[] lons = new float[SAMPLE_COUNT];
+    private final float[] lats = new float[SAMPLE_COUNT];
+    private final ViewportSampleBuffer.Consumer discard = new ViewportSampleBuffer.Consumer() {
+        @Override
+        public void onSample(int positionMs, float lon, float lat, float fov) {
+        }
+    };
+    private ViewportSampleBuffer buffer;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(360);
+        float lon = 0.f;
+        float lat = 0.f;
+        for (int i = 0; i < SAMPLE_COUNT; i++) {
+            lon += (float) random.nextGaussian();
+            lat = Math.max(-85.f, Math.min(85.f, lat + 0.5f * (float) random.nextGaussian()));
+            positions[i] = i * 16;
+            lons[i] = lon;
+            lats[i] = lat;
+        }
+        buffer = new ViewportSampleBuffer(SAMPLE_COUNT);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public long aggregate() {
+        HeatmapAggregator aggregator =
+                new HeatmapAggregator(gridWidth, gridWidth / 2, DURATION_MS);
+        for (int i = 0; i < SAMPLE_COUNT; i++) {
+            aggregator.onSample(positions[i], lons[i], lats[i], 90.f);
+        }
+        return aggregator.getSampleCount();
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public boolean record() {
+        int i = next;
+        next = (i + 1) % SAMPLE_COUNT;
+        if (i == 0) {
+            buffer.drain(discard);
+        }
+        return buffer.offer(positions[i], lons[i], lats[i], 90.f);
+    }
+}
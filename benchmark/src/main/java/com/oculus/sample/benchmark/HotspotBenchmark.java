@@ -0,0 +1,123 @@
+/**
+ * Copyright 2016-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * Licensed under the Creative Commons CC BY-NC 4.0 Attribution-NonCommercial
+ * License (the "License"). You may obtain a copy of the License at
+ * https://creativecommons.org/licenses/by-nc/4.0/.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.oculus.sample.benchmark;
+
+import com.oculus.sample.overlay.Hotspot;
+import com.oculus.sample.overlay.HotspotBatch;
+import com.oculus.sample.overlay.HotspotIndex;
+import com.oculus.sample.projection.SphericalCamera;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hotspot overlay costs as the number of hotspots grows: resolving a tap,
+ * from the ray cast to the index lookup, against a search of every
+ * hotspot, and building the vertex data, which only happens when the
+ * hotspots change. Drawing is one glDrawElements whatever the count.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms512m", "-Xmx512m"})
+@State(Scope.Thread)
+public class HotspotBenchmark {
+    private static final int TAPS = 1024;
+
+    @Param({"100", "1000", "10000"})
+    public int count;
+
+    private List<Hotspot> hotspots;
+    private HotspotIndex index;
+    private final SphericalCamera camera = new SphericalCamera();
+    private final float[] tapX = new float[TAPS];
+    private final float[] tapY = new float[TAPS];
+    private final float[] lonLat = new float[2];
+    private int tap;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(360);
+        hotspots = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            hotspots.add(new Hotspot(i, random.nextFloat() * 360, random.nextFloat() * 160 - 80,
+                    2 + random.nextFloat() * 4, 0, 0, 1, 1));
+        }
+        index = new HotspotIndex(hotspots);
+
+        camera.setViewportSize(1080, 1920);
+        camera.setOrientation(120.f, 20.f);
+        camera.update();
+        for (int i = 0; i < TAPS; i++) {
+            tapX[i] = random.nextFloat() * 2 - 1;
+            tapY[i] = random.nextFloat() * 2 - 1;
+        }
+    }
+
+    @Benchmark
+    public int pick() {
+        tap = (tap + 1) % TAPS;
+        camera.pickLonLat(tapX[tap], tapY[tap], SphericalCamera.SPHERE_RADIUS, lonLat);
+        return index.findIndex(lonLat[0], lonLat[1]);
+    }
+
+    @Benchmark
+    public int pickSearchAll() {
+        tap = (tap + 1) % TAPS;
+        camera.pickLonLat(tapX[tap], tapY[tap], SphericalCamera.SPHERE_RADIUS, lonLat);
+        double lon = Math.toRadians(lonLat[0]);
+        double lat = Math.toRadians(lonLat[1]);
+        double x = Math.cos(lat) * Math.cos(lon);
+        double y = Math.sin(lat);
+        double z = Math.cos(lat) * Math.sin(lon);
+
+        int best = -1;
+        double bestDot = -2;
+        for (int i = 0; i < hotspots.size(); i++) {
+            Hotspot hotspot = hotspots.get(i);
+            double hotspotLon = Math.toRadians(hotspot.lon);
+            double hotspotLat = Math.toRadians(hotspot.lat);
+            double dot = x * Math.cos(hotspotLat) * Math.cos(hotspotLon)
+                    + y * Math.sin(hotspotLat)
+                    + z * Math.cos(hotspotLat) * Math.sin(hotspotLon);
+            if (dot >= Math.cos(Math.toRadians(hotspot.sizeDegrees / 2)) && dot > bestDot) {
+                best = i;
+                bestDot = dot;
+            }
+        }
+        return best;
+    }
+
+    @Benchmark
+    public HotspotBatch buildBatch() {
+        return new HotspotBatch(hotspots, SphericalCamera.SPHERE_RADIUS);
+    }
+}
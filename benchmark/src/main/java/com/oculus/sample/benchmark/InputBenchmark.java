@@ -0,0 +1,101 @@
+/**
+ * Copyright 2016-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * Licensed under the Creative Commons CC BY-NC 4.0 Attribution-NonCommercial
+ * License (the "License"). You may obtain a copy of the License at
+ * https://creativecommons.org/licenses/by-nc/4.0/.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.oculus.sample.benchmark;
+
+import com.oculus.sample.projection.SphericalCamera;
+import com.oculus.sample.renderloop.RenderLoop;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The render thread side of a drag: two scroll events per vsync, as with a
+ * 120 Hz touch panel on a 60 Hz display, then the vsync that draws them.
+ * Drawing itself is a no-op so only scheduling and camera work is measured.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms512m", "-Xmx512m"})
+@State(Scope.Thread)
+public class InputBenchmark {
+    private static class CameraTarget extends RenderLoop.Target {
+        final SphericalCamera camera = new SphericalCamera();
+
+        @Override
+        protected void onScroll(float deltaX, float deltaY) {
+            camera.onScroll(deltaX, deltaY);
+        }
+    }
+
+    private RenderLoop renderLoop;
+    private CameraTarget target;
+    private Blackhole blackhole;
+    private long nowNanos;
+
+    @Setup
+    public void setUp(Blackhole blackhole) {
+        this.blackhole = blackhole;
+        target = new CameraTarget();
+        renderLoop = new RenderLoop(new RenderLoop.Host() {
+            @Override
+            public void requestVsync() {
+            }
+
+            @Override
+            public void prepare(RenderLoop.Target t) {
+            }
+
+            @Override
+            public void draw(RenderLoop.Target t, boolean latchFrame) {
+                ((CameraTarget) t).camera.update();
+                InputBenchmark.this.blackhole.consume(((CameraTarget) t).camera.getViewMatrix());
+            }
+
+            @Override
+            public boolean hasPendingWork() {
+                return false;
+            }
+        }, new RenderLoop.Clock() {
+            @Override
+            public long nanoTime() {
+                return nowNanos;
+            }
+        });
+        renderLoop.addTarget(target);
+    }
+
+    @Benchmark
+    public void dragFrame() {
+        nowNanos += 8333333L;
+        renderLoop.onScroll(target, 2.f, 0.5f, nowNanos);
+        nowNanos += 8333333L;
+        renderLoop.onScroll(target, 2.f, 0.5f, nowNanos);
+        renderLoop.onVsync(nowNanos);
+    }
+}
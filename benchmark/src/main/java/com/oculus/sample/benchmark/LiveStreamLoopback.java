@@ -0,0 +1,390 @@
+/**
+ * Copyright 2016-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * Licensed under the Creative Commons CC BY-NC 4.0 Attribution-NonCommercial
+ * License (the "License"). You may obtain a copy of the License at
+ * https://creativecommons.org/licenses/by-nc/4.0/.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.oculus.sample.benchmark;
+
+import com.oculus.sample.rtp.AccessUnit;
+import com.oculus.sample.rtp.JitterBuffer;
+import com.oculus.sample.rtp.LoopbackRtpSender;
+import com.oculus.sample.rtp.NalUnits;
+import com.oculus.sample.rtp.RtpDepacketizer;
+import com.oculus.sample.rtp.RtpPacket;
+import com.oculus.sample.telemetry.LatencyStats;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Streams synthetic H.264 and H.265 pictures from a {@link LoopbackRtpSender},
+ * the player's stand-in camera, over UDP on this host into the same jitter
+ * buffer and depacketizer the live player uses, with and without packet
+ * loss and reordering.
+ *
+ * Every picture carries its index, so each one received intact is checked
+ * byte for byte against the one sent; a mismatch fails the run, as does
+ * any picture damaged or missing without impairments. Once the sender
+ * stops, the receiver drains what is still in flight, so every picture
+ * sent is reported as intact, damaged, mismatched or missing: none of its
+ * packets arrived, or the marker packet closing it never did. Also reports
+ * packet counters and the network and assembly stages of live latency.
+ *
+ *     $ ./gradlew :benchmark:checkLiveLoopback [-Plive.output=results.json]
+ *
+ * Impairments are seeded, but the timing comes from the real network
+ * stack, so latencies vary between runs.
+ */
+public class LiveStreamLoopback {
+    private static final int LATENCY_SAMPLES = 4096;
+    private static final int JITTER_BUFFER_PACKETS = 1024;
+    private static final long REORDER_WAIT_NANOS = 10 * 1000000L;
+    // Loopback delivers within microseconds; this long quiet ends the drain.
+    private static final int DRAIN_TIMEOUT_MS = 100;
+    private static final int SOCKET_BUFFER_BYTES = 4 * 1024 * 1024;
+    private static final byte[] START_CODE = {0, 0, 0, 1};
+
+    static class Scenario {
+        final String name;
+        final String mime;
+        float frameRate = 30;
+        int pictures = 60;
+        int keyframeInterval = 30;
+        int keyframeBytes = 120 * 1024;
+        int maxPictureBytes = 20 * 1024;
+        long durationMs = 4000;
+        float lossRate;
+        float reorderRate;
+
+        Scenario(String name, String mime) {
+            this.name = name;
+            this.mime = mime;
+        }
+    }
+
+    static class Report {
+        final String scenario;
+        long picturesSent;
+        long packetsSent;
+        long intact;
+        long damaged;
+        long mismatched;
+        long missing;
+        long packetsReceived;
+        long packetsLost;
+        long packetsLate;
+        long packetsReordered;
+        final LatencyStats network = new LatencyStats(LATENCY_SAMPLES);
+        final LatencyStats assembly = new LatencyStats(LATENCY_SAMPLES);
+
+        Report(String scenario) {
+            this.scenario = scenario;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US,
+                    "%-20s sent=%4d intact=%4d damaged=%3d mismatched=%d missing=%d"
+                            + " packets sent=%6d received=%6d lost=%4d late=%3d reordered=%4d"
+                            + " networkMs p50=%6.3f p99=%6.3f assemblyMs p50=%6.3f p99=%6.3f",
+                    scenario, picturesSent, intact, damaged, mismatched, missing,
+                    packetsSent, packetsReceived, packetsLost, packetsLate, packetsReordered,
+                    network.getPercentileMs(50), network.getPercentileMs(99),
+                    assembly.getPercentileMs(50), assembly.getPercentileMs(99));
+        }
+
+        void writeJson(Writer out) throws IOException {
+            out.write("{\"scenario\":\"" + scenario + "\""
+                    + ",\"picturesSent\":" + picturesSent
+                    + ",\"intact\":" + intact
+                    + ",\"damaged\":" + damaged
+                    + ",\"mismatched\":" + mismatched
+                    + ",\"missing\":" + missing
+                    + ",\"packetsSent\":" + packetsSent
+                    + ",\"packetsReceived\":" + packetsReceived
+                    + ",\"packetsLost\":" + packetsLost
+                    + ",\"packetsLate\":" + packetsLate
+                    + ",\"packetsReordered\":" + packetsReordered
+                    + ",\"networkMs\":" + network.toJson()
+                    + ",\"assemblyMs\":" + assembly.toJson()
+                    + "}");
+        }
+    }
+
+    private final Scenario scenario;
+    private final boolean hevc;
+    // Annex B bytes of every picture, as the depacketizer should rebuild them.
+    private final List<byte[]> pictures = new ArrayList<>();
+
+    LiveStreamLoopback(Scenario scenario) {
+        this.scenario = scenario;
+        this.hevc = NalUnits.isHevc(scenario.mime);
+    }
+
+    Report run() throws IOException {
+        final Report report = new Report(scenario.name);
+        byte[] stream = buildStream(new Random(360));
+
+        DatagramSocket socket = new DatagramSocket(0, InetAddress.getByName(null));
+        socket.setReceiveBufferSize(SOCKET_BUFFER_BYTES);
+        JitterBuffer jitterBuffer = new JitterBuffer(JITTER_BUFFER_PACKETS, REORDER_WAIT_NANOS);
+        RtpDepacketizer depacketizer = new RtpDepacketizer(
+                scenario.mime,
+                new RtpDepacketizer.Listener() {
+                    @Override
+                    public void onAccessUnit(AccessUnit unit) {
+                        check(unit, report);
+                    }
+                });
+
+        LoopbackRtpSender sender = new LoopbackRtpSender(
+                scenario.mime,
+                new ByteArrayInputStream(stream),
+                socket.getLocalPort(),
+                scenario.frameRate);
+        sender.setImpairments(scenario.lossRate, scenario.reorderRate, 360);
+        sender.start();
+
+        try {
+            DatagramPacket datagram = new DatagramPacket(new byte[0], 0);
+            long endNanos = System.nanoTime() + scenario.durationMs * 1000000L;
+            boolean sending = true;
+            while (true) {
+                if (sending && System.nanoTime() >= endNanos) {
+                    // Returns once the last picture is sent; receive the rest of it.
+                    sender.stop();
+                    sending = false;
+                }
+
+                RtpPacket packet = new RtpPacket();
+                datagram.setData(packet.buffer);
+                long deadlineNanos = jitterBuffer.getDeadlineNanos();
+                socket.setSoTimeout(deadlineNanos < 0
+                        ? DRAIN_TIMEOUT_MS
+                        : (int) Math.max(1, (deadlineNanos - System.nanoTime()) / 1000000L));
+                try {
+                    socket.receive(datagram);
+                    if (packet.parse(datagram.getLength(), System.nanoTime())) {
+                        jitterBuffer.add(packet);
+                    }
+                } catch (SocketTimeoutException e) {
+                    if (!sending && deadlineNanos < 0) {
+                        break;
+                    }
+                    // Otherwise only here to give up a gap.
+                }
+
+                RtpPacket ready;
+                while ((ready = jitterBuffer.poll(System.nanoTime())) != null) {
+                    depacketizer.push(ready);
+                }
+            }
+        } finally {
+            sender.stop();
+            socket.close();
+        }
+        if (sender.getError() != null) {
+            throw sender.getError();
+        }
+
+        report.picturesSent = sender.getAccessUnitsSent();
+        report.packetsSent = sender.getPacketsSent();
+        report.packetsReceived = jitterBuffer.getPacketsReceived();
+        report.packetsLost = jitterBuffer.getPacketsLost();
+        report.packetsLate = jitterBuffer.getPacketsLate();
+        report.packetsReordered = jitterBuffer.getPacketsReordered();
+        report.missing = report.picturesSent - report.intact - report.damaged - report.mismatched;
+        return report;
+    }
+
+    private void check(AccessUnit unit, Report report) {
+        long nowNanos = System.nanoTime();
+        if (unit.damaged) {
+            report.damaged++;
+            return;
+        }
+
+        int index = readPictureIndex(unit);
+        byte[] expected = index >= 0 && index < pictures.size() ? pictures.get(index) : null;
+        if (expected == null
+                || expected.length != unit.size
+                || !Arrays.equals(expected, Arrays.copyOf(unit.data, unit.size))) {
+            report.mismatched++;
+            return;
+        }
+
+        report.intact++;
+        report.network.record(unit.firstPacketNanos
+                - LoopbackRtpSender.toLocalNanos(unit.timestamp, unit.firstPacketNanos));
+        report.assembly.record(nowNanos - unit.firstPacketNanos);
+    }
+
+    /**
+     * Pictures are parameter sets for keyframes, then one slice whose
+     * payload starts with the picture index, four base 255 digits that
+     * cannot form a start code.
+     */
+    private byte[] buildStream(Random random) {
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        for (int i = 0; i < scenario.pictures; i++) {
+            ByteArrayOutputStream picture = new ByteArrayOutputStream();
+            boolean keyframe = i % scenario.keyframeInterval == 0;
+            if (keyframe) {
+                if (hevc) {
+                    writeNalUnit(picture, 32, 24, random);
+                }
+                writeNalUnit(picture, hevc ? 33 : 7, 24, random);
+                writeNalUnit(picture, hevc ? 34 : 8, 8, random);
+            }
+
+            int size = keyframe
+                    ? scenario.keyframeBytes
+                    : 512 + random.nextInt(scenario.maxPictureBytes - 512);
+            byte[] slice = sliceNalUnit(keyframe, i, size, random);
+            picture.write(START_CODE, 0, START_CODE.length);
+            picture.write(slice, 0, slice.length);
+
+            byte[] bytes = picture.toByteArray();
+            pictures.add(bytes);
+            stream.write(bytes, 0, bytes.length);
+        }
+        return stream.toByteArray();
+    }
+
+    private void writeNalUnit(ByteArrayOutputStream out, int type, int size, Random random) {
+        byte[] nal = new byte[size];
+        fillNonZero(nal, random);
+        writeHeader(nal, type);
+        out.write(START_CODE, 0, START_CODE.length);
+        out.write(nal, 0, nal.length);
+    }
+
+    private byte[] sliceNalUnit(boolean keyframe, int index, int size, Random random) {
+        byte[] nal = new byte[size];
+        fillNonZero(nal, random);
+        int type = hevc ? (keyframe ? 19 : 1) : (keyframe ? 5 : 1);
+        int payload = writeHeader(nal, type);
+        // First slice of the picture.
+        nal[payload] = (byte) 0x80;
+        for (int digit = 0; digit < 4; digit++) {
+            nal[payload + 1 + digit] = (byte) (index % 255 + 1);
+            index /= 255;
+        }
+        return nal;
+    }
+
+    private int writeHeader(byte[] nal, int type) {
+        if (hevc) {
+            nal[0] = (byte) (type << 1);
+            nal[1] = 1;
+            return 2;
+        }
+        nal[0] = (byte) (0x60 | type);
+        return 1;
+    }
+
+    private int readPictureIndex(AccessUnit unit) {
+        // The slice is the last NAL unit.
+        int offset = NalUnits.findNalUnit(unit.data, 0, unit.size);
+        int last = -1;
+        while (offset >= 0) {
+            last = offset;
+            offset = NalUnits.findNalUnit(unit.data, offset, unit.size);
+        }
+
+        int digits = last + NalUnits.headerSize(hevc) + 1;
+        if (last < 0 || digits + 4 > unit.size) {
+            return -1;
+        }
+        int index = 0;
+        for (int digit = 3; digit >= 0; digit--) {
+            index = index * 255 + (unit.data[digits + digit] & 0xff) - 1;
+        }
+        return index;
+    }
+
+    private static void fillNonZero(byte[] data, Random random) {
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) (1 + random.nextInt(255));
+        }
+    }
+
+    static List<Scenario> defaultScenarios() {
+        List<Scenario> scenarios = new ArrayList<>();
+        for (String mime : new String[] {NalUnits.MIME_AVC, NalUnits.MIME_HEVC}) {
+            String codec = NalUnits.isHevc(mime) ? "h265" : "h264";
+
+            scenarios.add(new Scenario(codec + "/clean", mime));
+
+            Scenario reordered = new Scenario(codec + "/reorder-2%", mime);
+            reordered.reorderRate = 0.02f;
+            scenarios.add(reordered);
+
+            Scenario lossy = new Scenario(codec + "/loss-0.5%", mime);
+            lossy.lossRate = 0.005f;
+            scenarios.add(lossy);
+        }
+        return scenarios;
+    }
+
+    public static void main(String[] args) throws IOException {
+        String outputPath = args.length > 0 ? args[0] : null;
+
+        List<Report> reports = new ArrayList<>();
+        long mismatched = 0;
+        long unimpairedLost = 0;
+        for (Scenario scenario : defaultScenarios()) {
+            Report report = new LiveStreamLoopback(scenario).run();
+            System.out.println(report);
+            reports.add(report);
+            mismatched += report.mismatched;
+            if (scenario.lossRate == 0) {
+                unimpairedLost += report.damaged + report.missing;
+            }
+        }
+
+        if (outputPath != null) {
+            Writer out = new FileWriter(outputPath);
+            try {
+                out.write("[\n");
+                for (int i = 0; i < reports.size(); i++) {
+                    reports.get(i).writeJson(out);
+                    out.write(i < reports.size() - 1 ? ",\n" : "\n");
+                }
+                out.write("]\n");
+            } finally {
+                out.close();
+            }
+        }
+
+        if (mismatched > 0) {
+            throw new IllegalStateException(mismatched + " pictures received intact did not match");
+        }
+        if (unimpairedLost > 0) {
+            throw new IllegalStateException(
+                    unimpairedLost + " pictures damaged or missing without packet loss");
+        }
+    }
+}
@@ -0,0 +1,131 @@
+/**
+ * Copyright 2016-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * Licensed under the Creative Commons CC BY-NC 4.0 Attribution-NonCommercial
+ * License (the "License"). You may obtain a copy of the License at
+ * https://creativecommons.org/licenses/by-nc/4.0/.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.oculus.sample.benchmark;
+
+import com.oculus.sample.media.AssetPack;
+import com.oculus.sample.media.MappedFile;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Collections;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sequential readAt-style reads of a 256MB asset pack entry, as an extractor
+ * streaming a video does: through the mapped windows of {@link MappedFile}
+ * against seek and read on a RandomAccessFile, which is what a plain file
+ * descriptor source costs per call. The file stays in the page cache, so
+ * this compares per-read overhead rather than storage speed.
+ *
+ * Scores are reads per millisecond; multiply by readSize for throughput.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms512m", "-Xmx512m"})
+@State(Scope.Benchmark)
+public class MappedReadBenchmark {
+    private static final int ENTRY_SIZE = 256 * 1024 * 1024;
+    private static final String ENTRY_NAME = "video.mp4";
+
+    @Param({"4096", "65536", "1048576"})
+    public int readSize;
+
+    private File directory;
+    private AssetPack pack;
+    private MappedFile mappedFile;
+    private RandomAccessFile randomAccessFile;
+    private long entryOffset;
+    private byte[] buffer;
+    private long position;
+
+    @Setup
+    public void setUp() throws IOException {
+        directory = File.createTempFile("mapped-read", "");
+        directory.delete();
+        directory.mkdirs();
+
+        File entry = new File(directory, ENTRY_NAME);
+        Random random = new Random(360);
+        byte[] chunk = new byte[1024 * 1024];
+        FileOutputStream out = new FileOutputStream(entry);
+        try {
+            for (int written = 0; written < ENTRY_SIZE; written += chunk.length) {
+                random.nextBytes(chunk);
+                out.write(chunk);
+            }
+        } finally {
+            out.close();
+        }
+
+        File packFile = new File(directory, "assets.pack");
+        AssetPack.write(packFile, Collections.singletonList(entry));
+        entry.delete();
+
+        pack = AssetPack.open(packFile);
+        mappedFile = pack.map(ENTRY_NAME);
+        randomAccessFile = new RandomAccessFile(packFile, "r");
+        entryOffset = pack.getEntry(ENTRY_NAME).offset;
+        buffer = new byte[readSize];
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        mappedFile.close();
+        randomAccessFile.close();
+        new File(directory, "assets.pack").delete();
+        directory.delete();
+    }
+
+    @Benchmark
+    public int mapped() throws IOException {
+        int read = mappedFile.read(nextPosition(), buffer, 0, readSize);
+        return read + buffer[0];
+    }
+
+    @Benchmark
+    public int randomAccessFile() throws IOException {
+        randomAccessFile.seek(entryOffset + nextPosition());
+        int read = randomAccessFile.read(buffer, 0, readSize);
+        return read + buffer[0];
+    }
+
+    private long nextPosition() {
+        long current = position;
+        position += readSize;
+        if (position + readSize > ENTRY_SIZE) {
+            position = 0;
+        }
+        return current;
+    }
+}
@@ -0,0 +1,449 @@
+/**
+ * Copyright 2016-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * Licensed under the Creative Commons CC BY-NC 4.0 Attribution-NonCommercial
+ * License (the "License"). You may obtain a copy of the License at
+ * https://creativecommons.org/licenses/by-nc/4.0/.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.oculus.sample.benchmark;
+
+import com.oculus.sample.renderloop.AtomicPose;
+import com.oculus.sample.renderloop.RenderLoop;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Random;
+
+/**
+ * Drives the player's {@link RenderLoop} with virtual vsync, decoder and
+ * drag event streams on a virtual clock, so scheduling changes can be
+ * compared on any JVM.
+ *
+ * The render thread is modelled as one message queue: events are handled in
+ * time order, but never before the previous one finished, and every draw
+ * keeps the thread busy for the scenario's draw cost. Vsync callbacks fire on
+ * the first vsync after they were requested, like the Choreographer's.
+ *
+ * With late latching, drags bypass the queue: they land in the target's
+ * AtomicPose at their own timestamp, as the UI thread would write them, and
+ * the pose is sampled {@code latchAtDrawFraction} into each draw.
+ *
+ *     $ ./gradlew :benchmark:simulateRenderLoop [-Psim.output=results.json]
+ *
+ * Runs are seeded, so the same scenarios always give the same numbers.
+ */
+public class RenderLoopSimulator {
+    private static final long NANOS_PER_MS = 1000000L;
+
+    /**
+     * One simulated playback session on a single view.
+     */
+    public static class Scenario {
+        String name;
+        long durationMs = 10000;
+        float refreshHz = 60;
+        /** Decoded frames per second, 0 while paused. */
+        float videoFps = 30;
+        float decodeJitterMs = 4;
+        /** Frames the decoder may queue before it has to drop. */
+        int decodeQueueCapacity = 3;
+        long dragStartMs = 2000;
+        long dragEndMs = 6000;
+        float inputHz = 120;
+        /** Touch events are not phase locked to vsync. */
+        float inputJitterMs = 3;
+        float drawCostMs = 4;
+        /** Every Nth draw costs drawSpikeMs instead. */
+        int drawSpikeInterval = 0;
+        float drawSpikeMs = 0;
+        boolean continuousVsync = true;
+        boolean lateLatch = false;
+        /** How far into a late-latched draw the pose is sampled. */
+        float latchAtDrawFraction = 0.75f;
+        long seed = 1;
+
+        Scenario(String name) {
+            this.name = name;
+        }
+    }
+
+    public static class Report {
+        final String scenario;
+        int vsyncs;
+        int wastedWakeups;
+        int framesDrawn;
+        int videoFramesDecoded;
+        int videoFramesLatched;
+        int videoFramesDropped;
+        int inputEvents;
+        final LongSamples frameLatency = new LongSamples();
+        final LongSamples inputLatency = new LongSamples();
+
+        Report(String scenario) {
+            this.scenario = scenario;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(
+                    "%-28s vsyncs=%5d wasted=%5d drawn=%5d decoded=%4d latched=%4d dropped=%4d"
+                            + " frameLatencyMs p50=%6.2f p95=%6.2f max=%6.2f"
+                            + " inputLatencyMs p50=%6.2f p95=%6.2f max=%6.2f",
+                    scenario, vsyncs, wastedWakeups, framesDrawn,
+                    videoFramesDecoded, videoFramesLatched, videoFramesDropped,
+                    frameLatency.percentileMs(50), frameLatency.percentileMs(95),
+                    frameLatency.percentileMs(100),
+                    inputLatency.percentileMs(50), inputLatency.percentileMs(95),
+                    inputLatency.percentileMs(100));
+        }
+
+        void writeJson(Writer out) throws IOException {
+            out.write("{\"scenario\":\"" + scenario + "\""
+                    + ",\"vsyncs\":" + vsyncs
+                    + ",\"wastedWakeups\":" + wastedWakeups
+                    + ",\"framesDrawn\":" + framesDrawn
+                    + ",\"videoFramesDecoded\":" + videoFramesDecoded
+                    + ",\"videoFramesLatched\":" + videoFramesLatched
+                    + ",\"videoFramesDropped\":" + videoFramesDropped
+                    + ",\"inputEvents\":" + inputEvents
+                    + ",\"frameLatencyMs\":" + frameLatency.toJson()
+                    + ",\"inputLatencyMs\":" + inputLatency.toJson()
+                    + "}");
+        }
+    }
+
+    static class LongSamples {
+        private long[] values = new long[256];
+        private int count;
+        private boolean sorted;
+
+        void add(long value) {
+            if (count == values.length) {
+                values = Arrays.copyOf(values, count * 2);
+            }
+            values[count++] = value;
+            sorted = false;
+        }
+
+        int size() {
+            return count;
+        }
+
+        double percentileMs(double percentile) {
+            if (count == 0) {
+                return 0;
+            }
+            if (!sorted) {
+                Arrays.sort(values, 0, count);
+                sorted = true;
+            }
+            int index = (int) Math.ceil(percentile / 100 * count) - 1;
+            return values[Math.max(0, Math.min(count - 1, index))] / (double) NANOS_PER_MS;
+        }
+
+        String toJson() {
+            return String.format("{\"count\":%d,\"p50\":%.3f,\"p95\":%.3f,\"p99\":%.3f,\"max\":%.3f}",
+                    count, percentileMs(50), percentileMs(95), percentileMs(99), percentileMs(100));
+        }
+    }
+
+    private static final int EVENT_VSYNC = 0;
+    private static final int EVENT_FRAME_DECODED = 1;
+    private static final int EVENT_SCROLL = 2;
+    private static final int EVENT_INVALIDATE = 3;
+
+    private static class Event implements Comparable<Event> {
+        final long timeNanos;
+        final long sequence;
+        final int type;
+
+        Event(long timeNanos, long sequence, int type) {
+            this.timeNanos = timeNanos;
+            this.sequence = sequence;
+            this.type = type;
+        }
+
+        @Override
+        public int compareTo(Event other) {
+            if (timeNanos != other.timeNanos) {
+                return timeNanos < other.timeNanos ? -1 : 1;
+            }
+            return sequence < other.sequence ? -1 : (sequence == other.sequence ? 0 : 1);
+        }
+    }
+
+    private final Scenario scenario;
+    private final Report report;
+    private final PriorityQueue<Event> events = new PriorityQueue<>();
+    private final Random random;
+    private final long vsyncPeriodNanos;
+
+    private long nowNanos;
+    private long sequence;
+    private boolean vsyncScheduled;
+
+    private final AtomicPose pose = new AtomicPose(85.f);
+    private final RenderLoop.Target target = new RenderLoop.Target(pose) {
+        @Override
+        protected void onScroll(float deltaX, float deltaY) {
+            pose.addDrag(deltaX, deltaY, nowNanos);
+        }
+    };
+    private final RenderLoop renderLoop;
+
+    // Late-latched drags, written to the pose by the "UI thread" as time passes.
+    private long[] uiDragTimes = new long[0];
+    private int nextUiDrag;
+
+    private final RenderLoop.Clock clock = new RenderLoop.Clock() {
+        @Override
+        public long nanoTime() {
+            return nowNanos;
+        }
+    };
+
+    private final RenderLoop.Host host = new RenderLoop.Host() {
+        @Override
+        public void requestVsync() {
+            if (vsyncScheduled) {
+                return;
+            }
+            vsyncScheduled = true;
+            long nextVsync = (nowNanos / vsyncPeriodNanos + 1) * vsyncPeriodNanos;
+            schedule(nextVsync, EVENT_VSYNC);
+        }
+
+        @Override
+        public void prepare(RenderLoop.Target target) {
+        }
+
+        @Override
+        public void draw(RenderLoop.Target target, boolean latchFrame) {
+            report.framesDrawn++;
+            if (latchFrame) {
+                report.videoFramesLatched++;
+            }
+
+            boolean spike = scenario.drawSpikeInterval > 0
+                    && report.framesDrawn % scenario.drawSpikeInterval == 0;
+            long costNanos = (long) ((spike ? scenario.drawSpikeMs : scenario.drawCostMs)
+                    * NANOS_PER_MS);
+
+            if (!scenario.lateLatch) {
+                target.latchPose();
+                nowNanos += costNanos;
+                return;
+            }
+
+            long beforeLatchNanos = (long) (costNanos * scenario.latchAtDrawFraction);
+            nowNanos += beforeLatchNanos;
+            applyUiDrags();
+            target.latchPose();
+            nowNanos += costNanos - beforeLatchNanos;
+        }
+
+        @Override
+        public boolean hasPendingWork() {
+            return false;
+        }
+    };
+
+    private final RenderLoop.Observer observer = new RenderLoop.Observer() {
+        @Override
+        public void onPresented(
+                RenderLoop.Target target,
+                long presentNanos,
+                long frameLatencyNanos,
+                long inputLatencyNanos) {
+            // The swapped buffer reaches the display on the following vsync.
+            long scanoutNanos = (presentNanos / vsyncPeriodNanos + 1) * vsyncPeriodNanos;
+            long delayNanos = scanoutNanos - presentNanos;
+            if (frameLatencyNanos >= 0) {
+                report.frameLatency.add(frameLatencyNanos + delayNanos);
+            }
+            if (inputLatencyNanos >= 0) {
+                report.inputLatency.add(inputLatencyNanos + delayNanos);
+            }
+        }
+
+        @Override
+        public void onVsyncHandled(long frameTimeNanos, int targetsDrawn) {
+            report.vsyncs++;
+            if (targetsDrawn == 0) {
+                report.wastedWakeups++;
+            }
+        }
+    };
+
+    public RenderLoopSimulator(Scenario scenario) {
+        this.scenario = scenario;
+        report = new Report(scenario.name);
+        random = new Random(scenario.seed);
+        vsyncPeriodNanos = (long) (1e9 / scenario.refreshHz);
+
+        renderLoop = new RenderLoop(host, clock);
+        renderLoop.setObserver(observer);
+        renderLoop.setContinuousVsync(scenario.continuousVsync);
+    }
+
+    public Report run() {
+        long endNanos = scenario.durationMs * NANOS_PER_MS;
+
+        if (scenario.videoFps > 0) {
+            double framePeriodNanos = 1e9 / scenario.videoFps;
+            long jitterNanos = (long) (scenario.decodeJitterMs * NANOS_PER_MS);
+            for (long i = 0; i * framePeriodNanos < endNanos; i++) {
+                long jitter = jitterNanos > 0
+                        ? (long) ((random.nextDouble() * 2 - 1) * jitterNanos) : 0;
+                schedule(Math.max(0, (long) (i * framePeriodNanos) + jitter), EVENT_FRAME_DECODED);
+            }
+        }
+
+        long inputPeriodNanos = (long) (1e9 / scenario.inputHz);
+        long dragEndNanos = Math.min(scenario.dragEndMs * NANOS_PER_MS, endNanos);
+        List<Long> uiDrags = new ArrayList<>();
+        long inputJitterNanos = (long) (scenario.inputJitterMs * NANOS_PER_MS);
+        for (long i = scenario.dragStartMs * NANOS_PER_MS; i < dragEndNanos; i += inputPeriodNanos) {
+            // Sorted insertion is not needed: jitter stays below half the input period.
+            long t = i + (long) (random.nextDouble() * inputJitterNanos);
+            if (scenario.lateLatch) {
+                // The UI thread writes the pose and only posts a wakeup.
+                uiDrags.add(t);
+                schedule(t, EVENT_INVALIDATE);
+            } else {
+                schedule(t, EVENT_SCROLL);
+            }
+        }
+        uiDragTimes = new long[uiDrags.size()];
+        for (int i = 0; i < uiDragTimes.length; i++) {
+            uiDragTimes[i] = uiDrags.get(i);
+        }
+
+        renderLoop.addTarget(target);
+
+        Event event;
+        while ((event = events.poll()) != null && event.timeNanos < endNanos) {
+            // A busy thread handles the message late, but the event keeps its own timestamp.
+            nowNanos = Math.max(nowNanos, event.timeNanos);
+            applyUiDrags();
+            switch (event.type) {
+                case EVENT_VSYNC:
+                    vsyncScheduled = false;
+                    renderLoop.onVsync(event.timeNanos);
+                    break;
+                case EVENT_FRAME_DECODED:
+                    report.videoFramesDecoded++;
+                    if (target.getQueuedFrameCount() >= scenario.decodeQueueCapacity) {
+                        report.videoFramesDropped++;
+                    } else {
+                        renderLoop.onFrameAvailable(target);
+                    }
+                    break;
+                case EVENT_SCROLL:
+                    report.inputEvents++;
+                    renderLoop.onScroll(target, 1, 0, event.timeNanos);
+                    break;
+                case EVENT_INVALIDATE:
+                    renderLoop.invalidate(target);
+                    break;
+            }
+        }
+
+        return report;
+    }
+
+    private void applyUiDrags() {
+        while (nextUiDrag < uiDragTimes.length && uiDragTimes[nextUiDrag] <= nowNanos) {
+            pose.addDrag(1, 0, uiDragTimes[nextUiDrag]);
+            report.inputEvents++;
+            nextUiDrag++;
+        }
+    }
+
+    private void schedule(long timeNanos, int type) {
+        events.add(new Event(timeNanos, sequence++, type));
+    }
+
+    static List<Scenario> defaultScenarios() {
+        List<Scenario> scenarios = new ArrayList<>();
+        for (boolean continuous : new boolean[] {true, false}) {
+            String mode = continuous ? "continuous" : "on-demand";
+
+            Scenario playing = new Scenario("30fps-drag/" + mode);
+            playing.continuousVsync = continuous;
+            scenarios.add(playing);
+
+            Scenario paused = new Scenario("paused-drag/" + mode);
+            paused.videoFps = 0;
+            paused.continuousVsync = continuous;
+            scenarios.add(paused);
+
+            Scenario fullRate = new Scenario("60fps/" + mode);
+            fullRate.videoFps = 60;
+            fullRate.continuousVsync = continuous;
+            scenarios.add(fullRate);
+
+            Scenario slowDraws = new Scenario("60fps-spikes/" + mode);
+            slowDraws.videoFps = 60;
+            slowDraws.drawSpikeInterval = 20;
+            slowDraws.drawSpikeMs = 40;
+            slowDraws.continuousVsync = continuous;
+            scenarios.add(slowDraws);
+        }
+
+        // Input-to-present latency with drags queued as messages versus late latched.
+        for (boolean lateLatch : new boolean[] {false, true}) {
+            String mode = lateLatch ? "late-latch" : "queued-input";
+
+            Scenario light = new Scenario("30fps-drag/" + mode);
+            light.lateLatch = lateLatch;
+            scenarios.add(light);
+
+            Scenario heavy = new Scenario("30fps-drag-12ms/" + mode);
+            heavy.drawCostMs = 12;
+            heavy.lateLatch = lateLatch;
+            scenarios.add(heavy);
+        }
+        return scenarios;
+    }
+
+    public static void main(String[] args) throws IOException {
+        String outputPath = args.length > 0 ? args[0] : null;
+
+        List<Report> reports = new ArrayList<>();
+        for (Scenario scenario : defaultScenarios()) {
+            Report report = new RenderLoopSimulator(scenario).run();
+            System.out.println(report);
+            reports.add(report);
+        }
+
+        if (outputPath == null) {
+            return;
+        }
+
+        Writer out = new FileWriter(outputPath);
+        try {
+            out.write("[\n");
+            for (int i = 0; i < reports.size(); i++) {
+                reports.get(i).writeJson(out);
+                out.write(i < reports.size() - 1 ? ",\n" : "\n");
+            }
+            out.write("]\n");
+        } finally {
+            out.close();
+        }
+    }
+}
@@ -0,0 +1,82 @@
+/**
+ * Copyright 2016-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * Licensed under the Creative Commons CC BY-NC 4.0 Attribution-NonCommercial
+ * License (the "License"). You may obtain a copy of the License at
+ * https://creativecommons.org/licenses/by-nc/4.0/.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.oculus.sample.benchmark;
+
+import com.oculus.sample.projection.EquirectReprojector;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 4K equirect (3840x1920) to 1080p viewport, multi-threaded and single-threaded.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms512m", "-Xmx512m"})
+@State(Scope.Benchmark)
+public class ReprojectionBenchmark {
+    private static final int SOURCE_WIDTH = 3840;
+    private static final int SOURCE_HEIGHT = 1920;
+    private static final int OUTPUT_WIDTH = 1920;
+    private static final int OUTPUT_HEIGHT = 1080;
+    private static final float FOVY = 70f;
+
+    private int[] source;
+    private int[] output;
+    private EquirectReprojector reprojector;
+    private float lon;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(360);
+        source = new int[SOURCE_WIDTH * SOURCE_HEIGHT];
+        for (int i = 0; i < source.length; i++) {
+            source[i] = 0xff000000 | random.nextInt(0x1000000);
+        }
+        output = new int[OUTPUT_WIDTH * OUTPUT_HEIGHT];
+        reprojector = new EquirectReprojector(OUTPUT_WIDTH, OUTPUT_HEIGHT);
+    }
+
+    @Benchmark
+    public int[] reprojectParallel() {
+        // Move the camera each call so nothing about the view can be cached.
+        lon += 1.f;
+        reprojector.reproject(
+                source, SOURCE_WIDTH, SOURCE_HEIGHT, lon, 20.f, FOVY, output);
+        return output;
+    }
+
+    @Benchmark
+    public int[] reprojectSingleThreaded() {
+        lon += 1.f;
+        reprojector.reprojectSingleThreaded(
+                source, SOURCE_WIDTH, SOURCE_HEIGHT, lon, 20.f, FOVY, output);
+        return output;
+    }
+}